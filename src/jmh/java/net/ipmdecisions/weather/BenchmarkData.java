@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.SyntheticWeatherDataGenerator;
+
+/**
+ * Generated weather data for the benchmarks, see {@link SyntheticWeatherDataGenerator}. 
+ * The data are deterministic for a given seed, so that the results of different runs 
+ * can be compared.
+ * 
+ * The size of a data set is given as "years:parameters:locations" (e.g. "10:30:1"), 
+ * for use in a JMH @Param. The data are hourly.
+ */
+public class BenchmarkData {
+	
+	public static final Instant TIME_START = Instant.parse("2015-01-01T00:00:00Z");
+	
+	// Temperature, precipitation, humidity, leaf wetness, wind and radiation parameters
+	public static final Integer[] WEATHER_PARAMETERS = {
+			1001, 1002, 1003, 1004, 2001, 3001, 3002, 3003, 3004, 3101, 
+			4002, 4003, 4004, 5001, 1021, 1022, 1023, 1024, 1101, 1102, 
+			1111, 1112, 1121, 1122, 1901, 3021, 3022, 3023, 3024, 4012
+	};
+	
+	/**
+	 * @param size "years:parameters:locations"
+	 * @param seed
+	 * @return hourly weather data of the given size. About 1% of the values are missing
+	 */
+	public static WeatherData getWeatherData(String size, long seed)
+	{
+		String[] parts = size.split(":");
+		SyntheticWeatherDataGenerator generator = new SyntheticWeatherDataGenerator(seed);
+		generator.setTimeStart(TIME_START);
+		generator.setRows(Integer.parseInt(parts[0]) * 8760);
+		generator.setWeatherParameters(Arrays.copyOf(WEATHER_PARAMETERS, Math.min(Integer.parseInt(parts[1]), WEATHER_PARAMETERS.length)));
+		generator.setLocations(Integer.parseInt(parts[2]));
+		generator.setMissingRate(0.01);
+		return generator.getWeatherData();
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.amalgamation;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ipmdecisions.weather.BenchmarkData;
+import net.ipmdecisions.weather.entity.LocationWeatherDataException;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.WeatherDataUtil;
+
+/**
+ * Interpolation of the missing values in all the weather parameters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpolationBenchmark {
+	
+	@Param({"1:5:1", "10:30:1", "1:10:100"})
+	public String size;
+	
+	private WeatherData original;
+	private WeatherData weatherData;
+	private Set<Integer> parameters;
+	
+	@Setup
+	public void setUp()
+	{
+		this.original = BenchmarkData.getWeatherData(this.size, 1);
+		this.parameters = Set.of(this.original.getWeatherParameters());
+	}
+	
+	/**
+	 * The interpolation fills the holes in place, so each invocation gets a fresh copy
+	 */
+	@Setup(Level.Invocation)
+	public void copy()
+	{
+		this.weatherData = new WeatherDataUtil().getCopy(this.original);
+	}
+	
+	@Benchmark
+	public WeatherData interpolate() throws LocationWeatherDataException
+	{
+		return new Interpolation().interpolate(this.weatherData, this.parameters, 3);
+	}
+}
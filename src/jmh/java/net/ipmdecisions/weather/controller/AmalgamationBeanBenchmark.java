@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.controller;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ipmdecisions.weather.BenchmarkData;
+import net.ipmdecisions.weather.amalgamation.WeatherDataAggregationException;
+import net.ipmdecisions.weather.entity.WeatherData;
+
+/**
+ * Fusion of several data sources, and aggregation from hourly to daily values
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AmalgamationBeanBenchmark {
+	
+	private static final ZoneId TIME_ZONE = ZoneId.of("Europe/Oslo");
+	
+	@Param({"1:5:1", "1:30:1", "10:30:1", "1:10:10", "1:10:100"})
+	public String size;
+	
+	private AmalgamationBean amalgamationBean;
+	private List<WeatherData> sources;
+	private WeatherData hourly;
+	
+	@Setup
+	public void setUp()
+	{
+		this.amalgamationBean = new AmalgamationBean(new WeatherDataSourceBean(), new MetaDataBean());
+		// Three sources, each with its own missing values
+		this.sources = List.of(
+				BenchmarkData.getWeatherData(this.size, 1),
+				BenchmarkData.getWeatherData(this.size, 2),
+				BenchmarkData.getWeatherData(this.size, 3)
+		);
+		this.hourly = this.sources.get(0);
+	}
+	
+	@Benchmark
+	public WeatherData getFusionedWeatherData() throws IOException
+	{
+		return this.amalgamationBean.getFusionedWeatherData(this.sources, this.hourly.getTimeStart(), this.hourly.getTimeEnd(), 3600, TIME_ZONE);
+	}
+	
+	@Benchmark
+	public WeatherData aggregate() throws WeatherDataAggregationException, IOException
+	{
+		return this.amalgamationBean.aggregate(this.hourly, 86400, TIME_ZONE);
+	}
+}
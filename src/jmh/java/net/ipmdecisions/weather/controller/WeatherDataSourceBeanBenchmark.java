@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.controller;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+
+/**
+ * Finding the weather data sources for a location in the catalogue. Uses the catalogue 
+ * given by the system property org.madiphs.weatherservice.DATASOURCE_LIST_FILE, or 
+ * the one in src/main/resources
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeatherDataSourceBeanBenchmark {
+	
+	// Inside and outside the areas of the gridded sources, and close to weather stations or not
+	@Param({"10.781989,59.660468", "24.9384,60.1699", "-8.6291,41.1579", "140.0,-35.0"})
+	public String location;
+	
+	@Param({"0", "5000"})
+	public double tolerance;
+	
+	private WeatherDataSourceBean weatherDataSourceBean;
+	private double longitude, latitude;
+	
+	@Setup
+	public void setUp()
+	{
+		if(System.getProperty("org.madiphs.weatherservice.DATASOURCE_LIST_FILE") == null)
+		{
+			System.setProperty("org.madiphs.weatherservice.DATASOURCE_LIST_FILE", "src/main/resources/weather_datasources.yaml");
+		}
+		this.weatherDataSourceBean = new WeatherDataSourceBean();
+		this.longitude = Double.parseDouble(this.location.split(",")[0]);
+		this.latitude = Double.parseDouble(this.location.split(",")[1]);
+	}
+	
+	@Benchmark
+	public List<WeatherDataSource> getWeatherDataSourcesForLocation() throws IOException
+	{
+		return this.weatherDataSourceBean.getWeatherDataSourcesForLocation(this.longitude, this.latitude, this.tolerance);
+	}
+}
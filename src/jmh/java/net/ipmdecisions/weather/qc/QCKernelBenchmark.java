@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.qc;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ipmdecisions.weather.BenchmarkData;
+import net.ipmdecisions.weather.entity.QCType;
+
+/**
+ * Compares the fused QC kernel to running the tests one at a time, as before the kernel.
+ * One year of hourly random data, with many failed tests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QCKernelBenchmark {
+
+    private Double[][] randomData;
+
+    @Setup
+    public void setUp() {
+        this.randomData = QCKernelTest.getRandomData(new Random(42), 8760, BenchmarkData.WEATHER_PARAMETERS.length);
+    }
+
+    @Benchmark
+    public Integer[] kernel() {
+        Integer[] qcResult = new Integer[BenchmarkData.WEATHER_PARAMETERS.length];
+        Arrays.fill(qcResult, QCType.NO_QC);
+        return new QCKernel(BenchmarkData.WEATHER_PARAMETERS, true, true).apply(this.randomData, qcResult);
+    }
+
+    /**
+     * The same as {@link #kernel()}, one test at a time
+     */
+    @Benchmark
+    public Integer[] testByTest() throws Exception {
+        return QCKernelTest.getQCTestByTest(BenchmarkData.WEATHER_PARAMETERS, this.randomData);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.qc;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ipmdecisions.weather.BenchmarkData;
+import net.ipmdecisions.weather.entity.WeatherData;
+
+/**
+ * Quality control of whole data sets, sequentially and in parallel. The QC results are 
+ * added to the QC arrays, so running the QC again on the same data gives the same 
+ * results and does the same work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QualityControlBenchmark {
+
+    @Param({"1:5:1", "10:30:1", "1:10:100"})
+    public String size;
+
+    private WeatherData weatherData;
+
+    @Setup
+    public void setUp() {
+        this.weatherData = BenchmarkData.getWeatherData(this.size, 1);
+    }
+
+    @Benchmark
+    public WeatherData getQC() {
+        return new QualityControlMethods().getQC(this.weatherData, "ALL");
+    }
+
+    @Benchmark
+    public WeatherData getQCInParallel() {
+        return new QualityControlMethods(ForkJoinPool.commonPool()).getQC(this.weatherData, "ALL");
+    }
+}
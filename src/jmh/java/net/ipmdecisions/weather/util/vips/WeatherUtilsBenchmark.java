@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.util.vips;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.ipmdecisions.weather.BenchmarkData;
+
+/**
+ * Aggregation of 10 minute observations of one parameter to hourly values
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeatherUtilsBenchmark {
+	
+	@Param({"1", "10"})
+	public int years;
+	
+	private List<VIPSWeatherObservation> observations;
+	private TimeZone timeZone;
+	
+	@Setup
+	public void setUp()
+	{
+		this.timeZone = TimeZone.getTimeZone("Europe/Oslo");
+		Random random = new Random(1);
+		int count = this.years * 8760 * 6;
+		this.observations = new ArrayList<>(count);
+		long start = BenchmarkData.TIME_START.toEpochMilli();
+		for(int i=0; i < count; i++)
+		{
+			double temperature = 6 + 10 * Math.sin(2 * Math.PI * i / (8760 * 6)) + random.nextGaussian();
+			this.observations.add(new VIPSWeatherObservation(new Date(start + i * 600000L), "TM", VIPSWeatherObservation.LOG_INTERVAL_ID_10M, temperature));
+		}
+	}
+	
+	@Benchmark
+	public List<VIPSWeatherObservation> getAggregateHourlyValues() throws WeatherObservationListException, InvalidAggregationTypeException
+	{
+		return new WeatherUtils().getAggregateHourlyValues(this.observations, this.timeZone, VIPSWeatherObservation.LOG_INTERVAL_ID_10M, WeatherUtils.AGGREGATION_TYPE_AVERAGE);
+	}
+}
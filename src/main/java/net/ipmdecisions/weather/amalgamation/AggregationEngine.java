@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.amalgamation;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.entity.WeatherParameter;
+
+/**
+ * Aggregates weather data to a coarser interval, e.g. from 10 minutes to hourly, or from hourly to daily.
+ * 
+ * The aggregator for each column is resolved once up front. The aggregation windows are 
+ * computed once for all locations, aligned with midnight in the given time zone. For 
+ * daily (or multi-day) intervals, the windows are bounded by successive local midnights, 
+ * so that days with a daylight saving time transition get their 23 or 25 hours. 
+ * Each column is then reduced over each window in one tight primitive loop.
+ * 
+ * Missing values are skipped. An average is the sum divided by the number of non-missing 
+ * values. A window with no values at all gives a missing value.
+ * 
+ * A leading partial window is skipped, a trailing partial window is kept.
+ */
+public class AggregationEngine {
+
+	private static final int AVERAGE = 0;
+	private static final int SUM = 1;
+	private static final int MINIMUM = 2;
+	private static final int MAXIMUM = 3;
+
+	private static final int SECONDS_PER_DAY = 86400;
+
+	private final int[] aggregators;
+
+	/**
+	 * @param aggregationTypes The aggregation type (WeatherParameter.AGGREGATION_TYPE_*) of each column
+	 * @throws WeatherDataAggregationException if any of the aggregation types are unknown
+	 */
+	public AggregationEngine(String[] aggregationTypes) throws WeatherDataAggregationException
+	{
+		this.aggregators = new int[aggregationTypes.length];
+		for(int col=0; col < aggregationTypes.length; col++)
+		{
+			this.aggregators[col] = AggregationEngine.getAggregator(aggregationTypes[col]);
+		}
+	}
+
+	private static int getAggregator(String aggregationType) throws WeatherDataAggregationException
+	{
+		if(aggregationType != null)
+		{
+			switch(aggregationType) {
+				case WeatherParameter.AGGREGATION_TYPE_AVERAGE:
+					return AVERAGE;
+				case WeatherParameter.AGGREGATION_TYPE_SUM:
+					return SUM;
+				case WeatherParameter.AGGREGATION_TYPE_MINIMUM:
+					return MINIMUM;
+				case WeatherParameter.AGGREGATION_TYPE_MAXIMUM:
+					return MAXIMUM;
+			}
+		}
+		throw new WeatherDataAggregationException("ERROR: Could not find method for aggregation type " + aggregationType);
+	}
+
+	/**
+	 * Aggregates the source data set in place
+	 * @param source The data set to aggregate. Its columns must match the aggregation types given in the constructor
+	 * @param requestedInterval The interval (seconds) to aggregate to
+	 * @param timeZone The time zone used for aligning the aggregation windows
+	 * @return the source, aggregated to the requested interval
+	 * @throws WeatherDataAggregationException
+	 */
+	public WeatherData aggregate(WeatherData source, Integer requestedInterval, ZoneId timeZone) throws WeatherDataAggregationException
+	{
+		if(source.getInterval() > requestedInterval)
+		{
+			throw new WeatherDataAggregationException("ERROR: requestedInterval(" + requestedInterval + ") can't be smaller than the source interval (" + source.getInterval() + ")");
+		}
+		if(source.getInterval().equals(requestedInterval))
+		{
+			return source;
+		}
+		if(source.getWeatherParameters() == null || source.getWeatherParameters().length != this.aggregators.length)
+		{
+			throw new WeatherDataAggregationException("ERROR: The number of weather parameters in the source does not match the number of aggregation types");
+		}
+
+		int sourceInterval = source.getInterval();
+		int sourceLength = 0;
+		if(source.getLocationWeatherData() != null)
+		{
+			for(LocationWeatherData lwd:source.getLocationWeatherData())
+			{
+				sourceLength = Math.max(sourceLength, lwd.getLength());
+			}
+		}
+		Instant sourceStart = source.getTimeStart();
+		Instant sourceEnd = sourceStart.plusSeconds((long) sourceLength * sourceInterval);
+
+		// The window boundaries as source row indexes. Window i spans the rows [boundaries[i], boundaries[i+1])
+		int[] boundaries = this.getWindowBoundaries(sourceStart, sourceEnd, sourceInterval, requestedInterval, timeZone);
+		int windows = boundaries.length - 1;
+		Instant firstWindowStart = sourceStart.plusSeconds((long) boundaries[0] * sourceInterval);
+
+		if(source.getLocationWeatherData() != null)
+		{
+			for(LocationWeatherData lwd:source.getLocationWeatherData())
+			{
+				lwd.setData(this.aggregate(lwd.getData(), lwd.getLength(), boundaries));
+			}
+		}
+
+		source.setTimeStart(firstWindowStart);
+		// E.g. only a leading partial window: No rows, and timeEnd must not be before timeStart
+		source.setTimeEnd(firstWindowStart.plusSeconds((long) Math.max(0, windows - 1) * requestedInterval));
+		source.setInterval(requestedInterval);
+		return source;
+	}
+
+	/**
+	 * Computes the aggregation windows as row indexes into the source data.
+	 * A row belongs to the window in which its timestamp lies.
+	 */
+	private int[] getWindowBoundaries(Instant sourceStart, Instant sourceEnd, int sourceInterval, int requestedInterval, ZoneId timeZone)
+	{
+		List<Instant> windowStarts = new ArrayList<>();
+		LocalDate day = sourceStart.atZone(timeZone).toLocalDate();
+		if(requestedInterval % SECONDS_PER_DAY == 0)
+		{
+			int days = requestedInterval / SECONDS_PER_DAY;
+			Instant windowStart = day.atStartOfDay(timeZone).toInstant();
+			if(windowStart.isBefore(sourceStart))
+			{
+				day = day.plusDays(1);
+				windowStart = day.atStartOfDay(timeZone).toInstant();
+			}
+			while(windowStart.isBefore(sourceEnd))
+			{
+				windowStarts.add(windowStart);
+				day = day.plusDays(days);
+				windowStart = day.atStartOfDay(timeZone).toInstant();
+			}
+			windowStarts.add(windowStart);
+		}
+		else
+		{
+			// Sub-daily windows are aligned with the local midnight of the first day
+			ZonedDateTime midnight = day.atStartOfDay(timeZone);
+			long offset = sourceStart.getEpochSecond() - midnight.toEpochSecond();
+			long firstWindow = offset <= 0 ? 0 : (offset + requestedInterval - 1) / requestedInterval;
+			Instant windowStart = midnight.toInstant().plusSeconds(firstWindow * requestedInterval);
+			while(windowStart.isBefore(sourceEnd))
+			{
+				windowStarts.add(windowStart);
+				windowStart = windowStart.plusSeconds(requestedInterval);
+			}
+			windowStarts.add(windowStart);
+		}
+
+		int[] boundaries = new int[windowStarts.size()];
+		for(int i=0; i < boundaries.length; i++)
+		{
+			long secondsFromStart = windowStarts.get(i).getEpochSecond() - sourceStart.getEpochSecond();
+			// First row with a timestamp at or after the window start
+			boundaries[i] = (int) Math.max(0, (secondsFromStart + sourceInterval - 1) / sourceInterval);
+		}
+		return boundaries;
+	}
+
+	/**
+	 * Reduces each column of the data over each window
+	 */
+	private Double[][] aggregate(Double[][] data, int length, int[] boundaries)
+	{
+		int width = this.aggregators.length;
+		int windows = boundaries.length - 1;
+		Double[][] aggregatedData = new Double[windows][width];
+		double[] column = new double[length];
+		boolean[] present = new boolean[length];
+		for(int col=0; col < width; col++)
+		{
+			// Unbox the column once
+			for(int row=0; row < length; row++)
+			{
+				Double value = data[row] != null && col < data[row].length ? data[row][col] : null;
+				present[row] = value != null;
+				column[row] = present[row] ? value : 0d;
+			}
+			int aggregator = this.aggregators[col];
+			for(int window=0; window < windows; window++)
+			{
+				int from = Math.min(boundaries[window], length);
+				int to = Math.min(boundaries[window + 1], length);
+				int count = 0;
+				double sum = 0d;
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for(int row=from; row < to; row++)
+				{
+					if(present[row])
+					{
+						double value = column[row];
+						count++;
+						sum += value;
+						if(value < min) min = value;
+						if(value > max) max = value;
+					}
+				}
+				if(count == 0)
+				{
+					continue;
+				}
+				switch(aggregator) {
+					case AVERAGE:
+						aggregatedData[window][col] = sum / count;
+						break;
+					case SUM:
+						aggregatedData[window][col] = sum;
+						break;
+					case MINIMUM:
+						aggregatedData[window][col] = min;
+						break;
+					default:
+						aggregatedData[window][col] = max;
+				}
+			}
+		}
+		return aggregatedData;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.amalgamation;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Opaque cursor for incremental amalgamation. It holds the settled horizon of the previous 
+ * response: the data before the horizon are not expected to change, so the next request 
+ * only needs the data from the horizon and onwards.
+ * 
+ * The cursor is bound to the location, parameters and interval of the request it was 
+ * issued for, but not to the period, so that it stays valid as the season moves on.
+ */
+public class AmalgamationCursor {
+	
+	private static final String VERSION = "1";
+	
+	private final Instant horizon;
+	private final String requestHash;
+	
+	/**
+	 * @param horizon the settled horizon
+	 * @param longitude
+	 * @param latitude
+	 * @param parametersStr Comma separated list of parameters
+	 * @param interval
+	 */
+	public AmalgamationCursor(Instant horizon, Double longitude, Double latitude, String parametersStr, Integer interval)
+	{
+		this(horizon, AmalgamationCursor.getRequestHash(longitude, latitude, parametersStr, interval));
+	}
+	
+	private AmalgamationCursor(Instant horizon, String requestHash)
+	{
+		this.horizon = horizon;
+		this.requestHash = requestHash;
+	}
+	
+	/**
+	 * @param cursor the cursor returned by a previous request
+	 * @param longitude
+	 * @param latitude
+	 * @param parametersStr
+	 * @param interval
+	 * @return the decoded cursor
+	 * @throws IllegalArgumentException if the cursor is malformed, or was issued for another location, parameters or interval
+	 */
+	public static AmalgamationCursor decode(String cursor, Double longitude, Double latitude, String parametersStr, Integer interval)
+	{
+		String[] parts;
+		try
+		{
+			parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+		}
+		catch(IllegalArgumentException ex)
+		{
+			throw new IllegalArgumentException("Malformed cursor: " + cursor);
+		}
+		if(parts.length != 3 || ! parts[0].equals(VERSION))
+		{
+			throw new IllegalArgumentException("Malformed cursor: " + cursor);
+		}
+		if(! parts[2].equals(AmalgamationCursor.getRequestHash(longitude, latitude, parametersStr, interval)))
+		{
+			throw new IllegalArgumentException("The cursor was issued for another location, set of parameters or interval");
+		}
+		try
+		{
+			return new AmalgamationCursor(Instant.ofEpochSecond(Long.parseLong(parts[1])), parts[2]);
+		}
+		catch(NumberFormatException ex)
+		{
+			throw new IllegalArgumentException("Malformed cursor: " + cursor);
+		}
+	}
+	
+	/**
+	 * @return the cursor as an URL safe string
+	 */
+	public String encode()
+	{
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(
+				(VERSION + "|" + this.horizon.getEpochSecond() + "|" + this.requestHash).getBytes(StandardCharsets.UTF_8)
+		);
+	}
+	
+	public Instant getHorizon() {
+		return horizon;
+	}
+	
+	private static String getRequestHash(Double longitude, Double latitude, String parametersStr, Integer interval)
+	{
+		String parameters = parametersStr == null ? "" : Arrays.stream(parametersStr.split(","))
+				.map(String::trim)
+				.collect(Collectors.toCollection(TreeSet::new))
+				.stream().collect(Collectors.joining(","));
+		return Integer.toHexString(String.format(Locale.ROOT, "%.3f,%.3f|%s|%s", longitude, latitude, parameters, interval).hashCode());
+	}
+}
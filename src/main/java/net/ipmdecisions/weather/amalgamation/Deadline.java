@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+package net.ipmdecisions.weather.amalgamation;
+
+/**
+ * The time budget of one request. The remaining time limits the waiting for the 
+ * weather data sources, and the timeouts of the requests to them.
+ */
+public class Deadline {
+
+	private final long maxLatencyMillis;
+	private final long deadlineNanos;
+
+	/**
+	 * @param maxLatencyMillis The time from now until the deadline
+	 */
+	public Deadline(long maxLatencyMillis)
+	{
+		this.maxLatencyMillis = maxLatencyMillis;
+		this.deadlineNanos = System.nanoTime() + maxLatencyMillis * 1000000;
+	}
+
+	/**
+	 * @return a new deadline with the same time budget, counted from now. E.g. for each 
+	 * segment of a streamed amalgamation
+	 */
+	public Deadline renew()
+	{
+		return new Deadline(this.maxLatencyMillis);
+	}
+
+	/**
+	 * @return the time left until the deadline, 0 if it has passed
+	 */
+	public long getRemainingMillis()
+	{
+		return Math.max(0, (this.deadlineNanos - System.nanoTime()) / 1000000);
+	}
+
+	public boolean isExpired()
+	{
+		return this.deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * @param timeoutMillis The ordinary timeout
+	 * @return the ordinary timeout, or the time left if that is shorter. At least 1, since 0 means no timeout for sockets
+	 */
+	public int getTimeoutMillis(long timeoutMillis)
+	{
+		return (int) Math.max(1, Math.min(timeoutMillis, this.getRemainingMillis()));
+	}
+}
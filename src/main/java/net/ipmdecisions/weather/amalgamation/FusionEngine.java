@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+package net.ipmdecisions.weather.amalgamation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ipmdecisions.weather.entity.AmalgamationType;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.QCType;
+import net.ipmdecisions.weather.entity.WeatherData;
+
+/**
+ * Fuses a prioritized list of weather data sets into one data set.
+ * 
+ * The final parameter set and the column mapping between the output and each
+ * source are computed once up front. The output matrix is then allocated once
+ * per location, and the holes are filled column by column using the precomputed
+ * lookup tables. Data from the first source in the list are kept, any missing
+ * data are added from the other sources, in order.
+ * 
+ * All sources must have the same interval as the requested output interval.
+ * Locations are matched by their position in each source's list of location
+ * weather data.
+ */
+public class FusionEngine {
+
+	private final Map<Integer, List<Integer>> fallbackParams;
+
+	/**
+	 * @param fallbackParams Interchangeable parameters (e.g. instantaneous and average temperatures).
+	 * A hole in a column may be filled with a value of the parameter itself, or of one of its fallbacks
+	 */
+	public FusionEngine(Map<Integer, List<Integer>> fallbackParams)
+	{
+		this.fallbackParams = fallbackParams != null ? fallbackParams : Map.of();
+	}
+
+	/**
+	 * 
+	 * @param sources weather data in priority order. Sources without weather parameters are ignored
+	 * @param timeStart
+	 * @param timeEnd
+	 * @param interval must equal the interval of each of the sources
+	 * @return the fusioned weather data
+	 */
+	public WeatherData fuse(List<WeatherData> sources, Instant timeStart, Instant timeEnd, Integer interval)
+	{
+		WeatherData fusionedWD = new WeatherData();
+		fusionedWD.setTimeStart(timeStart);
+		fusionedWD.setTimeEnd(timeEnd);
+		fusionedWD.setInterval(interval);
+
+		List<WeatherData> usableSources = new ArrayList<>();
+		for(WeatherData source:sources)
+		{
+			if(source.getWeatherParameters() != null && source.getLocationWeatherData() != null && ! source.getLocationWeatherData().isEmpty())
+			{
+				usableSources.add(source);
+			}
+		}
+		if(usableSources.isEmpty())
+		{
+			return fusionedWD;
+		}
+		int sourceCount = usableSources.size();
+
+		// The final parameter set, in order of appearance. We also register
+		// which source first provided the parameter
+		Map<Integer, Integer> outputColumns = new LinkedHashMap<>();
+		List<Integer> introducedBy = new ArrayList<>();
+		List<Map<Integer, Integer>> sourceColumns = new ArrayList<>(sourceCount);
+		int locationCount = 0;
+		for(int s = 0; s < sourceCount; s++)
+		{
+			WeatherData source = usableSources.get(s);
+			Integer[] sourceParams = source.getWeatherParameters();
+			Map<Integer, Integer> columnsForSource = new HashMap<>(sourceParams.length * 2);
+			for(int col = 0; col < sourceParams.length; col++)
+			{
+				columnsForSource.putIfAbsent(sourceParams[col], col);
+				if(! outputColumns.containsKey(sourceParams[col]))
+				{
+					outputColumns.put(sourceParams[col], outputColumns.size());
+					introducedBy.add(s);
+				}
+			}
+			sourceColumns.add(columnsForSource);
+			locationCount = Math.max(locationCount, source.getLocationWeatherData().size());
+		}
+		Integer[] params = outputColumns.keySet().toArray(Integer[]::new);
+		int width = params.length;
+
+		// Lookup table: For each output column and each source, which source
+		// columns to look for values in, in order of preference.
+		// The source that introduced the parameter only contributes the
+		// parameter itself, the following sources may also contribute fallbacks.
+		int[][][] lookup = new int[width][sourceCount][];
+		for(int col = 0; col < width; col++)
+		{
+			List<Integer> interchangeableParams = new ArrayList<>();
+			interchangeableParams.add(params[col]);
+			interchangeableParams.addAll(this.fallbackParams.getOrDefault(params[col], List.of()));
+			for(int s = 0; s < sourceCount; s++)
+			{
+				if(s < introducedBy.get(col))
+				{
+					lookup[col][s] = new int[0];
+					continue;
+				}
+				Map<Integer, Integer> columnsForSource = sourceColumns.get(s);
+				List<Integer> candidates = s == introducedBy.get(col) ? List.of(params[col]) : interchangeableParams;
+				int[] candidateColumns = new int[candidates.size()];
+				int found = 0;
+				for(Integer candidate:candidates)
+				{
+					Integer sourceCol = columnsForSource.get(candidate);
+					if(sourceCol != null)
+					{
+						candidateColumns[found++] = sourceCol;
+					}
+				}
+				lookup[col][s] = Arrays.copyOf(candidateColumns, found);
+			}
+		}
+
+		// Row offset of each source relative to the requested period
+		long[] rowOffsets = new long[sourceCount];
+		for(int s = 0; s < sourceCount; s++)
+		{
+			rowOffsets[s] = (usableSources.get(s).getTimeStart().getEpochSecond() - timeStart.getEpochSecond()) / interval;
+		}
+
+		int length = (int) (1 + (timeEnd.getEpochSecond() - timeStart.getEpochSecond()) / interval);
+		for(int loc = 0; loc < locationCount; loc++)
+		{
+			Double[][] dataMatrix = new Double[length][width];
+			LocationWeatherData[] sourceLWDs = new LocationWeatherData[sourceCount];
+			LocationWeatherData firstLWD = null;
+			for(int s = 0; s < sourceCount; s++)
+			{
+				List<LocationWeatherData> lwds = usableSources.get(s).getLocationWeatherData();
+				sourceLWDs[s] = loc < lwds.size() ? lwds.get(loc) : null;
+				if(firstLWD == null)
+				{
+					firstLWD = sourceLWDs[s];
+				}
+			}
+
+			Integer[] qc = new Integer[width];
+			Integer[] amalgamation = new Integer[width];
+			for(int col = 0; col < width; col++)
+			{
+				int introducingSource = introducedBy.get(col);
+				LocationWeatherData introducingLWD = sourceLWDs[introducingSource];
+				Integer introducingCol = sourceColumns.get(introducingSource).get(params[col]);
+				qc[col] = introducingLWD != null && introducingCol < introducingLWD.getQC().length ? introducingLWD.getQC()[introducingCol] : QCType.NO_QC;
+				amalgamation[col] = introducingLWD != null && introducingCol < introducingLWD.getAmalgamation().length ? introducingLWD.getAmalgamation()[introducingCol] : AmalgamationType.NONE;
+
+				int holes = length;
+				for(int s = introducingSource; s < sourceCount && holes > 0; s++)
+				{
+					int[] candidateColumns = lookup[col][s];
+					if(candidateColumns.length == 0 || sourceLWDs[s] == null)
+					{
+						continue;
+					}
+					Double[][] sourceData = sourceLWDs[s].getData();
+					// Overlapping rows, in the coordinates of the output matrix
+					int firstRow = (int) Math.max(0, rowOffsets[s]);
+					int lastRow = (int) Math.min(length, rowOffsets[s] + sourceData.length);
+					for(int row = firstRow; row < lastRow; row++)
+					{
+						if(dataMatrix[row][col] != null)
+						{
+							continue;
+						}
+						Double[] sourceRow = sourceData[(int) (row - rowOffsets[s])];
+						for(int c = 0; c < candidateColumns.length; c++)
+						{
+							Double value = sourceRow[candidateColumns[c]];
+							if(value != null)
+							{
+								dataMatrix[row][col] = value;
+								holes--;
+								break;
+							}
+						}
+					}
+				}
+			}
+
+			LocationWeatherData fusionedLWD = new LocationWeatherData(
+					firstLWD.getLongitude(), firstLWD.getLatitude(), firstLWD.getAltitude(),
+					0, 0
+			);
+			fusionedLWD.setData(dataMatrix);
+			fusionedLWD.setQC(qc);
+			fusionedLWD.setAmalgamation(amalgamation);
+			fusionedWD.addLocationWeatherData(fusionedLWD);
+		}
+		fusionedWD.setWeatherParameters(params);
+		return fusionedWD;
+	}
+}
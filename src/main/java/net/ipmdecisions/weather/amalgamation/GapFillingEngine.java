@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.amalgamation;
+
+import java.util.Set;
+
+import net.ipmdecisions.weather.entity.AmalgamationType;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.entity.WeatherParameter;
+
+/**
+ * Fills gaps (missing values) in weather data. The strategy for each parameter is 
+ * decided from its metadata:
+ * <ul>
+ * <li>Temperatures (1000-1999, aggregated as average, minimum or maximum) are interpolated linearly</li>
+ * <li>Precipitation (2000-2999, aggregated as sum) is set to zero</li>
+ * <li>Other parameters are left as they are</li>
+ * </ul>
+ * Only gaps with values on both sides are filled, and only if the gap is not longer 
+ * than the maximum gap length for the strategy. Each column is filled in one pass. 
+ * Gaps could also be filled from the next data source in priority order, but the 
+ * fusion (see {@link FusionEngine}) has already done that.
+ * 
+ * Filled columns are marked as interpolated in the amalgamation property.
+ */
+public class GapFillingEngine {
+
+	public static final int NONE = 0;
+	public static final int LINEAR = 1;
+	public static final int ZERO = 2;
+
+	/** Default maximum length of gaps to interpolate linearly */
+	public static final long DEFAULT_MAX_LINEAR_GAP_SECONDS = 3 * 3600;
+	/** Default maximum length of gaps to fill with zero */
+	public static final long DEFAULT_MAX_ZERO_GAP_SECONDS = 3600;
+
+	private final Integer[] weatherParameters;
+	private final int[] strategies;
+	private final long maxLinearGapSeconds;
+	private final long maxZeroGapSeconds;
+
+	/**
+	 * @param weatherParameters The parameters of the columns
+	 * @param aggregationTypes The aggregation type (WeatherParameter.AGGREGATION_TYPE_*) of each column
+	 * @param maxLinearGapSeconds Maximum length of gaps to interpolate linearly. At least one step is always filled
+	 * @param maxZeroGapSeconds Maximum length of gaps to fill with zero. At least one step is always filled
+	 */
+	public GapFillingEngine(Integer[] weatherParameters, String[] aggregationTypes, long maxLinearGapSeconds, long maxZeroGapSeconds)
+	{
+		this.weatherParameters = weatherParameters;
+		this.strategies = new int[weatherParameters.length];
+		for(int col=0; col < weatherParameters.length; col++)
+		{
+			this.strategies[col] = GapFillingEngine.getStrategy(weatherParameters[col], aggregationTypes[col]);
+		}
+		this.maxLinearGapSeconds = maxLinearGapSeconds;
+		this.maxZeroGapSeconds = maxZeroGapSeconds;
+	}
+
+	/**
+	 * @param weatherParameter
+	 * @param aggregationType
+	 * @return the strategy for filling gaps for the parameter
+	 */
+	public static int getStrategy(Integer weatherParameter, String aggregationType)
+	{
+		if(weatherParameter == null || aggregationType == null)
+		{
+			return NONE;
+		}
+		if(weatherParameter >= 1000 && weatherParameter < 2000 && ! aggregationType.equals(WeatherParameter.AGGREGATION_TYPE_SUM))
+		{
+			return LINEAR;
+		}
+		if(weatherParameter >= 2000 && weatherParameter < 3000 && aggregationType.equals(WeatherParameter.AGGREGATION_TYPE_SUM))
+		{
+			return ZERO;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Fills the gaps in place
+	 * @param weatherData Its columns must match the parameters given in the constructor
+	 * @param parametersToFill Only these parameters are filled, e.g. the ones that failed the QC
+	 * @return the weather data, with gaps filled
+	 */
+	public WeatherData fill(WeatherData weatherData, Set<Integer> parametersToFill)
+	{
+		if(weatherData.getLocationWeatherData() == null || weatherData.getInterval() == null)
+		{
+			return weatherData;
+		}
+		int interval = weatherData.getInterval();
+		for(int col=0; col < this.weatherParameters.length; col++)
+		{
+			if(this.strategies[col] == NONE || ! parametersToFill.contains(this.weatherParameters[col]))
+			{
+				continue;
+			}
+			long maxGapSeconds = this.strategies[col] == LINEAR ? this.maxLinearGapSeconds : this.maxZeroGapSeconds;
+			int maxGapSteps = (int) Math.max(1, maxGapSeconds / interval);
+			for(LocationWeatherData lwd:weatherData.getLocationWeatherData())
+			{
+				if(col < lwd.getWidth() && this.fill(lwd.getData(), col, this.strategies[col], maxGapSteps))
+				{
+					// "|" is the bitwise OR operator
+					Integer[] amalgamation = lwd.getAmalgamation();
+					amalgamation[col] = amalgamation[col] | AmalgamationType.INTERPOLATED;
+				}
+			}
+		}
+		return weatherData;
+	}
+
+	/**
+	 * Fills the gaps in one column in one pass
+	 * @return true if any values were filled
+	 */
+	private boolean fill(Double[][] data, int col, int strategy, int maxGapSteps)
+	{
+		boolean filled = false;
+		// The last row with a value
+		int lastRow = -1;
+		for(int row=0; row < data.length; row++)
+		{
+			Double value = data[row][col];
+			if(value == null)
+			{
+				continue;
+			}
+			int gapSteps = row - lastRow - 1;
+			if(lastRow >= 0 && gapSteps > 0 && gapSteps <= maxGapSteps)
+			{
+				double before = data[lastRow][col];
+				double step = (value - before) / (row - lastRow);
+				for(int gapRow = lastRow + 1; gapRow < row; gapRow++)
+				{
+					data[gapRow][col] = strategy == LINEAR ? before + (gapRow - lastRow) * step : 0.0;
+				}
+				filled = true;
+			}
+			lastRow = row;
+		}
+		return filled;
+	}
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+package net.ipmdecisions.weather.amalgamation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+import net.ipmdecisions.weather.util.SystemUtil;
+
+/**
+ * Picks the requests to the weather data sources that together cover the requested 
+ * parameters for the requested period at the lowest cost (weighted set cover).
+ * 
+ * The period is split where the sources' temporal coverage starts or ends (e.g. where
+ * the observations end and the forecasts start). A source covers a parameter in a part
+ * of the period if the source covers that part, and has the parameter, a parameter that
+ * can replace it, or a parameter that it can be calculated from.
+ * 
+ * The cost of a source is its expected latency, multiplied by its rank in the priority 
+ * order (1 for the first source, 2 for the second and so on), so that the priority weighs 
+ * heavily. The plan is made greedily: The source with the most newly covered (parameter,
+ * part of period) pairs per cost is picked until nothing more can be covered. Some requests, 
+ * like the one to the user's private weather station, are always planned.
+ * 
+ * The plan only considers what the sources claim to have. A weather station may still have
+ * outages, so the fetched data should be checked, see {@link #getPoorlyCoveredParameters(List, List, List, Instant, Instant, Integer, double)}
+ */
+public class QueryPlanner {
+
+	/** The latency (ms) assumed for sources that have not been requested recently */
+	public static final long DEFAULT_LATENCY = 1000;
+
+	/** 
+	 * The lowest share (0-1) of the part of the requested period that the planned sources claim to cover 
+	 * that they must have values for, per parameter. Below this, the rest of the sources are fetched as well
+	 */
+	public static final double MIN_COVERAGE = SystemUtil.getDoubleProperty("org.madiphs.weatherservice.AMALGAMATION_MIN_COVERAGE", 0.95);
+
+	private final Map<Integer, List<Integer>> fallbackParams;
+	private final Map<Integer, List<Integer>> calculationParams;
+
+	/**
+	 * @param fallbackParams Interchangeable parameters (e.g. instantaneous and average temperatures)
+	 * @param calculationParams Parameters that can be used to calculate the key parameter
+	 */
+	public QueryPlanner(Map<Integer, List<Integer>> fallbackParams, Map<Integer, List<Integer>> calculationParams)
+	{
+		this.fallbackParams = fallbackParams;
+		this.calculationParams = calculationParams;
+	}
+
+	/**
+	 * @param sourceRequests The candidate requests, in priority order
+	 * @param requestedParameters
+	 * @param timeStart
+	 * @param timeEnd
+	 * @param latency The expected latency (ms) of the weather data source with the given id, or -1 if not known
+	 * @param required The requests that must be planned regardless of cost
+	 * @return the planned requests, in priority order
+	 */
+	public List<SourceRequest> plan(
+			List<SourceRequest> sourceRequests,
+			List<Integer> requestedParameters,
+			Instant timeStart,
+			Instant timeEnd,
+			ToLongFunction<String> latency,
+			Predicate<SourceRequest> required
+	)
+	{
+		// Split the period where the coverage of the sources changes
+		int candidates = sourceRequests.size();
+		Instant[] temporalStarts = new Instant[candidates];
+		Instant[] temporalEnds = new Instant[candidates];
+		TreeSet<Instant> boundaries = new TreeSet<>(List.of(timeStart, timeEnd));
+		for(int i=0; i < candidates; i++)
+		{
+			WeatherDataSource weatherDataSource = sourceRequests.get(i).getWeatherDataSource();
+			temporalStarts[i] = weatherDataSource.getTemporalStart();
+			temporalEnds[i] = weatherDataSource.getTemporalEnd();
+			for(Instant boundary:List.of(temporalStarts[i], temporalEnds[i]))
+			{
+				if(boundary.isAfter(timeStart) && boundary.isBefore(timeEnd))
+				{
+					boundaries.add(boundary);
+				}
+			}
+		}
+		List<Instant> parts = new ArrayList<>(boundaries);
+		int numberOfParts = Math.max(1, parts.size() - 1);
+
+		// What each source covers: (parameter, part of period) pairs, numbered
+		List<Set<Integer>> coverage = new ArrayList<>();
+		for(int i=0; i < candidates; i++)
+		{
+			Set<Integer> sourceParameters = this.getParameters(sourceRequests.get(i));
+			Set<Integer> covered = new HashSet<>();
+			for(int p=0; p < requestedParameters.size(); p++)
+			{
+				if(! this.canProvide(sourceParameters, requestedParameters.get(p)))
+				{
+					continue;
+				}
+				for(int part=0; part < numberOfParts; part++)
+				{
+					Instant partStart = parts.get(part);
+					Instant partEnd = parts.size() > 1 ? parts.get(part + 1) : partStart;
+					if(! temporalStarts[i].isAfter(partStart) && ! temporalEnds[i].isBefore(partEnd))
+					{
+						covered.add(p * numberOfParts + part);
+					}
+				}
+			}
+			coverage.add(covered);
+		}
+
+		// Greedy weighted set cover
+		boolean[] planned = new boolean[candidates];
+		Set<Integer> uncovered = coverage.stream().flatMap(Set::stream).collect(Collectors.toCollection(HashSet::new));
+		for(int i=0; i < candidates; i++)
+		{
+			if(required.test(sourceRequests.get(i)))
+			{
+				planned[i] = true;
+				uncovered.removeAll(coverage.get(i));
+			}
+		}
+		while(! uncovered.isEmpty())
+		{
+			int best = -1;
+			double bestScore = 0.0;
+			for(int i=0; i < candidates; i++)
+			{
+				if(planned[i])
+				{
+					continue;
+				}
+				long newlyCovered = coverage.get(i).stream().filter(uncovered::contains).count();
+				long expectedLatency = latency.applyAsLong(sourceRequests.get(i).getWeatherDataSource().getId());
+				double cost = (double) Math.max(1, expectedLatency >= 0 ? expectedLatency : DEFAULT_LATENCY) * (i + 1);
+				double score = newlyCovered / cost;
+				// Ties go to the source with the highest priority
+				if(newlyCovered > 0 && score > bestScore)
+				{
+					best = i;
+					bestScore = score;
+				}
+			}
+			if(best < 0)
+			{
+				break;
+			}
+			planned[best] = true;
+			uncovered.removeAll(coverage.get(best));
+		}
+
+		List<SourceRequest> plan = new ArrayList<>();
+		for(int i=0; i < candidates; i++)
+		{
+			if(planned[i])
+			{
+				plan.add(sourceRequests.get(i));
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * @param weatherDataFromSources The data that have been fetched
+	 * @param requestedParameters
+	 * @return the requested parameters that none of the data can provide
+	 */
+	public Set<Integer> getUncoveredParameters(List<WeatherData> weatherDataFromSources, List<Integer> requestedParameters)
+	{
+		Set<Integer> returnedParameters = new HashSet<>();
+		for(WeatherData weatherData:weatherDataFromSources)
+		{
+			if(weatherData.getWeatherParameters() != null)
+			{
+				returnedParameters.addAll(Arrays.asList(weatherData.getWeatherParameters()));
+			}
+		}
+		return requestedParameters.stream()
+				.filter(parameter -> ! this.canProvide(returnedParameters, parameter))
+				.collect(Collectors.toSet());
+	}
+
+	/**
+	 * @param weatherDataFromSources The data that have been fetched
+	 * @param sourceRequests The requests that the data were fetched with. Only the part of the period that 
+	 * they claim to cover is checked, since no source can fill the rest (e.g. past the forecast horizon)
+	 * @param requestedParameters
+	 * @param timeStart
+	 * @param timeEnd
+	 * @param interval The requested interval (seconds)
+	 * @param minCoverage The lowest acceptable share (0-1) of the claimed time slots with values
+	 * @return the requested parameters that the data together have values for in less than the
+	 * given share of the time slots that the sources claim, e.g. due to an outage at the weather station
+	 */
+	public Set<Integer> getPoorlyCoveredParameters(
+			List<WeatherData> weatherDataFromSources, 
+			List<SourceRequest> sourceRequests,
+			List<Integer> requestedParameters, 
+			Instant timeStart, 
+			Instant timeEnd, 
+			Integer interval, 
+			double minCoverage
+	)
+	{
+		Set<Integer> poorlyCovered = new HashSet<>();
+		if(minCoverage <= 0 || interval == null || interval <= 0 || timeEnd.isBefore(timeStart))
+		{
+			return poorlyCovered;
+		}
+		// Both ends of the period are included
+		int slots = (int) ((timeEnd.getEpochSecond() - timeStart.getEpochSecond()) / interval) + 1;
+		for(Integer parameter:requestedParameters)
+		{
+			BitSet claimed = new BitSet(slots);
+			for(SourceRequest sourceRequest:sourceRequests)
+			{
+				if(this.canProvide(this.getParameters(sourceRequest), parameter))
+				{
+					this.addClaim(claimed, slots, sourceRequest.getWeatherDataSource(), timeStart, interval);
+				}
+			}
+			BitSet covered = new BitSet(slots);
+			for(WeatherData weatherData:weatherDataFromSources)
+			{
+				this.addCoverage(covered, slots, weatherData, parameter, timeStart, interval);
+			}
+			covered.and(claimed);
+			if(covered.cardinality() < minCoverage * claimed.cardinality())
+			{
+				poorlyCovered.add(parameter);
+			}
+		}
+		return poorlyCovered;
+	}
+
+	/**
+	 * Marks the time slots of the requested period that are within the temporal coverage of the source
+	 */
+	private void addClaim(BitSet claimed, int slots, WeatherDataSource weatherDataSource, Instant timeStart, int interval)
+	{
+		long fromTime = weatherDataSource.getTemporalStart().getEpochSecond() - timeStart.getEpochSecond();
+		long toTime = weatherDataSource.getTemporalEnd().getEpochSecond() - timeStart.getEpochSecond();
+		int fromSlot = (int) Math.max(0, Math.floorDiv(fromTime + interval - 1, interval));
+		int toSlot = (int) Math.min(slots, Math.floorDiv(toTime, interval) + 1);
+		if(fromSlot < toSlot)
+		{
+			claimed.set(fromSlot, toSlot);
+		}
+	}
+
+	/**
+	 * Marks the time slots of the requested period where the data have a value for the parameter, 
+	 * a parameter that can replace it, or a parameter that it can be calculated from. A value 
+	 * covers the slots until the next value of the data, so e.g. daily values cover hourly slots
+	 */
+	private void addCoverage(BitSet covered, int slots, WeatherData weatherData, Integer parameter, Instant timeStart, int interval)
+	{
+		if(weatherData.getWeatherParameters() == null || weatherData.getTimeStart() == null || weatherData.getLocationWeatherData() == null)
+		{
+			return;
+		}
+		List<Integer> parameters = new ArrayList<>();
+		parameters.add(parameter);
+		parameters.addAll(this.fallbackParams.getOrDefault(parameter, List.of()));
+		parameters.addAll(this.calculationParams.getOrDefault(parameter, List.of()));
+		List<Integer> columns = new ArrayList<>();
+		for(int i=0; i < weatherData.getWeatherParameters().length; i++)
+		{
+			if(parameters.contains(weatherData.getWeatherParameters()[i]))
+			{
+				columns.add(i);
+			}
+		}
+		if(columns.isEmpty())
+		{
+			return;
+		}
+		long dataInterval = weatherData.getInterval() != null && weatherData.getInterval() > 0 ? weatherData.getInterval() : interval;
+		long offset = weatherData.getTimeStart().getEpochSecond() - timeStart.getEpochSecond();
+		for(LocationWeatherData lwd:weatherData.getLocationWeatherData())
+		{
+			Double[][] data = lwd.getData();
+			if(data == null)
+			{
+				continue;
+			}
+			for(int row=0; row < data.length; row++)
+			{
+				if(! this.hasValue(data[row], columns))
+				{
+					continue;
+				}
+				long time = offset + row * dataInterval;
+				int fromSlot = (int) Math.max(0, Math.floorDiv(time + interval - 1, interval));
+				int toSlot = (int) Math.min(slots, Math.floorDiv(time + dataInterval + interval - 1, interval));
+				if(fromSlot < toSlot)
+				{
+					covered.set(fromSlot, toSlot);
+				}
+			}
+		}
+	}
+
+	private boolean hasValue(Double[] row, List<Integer> columns)
+	{
+		for(Integer column:columns)
+		{
+			if(row != null && column < row.length && row[column] != null)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the parameter, a parameter that can replace it or a parameter that it 
+	 * can be calculated from is among the available parameters
+	 */
+	private boolean canProvide(Set<Integer> availableParameters, Integer parameter)
+	{
+		return availableParameters.contains(parameter)
+				|| this.fallbackParams.getOrDefault(parameter, List.of()).stream().anyMatch(availableParameters::contains)
+				|| this.calculationParams.getOrDefault(parameter, List.of()).stream().anyMatch(availableParameters::contains);
+	}
+
+	/**
+	 * @return the parameters of the station for station requests, otherwise the common parameters of the source
+	 */
+	private Set<Integer> getParameters(SourceRequest sourceRequest)
+	{
+		if(sourceRequest.getParameters() != null)
+		{
+			return sourceRequest.getParameters();
+		}
+		return Arrays.stream(sourceRequest.getWeatherDataSource().getParameters().getCommon()).boxed().collect(Collectors.toSet());
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.amalgamation;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.WeatherDataUtil;
+
+/**
+ * Groups the requests to the weather data sources for many locations (e.g. in a batch),
+ * so that locations resolving to the same request (same data source, station or rounded 
+ * coordinates, interval, parameters and period) share one request. The requests run 
+ * asynchronously on the given executor.
+ * 
+ * Each caller gets its own copy of the data, since the amalgamation alters the data in place.
+ */
+public class SharedSourceRequests {
+	
+	private final Executor executor;
+	private final Map<String, CompletableFuture<WeatherData>> requests = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param executor runs the requests
+	 */
+	public SharedSourceRequests(Executor executor)
+	{
+		this.executor = executor;
+	}
+	
+	/**
+	 * Starts the request, unless an identical request has already been started
+	 * @param sourceRequest
+	 * @param timeStart
+	 * @param timeEnd
+	 * @param fetcher Performs the request. Not used if the request is shared
+	 * @return the data from the source. Completes exceptionally (wrapped in a {@link CompletionException})
+	 * if the request failed
+	 */
+	public CompletableFuture<WeatherData> get(SourceRequest sourceRequest, Instant timeStart, Instant timeEnd, WeatherDataFetcher fetcher)
+	{
+		// Requests for private weather stations are never shared
+		if(sourceRequest.hasCredentials())
+		{
+			return this.start(timeStart, timeEnd, fetcher);
+		}
+		CompletableFuture<WeatherData> shared = this.requests.computeIfAbsent(
+				sourceRequest.getDataKey() + "|" + timeStart + "|" + timeEnd,
+				key -> this.start(timeStart, timeEnd, fetcher)
+		);
+		WeatherDataUtil wdUtil = new WeatherDataUtil();
+		return shared.thenApply(wdUtil::getCopy);
+	}
+	
+	private CompletableFuture<WeatherData> start(Instant timeStart, Instant timeEnd, WeatherDataFetcher fetcher)
+	{
+		return CompletableFuture.supplyAsync(() -> {
+			try
+			{
+				return fetcher.fetch(timeStart, timeEnd);
+			}
+			catch(Exception ex)
+			{
+				throw new CompletionException(ex);
+			}
+		}, this.executor);
+	}
+	
+	/**
+	 * @return the number of distinct shared requests started
+	 */
+	public int getNumberOfRequests()
+	{
+		return this.requests.size();
+	}
+}
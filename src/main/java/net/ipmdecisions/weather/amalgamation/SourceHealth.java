@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.amalgamation;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rolling health of one weather data source, with a circuit breaker.
+ * 
+ * The outcome (success, empty response or error) and the latency of the most recent 
+ * requests are kept in a fixed size window. Errors and slow requests count as failures. 
+ * When the failure rate passes the threshold, the circuit opens, and no requests are 
+ * made to the source for a while. Then the circuit is half open: One probe request is 
+ * let through. If it succeeds, the circuit closes, otherwise it opens again.
+ * 
+ * The health score (0-1) is reduced by errors, empty responses and average latency 
+ * above the slow request limit. The typical latency is used to skip sources that 
+ * can't answer within the time budget of a request.
+ * 
+ * All times are epoch milliseconds, given by the caller.
+ */
+public class SourceHealth {
+
+	public enum State {CLOSED, OPEN, HALF_OPEN}
+
+	public static final int SUCCESS = 0;
+	public static final int EMPTY = 1;
+	public static final int ERROR = 2;
+
+	private final int minimumCalls;
+	private final double failureThreshold;
+	private final long slowCallMillis;
+	private final long openMillis;
+
+	// The window, as a ring buffer
+	private final int[] outcomes;
+	private final long[] latencies;
+	private int next = 0;
+	private int count = 0;
+
+	private State state = State.CLOSED;
+	private long openUntil = 0;
+	private long probeStarted = -1;
+
+	/**
+	 * @param windowSize The number of recent requests to keep
+	 * @param minimumCalls The circuit is not opened until the window has this many requests
+	 * @param failureThreshold The failure rate (0-1) that opens the circuit
+	 * @param slowCallMillis Requests slower than this count as failures
+	 * @param openMillis How long the circuit stays open before a probe is let through
+	 */
+	public SourceHealth(int windowSize, int minimumCalls, double failureThreshold, long slowCallMillis, long openMillis)
+	{
+		this.outcomes = new int[Math.max(1, windowSize)];
+		this.latencies = new long[this.outcomes.length];
+		this.minimumCalls = minimumCalls;
+		this.failureThreshold = failureThreshold;
+		this.slowCallMillis = slowCallMillis;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * Call this before making a request to the source. If the circuit is half open, 
+	 * only one caller (the probe) is allowed at a time
+	 * @param now
+	 * @return true if the request may be made
+	 */
+	public synchronized boolean allowRequest(long now)
+	{
+		switch(this.getState(now))
+		{
+			case CLOSED:
+				return true;
+			case HALF_OPEN:
+				// A probe that never reported back is given up after the open time
+				if(this.probeStarted >= 0 && now - this.probeStarted < this.openMillis)
+				{
+					return false;
+				}
+				this.state = State.HALF_OPEN;
+				this.probeStarted = now;
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Records the outcome of a request to the source
+	 * @param outcome SUCCESS, EMPTY or ERROR
+	 * @param latencyMillis
+	 * @param now
+	 */
+	public synchronized void record(int outcome, long latencyMillis, long now)
+	{
+		boolean failure = this.isFailure(outcome, latencyMillis);
+		if(this.state == State.HALF_OPEN && this.probeStarted >= 0)
+		{
+			this.probeStarted = -1;
+			if(failure)
+			{
+				this.open(now);
+			}
+			else
+			{
+				// Start afresh, so that old failures don't open the circuit again at once
+				this.state = State.CLOSED;
+				this.count = 0;
+				this.next = 0;
+			}
+		}
+		this.outcomes[this.next] = outcome;
+		this.latencies[this.next] = latencyMillis;
+		this.next = (this.next + 1) % this.outcomes.length;
+		this.count = Math.min(this.count + 1, this.outcomes.length);
+
+		if(this.state == State.CLOSED && this.count >= this.minimumCalls && this.getFailureRate() >= this.failureThreshold)
+		{
+			this.open(now);
+		}
+	}
+
+	/**
+	 * @param now
+	 * @return the state of the circuit. An open circuit is half open when the open time has passed
+	 */
+	public synchronized State getState(long now)
+	{
+		if(this.state == State.OPEN && now >= this.openUntil)
+		{
+			return State.HALF_OPEN;
+		}
+		return this.state;
+	}
+
+	/**
+	 * @return the health score, from 0 (useless) to 1 (healthy). 0 if the circuit is open
+	 */
+	public synchronized double getScore(long now)
+	{
+		if(this.getState(now) == State.OPEN)
+		{
+			return 0.0;
+		}
+		if(this.count == 0)
+		{
+			return 1.0;
+		}
+		double averageLatency = this.getAverageLatency();
+		double latencyFactor = averageLatency <= this.slowCallMillis ? 1.0 : this.slowCallMillis / averageLatency;
+		return (1.0 - this.getRate(ERROR)) * (1.0 - this.getRate(EMPTY) / 2.0) * latencyFactor;
+	}
+
+	/**
+	 * @return state, score, number of requests in the window, error rate, empty response rate and average latency
+	 */
+	public synchronized Map<String, Object> getStatus(long now)
+	{
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("state", this.getState(now));
+		status.put("score", this.getScore(now));
+		status.put("requests", this.count);
+		status.put("errorRate", this.getRate(ERROR));
+		status.put("emptyRate", this.getRate(EMPTY));
+		status.put("averageLatencyMillis", Math.round(this.getAverageLatency()));
+		if(this.getState(now) == State.OPEN)
+		{
+			status.put("openUntil", Instant.ofEpochMilli(this.openUntil).toString());
+		}
+		return status;
+	}
+
+	/**
+	 * @return the median latency of the requests in the window that did not fail, or -1 
+	 * if there are too few of them to tell
+	 */
+	public synchronized long getTypicalLatency()
+	{
+		long[] successful = new long[this.count];
+		int n = 0;
+		for(int i=0; i < this.count; i++)
+		{
+			if(this.outcomes[i] != ERROR)
+			{
+				successful[n++] = this.latencies[i];
+			}
+		}
+		if(n == 0 || n < this.minimumCalls)
+		{
+			return -1;
+		}
+		Arrays.sort(successful, 0, n);
+		return successful[n / 2];
+	}
+
+	private void open(long now)
+	{
+		this.state = State.OPEN;
+		this.openUntil = now + this.openMillis;
+		this.probeStarted = -1;
+	}
+
+	private boolean isFailure(int outcome, long latencyMillis)
+	{
+		return outcome == ERROR || latencyMillis > this.slowCallMillis;
+	}
+
+	private double getFailureRate()
+	{
+		int failures = 0;
+		for(int i=0; i < this.count; i++)
+		{
+			failures += this.isFailure(this.outcomes[i], this.latencies[i]) ? 1 : 0;
+		}
+		return (double) failures / this.count;
+	}
+
+	private double getRate(int outcome)
+	{
+		if(this.count == 0)
+		{
+			return 0.0;
+		}
+		int matches = 0;
+		for(int i=0; i < this.count; i++)
+		{
+			matches += this.outcomes[i] == outcome ? 1 : 0;
+		}
+		return (double) matches / this.count;
+	}
+
+	private double getAverageLatency()
+	{
+		if(this.count == 0)
+		{
+			return 0.0;
+		}
+		long sum = 0;
+		for(int i=0; i < this.count; i++)
+		{
+			sum += this.latencies[i];
+		}
+		return (double) sum / this.count;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+package net.ipmdecisions.weather.amalgamation;
+
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+
+/**
+ * What the amalgamation needs to know about the weather data sources for one location, 
+ * set of parameters and interval, before any data are requested: The time zone, the 
+ * candidate sources in priority order, the best available interval per source, and 
+ * for station based sources the closest station and its parameters.
+ * 
+ * The plan does not depend on the period, so it can be reused between requests, see 
+ * {@link net.ipmdecisions.weather.controller.SourcePlanBean}. Immutable.
+ */
+public class SourcePlan {
+
+	/** Station based sources without a station within this distance (meters) from the location are not used */
+	public static final double MAX_STATION_DISTANCE = 3000.0;
+
+	private final ZoneId timeZone;
+	private final List<WeatherDataSource> weatherDataSources;
+	private final Map<String, Integer> intervals = new HashMap<>();
+	private final Map<String, SourceRequest> stationRequests = new HashMap<>();
+
+	/**
+	 * @param longitude
+	 * @param latitude
+	 * @param timeZone The time zone of the location
+	 * @param candidates The sources for the location and parameters, in priority order
+	 * @param interval The requested interval
+	 */
+	public SourcePlan(Double longitude, Double latitude, ZoneId timeZone, List<WeatherDataSource> candidates, Integer interval)
+	{
+		this.timeZone = timeZone;
+		this.weatherDataSources = Collections.unmodifiableList(candidates);
+		for(WeatherDataSource candidate:candidates)
+		{
+			Integer bestAvailableInterval = SourcePlan.getBestAvailableInterval(candidate, interval);
+			this.intervals.put(candidate.getId(), bestAvailableInterval);
+			if(candidate.getAccess_type().equals(WeatherDataSource.ACCESS_TYPE_STATIONS))
+			{
+				String weatherStationId = candidate.getIdOfClosestStation(longitude, latitude);
+				if(SourcePlan.isCloseEnough(candidate, weatherStationId, longitude, latitude))
+				{
+					this.stationRequests.put(candidate.getId(), SourceRequest.forStation(
+							candidate, weatherStationId, timeZone, bestAvailableInterval,
+							SourcePlan.getStationParameters(candidate, weatherStationId), null
+					));
+				}
+			}
+		}
+	}
+
+	public ZoneId getTimeZone()
+	{
+		return this.timeZone;
+	}
+
+	/**
+	 * @return the candidate sources, in priority order. Not filtered by period or health
+	 */
+	public List<WeatherDataSource> getWeatherDataSources()
+	{
+		return this.weatherDataSources;
+	}
+
+	/**
+	 * @param weatherDataSource One of the sources in the plan
+	 * @param longitude The exact location. Used for location based sources
+	 * @param latitude
+	 * @return the request to make to the source, or null if it's station based and no station is close enough
+	 */
+	public SourceRequest getSourceRequest(WeatherDataSource weatherDataSource, Double longitude, Double latitude)
+	{
+		if(weatherDataSource.getAccess_type().equals(WeatherDataSource.ACCESS_TYPE_STATIONS))
+		{
+			return this.stationRequests.get(weatherDataSource.getId());
+		}
+		return SourceRequest.forLocation(weatherDataSource, longitude, latitude, this.timeZone, this.intervals.get(weatherDataSource.getId()));
+	}
+
+	/**
+	 * The data source might not provide the requested interval. If so: Find the least 
+	 * fine-grained one that's still more fine-grained than the requested interval.
+	 */
+	public static Integer getBestAvailableInterval(WeatherDataSource weatherDataSource, Integer interval)
+	{
+		return Arrays.asList(weatherDataSource.getTemporal().getIntervals()).stream()
+				.filter(i -> i <= interval)
+				.max(Integer::compare).get();
+	}
+
+	/**
+	 * @return true if the station is within {@link #MAX_STATION_DISTANCE} from the location, or if the 
+	 * distance can't be calculated
+	 */
+	public static boolean isCloseEnough(WeatherDataSource weatherDataSource, String weatherStationId, Double longitude, Double latitude)
+	{
+		// TODO: Define the tolerance more generally
+		try
+		{
+			return weatherDataSource.getDistanceToStation(weatherStationId, longitude, latitude) <= MAX_STATION_DISTANCE;
+		}
+		catch(NullPointerException ex)
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * @return all the parameters available for the station: The common ones for the source and the additional ones for the station
+	 */
+	public static Set<Integer> getStationParameters(WeatherDataSource weatherDataSource, String weatherStationId)
+	{
+		Set<Integer> wdsParameters = Arrays.stream(weatherDataSource.getParameters().getCommon()).boxed().collect(Collectors.toCollection(HashSet::new));
+		wdsParameters.addAll(weatherDataSource.getAdditionalParametersForStation(weatherStationId));
+		return wdsParameters;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.amalgamation;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+
+/**
+ * A request for weather data from one weather data source, for one weather station
+ * or one location. The period is given separately, so that the same request can be
+ * used for fetching parts of a period (e.g. only the days that are not cached).
+ */
+public class SourceRequest {
+	
+	private final WeatherDataSource weatherDataSource;
+	private final String weatherStationId;
+	private final Double longitude, latitude;
+	private final ZoneId timeZone;
+	private final Integer interval;
+	private final Set<Integer> parameters;
+	private final String credentials;
+	
+	private SourceRequest(WeatherDataSource weatherDataSource, String weatherStationId, Double longitude, Double latitude, ZoneId timeZone, Integer interval, Set<Integer> parameters, String credentials)
+	{
+		this.weatherDataSource = weatherDataSource;
+		this.weatherStationId = weatherStationId;
+		this.longitude = longitude;
+		this.latitude = latitude;
+		this.timeZone = timeZone;
+		this.interval = interval;
+		this.parameters = parameters;
+		this.credentials = credentials;
+	}
+	
+	/**
+	 * @param weatherDataSource a station based weather data source
+	 * @param weatherStationId
+	 * @param timeZone
+	 * @param interval
+	 * @param parameters the parameters to request
+	 * @param credentials Json with userName and password, for private weather stations. Null if not needed
+	 */
+	public static SourceRequest forStation(WeatherDataSource weatherDataSource, String weatherStationId, ZoneId timeZone, Integer interval, Set<Integer> parameters, String credentials)
+	{
+		return new SourceRequest(weatherDataSource, weatherStationId, null, null, timeZone, interval, parameters, credentials);
+	}
+	
+	/**
+	 * @param weatherDataSource a location based weather data source
+	 * @param longitude
+	 * @param latitude
+	 * @param timeZone
+	 * @param interval
+	 */
+	public static SourceRequest forLocation(WeatherDataSource weatherDataSource, Double longitude, Double latitude, ZoneId timeZone, Integer interval)
+	{
+		return new SourceRequest(weatherDataSource, null, longitude, latitude, timeZone, interval, null, null);
+	}
+	
+	/**
+	 * @param timeStart
+	 * @param timeEnd
+	 * @return the query string for the data source endpoint, URL encoded
+	 */
+	public String getQueryString(Instant timeStart, Instant timeEnd)
+	{
+		DateTimeFormatter format = DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(this.timeZone);
+		if(this.isStationBased())
+		{
+			String queryString = "weatherStationId=" +  this.weatherStationId
+					+ "&timeZone=" + URLEncoder.encode(this.timeZone.getId(), StandardCharsets.UTF_8)
+					+ "&timeStart=" + URLEncoder.encode(format.format(timeStart), StandardCharsets.UTF_8)
+					+ "&timeEnd=" + URLEncoder.encode(format.format(timeEnd), StandardCharsets.UTF_8)
+					+ "&interval=" + this.interval
+					+ "&parameters=" + this.parameters.stream().map(String::valueOf).collect(Collectors.joining(","));
+			if(this.credentials != null)
+			{
+				queryString += "&credentials=" + this.credentials;
+			}
+			return queryString;
+		}
+		return "longitude=" + this.longitude
+				+ "&latitude=" + this.latitude
+				+ "&timeStart=" + URLEncoder.encode(format.format(timeStart), StandardCharsets.UTF_8)
+				+ "&timeEnd=" + URLEncoder.encode(format.format(timeEnd), StandardCharsets.UTF_8)
+				+ "&interval=" + this.interval;
+	}
+	
+	/**
+	 * @return the weather station id, or the coordinates rounded to three decimals (approx. 100 m)
+	 */
+	public String getLocationKey()
+	{
+		return this.isStationBased() ? this.weatherStationId 
+				: String.format(Locale.ROOT, "%.3f,%.3f", this.longitude, this.latitude);
+	}
+	
+	/**
+	 * @return identifies the data (source, station or location, interval, parameters, time zone) regardless 
+	 * of the period. The time zone is included since the data are split into days in that zone, see 
+	 * {@link net.ipmdecisions.weather.controller.RawDataCacheBean}
+	 */
+	public String getDataKey()
+	{
+		return this.weatherDataSource.getId() + "|" 
+				+ this.getLocationKey() + "|" 
+				+ this.interval + "|" 
+				+ (this.parameters != null ? new TreeSet<>(this.parameters).stream().map(String::valueOf).collect(Collectors.joining(",")) : "") + "|"
+				+ this.timeZone;
+	}
+	
+	public boolean isStationBased()
+	{
+		return this.weatherStationId != null;
+	}
+	
+	public WeatherDataSource getWeatherDataSource() {
+		return weatherDataSource;
+	}
+	
+	public String getEndpoint() {
+		return this.weatherDataSource.getEndpointFullPath();
+	}
+	
+	public String getAuthenticationType() {
+		return this.weatherDataSource.getAuthentication_type();
+	}
+
+	public String getWeatherStationId() {
+		return weatherStationId;
+	}
+
+	public ZoneId getTimeZone() {
+		return timeZone;
+	}
+
+	public Integer getInterval() {
+		return interval;
+	}
+
+	public Set<Integer> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return true if the request contains credentials for a private weather station
+	 */
+	public boolean hasCredentials() {
+		return credentials != null;
+	}
+}
@@ -34,15 +34,17 @@ import java.util.stream.Collectors;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-
 import net.iakovlev.timeshape.TimeZoneEngine;
+import net.ipmdecisions.weather.amalgamation.AggregationEngine;
+import net.ipmdecisions.weather.amalgamation.FusionEngine;
+import net.ipmdecisions.weather.amalgamation.GapFillingEngine;
+import net.ipmdecisions.weather.amalgamation.QueryPlanner;
 import net.ipmdecisions.weather.amalgamation.WeatherDataAggregationException;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
 import net.ipmdecisions.weather.entity.WeatherData;
 import net.ipmdecisions.weather.entity.WeatherDataSource;
 import net.ipmdecisions.weather.entity.WeatherParameter;
+import net.ipmdecisions.weather.util.SystemUtil;
 
 /**
  *
@@ -74,6 +76,9 @@ public class AmalgamationBean {
 	@EJB
 	protected MetaDataBean metaDataBean;
 
+	@EJB
+	protected SourceHealthBean sourceHealthBean;
+
 	// Interchangeable parameters (e.g. instantaneous and average temperatures)
 	// Temperature: 1001 (inst) - 1002 (avg)
 	// Relative humidity: 3001 (inst) - 3002 (avg)
@@ -185,6 +190,7 @@ public class AmalgamationBean {
 
 	/**
 	 * Combine a list of weatherData. Data from the first in the list are kept, any missing data are added from the other files
+	 * Sources with a finer interval than requested are aggregated before fusion. See {@link FusionEngine}
 	 * @param weatherData
 	 * @param timeStart
 	 * @param timeEnd
@@ -201,38 +207,19 @@ public class AmalgamationBean {
 			ZoneId zoneId
 	) throws IOException
 	{
-		ObjectMapper oMapper = new ObjectMapper();
-		oMapper.registerModule(new JavaTimeModule());
-		Long length = 1 + (timeEnd.toEpochMilli() - timeStart.toEpochMilli()) / 1000 / interval;
-		WeatherData fusionedWD = new WeatherData();
-		fusionedWD.setTimeStart(timeStart);
-		fusionedWD.setTimeEnd(timeEnd);
-		fusionedWD.setInterval(interval);
+		List<WeatherData> sourcesToFuse = new ArrayList<>();
 		for(WeatherData currentWD:weatherData)
 		{
 			// Anything to work with here?
 			// Has to contain relevant weather parameters
 			// Has to have data with minimum the requested interval (hourly when requested daily are OK, the opposite is not)
-			Set<Integer> currentWDParams = currentWD.getWeatherParameters() != null ?
-					Set.copyOf(Arrays.asList(currentWD.getWeatherParameters()))
-					:null;
-			if(currentWDParams == null || currentWD.getInterval() > interval)
+			if(currentWD.getWeatherParameters() == null || currentWD.getInterval() > interval)
 			{
 				continue;
 			}
 
-			// Which parameters are new?
-			List<Integer> fusionedWDParams = fusionedWD.getWeatherParameters() != null ?
-					Arrays.asList(fusionedWD.getWeatherParameters())
-					:new ArrayList<>();
-			List<Integer> newParams = currentWDParams.stream()
-					.filter(param->  ! fusionedWDParams.contains(param))
-					.collect(Collectors.toList());
-
-
-
 			// Do we need to aggregate?
-			if(currentWD.getInterval() != interval)
+			if(! currentWD.getInterval().equals(interval))
 			{
 				try
 				{
@@ -243,119 +230,17 @@ public class AmalgamationBean {
 					continue;
 				}
 			}
-
-			// Currently only one set of data!
-			LocationWeatherData currentLWD = currentWD.getLocationWeatherData().get(0);
-
-			// From where to start putting data
-			Long startRowInDataMatrix = Math.max(0,(currentWD.getTimeStart().toEpochMilli() - timeStart.toEpochMilli()) / 1000 / interval);
-			// From where to start looking for data
-			// E.g. if currentWD starts the day before (-1), start at element 1 (zero based array)
-			Integer startRowInCurrentWD = (int) Math.max(0,(timeStart.toEpochMilli()- currentWD.getTimeStart().toEpochMilli()) / 1000 / interval);
-			/*
-			System.out.println("[AmalgamationBean.getFusionedWeatherData]currentWD.getTimeStart()=" + currentWD.getTimeStart() + "(" + currentWD.getTimeStart().toEpochMilli()+"), timeStart = " + timeStart +  "(" + timeStart.toEpochMilli()+")");
-			System.out.println("[AmalgamationBean.getFusionedWeatherData]: startRowInDataMatrix=" + startRowInDataMatrix);
-			System.out.println("[AmalgamationBean.getFusionedWeatherData]: startRowInCurrentWd=" + startRowInCurrentWD);
-			*/
-			if(fusionedWD.getLocationWeatherData() == null)
-			{
-				fusionedWD.addLocationWeatherData(new LocationWeatherData(
-						currentLWD.getLongitude(), currentLWD.getLatitude(),currentLWD.getAltitude(),
-						0,0
-				));
-			}
-			LocationWeatherData fusionedLWD = fusionedWD.getLocationWeatherData().get(0);
-
-			//
-
-			Double[][] dataMatrix = new Double[length.intValue()][fusionedWDParams.size() + newParams.size()];
-
-			// First: Add the values from the current fusionedWD.
-			for(int row = 0; row < fusionedLWD.getData().length ; row++)
-			{
-				for(int col =0; col < fusionedWDParams.size();col++)
-				{
-					if(fusionedLWD.getData()[row][col] != null)
-					{
-						dataMatrix[row][col] = fusionedLWD.getData()[row][col];
-					}
-				}
-			}
-			/*
-			System.out.println("dataMatrix length=" + length + ", currentLWD.getData().length=" + currentLWD.getData().length);
-			System.out.println("dataMatrix width =" + (fusionedWDParams.size() + " + " + newParams.size()) + ", newParams = "
-			+ newParams.stream().map(i->String.valueOf(i)).collect(Collectors.joining(",")));
-			*/
-			for(int row = 0; (row + startRowInCurrentWD) < currentLWD.getData().length && startRowInDataMatrix.intValue() + row < dataMatrix.length; row++)
-			{
-				int col = 0;
-				// Start with the existing
-				for(; col < fusionedWDParams.size();col++)
-				{
-					// Try to fill in holes from the first sets
-					if(dataMatrix[startRowInDataMatrix.intValue() + row][col] == null)
-					{
-						// We must also look for replacement parameter values
-						Double replacementValue = null;
-
-						for(Integer interchangeableParameter: this.getInterchangeableParameters(fusionedWD.getWeatherParameters()[col]))
-						{
-
-							if(currentWD.getParameterIndex(interchangeableParameter) != null)
-							{
-								replacementValue = currentLWD.getData()[row + startRowInCurrentWD][currentWD.getParameterIndex(interchangeableParameter)];
-							}
-							if(replacementValue != null)
-							{
-								break;
-							}
-						}
-						//System.out.println("Adding value (" + replacementValue + ") at [" + (startRowInDataMatrix.intValue() + row )+ "]" + Instant.ofEpochMilli(timeStart.toEpochMilli() + (startRowInDataMatrix.intValue() + row) * interval * 1000l));
-						//dataMatrix[startRowInDataMatrix.intValue() + row][col] = currentLWD.getData()[row + startRowInCurrentWD][currentWD.getParameterIndex(fusionedWD.getWeatherParameters()[col])];
-						dataMatrix[startRowInDataMatrix.intValue() + row][col] = replacementValue;
-					}
-				}
-				// Add the new at the end of each row
-				for(Integer newParam:newParams)
-				{
-					Integer paramIndex = currentWD.getParameterIndex(newParam);
-					dataMatrix[startRowInDataMatrix.intValue() + row][col++] = currentLWD.getData()[row + startRowInCurrentWD][paramIndex];
-					//System.out.println("Adding value (" + currentLWD.getData()[row + startRowInCurrentWD][paramIndex] + ") at [" + (startRowInDataMatrix.intValue() + row )+ "]" + Instant.ofEpochMilli(timeStart.toEpochMilli() + (startRowInDataMatrix.intValue() + row) * interval * 1000l));
-				}
-
-			}
-			fusionedLWD.setData(dataMatrix);
-			List<Integer> newFusionedWDParams = new ArrayList<>(fusionedWDParams); // To make sure it's mutable
-			newFusionedWDParams.addAll(newParams);
-			fusionedWD.setWeatherParameters(newFusionedWDParams.toArray(Integer[]::new));
-
-			// We must update the qc and amalgamation arrays too
-			Integer[] newQC = new Integer[fusionedWD.getWeatherParameters().length];
-			Integer[] newAmalgamation = new Integer[fusionedWD.getWeatherParameters().length];
-			int i=0;
-			for(; i < fusionedWDParams.size(); i++)
-			{
-				newQC[i] = fusionedLWD.getQC()[i];
-				newAmalgamation[i] = fusionedLWD.getAmalgamation()[i];
-			}
-			for(; i < fusionedWDParams.size() + newParams.size(); i++)
-			{
-				newQC[i] = currentLWD.getQC()[currentWD.getParameterIndex(fusionedWD.getWeatherParameters()[i])];
-				newAmalgamation[i] = fusionedLWD.getAmalgamation()[currentWD.getParameterIndex(fusionedWD.getWeatherParameters()[i])];
-			}
-			fusionedLWD.setQC(newQC);
-			fusionedLWD.setAmalgamation(newAmalgamation);
-			/* Uncomment to debug
-			try
-			{
-				System.out.println(oMapper.writeValueAsString(fusionedWD));
-			}
-			catch(JsonProcessingException ex)
-			{
-				ex.printStackTrace();
-			}*/
+			sourcesToFuse.add(currentWD);
 		}
-		return fusionedWD;
+		return new FusionEngine(this.fallbackParams).fuse(sourcesToFuse, timeStart, timeEnd, interval);
+	}
+
+	/**
+	 * @return a planner that knows which parameters can replace or be calculated from each other
+	 */
+	public QueryPlanner getQueryPlanner()
+	{
+		return new QueryPlanner(this.fallbackParams, this.calculationParams);
 	}
 
 	/**
@@ -374,13 +259,34 @@ public class AmalgamationBean {
 			Instant timeStart,
 			Instant timeEnd
 	) throws IOException
+	{
+		return this.getWeatherDataSourcesInPriorityOrder(
+				this.getCandidateWeatherDataSources(longitude, latitude, requestedParameters),
+				timeStart,
+				timeEnd
+		);
+	}
+
+	/**
+	 * Get the weather data sources that cover the location and have at least one of the
+	 * requested parameters (or parameters that can replace or be used to calculate them).
+	 * The result does not depend on the period, so it can be reused, see {@link SourcePlanBean}
+	 * @param longitude
+	 * @param latitude
+	 * @param requestedParameters
+	 * @return the sources, in priority order
+	 * @throws IOException
+	 */
+	public List<WeatherDataSource> getCandidateWeatherDataSources(
+			Double longitude, Double latitude,
+			List<Integer> requestedParameters
+	) throws IOException
 	{
 		Double tolerance = 2000.0; // Tolerance in meters for stations
 		// Location
 		List<WeatherDataSource> candidates = weatherDataSourceBean.getWeatherDataSourcesForLocation(longitude, latitude, tolerance);
 		// Must have at least one of the requested parameters (including fallbacks)
 		// OR (a) parameter(s) that can be used to calculate one of the requested parameters
-		// Must (according to meta data) contain data for the given period
 		Set<Integer> requestedInterchangeableAndOrCalculationParameters = new HashSet<>();
 		for(Integer requestedParameter:requestedParameters)
 		{
@@ -394,20 +300,13 @@ public class AmalgamationBean {
 				requestedInterchangeableAndOrCalculationParameters.addAll(calculationParams.get(requestedParameter));
 			}
 		}
-		//System.out.println("timeStart=" + timeStart + ", timeEnd=" + timeEnd);
 		candidates = candidates.stream().filter(c -> {
 			for(int i=0;i<c.getParameters().getCommon().length;i++)
 			{
 				// Must have at least one of the requested parameters (including fallbacks)
 				if(requestedInterchangeableAndOrCalculationParameters.contains(c.getParameters().getCommon()[i]))
 				{
-					//System.out.println(c.getName() + " temporalStart: " + c.getTemporalStart() + ", temporalEnd: " + c.getTemporalEnd());
-
-					// Must (according to meta data) contain data for the given period
-					if(c.getTemporalStart().isBefore(timeEnd) && c.getTemporalEnd().isAfter(timeStart))
-					{
-						return true;
-					}
+					return true;
 				}
 			}
 			return false;
@@ -418,6 +317,31 @@ public class AmalgamationBean {
 		return candidates;
 	}
 
+	/**
+	 * @param candidates The sources for the location and parameters, in priority order. See {@link #getCandidateWeatherDataSources(Double, Double, List)}
+	 * @param timeStart
+	 * @param timeEnd
+	 * @return the candidates that (according to meta data) contain data for the given period, in priority order,
+	 * with the unhealthy sources last
+	 */
+	public List<WeatherDataSource> getWeatherDataSourcesInPriorityOrder(
+			List<WeatherDataSource> candidates,
+			Instant timeStart,
+			Instant timeEnd
+	)
+	{
+		//System.out.println("timeStart=" + timeStart + ", timeEnd=" + timeEnd);
+		List<WeatherDataSource> wdss = candidates.stream()
+				.filter(c -> c.getTemporalStart().isBefore(timeEnd) && c.getTemporalEnd().isAfter(timeStart))
+				.collect(Collectors.toList());
+		// Unhealthy sources last
+		if(sourceHealthBean != null)
+		{
+			sourceHealthBean.sortByHealth(wdss);
+		}
+		return wdss;
+	}
+
 	/**
 	 * Util method for getting a list of all interchangeable parameters (e.g. instantaneous and average temperature)
 	 * @param parameter
@@ -477,7 +401,8 @@ public class AmalgamationBean {
 	}
 
 	/**
-	 *
+	 * Aggregates the source data to the requested interval, with windows aligned to
+	 * midnight in the given time zone. See {@link AggregationEngine}
 	 * @param source
 	 * @param requestedInterval
 	 * @param timeZone
@@ -497,50 +422,44 @@ public class AmalgamationBean {
 			return source;
 		}
 
-		// Bucket size
-		Integer sourceValuesPerAggregationValue = requestedInterval / source.getInterval();
-		//System.out.println("sourceValuesPerAggregationValue=" + sourceValuesPerAggregationValue);
-		// What's the start index, considering midnight for time zone? (Assuming hourly to daily)
-		//System.out.println("[AmalgamationBean.aggregate]: timeZone=" + timeZone);
-		//System.out.println("[AmalgamationBean.aggregate]: source.getTimeStart().atZone(timeZone).getHour()=" + source.getTimeStart().atZone(timeZone).getHour());
-		Integer startIndex = source.getTimeStart().atZone(timeZone).getHour() == 0 ? 0 : 23 - source.getTimeStart().atZone(timeZone).getHour();
-		// TODO If the start index >= 15, consider creating a "day 1" using those values
-
-		// Length of the aggregation array
-		Integer length = (int) Math.ceil((source.getLocationWeatherData().get(0).getLength().doubleValue() - startIndex) / sourceValuesPerAggregationValue);
-		//System.out.println("[AmalgamationBean.aggregate]: source data length=" + source.getLocationWeatherData().get(0).getLength());
-		//System.out.println("[AmalgamationBean.aggregate]: startIndex=" + startIndex);
-		//System.out.println("[AmalgamationBean.aggregate]: aggregation array length=" + length);
-		for(LocationWeatherData lwd:source.getLocationWeatherData())
+		// Resolve the aggregation type of each column once
+		String[] aggregationTypes = new String[source.getWeatherParameters().length];
+		for(int col=0;col<aggregationTypes.length;col++)
 		{
-			Double[][] aggregatedData = new Double[length][source.getWeatherParameters().length];
-			Integer aggregatedRow = 0;
-			for(Integer aggregationStartRow = startIndex; aggregationStartRow < lwd.getLength(); aggregationStartRow += sourceValuesPerAggregationValue)
-			{
-				//System.out.println("[AmalgamationBean.aggregate]: aggregationStartRow=" + aggregationStartRow);
-				//System.out.println("[AmalgamationBean.aggregate]: aggregatedRow=" + aggregatedRow);
-				for(int col=0;col<source.getWeatherParameters().length;col++)
-				{
-					Double[] sourceValuesToAggregate = new Double[sourceValuesPerAggregationValue];
-					for(Integer subRow = 0; subRow < sourceValuesPerAggregationValue && (aggregationStartRow + subRow) < lwd.getLength() ;subRow++)
-					{
-						//System.out.println("subRow=" + subRow);
-						sourceValuesToAggregate[subRow] = lwd.getData()[aggregationStartRow + subRow][col];
-					}
-					Double aggregatedValue = this.aggregateValues(sourceValuesToAggregate, source.getWeatherParameters()[col]);
-					aggregatedData[aggregatedRow][col] = aggregatedValue;
-				}
-				aggregatedRow++;
-			}
-			lwd.setData(aggregatedData);
+			aggregationTypes[col] = metaDataBean.getWeatherParameter(source.getWeatherParameters()[col]).getAggregationType();
 		}
+		return new AggregationEngine(aggregationTypes).aggregate(source, requestedInterval, timeZone);
+	}
 
-		source.setTimeStart(source.getTimeStart().plusSeconds(startIndex * source.getInterval()));
-		source.setTimeEnd(source.getTimeStart().plusSeconds((length - 1) * requestedInterval));
-		//System.out.println("[AmalgamationBean.aggregate]: timeStart=" + source.getTimeStart());
-		//System.out.println("[AmalgamationBean.aggregate]: timeEnd=" + source.getTimeEnd());
-		source.setInterval(requestedInterval);
-		return source;
+	/**
+	 * Fills gaps in the given parameters, using the strategy for each parameter. See {@link GapFillingEngine}
+	 * 
+	 * The maximum length of the gaps to fill are set by the system properties
+	 * org.madiphs.weatherservice.GAP_FILLING_MAX_LINEAR_SECONDS (default 3 hours) and
+	 * org.madiphs.weatherservice.GAP_FILLING_MAX_ZERO_SECONDS (default 1 hour)
+	 * @param weatherData The data are altered
+	 * @param parametersToFill e.g. the parameters that failed the QC
+	 * @return the weather data, with gaps filled
+	 * @throws IOException
+	 */
+	public WeatherData fillGaps(WeatherData weatherData, Set<Integer> parametersToFill) throws IOException
+	{
+		if(parametersToFill.isEmpty() || weatherData.getWeatherParameters() == null)
+		{
+			return weatherData;
+		}
+		String[] aggregationTypes = new String[weatherData.getWeatherParameters().length];
+		for(int col=0;col<aggregationTypes.length;col++)
+		{
+			WeatherParameter weatherParameter = metaDataBean.getWeatherParameter(weatherData.getWeatherParameters()[col]);
+			aggregationTypes[col] = weatherParameter != null ? weatherParameter.getAggregationType() : null;
+		}
+		return new GapFillingEngine(
+				weatherData.getWeatherParameters(),
+				aggregationTypes,
+				SystemUtil.getLongProperty("org.madiphs.weatherservice.GAP_FILLING_MAX_LINEAR_SECONDS", GapFillingEngine.DEFAULT_MAX_LINEAR_GAP_SECONDS),
+				SystemUtil.getLongProperty("org.madiphs.weatherservice.GAP_FILLING_MAX_ZERO_SECONDS", GapFillingEngine.DEFAULT_MAX_ZERO_GAP_SECONDS)
+		).fill(weatherData, parametersToFill);
 	}
 
 	/**
@@ -574,7 +493,8 @@ public class AmalgamationBean {
 
 	public Double aggregateValuesAverage(Double[] values)
 	{
-		return this.aggregateValuesSum(values) / values.length;
+		long count = Arrays.asList(values).stream().filter(v -> v != null).count();
+		return count == 0 ? null : this.aggregateValuesSum(values) / count;
 	}
 
 	public Double aggregateValuesSum(Double[] values)
@@ -584,12 +504,12 @@ public class AmalgamationBean {
 
 	public Double aggregateValuesMinimum(Double[] values)
 	{
-		return Arrays.asList(values).stream().filter(v -> v != null).min(Double::compare).get();
+		return Arrays.asList(values).stream().filter(v -> v != null).min(Double::compare).orElse(null);
 	}
 
 	public Double aggregateValuesMaximum(Double[] values)
 	{
-		return Arrays.asList(values).stream().filter(v -> v != null).max(Double::compare).get();
+		return Arrays.asList(values).stream().filter(v -> v != null).max(Double::compare).orElse(null);
 	}
 
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.controller;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.SystemUtil;
+import net.ipmdecisions.weather.util.WeightedLRUCache;
+
+/**
+ * Caches the results of the amalgamation service. 
+ * 
+ * Requests are identified by the coordinates (rounded to a configurable number of decimals),
+ * the sorted set of parameters, the interval and the period. Results for periods that lie wholly 
+ * in the past (with a margin for late arriving observations) live long. Results touching the 
+ * last few days or the forecast expire at the end of the current forecast update cycle.
+ * Requests within the rounding share the result, which is returned with the coordinates 
+ * of each request.
+ * 
+ * The cache is bounded by the estimated memory size of the results. Configuration (system properties):
+ * <ul>
+ * <li>org.madiphs.weatherservice.AMALGAMATION_CACHE_MAX_BYTES (default 256 MB, 0 disables the cache)</li>
+ * <li>org.madiphs.weatherservice.AMALGAMATION_CACHE_COORDINATE_DECIMALS (default 3, approx. 100 m)</li>
+ * <li>org.madiphs.weatherservice.AMALGAMATION_CACHE_PAST_TTL_SECONDS (default 7 days)</li>
+ * <li>org.madiphs.weatherservice.AMALGAMATION_CACHE_FORECAST_CYCLE_SECONDS (default 1 hour)</li>
+ * <li>org.madiphs.weatherservice.AMALGAMATION_CACHE_SETTLEMENT_DAYS (default 2)</li>
+ * </ul>
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AmalgamationCacheBean {
+	
+	private final WeightedLRUCache<String, CachedWeatherData> cache;
+	private final long maxBytes;
+	private final int coordinateDecimals;
+	private final long pastTimeToLive;
+	private final long forecastCycle;
+	private final long settlementDays;
+	
+	public AmalgamationCacheBean()
+	{
+		this.maxBytes = SystemUtil.getLongProperty("org.madiphs.weatherservice.AMALGAMATION_CACHE_MAX_BYTES", 256L * 1024 * 1024);
+		this.coordinateDecimals = (int) SystemUtil.getLongProperty("org.madiphs.weatherservice.AMALGAMATION_CACHE_COORDINATE_DECIMALS", 3);
+		this.pastTimeToLive = SystemUtil.getLongProperty("org.madiphs.weatherservice.AMALGAMATION_CACHE_PAST_TTL_SECONDS", 7 * 86400) * 1000;
+		this.forecastCycle = Math.max(1, SystemUtil.getLongProperty("org.madiphs.weatherservice.AMALGAMATION_CACHE_FORECAST_CYCLE_SECONDS", 3600)) * 1000;
+		this.settlementDays = SystemUtil.getLongProperty("org.madiphs.weatherservice.AMALGAMATION_CACHE_SETTLEMENT_DAYS", 2);
+		this.cache = new WeightedLRUCache<>(this.maxBytes);
+	}
+	
+	/**
+	 * 
+	 * @param longitude
+	 * @param latitude
+	 * @param parametersStr Comma separated list of parameters
+	 * @param interval
+	 * @param timeStartStr ISO Date (e.g. 2021-03-01)
+	 * @param timeEndStr ISO Date (e.g. 2021-09-01)
+	 * @return the cache key, or null if the request can't be cached (e.g. missing or malformed input)
+	 */
+	public String getCacheKey(Double longitude, Double latitude, String parametersStr, Integer interval, String timeStartStr, String timeEndStr)
+	{
+		if(this.maxBytes <= 0 || longitude == null || latitude == null || parametersStr == null || interval == null || timeStartStr == null || timeEndStr == null)
+		{
+			return null;
+		}
+		try
+		{
+			String parameters = Arrays.stream(parametersStr.split(","))
+					.map(p->Integer.valueOf(p.trim()))
+					.collect(Collectors.toCollection(TreeSet::new))
+					.stream().map(String::valueOf).collect(Collectors.joining(","));
+			return String.format(Locale.ROOT, "%." + this.coordinateDecimals + "f", longitude) + "|"
+					+ String.format(Locale.ROOT, "%." + this.coordinateDecimals + "f", latitude) + "|"
+					+ parameters + "|"
+					+ interval + "|"
+					+ LocalDate.parse(timeStartStr) + "|"
+					+ LocalDate.parse(timeEndStr);
+		}
+		catch(NumberFormatException | DateTimeParseException ex)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * @param cacheKey
+	 * @return the cached result, or null if not cached or expired
+	 */
+	public CachedWeatherData get(String cacheKey)
+	{
+		return cacheKey == null ? null : this.cache.get(cacheKey, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Adds the result to the cache. The time to live depends on the period of the result
+	 * @param cacheKey
+	 * @param weatherData the amalgamated result. Must not be altered after being cached
+	 * @param timeEndStr ISO Date (e.g. 2021-09-01), the end of the requested period
+	 * @param timeZone The time zone of the location, see {@link net.ipmdecisions.weather.amalgamation.SourcePlan#getTimeZone()}
+	 * @return the cached result
+	 */
+	public CachedWeatherData put(String cacheKey, WeatherData weatherData, String timeEndStr, ZoneId timeZone)
+	{
+		long now = System.currentTimeMillis();
+		long expires = this.isSettled(LocalDate.parse(timeEndStr), timeZone) ? 
+				now + this.pastTimeToLive
+				// Expire at the end of the current forecast update cycle
+				: (now / this.forecastCycle + 1) * this.forecastCycle;
+		CachedWeatherData cached = new CachedWeatherData(weatherData, this.getETag(weatherData), expires);
+		if(cacheKey != null)
+		{
+			this.cache.put(cacheKey, cached, this.getEstimatedSize(weatherData), expires);
+		}
+		return cached;
+	}
+	
+	/**
+	 * @param timeEnd The end of the period, at the location
+	 * @param timeZone The time zone of the location
+	 * @return true if the data for the period ending at the given date are not expected to change
+	 */
+	public boolean isSettled(LocalDate timeEnd, ZoneId timeZone)
+	{
+		return timeEnd.isBefore(LocalDate.now(timeZone).minusDays(this.settlementDays));
+	}
+	
+	public Map<String, Object> getMetrics()
+	{
+		return this.cache.getMetrics();
+	}
+	
+	public void clear()
+	{
+		this.cache.clear();
+	}
+	
+	/**
+	 * Content based entity tag, for cheap revalidation by clients
+	 */
+	private String getETag(WeatherData weatherData)
+	{
+		long hash = 17;
+		hash = hash * 31 + String.valueOf(weatherData.getTimeStart()).hashCode();
+		hash = hash * 31 + String.valueOf(weatherData.getTimeEnd()).hashCode();
+		hash = hash * 31 + String.valueOf(weatherData.getInterval()).hashCode();
+		hash = hash * 31 + Arrays.hashCode(weatherData.getWeatherParameters());
+		if(weatherData.getLocationWeatherData() != null)
+		{
+			for(LocationWeatherData lwd:weatherData.getLocationWeatherData())
+			{
+				hash = hash * 31 + Arrays.deepHashCode(lwd.getData());
+				hash = hash * 31 + Arrays.hashCode(lwd.getQC());
+				hash = hash * 31 + Arrays.hashCode(lwd.getAmalgamation());
+			}
+		}
+		return Long.toHexString(hash);
+	}
+	
+	/**
+	 * Rough estimate of the memory footprint of a weather data set (bytes)
+	 */
+	private long getEstimatedSize(WeatherData weatherData)
+	{
+		long size = 256;
+		if(weatherData.getLocationWeatherData() != null)
+		{
+			int width = weatherData.getWeatherParameters() != null ? weatherData.getWeatherParameters().length : 0;
+			for(LocationWeatherData lwd:weatherData.getLocationWeatherData())
+			{
+				// Row arrays and boxed Doubles, plus the QC and amalgamation arrays
+				size += 128 + (long) lwd.getLength() * (16 + 24L * width) + 64L * width;
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * An amalgamation result with its entity tag and expiry time
+	 */
+	public static class CachedWeatherData {
+		private final WeatherData weatherData;
+		private final String eTag;
+		private final long expires;
+		
+		public CachedWeatherData(WeatherData weatherData, String eTag, long expires)
+		{
+			this.weatherData = weatherData;
+			this.eTag = eTag;
+			this.expires = expires;
+		}
+
+		public WeatherData getWeatherData() {
+			return weatherData;
+		}
+
+		/**
+		 * @return the cached result with the requested coordinates instead of the coordinates 
+		 * of the request that was cached. The data are shared, not copied
+		 */
+		public WeatherData getWeatherData(Double longitude, Double latitude)
+		{
+			if(this.weatherData.getLocationWeatherData() == null)
+			{
+				return this.weatherData;
+			}
+			WeatherData located = new WeatherData();
+			located.setTimeStart(this.weatherData.getTimeStart());
+			located.setTimeEnd(this.weatherData.getTimeEnd());
+			located.setInterval(this.weatherData.getInterval());
+			located.setWeatherParameters(this.weatherData.getWeatherParameters());
+			List<LocationWeatherData> locationWeatherData = new ArrayList<>();
+			for(LocationWeatherData lwd:this.weatherData.getLocationWeatherData())
+			{
+				LocationWeatherData locatedLwd = new LocationWeatherData(longitude, latitude, lwd.getAltitude(), 0, 0);
+				locatedLwd.setData(lwd.getData());
+				locatedLwd.setQC(lwd.getQC());
+				locatedLwd.setAmalgamation(lwd.getAmalgamation());
+				locationWeatherData.add(locatedLwd);
+			}
+			located.setLocationWeatherData(locationWeatherData);
+			return located;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * @return the entity tag of {@link #getWeatherData(Double, Double)}
+		 */
+		public String getETag(Double longitude, Double latitude)
+		{
+			long hash = 17;
+			hash = hash * 31 + String.valueOf(longitude).hashCode();
+			hash = hash * 31 + String.valueOf(latitude).hashCode();
+			return this.eTag + "-" + Long.toHexString(hash);
+		}
+
+		/**
+		 * @return the number of seconds until the result expires
+		 */
+		public int getMaxAge()
+		{
+			return (int) Math.max(0, (this.expires - System.currentTimeMillis()) / 1000);
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.controller;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.ipmdecisions.weather.util.SystemUtil;
+
+/**
+ * Thread pools for work that the services split up and run concurrently. Requests to 
+ * the weather data sources are mostly waiting for the network, and get a larger pool 
+ * of their own, so that they never starve the CPU bound work (fusion etc.), which 
+ * runs on a pool sized after the number of processors. The quality control of large 
+ * datasets is split up and runs on a pool of its own, since it is called from the 
+ * other pools.
+ * 
+ * Endpoints that wait for the weather data sources run on the request pool (see 
+ * {@link #runAsync(AsyncResponse, Supplier)}), so that the container's worker threads 
+ * are freed at once, and a burst of requests to slow data sources can't block e.g. 
+ * the heartbeats. The endpoints wait for their own requests to the data sources, 
+ * so they must not share a pool with them. This includes the weather adapter endpoints, 
+ * which the amalgamation requests over HTTP, so they run on an adapter pool of their own
+ * (see {@link #runAdapterAsync(AsyncResponse, Supplier)}).
+ * 
+ * The queues of the pools are bounded, so that an overloaded service sheds load instead
+ * of queueing up work until it runs out of memory. Work that is rejected by the request, 
+ * adapter, fetch or compute pool throws RejectedExecutionException, which {@link #runAsync(AsyncResponse, Supplier)} 
+ * turns into 503. Work that is rejected by the QC pool runs on the calling thread instead.
+ * 
+ * The pools are plain thread pools. On Java 21 or later, the request and fetch pools 
+ * can be replaced with virtual threads (Executors.newVirtualThreadPerTaskExecutor()).
+ * 
+ * Configuration (system properties):
+ * <ul>
+ * <li>org.madiphs.weatherservice.REQUEST_THREADS (default 64)</li>
+ * <li>org.madiphs.weatherservice.REQUEST_QUEUE_SIZE (default 256)</li>
+ * <li>org.madiphs.weatherservice.ADAPTER_THREADS (default 64)</li>
+ * <li>org.madiphs.weatherservice.ADAPTER_QUEUE_SIZE (default 256)</li>
+ * <li>org.madiphs.weatherservice.REQUEST_TIMEOUT_SECONDS (default 120). Requests that are not completed within this time get 503</li>
+ * <li>org.madiphs.weatherservice.FETCH_THREADS (default 32)</li>
+ * <li>org.madiphs.weatherservice.FETCH_QUEUE_SIZE (default 1024)</li>
+ * <li>org.madiphs.weatherservice.COMPUTE_THREADS (default the number of available processors)</li>
+ * <li>org.madiphs.weatherservice.COMPUTE_QUEUE_SIZE (default 1024)</li>
+ * <li>org.madiphs.weatherservice.QC_THREADS (default the number of available processors)</li>
+ * <li>org.madiphs.weatherservice.QC_QUEUE_SIZE (default 1024)</li>
+ * </ul>
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ExecutorBean {
+	
+	private static Logger LOGGER = LoggerFactory.getLogger(ExecutorBean.class);
+	
+	private final ExecutorService requestExecutor;
+	private final ExecutorService adapterExecutor;
+	private final long requestTimeout;
+	private final ExecutorService fetchExecutor;
+	private final ExecutorService computeExecutor;
+	private final ExecutorService qcExecutor;
+	
+	public ExecutorBean()
+	{
+		int processors = Runtime.getRuntime().availableProcessors();
+		this.requestTimeout = Math.max(1, SystemUtil.getLongProperty("org.madiphs.weatherservice.REQUEST_TIMEOUT_SECONDS", 120));
+		this.requestExecutor = this.getExecutor("REQUEST", 64, 256, "weatherservice-request-", new ThreadPoolExecutor.AbortPolicy());
+		this.adapterExecutor = this.getExecutor("ADAPTER", 64, 256, "weatherservice-adapter-", new ThreadPoolExecutor.AbortPolicy());
+		this.fetchExecutor = this.getExecutor("FETCH", 32, 1024, "weatherservice-fetch-", new ThreadPoolExecutor.AbortPolicy());
+		this.computeExecutor = this.getExecutor("COMPUTE", processors, 1024, "weatherservice-compute-", new ThreadPoolExecutor.AbortPolicy());
+		// Unlike CallerRunsPolicy, also runs the task after shutdown, so that the caller never waits for a discarded task
+		this.qcExecutor = this.getExecutor("QC", processors, 1024, "weatherservice-qc-", (task, executor) -> task.run());
+	}
+	
+	/**
+	 * Runs the endpoint on the request pool, and resumes the suspended response with the result.
+	 * If the endpoint has not completed within the request timeout, the response is 503, and 
+	 * the endpoint's thread is interrupted
+	 * @param asyncResponse the suspended response
+	 * @param endpoint the synchronous implementation of the endpoint
+	 */
+	public void runAsync(AsyncResponse asyncResponse, Supplier<Response> endpoint)
+	{
+		this.runAsync(this.requestExecutor, asyncResponse, endpoint);
+	}
+	
+	/**
+	 * Runs a weather adapter endpoint on the adapter pool, like {@link #runAsync(AsyncResponse, Supplier)}.
+	 * The endpoints on the request pool wait for the weather adapters, so the adapters 
+	 * must not queue up behind them
+	 * @param asyncResponse the suspended response
+	 * @param endpoint the synchronous implementation of the endpoint
+	 */
+	public void runAdapterAsync(AsyncResponse asyncResponse, Supplier<Response> endpoint)
+	{
+		this.runAsync(this.adapterExecutor, asyncResponse, endpoint);
+	}
+	
+	private void runAsync(ExecutorService executor, AsyncResponse asyncResponse, Supplier<Response> endpoint)
+	{
+		FutureTask<Void> task = new FutureTask<>(() -> {
+			try
+			{
+				asyncResponse.resume(endpoint.get());
+			}
+			catch(RejectedExecutionException ex)
+			{
+				LOGGER.warn("The service is overloaded: " + ex.getMessage());
+				asyncResponse.resume(this.getOverloadedResponse());
+			}
+			catch(RuntimeException ex)
+			{
+				LOGGER.error(ex.getMessage(), ex);
+				asyncResponse.resume(ex);
+			}
+		}, null);
+		asyncResponse.setTimeoutHandler(timedOut -> {
+			task.cancel(true);
+			timedOut.resume(Response.status(Status.SERVICE_UNAVAILABLE)
+					.entity("The request was not completed within " + this.requestTimeout + " seconds")
+					.build());
+		});
+		asyncResponse.setTimeout(this.requestTimeout, TimeUnit.SECONDS);
+		try
+		{
+			executor.execute(task);
+		}
+		catch(RejectedExecutionException ex)
+		{
+			asyncResponse.resume(executor.isShutdown() 
+					? Response.status(Status.SERVICE_UNAVAILABLE).entity("The service is shutting down").build()
+					: this.getOverloadedResponse());
+		}
+	}
+	
+	/**
+	 * @return the time (seconds) that a request may take
+	 */
+	public long getRequestTimeoutSeconds()
+	{
+		return this.requestTimeout;
+	}
+	
+	/**
+	 * @return 503 for work that was rejected since the pool's queue is full
+	 */
+	public Response getOverloadedResponse()
+	{
+		return Response.status(Status.SERVICE_UNAVAILABLE)
+				.header("Retry-After", 1)
+				.entity("The service is overloaded, please try again later")
+				.build();
+	}
+	
+	/**
+	 * @return the pool for requests to the weather data sources
+	 */
+	public ExecutorService getFetchExecutor()
+	{
+		return this.fetchExecutor;
+	}
+	
+	/**
+	 * @return the pool for CPU bound work
+	 */
+	public ExecutorService getComputeExecutor()
+	{
+		return this.computeExecutor;
+	}
+	
+	/**
+	 * @return the pool for the quality control of large datasets. Never call the 
+	 * quality control from this pool
+	 */
+	public ExecutorService getQCExecutor()
+	{
+		return this.qcExecutor;
+	}
+	
+	@PreDestroy
+	public void shutdown()
+	{
+		this.requestExecutor.shutdownNow();
+		this.adapterExecutor.shutdownNow();
+		this.fetchExecutor.shutdownNow();
+		this.computeExecutor.shutdownNow();
+		this.qcExecutor.shutdownNow();
+	}
+	
+	/**
+	 * @param name the name of the pool in the system properties, e.g. FETCH for FETCH_THREADS and FETCH_QUEUE_SIZE
+	 * @return a fixed size thread pool with a bounded queue
+	 */
+	private ExecutorService getExecutor(String name, int defaultThreads, int defaultQueueSize, String threadNamePrefix, RejectedExecutionHandler rejectedExecutionHandler)
+	{
+		int threads = (int) Math.max(1, SystemUtil.getLongProperty("org.madiphs.weatherservice." + name + "_THREADS", defaultThreads));
+		int queueSize = (int) Math.max(1, SystemUtil.getLongProperty("org.madiphs.weatherservice." + name + "_QUEUE_SIZE", defaultQueueSize));
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<>(queueSize), this.getThreadFactory(threadNamePrefix), rejectedExecutionHandler);
+	}
+	
+	private ThreadFactory getThreadFactory(String namePrefix)
+	{
+		AtomicInteger threadNumber = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.controller;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+
+import net.ipmdecisions.weather.util.Histogram;
+
+/**
+ * Timing metrics for the amalgamation pipeline, the requests to the weather data 
+ * sources and the adapters. Written in the Prometheus text format.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MetricsBean {
+	
+	/** Time spent in each stage of the amalgamation. Label: stage */
+	public static final String AMALGAMATION_STAGE_SECONDS = "weatherservice_amalgamation_stage_seconds";
+	/** Time spent on each request from the amalgamation to a weather data source. Labels: source, outcome */
+	public static final String SOURCE_REQUEST_SECONDS = "weatherservice_source_request_seconds";
+	/** Time spent on each request to an adapter. Labels: adapter, status */
+	public static final String ADAPTER_REQUEST_SECONDS = "weatherservice_adapter_request_seconds";
+	
+	private static final Map<String, String> HELP = Map.of(
+			AMALGAMATION_STAGE_SECONDS, "Time spent in each stage of the amalgamation",
+			SOURCE_REQUEST_SECONDS, "Time spent on requests from the amalgamation to the weather data sources",
+			ADAPTER_REQUEST_SECONDS, "Time spent on requests to the weather data source adapters"
+	);
+	
+	// Metric name -> labels -> histogram
+	private final Map<String, Map<String, Histogram>> histograms = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param metric e.g. MetricsBean.AMALGAMATION_STAGE_SECONDS
+	 * @param nanos the duration
+	 * @param labels label names and values, e.g. "stage", "fusion"
+	 */
+	public void observe(String metric, long nanos, String... labels)
+	{
+		StringBuilder labelSet = new StringBuilder();
+		for(int i=0; i + 1 < labels.length; i += 2)
+		{
+			labelSet.append(labelSet.length() > 0 ? "," : "")
+				.append(labels[i]).append("=\"").append(this.escape(labels[i+1])).append('"');
+		}
+		this.histograms.computeIfAbsent(metric, m -> new ConcurrentHashMap<>())
+			.computeIfAbsent(labelSet.toString(), l -> new Histogram())
+			.observe(nanos);
+	}
+	
+	/**
+	 * @return all the metrics, in the Prometheus text format (version 0.0.4)
+	 */
+	public String getPrometheusText()
+	{
+		StringBuilder out = new StringBuilder();
+		new TreeMap<>(this.histograms).forEach((metric, byLabels) -> {
+			out.append("# HELP ").append(metric).append(' ').append(HELP.getOrDefault(metric, metric)).append('\n');
+			out.append("# TYPE ").append(metric).append(" histogram\n");
+			new TreeMap<>(byLabels).forEach((labels, histogram) -> histogram.write(out, metric, labels));
+		});
+		return out.toString();
+	}
+	
+	private String escape(String labelValue)
+	{
+		return labelValue == null ? "" : labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.controller;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.ipmdecisions.weather.amalgamation.FusionEngine;
+import net.ipmdecisions.weather.amalgamation.SourceRequest;
+import net.ipmdecisions.weather.amalgamation.WeatherDataFetcher;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+import net.ipmdecisions.weather.entity.WeatherDataSourceException;
+import net.ipmdecisions.weather.util.SpatialIndex;
+import net.ipmdecisions.weather.util.SystemUtil;
+import net.ipmdecisions.weather.util.WeatherDataSegmentStore;
+import net.ipmdecisions.weather.util.WeightedLRUCache;
+
+/**
+ * Caches raw data from the weather data sources in day segments, per data source and 
+ * weather station (or location). The days are split in the time zone of the request, so
+ * requests in different time zones have separate segments, see {@link SourceRequest#getDataKey()}.
+ * 
+ * Observations for a day are considered settled when the day is older than the settlement 
+ * lag of the data source. Settled day segments are persisted to a local disk store, and the 
+ * most recently used ones are also kept in memory. When data are requested, only the days 
+ * from the first one that is missing or unsettled are fetched from the data source. The 
+ * rest is merged in from the cache.
+ * 
+ * The cached stations and locations are indexed by their coordinates, so that the data
+ * of the neighbors of a location can be used for a spatial consistency check without
+ * requesting the data sources.
+ * 
+ * Configuration (system properties):
+ * <ul>
+ * <li>org.madiphs.weatherservice.RAW_DATA_CACHE_DIR (default [jboss.server.data.dir]/weatherservice/segments, 
+ * or [java.io.tmpdir]/weatherservice/segments outside WildFly)</li>
+ * <li>org.madiphs.weatherservice.RAW_DATA_CACHE_MAX_BYTES Size of the memory tier (default 128 MB, 0 disables the cache)</li>
+ * <li>org.madiphs.weatherservice.RAW_DATA_CACHE_DISK_MAX_BYTES Size of the disk tier (default 4 GB). The least recently used segments are deleted</li>
+ * <li>org.madiphs.weatherservice.SETTLEMENT_DAYS Default settlement lag (days, default 3)</li>
+ * <li>org.madiphs.weatherservice.SETTLEMENT_DAYS_[weather data source id] Settlement lag for a specific data source</li>
+ * </ul>
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class RawDataCacheBean {
+	
+	private static Logger LOGGER = LoggerFactory.getLogger(RawDataCacheBean.class);
+	
+	private final WeightedLRUCache<String, WeatherData> memoryTier;
+	private final WeatherDataSegmentStore diskTier;
+	private final long maxBytes;
+	private final long defaultSettlementDays;
+	// The requests with cached data, by data key. The coordinates are those of the returned data
+	private final SpatialIndex<SourceRequest> cachedLocations = new SpatialIndex<>(0.5);
+	
+	public RawDataCacheBean()
+	{
+		this.maxBytes = SystemUtil.getLongProperty("org.madiphs.weatherservice.RAW_DATA_CACHE_MAX_BYTES", 128L * 1024 * 1024);
+		this.defaultSettlementDays = SystemUtil.getLongProperty("org.madiphs.weatherservice.SETTLEMENT_DAYS", 3);
+		String directory = System.getProperty("org.madiphs.weatherservice.RAW_DATA_CACHE_DIR");
+		this.diskTier = new WeatherDataSegmentStore(directory != null && ! directory.isBlank() ? 
+				Paths.get(directory)
+				: Paths.get(System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir")), "weatherservice", "segments"),
+				SystemUtil.getLongProperty("org.madiphs.weatherservice.RAW_DATA_CACHE_DISK_MAX_BYTES", 4L * 1024 * 1024 * 1024)
+		);
+		this.memoryTier = new WeightedLRUCache<>(this.maxBytes);
+	}
+	
+	/**
+	 * Only data sources with historic data are cached. Requests for private weather 
+	 * stations are never cached.
+	 * @param sourceRequest
+	 * @return true if data for this request can be cached
+	 */
+	public boolean isCacheable(SourceRequest sourceRequest)
+	{
+		WeatherDataSource source = sourceRequest.getWeatherDataSource();
+		return this.maxBytes > 0
+				&& ! sourceRequest.hasCredentials()
+				&& source.getTemporal() != null
+				&& source.getTemporal().getHistoric() != null
+				&& source.getTemporal().getHistoric().getStart() != null;
+	}
+	
+	/**
+	 * Gets the data for the requested period, fetching only the days from the first 
+	 * missing or unsettled one from the data source.
+	 * @param sourceRequest
+	 * @param timeStart
+	 * @param timeEnd
+	 * @param fetcher Fetches data from the data source
+	 * @return
+	 * @throws IOException
+	 * @throws WeatherDataSourceException
+	 */
+	public WeatherData getWeatherData(SourceRequest sourceRequest, Instant timeStart, Instant timeEnd, WeatherDataFetcher fetcher) throws IOException, WeatherDataSourceException
+	{
+		ZoneId timeZone = sourceRequest.getTimeZone();
+		LocalDate settledBefore = LocalDate.now(timeZone).minusDays(this.getSettlementDays(sourceRequest.getWeatherDataSource().getId()));
+		LocalDate lastDay = timeEnd.atZone(timeZone).toLocalDate();
+		
+		// Collect the settled segments, up until the first missing one
+		List<WeatherData> segments = new ArrayList<>();
+		LocalDate day = timeStart.atZone(timeZone).toLocalDate();
+		while(! day.isAfter(lastDay) && day.isBefore(settledBefore))
+		{
+			WeatherData segment = this.getSegment(sourceRequest, day);
+			if(segment == null)
+			{
+				break;
+			}
+			segments.add(segment);
+			day = day.plusDays(1);
+		}
+		
+		if(! day.isAfter(lastDay))
+		{
+			Instant fetchStart = segments.isEmpty() ? timeStart : day.atStartOfDay(timeZone).toInstant();
+			WeatherData fetched = fetcher.fetch(fetchStart, timeEnd);
+			if(segments.isEmpty())
+			{
+				this.putSegments(sourceRequest, fetched, settledBefore);
+				return fetched;
+			}
+			LOGGER.debug("Fetching " + sourceRequest.getDataKey() + " from " + fetchStart + ", " + segments.size() + " days from cache");
+			this.putSegments(sourceRequest, fetched, settledBefore);
+			segments.add(fetched);
+		}
+		
+		// Merge the cached and fetched data
+		return new FusionEngine(Map.of()).fuse(segments, timeStart, timeEnd, sourceRequest.getInterval());
+	}
+	
+	/**
+	 * @return the settlement lag (days) for the data source
+	 */
+	public long getSettlementDays(String weatherDataSourceId)
+	{
+		return SystemUtil.getLongProperty("org.madiphs.weatherservice.SETTLEMENT_DAYS_" + weatherDataSourceId, this.defaultSettlementDays);
+	}
+	
+	/**
+	 * @return the longest settlement lag (days) configured, for the default or any data source
+	 */
+	public long getMaxSettlementDays()
+	{
+		long maxSettlementDays = this.defaultSettlementDays;
+		for(String propertyName:System.getProperties().stringPropertyNames())
+		{
+			if(propertyName.startsWith("org.madiphs.weatherservice.SETTLEMENT_DAYS_"))
+			{
+				maxSettlementDays = Math.max(maxSettlementDays, SystemUtil.getLongProperty(propertyName, this.defaultSettlementDays));
+			}
+		}
+		return maxSettlementDays;
+	}
+	
+	/**
+	 * The cached data of the weather stations and locations nearest to the given location,
+	 * e.g. for a spatial consistency check. Only cached data are used, the data sources are 
+	 * never requested. Stations and locations become known to the cache as their data are
+	 * fetched, and only settled days are cached.
+	 * 
+	 * Each station or location of a data source is one neighbor, even if its data have been 
+	 * cached for several sets of parameters.
+	 * @param longitude
+	 * @param latitude
+	 * @param excludedSourceRequests The stations and locations of these are not neighbors, e.g. the 
+	 * requests for the data that are being controlled
+	 * @param neighbors The maximum number of neighbors
+	 * @param minDistance Stations and locations closer (meters) to the location are not neighbors
+	 * @param maxDistance The maximum distance (meters) from the location
+	 * @param timeStart
+	 * @param timeEnd
+	 * @param interval
+	 * @return one data set per neighbor, nearest first, for the given period. Days that are not cached are 
+	 * missing (null) values. Neighbors without any cached data for the period are skipped
+	 */
+	public List<WeatherData> getNeighborWeatherData(
+			Double longitude, 
+			Double latitude, 
+			List<SourceRequest> excludedSourceRequests,
+			int neighbors, 
+			double minDistance, 
+			double maxDistance, 
+			Instant timeStart, 
+			Instant timeEnd, 
+			Integer interval
+	)
+	{
+		List<WeatherData> neighborWeatherData = new ArrayList<>();
+		if(this.maxBytes <= 0 || neighbors <= 0 || longitude == null || latitude == null)
+		{
+			return neighborWeatherData;
+		}
+		Set<String> seen = excludedSourceRequests.stream().map(this::getNeighborKey).collect(Collectors.toCollection(HashSet::new));
+		for(SourceRequest sourceRequest:this.cachedLocations.getNearest(longitude, latitude, Integer.MAX_VALUE, minDistance, maxDistance, r -> r.getInterval().equals(interval)))
+		{
+			if(! seen.add(this.getNeighborKey(sourceRequest)))
+			{
+				continue;
+			}
+			ZoneId timeZone = sourceRequest.getTimeZone();
+			LocalDate lastDay = timeEnd.atZone(timeZone).toLocalDate();
+			List<WeatherData> segments = new ArrayList<>();
+			for(LocalDate day = timeStart.atZone(timeZone).toLocalDate(); ! day.isAfter(lastDay); day = day.plusDays(1))
+			{
+				WeatherData segment = this.getSegment(sourceRequest, day);
+				if(segment != null)
+				{
+					segments.add(segment);
+				}
+			}
+			if(! segments.isEmpty())
+			{
+				neighborWeatherData.add(new FusionEngine(Map.of()).fuse(segments, timeStart, timeEnd, interval));
+				if(neighborWeatherData.size() >= neighbors)
+				{
+					break;
+				}
+			}
+		}
+		return neighborWeatherData;
+	}
+	
+	/**
+	 * @return identifies the station or location of the data source, regardless of the parameters
+	 */
+	private String getNeighborKey(SourceRequest sourceRequest)
+	{
+		return sourceRequest.getWeatherDataSource().getId() + "|" + sourceRequest.getLocationKey();
+	}
+	
+	/**
+	 * @return the metrics of the memory tier, and of the disk tier under "disk"
+	 */
+	public Map<String, Object> getMetrics()
+	{
+		Map<String, Object> metrics = this.memoryTier.getMetrics();
+		metrics.put("disk", this.diskTier.getMetrics());
+		return metrics;
+	}
+	
+	private WeatherData getSegment(SourceRequest sourceRequest, LocalDate day)
+	{
+		String segmentKey = sourceRequest.getDataKey() + "|" + day;
+		WeatherData segment = this.memoryTier.get(segmentKey, System.currentTimeMillis());
+		if(segment == null)
+		{
+			try
+			{
+				segment = this.diskTier.read(this.getSegmentPath(sourceRequest, day), segmentKey);
+			}
+			catch(IOException ex)
+			{
+				LOGGER.warn("Could not read segment " + segmentKey + ": " + ex.getMessage());
+				return null;
+			}
+			if(segment != null)
+			{
+				this.memoryTier.put(segmentKey, segment, this.getEstimatedSize(segment), Long.MAX_VALUE);
+			}
+		}
+		return segment;
+	}
+	
+	/**
+	 * Splits the fetched data into day segments, and stores the complete and settled ones
+	 */
+	private void putSegments(SourceRequest sourceRequest, WeatherData fetched, LocalDate settledBefore)
+	{
+		if(fetched == null 
+				|| fetched.getWeatherParameters() == null 
+				|| fetched.getLocationWeatherData() == null 
+				|| fetched.getLocationWeatherData().size() != 1
+				|| ! sourceRequest.getInterval().equals(fetched.getInterval()))
+		{
+			return;
+		}
+		ZoneId timeZone = sourceRequest.getTimeZone();
+		long interval = fetched.getInterval();
+		long fetchedStart = fetched.getTimeStart().getEpochSecond();
+		LocationWeatherData lwd = fetched.getLocationWeatherData().get(0);
+		for(LocalDate day = fetched.getTimeStart().atZone(timeZone).toLocalDate(); day.isBefore(settledBefore); day = day.plusDays(1))
+		{
+			long dayStart = day.atStartOfDay(timeZone).toEpochSecond() - fetchedStart;
+			long nextDayStart = day.plusDays(1).atStartOfDay(timeZone).toEpochSecond() - fetchedStart;
+			if(dayStart < 0)
+			{
+				continue;
+			}
+			int fromRow = (int) ((dayStart + interval - 1) / interval);
+			int toRow = (int) ((nextDayStart + interval - 1) / interval);
+			if(toRow > lwd.getLength())
+			{
+				break;
+			}
+			WeatherData segment = this.getSegment(fetched, lwd, fromRow, toRow);
+			if(segment == null)
+			{
+				continue;
+			}
+			try
+			{
+				String segmentKey = sourceRequest.getDataKey() + "|" + day;
+				this.diskTier.write(this.getSegmentPath(sourceRequest, day), segmentKey, segment);
+				this.memoryTier.put(segmentKey, segment, this.getEstimatedSize(segment), Long.MAX_VALUE);
+				if(lwd.getLongitude() != null && lwd.getLatitude() != null)
+				{
+					this.cachedLocations.put(sourceRequest.getDataKey(), sourceRequest, lwd.getLongitude(), lwd.getLatitude());
+				}
+			}
+			catch(IOException ex)
+			{
+				LOGGER.warn("Could not write segment " + sourceRequest.getDataKey() + "|" + day + ": " + ex.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * @return a copy of the given rows, or null if there are no values in them (e.g. the station has not reported yet)
+	 */
+	private WeatherData getSegment(WeatherData fetched, LocationWeatherData lwd, int fromRow, int toRow)
+	{
+		Double[][] data = new Double[toRow - fromRow][];
+		boolean hasValues = false;
+		for(int row=fromRow; row < toRow; row++)
+		{
+			data[row - fromRow] = Arrays.copyOf(lwd.getData()[row], fetched.getWeatherParameters().length);
+			for(Double value:data[row - fromRow])
+			{
+				hasValues = hasValues || value != null;
+			}
+		}
+		if(! hasValues)
+		{
+			return null;
+		}
+		LocationWeatherData segmentLwd = new LocationWeatherData(lwd.getLongitude(), lwd.getLatitude(), lwd.getAltitude(), 0, 0);
+		segmentLwd.setData(data);
+		segmentLwd.setQC(Arrays.copyOf(lwd.getQC(), fetched.getWeatherParameters().length));
+		segmentLwd.setAmalgamation(Arrays.copyOf(lwd.getAmalgamation(), fetched.getWeatherParameters().length));
+		WeatherData segment = new WeatherData();
+		segment.setTimeStart(fetched.getTimeStart().plusSeconds((long) fromRow * fetched.getInterval()));
+		segment.setTimeEnd(segment.getTimeStart().plusSeconds((long) (toRow - fromRow - 1) * fetched.getInterval()));
+		segment.setInterval(fetched.getInterval());
+		segment.setWeatherParameters(Arrays.copyOf(fetched.getWeatherParameters(), fetched.getWeatherParameters().length));
+		segment.setLocationWeatherData(new ArrayList<>(List.of(segmentLwd)));
+		return segment;
+	}
+	
+	/**
+	 * The path is not unique for the data key, see {@link WeatherDataSegmentStore}
+	 */
+	private Path getSegmentPath(SourceRequest sourceRequest, LocalDate day)
+	{
+		return Paths.get(
+				this.getSafeFileName(sourceRequest.getWeatherDataSource().getId()),
+				this.getSafeFileName(sourceRequest.getLocationKey()),
+				sourceRequest.getInterval() + "_" + Integer.toHexString(sourceRequest.getDataKey().hashCode()),
+				day + ".seg"
+		);
+	}
+	
+	private String getSafeFileName(String name)
+	{
+		return name.replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+	
+	private long getEstimatedSize(WeatherData segment)
+	{
+		int width = segment.getWeatherParameters().length;
+		return 256 + (long) segment.getLocationWeatherData().get(0).getLength() * (16 + 24L * width) + 64L * width;
+	}
+}
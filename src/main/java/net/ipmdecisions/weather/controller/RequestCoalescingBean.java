@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+
+/**
+ * Coalesces identical concurrent requests to the weather data sources. The first 
+ * caller for a given key performs the request, and any identical request arriving 
+ * while it is in flight waits for and shares the same result. Nothing is cached: 
+ * once the request completes, the next caller starts a new one.
+ * 
+ * The shared result must not be altered by the callers. Use immutable results, 
+ * e.g. the raw response text, results that are only serialized, or give each caller a copy.
+ * 
+ * The callers may have different time limits, so the shared call should not depend on the 
+ * time limit of the caller that starts it. Each waiting caller gives up at its own time limit.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class RequestCoalescingBean {
+	
+	private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+	
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	
+	/**
+	 * Performs the call, or waits for an identical call already in flight
+	 * @param key The normalized request, e.g. data source id, station or rounded coordinates, period and parameters
+	 * @param call The request
+	 * @return the result of the call
+	 * @throws ExecutionException wrapping the exception thrown by the call
+	 */
+	public <V> V execute(String key, Callable<V> call) throws ExecutionException
+	{
+		try
+		{
+			return this.execute(key, call, -1);
+		}
+		catch(TimeoutException ex)
+		{
+			// Never happens without a time limit
+			throw new ExecutionException(ex);
+		}
+	}
+	
+	/**
+	 * Performs the call, or waits for an identical call already in flight. The caller that 
+	 * performs the call runs it to completion, regardless of the time limit
+	 * @param key The normalized request, e.g. data source id, station or rounded coordinates, period and parameters
+	 * @param call The request
+	 * @param timeoutMillis The longest time to wait for an identical call already in flight. Negative: No limit
+	 * @return the result of the call
+	 * @throws ExecutionException wrapping the exception thrown by the call
+	 * @throws TimeoutException if the identical call did not complete within the time limit. The call is not affected
+	 */
+	@SuppressWarnings("unchecked")
+	public <V> V execute(String key, Callable<V> call, long timeoutMillis) throws ExecutionException, TimeoutException
+	{
+		CompletableFuture<Object> mine = new CompletableFuture<>();
+		CompletableFuture<Object> existing = this.inFlight.putIfAbsent(key, mine);
+		if(existing != null)
+		{
+			this.coalesced.incrementAndGet();
+			try
+			{
+				return (V) (timeoutMillis < 0 ? existing.get() : existing.get(timeoutMillis, TimeUnit.MILLISECONDS));
+			}
+			catch(InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new ExecutionException(ex);
+			}
+		}
+		
+		this.requests.incrementAndGet();
+		try
+		{
+			V result = call.call();
+			mine.complete(result);
+			return result;
+		}
+		catch(Exception ex)
+		{
+			mine.completeExceptionally(ex);
+			throw new ExecutionException(ex);
+		}
+		finally
+		{
+			// Make sure nobody waits forever, e.g. if the call threw an Error
+			if(! mine.isDone())
+			{
+				mine.completeExceptionally(new IllegalStateException("The request for " + key + " did not complete"));
+			}
+			this.inFlight.remove(key, mine);
+		}
+	}
+	
+	/**
+	 * @return coordinates rounded to four decimals (approx. 10 m), for use in request keys
+	 */
+	public String getCoordinateKey(Double longitude, Double latitude)
+	{
+		return String.format(Locale.ROOT, "%.4f,%.4f", longitude, latitude);
+	}
+	
+	/**
+	 * @return the number of requests performed, the number of requests that shared the result of another, and the number currently in flight
+	 */
+	public Map<String, Object> getMetrics()
+	{
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("requests", this.requests.get());
+		metrics.put("coalesced", this.coalesced.get());
+		metrics.put("inFlight", this.inFlight.size());
+		return metrics;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.controller;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+
+import net.ipmdecisions.weather.amalgamation.SourceHealth;
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+import net.ipmdecisions.weather.util.SystemUtil;
+
+/**
+ * Keeps track of the health of the weather data sources, see {@link SourceHealth}. 
+ * Sources with an open circuit are not requested, and unhealthy sources are moved 
+ * behind the healthy ones when prioritizing the sources.
+ * 
+ * Configuration (system properties):
+ * <ul>
+ * <li>org.madiphs.weatherservice.SOURCE_HEALTH_WINDOW (default 20 requests)</li>
+ * <li>org.madiphs.weatherservice.SOURCE_HEALTH_MINIMUM_REQUESTS (default 5)</li>
+ * <li>org.madiphs.weatherservice.SOURCE_HEALTH_FAILURE_PERCENT (default 50)</li>
+ * <li>org.madiphs.weatherservice.SOURCE_HEALTH_SLOW_REQUEST_SECONDS (default 10)</li>
+ * <li>org.madiphs.weatherservice.SOURCE_HEALTH_OPEN_SECONDS (default 60)</li>
+ * </ul>
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SourceHealthBean {
+	
+	/** Sources with a lower health score than this are considered degraded */
+	public static final double DEGRADED_SCORE = 0.5;
+	
+	private final Map<String, SourceHealth> sourceHealth = new ConcurrentHashMap<>();
+	private final int windowSize;
+	private final int minimumRequests;
+	private final double failureThreshold;
+	private final long slowRequestMillis;
+	private final long openMillis;
+	
+	public SourceHealthBean()
+	{
+		this.windowSize = (int) Math.max(1, SystemUtil.getLongProperty("org.madiphs.weatherservice.SOURCE_HEALTH_WINDOW", 20));
+		this.minimumRequests = (int) Math.max(1, SystemUtil.getLongProperty("org.madiphs.weatherservice.SOURCE_HEALTH_MINIMUM_REQUESTS", 5));
+		this.failureThreshold = SystemUtil.getLongProperty("org.madiphs.weatherservice.SOURCE_HEALTH_FAILURE_PERCENT", 50) / 100.0;
+		this.slowRequestMillis = SystemUtil.getLongProperty("org.madiphs.weatherservice.SOURCE_HEALTH_SLOW_REQUEST_SECONDS", 10) * 1000;
+		this.openMillis = SystemUtil.getLongProperty("org.madiphs.weatherservice.SOURCE_HEALTH_OPEN_SECONDS", 60) * 1000;
+	}
+	
+	/**
+	 * @param weatherDataSourceId
+	 * @return true if a request may be made to the source now
+	 */
+	public boolean allowRequest(String weatherDataSourceId)
+	{
+		return this.getSourceHealth(weatherDataSourceId).allowRequest(System.currentTimeMillis());
+	}
+	
+	/**
+	 * @param weatherDataSourceId
+	 * @param outcome SourceHealth.SUCCESS, EMPTY or ERROR
+	 * @param latencyMillis
+	 */
+	public void record(String weatherDataSourceId, int outcome, long latencyMillis)
+	{
+		this.getSourceHealth(weatherDataSourceId).record(outcome, latencyMillis, System.currentTimeMillis());
+	}
+	
+	/**
+	 * @param weatherDataSourceId
+	 * @return the median latency of the recent requests to the source, or -1 if not known
+	 */
+	public long getTypicalLatencyMillis(String weatherDataSourceId)
+	{
+		SourceHealth health = this.sourceHealth.get(weatherDataSourceId);
+		return health != null ? health.getTypicalLatency() : -1;
+	}
+	
+	/**
+	 * Sorts the sources (stable) so that the healthy ones come first, then the 
+	 * degraded ones, and last the ones with an open circuit. Within each group, 
+	 * the order is kept
+	 * @param weatherDataSources in priority order. Sorted in place
+	 */
+	public void sortByHealth(List<WeatherDataSource> weatherDataSources)
+	{
+		long now = System.currentTimeMillis();
+		weatherDataSources.sort(Comparator.comparingInt(wds -> this.getHealthGroup(wds.getId(), now)));
+	}
+	
+	private int getHealthGroup(String weatherDataSourceId, long now)
+	{
+		SourceHealth health = this.sourceHealth.get(weatherDataSourceId);
+		if(health == null)
+		{
+			return 0;
+		}
+		if(health.getState(now) == SourceHealth.State.OPEN)
+		{
+			return 2;
+		}
+		return health.getScore(now) < DEGRADED_SCORE ? 1 : 0;
+	}
+	
+	/**
+	 * @return the health of each source that has been requested
+	 */
+	public Map<String, Object> getStatus()
+	{
+		long now = System.currentTimeMillis();
+		Map<String, Object> status = new TreeMap<>();
+		this.sourceHealth.forEach((id, health) -> status.put(id, health.getStatus(now)));
+		return status;
+	}
+	
+	private SourceHealth getSourceHealth(String weatherDataSourceId)
+	{
+		return this.sourceHealth.computeIfAbsent(weatherDataSourceId, 
+				id -> new SourceHealth(this.windowSize, this.minimumRequests, this.failureThreshold, this.slowRequestMillis, this.openMillis)
+		);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+package net.ipmdecisions.weather.controller;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+
+import net.ipmdecisions.weather.amalgamation.SourcePlan;
+import net.ipmdecisions.weather.util.SystemUtil;
+import net.ipmdecisions.weather.util.WeightedLRUCache;
+
+/**
+ * Caches the source plans, so that repeated amalgamations for the same location don't 
+ * have to read the catalogue, look up the time zone and find the closest stations again.
+ * See {@link SourcePlan}.
+ * 
+ * Plans are identified by the version of the catalogue, the coordinates rounded to three 
+ * decimals (approx. 100 m), the sorted set of parameters and the interval. The plan is made 
+ * for the rounded coordinates. Plans made from an older catalogue are never returned, and 
+ * they are dropped when the catalogue file changes.
+ * 
+ * The maximum number of plans is set by the system property 
+ * org.madiphs.weatherservice.SOURCE_PLAN_CACHE_SIZE (default 10000, 0 disables the cache)
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SourcePlanBean {
+
+	@EJB
+	AmalgamationBean amalgamationBean;
+
+	@EJB
+	WeatherDataSourceBean weatherDataSourceBean;
+
+	private final WeightedLRUCache<String, SourcePlan> cache;
+	private final long maxPlans;
+	private volatile long catalogueVersion = Long.MIN_VALUE;
+
+	public SourcePlanBean()
+	{
+		this.maxPlans = SystemUtil.getLongProperty("org.madiphs.weatherservice.SOURCE_PLAN_CACHE_SIZE", 10000);
+		this.cache = new WeightedLRUCache<>(this.maxPlans);
+	}
+
+	/**
+	 * @param longitude
+	 * @param latitude
+	 * @param requestedParameters
+	 * @param interval
+	 * @return the plan for the location (rounded), parameters and interval
+	 * @throws IOException if the catalogue can't be read
+	 */
+	public SourcePlan getSourcePlan(Double longitude, Double latitude, List<Integer> requestedParameters, Integer interval) throws IOException
+	{
+		double roundedLongitude = Math.round(longitude * 1000) / 1000.0;
+		double roundedLatitude = Math.round(latitude * 1000) / 1000.0;
+		if(this.maxPlans <= 0)
+		{
+			return this.createSourcePlan(roundedLongitude, roundedLatitude, requestedParameters, interval);
+		}
+		long currentCatalogueVersion = weatherDataSourceBean.getCatalogueVersion();
+		if(currentCatalogueVersion != this.catalogueVersion)
+		{
+			// Frees the memory. A plan from the old catalogue that is put after this is never hit, 
+			// since the version is part of the key
+			this.cache.clear();
+			this.catalogueVersion = currentCatalogueVersion;
+		}
+		String key = currentCatalogueVersion + "|" 
+				+ String.format(Locale.ROOT, "%.3f|%.3f|", roundedLongitude, roundedLatitude)
+				+ new TreeSet<>(requestedParameters).stream().map(String::valueOf).collect(Collectors.joining(",")) + "|"
+				+ interval;
+		SourcePlan plan = this.cache.get(key, System.currentTimeMillis());
+		if(plan == null)
+		{
+			// Concurrent misses may both make the plan. They are equal, so that's harmless
+			plan = this.createSourcePlan(roundedLongitude, roundedLatitude, requestedParameters, interval);
+			this.cache.put(key, plan, 1, Long.MAX_VALUE);
+		}
+		return plan;
+	}
+
+	/**
+	 * @return the cache counters and size
+	 */
+	public Map<String, Object> getMetrics()
+	{
+		return this.cache.getMetrics();
+	}
+
+	private SourcePlan createSourcePlan(Double longitude, Double latitude, List<Integer> requestedParameters, Integer interval) throws IOException
+	{
+		return new SourcePlan(
+				longitude,
+				latitude,
+				amalgamationBean.getTimeZoneForLocation(longitude, latitude),
+				amalgamationBean.getCandidateWeatherDataSources(longitude, latitude, requestedParameters),
+				interval
+		);
+	}
+}
@@ -72,6 +72,16 @@ public class WeatherDataSourceBean {
             return retVal;
     }
 
+    /**
+     * The catalogue is read from the file every time, so anything derived from it 
+     * must be recalculated when the file changes
+     * @return the time the catalogue file was last modified (epoch milliseconds)
+     */
+    public long getCatalogueVersion()
+    {
+        return new File(System.getProperty("org.madiphs.weatherservice.DATASOURCE_LIST_FILE")).lastModified();
+    }
+
     public WeatherDataSource getWeatherDataSourceById(String id) throws IOException
     {
     	for(WeatherDataSource candidate:this.getAllWeatherDataSources())
@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.TimeZone;
 import java.util.stream.Collectors;
 import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.SystemUtil;
 import net.ipmdecisions.weather.util.vips.VIPSWeatherObservation;
 import net.ipmdecisions.weather.util.vips.WeatherUtils;
 
@@ -55,7 +56,7 @@ public class DavisFruitwebAdapter {
 
 
 
-    public final static String FRUITWEB_URL_TEMPLATE = "https://www.fruitweb.info/sc/getFile.php?id={0}&pw={1}&date={2}";
+    public final static String FRUITWEB_URL_TEMPLATE = SystemUtil.getBaseUrl("DAVIS_FRUITWEB", "https://www.fruitweb.info") + "/sc/getFile.php?id={0}&pw={1}&date={2}";
     // Davis/Fruitweb parameters, including name and aggregation type
     private final static String[][] ELEMENT_MEASUREMENT_TYPES = {
             {"RAIN","RR","SUM"},
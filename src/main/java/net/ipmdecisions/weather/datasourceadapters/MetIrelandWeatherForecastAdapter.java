@@ -36,6 +36,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
 import net.ipmdecisions.weather.entity.WeatherData;
 import net.ipmdecisions.weather.util.DOMUtils;
+import net.ipmdecisions.weather.util.SystemUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -60,7 +61,7 @@ public class MetIrelandWeatherForecastAdapter {
     Integer[] QC = {1,1,1,1};
     
 
-    private final static String IRELAND_API_URL = "http://metwdb-openaccess.ichec.ie/metno-wdb2ts/locationforecast?lat=%f&long=%f";
+    private final static String IRELAND_API_URL = SystemUtil.getBaseUrl("MET_IRELAND", "http://metwdb-openaccess.ichec.ie") + "/metno-wdb2ts/locationforecast?lat=%f&long=%f";
     
 
     
@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.SystemUtil;
 import net.ipmdecisions.weather.util.vips.VIPSWeatherObservation;
 import net.ipmdecisions.weather.util.vips.WeatherUtils;
 import org.slf4j.Logger;
@@ -55,7 +56,7 @@ public class MeteobotAPIAdapter {
 
     private final WeatherUtils weatherUtils;
 
-    public final static String METEOS_URL_TEMPLATE = "https://export.meteobot.com/v1/Generic/{0}?id={1,number,#}&startdate={2}&enddate={3}&timeFormat=iso-8601";
+    public final static String METEOS_URL_TEMPLATE = SystemUtil.getBaseUrl("METEOBOT", "https://export.meteobot.com") + "/v1/Generic/{0}?id={1,number,#}&startdate={2}&enddate={3}&timeFormat=iso-8601";
 
     private final static String[][] elementMeasurementTypes = {
             {"airTemperature", "TM", "AVG"},
@@ -37,6 +37,7 @@ import java.util.TimeZone;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.SystemUtil;
 import net.ipmdecisions.weather.util.vips.VIPSWeatherObservation;
 import net.ipmdecisions.weather.util.vips.WeatherElements;
 import net.ipmdecisions.weather.util.vips.WeatherUtils;
@@ -63,6 +64,8 @@ import org.apache.http.util.EntityUtils;
  * @author Tor-Einar Skog <tor-einar.skog@nibio.no>
  */
 public class MetosAPIAdapter {
+    private final static String API_URL = SystemUtil.getBaseUrl("METOS", "https://api.fieldclimate.com") + "/v1";
+    
     private WeatherUtils wUtils;
 
     public MetosAPIAdapter(){
@@ -191,7 +194,7 @@ public class MetosAPIAdapter {
             String authorizationString = "hmac " + publicKey + ":" + signature;
 
             // Creating request by using RequestBuilder from apache http client library; headers are set in this step as well
-            HttpUriRequest request = RequestBuilder.get().setUri("https://api.fieldclimate.com/v1" + path)
+            HttpUriRequest request = RequestBuilder.get().setUri(MetosAPIAdapter.API_URL + path)
                     //HttpUriRequest request = RequestBuilder.get().setUri(apiURL)
                     .setHeader(HttpHeaders.ACCEPT, "application/json")
                     .setHeader(HttpHeaders.AUTHORIZATION, authorizationString)
@@ -255,7 +258,7 @@ public class MetosAPIAdapter {
         String authorizationString = "hmac " + publicKey + ":" + signature;
 
         // Creating request by using RequestBuilder from apache http client library; headers are set in this step as well
-        HttpUriRequest request = RequestBuilder.get().setUri("https://api.fieldclimate.com/v1" + path)
+        HttpUriRequest request = RequestBuilder.get().setUri(MetosAPIAdapter.API_URL + path)
                 .setHeader(HttpHeaders.ACCEPT, "application/json")
                 .setHeader(HttpHeaders.AUTHORIZATION, authorizationString)
                 .setHeader(HttpHeaders.DATE, date).build();
@@ -25,6 +25,7 @@ import net.ipmdecisions.weather.controller.MetaDataBean;
 import net.ipmdecisions.weather.controller.WeatherDataSourceBean;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
 import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.SystemUtil;
 import net.ipmdecisions.weather.util.WeatherDataUtil;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
@@ -81,8 +82,8 @@ public class OpenMeteoAdapter {
     private final Map<Integer, OpenMeteoParameter> ipmToOpenMeteoResponseDaily = Map.ofEntries(entry(1003, new OpenMeteoParameter(Variable.temperature, 2, Aggregation.minimum)), entry(1004, new OpenMeteoParameter(Variable.temperature, 2, Aggregation.maximum)), entry(2001, new OpenMeteoParameter(Variable.precipitation)), entry(5001, new OpenMeteoParameter(Variable.shortwave_radiation)));
     OkHttpClient httpClient = new OkHttpClient();
     // E.g. "https://archive-api.open-meteo.com/v1/archive?latitude=52.52&longitude=13.41&start_date=2024-01-02&end_date=2024-01-16&hourly=temperature_2m,relative_humidity_2m,rain,wind_speed_10m";
-    private final String HISTORIC_ENDPOINT_TPL = "https://archive-api.open-meteo.com/v1/archive?format=flatbuffers&latitude=%1$s&longitude=%2$s&start_date=%3$s&end_date=%4$s&%5$s&timezone=%6$s";
-    private final String FORECAST_ENDPOINT_TPL = "https://api.open-meteo.com/v1/forecast?format=flatbuffers&past_days=2&latitude=%1$s&longitude=%2$s&%3$s&timezone=%4$s";
+    private final String HISTORIC_ENDPOINT_TPL = SystemUtil.getBaseUrl("OPENMETEO_ARCHIVE", "https://archive-api.open-meteo.com") + "/v1/archive?format=flatbuffers&latitude=%1$s&longitude=%2$s&start_date=%3$s&end_date=%4$s&%5$s&timezone=%6$s";
+    private final String FORECAST_ENDPOINT_TPL = SystemUtil.getBaseUrl("OPENMETEO", "https://api.open-meteo.com") + "/v1/forecast?format=flatbuffers&past_days=2&latitude=%1$s&longitude=%2$s&%3$s&timezone=%4$s";
 
 
     public OpenMeteoAdapter() {
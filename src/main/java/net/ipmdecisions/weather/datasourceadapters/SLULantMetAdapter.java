@@ -43,6 +43,7 @@ import org.joda.time.LocalDateTime;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
 import net.ipmdecisions.weather.entity.WeatherData;
 import net.ipmdecisions.weather.entity.WeatherDataSourceException;
+import net.ipmdecisions.weather.util.SystemUtil;
 import net.ipmdecisions.weather.util.vips.WeatherUtils;
 
 /**
@@ -69,7 +70,7 @@ public class SLULantMetAdapter {
 	 * elementMeasurementTypeList = comma separated list of weather parameters (VIPS parameter codes)
 	 * nDegrees and eDegrees = defining the square around the centerWGSn/e to include. Set to 0 to get exactly one point
 	 */
-	private final static String SLU_API_URL = "https://www.ffe.slu.se/lm/json/LantmetDWL.cfm"
+	private final static String SLU_API_URL = SystemUtil.getBaseUrl("SLU_LANTMET", "https://www.ffe.slu.se") + "/lm/json/LantmetDWL.cfm"
 			+ "?centerWGS84n=%d"
 			+ "&centerWGS84e=%d"
 			+ "&outputType=JSON"
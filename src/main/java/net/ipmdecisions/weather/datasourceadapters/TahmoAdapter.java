@@ -18,6 +18,7 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.SystemUtil;
 import net.ipmdecisions.weather.util.vips.InvalidAggregationTypeException;
 import net.ipmdecisions.weather.util.vips.VIPSWeatherObservation;
 import net.ipmdecisions.weather.util.vips.WeatherObservationListException;
@@ -231,7 +232,7 @@ public class TahmoAdapter {
     }
 
     public static class TahmoConnection {
-        private final static String URL_MEASUREMENTS = "https://datahub.tahmo.org/services/measurements/v2/stations/{0}/measurements/{1}?start={2}&end={3}&variable={4}";
+        private final static String URL_MEASUREMENTS = SystemUtil.getBaseUrl("TAHMO", "https://datahub.tahmo.org") + "/services/measurements/v2/stations/{0}/measurements/{1}?start={2}&end={3}&variable={4}";
         // e.g. https://datahub.tahmo.org/services/measurements/v2/stations/TA00321/measurements/controlled?start=2021-01-01T00:00:00Z&end=2021-01-02T00:00:00Z&variable=pr
 
         public JsonNode findTahmoSeriesForParam(String tahmoParam, String stationCode, String start, String end, String userName, String password) throws ParseWeatherDataException {
@@ -37,6 +37,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
 import net.ipmdecisions.weather.entity.WeatherData;
 import net.ipmdecisions.weather.util.DOMUtils;
+import net.ipmdecisions.weather.util.SystemUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -58,7 +59,7 @@ public class YrWeatherForecastAdapter {
     Integer[] QC = {1,1,1,1};
     
 
-    private final static String YR_API_URL = "https://api.met.no/weatherapi/locationforecast/2.0/classic?lat=%f&lon=%f&altitude=%d";
+    private final static String YR_API_URL = SystemUtil.getBaseUrl("YR", "https://api.met.no") + "/weatherapi/locationforecast/2.0/classic?lat=%f&lon=%f&altitude=%d";
     
 
     
@@ -30,6 +30,7 @@ import java.util.TimeZone;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.ws.BindingProvider;
 
 import net.ipmdecisions.weather.datasourceadapters.dmi.generated.ArrayOfWeatherDataModel;
 import net.ipmdecisions.weather.datasourceadapters.dmi.generated.WeatherDataModel;
@@ -41,6 +42,7 @@ import net.ipmdecisions.weather.datasourceadapters.dmi.generated.WeatherResponse
 import net.ipmdecisions.weather.datasourceadapters.dmi.generated.WeatherService;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
 import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.SystemUtil;
 
 
 /**
@@ -51,6 +53,10 @@ import net.ipmdecisions.weather.entity.WeatherData;
  */
 public class DMIPointWebDataParser {
 
+    private static final String DEFAULT_BASE_URL = "https://dmiweatherservice-plant.dlbr.dk";
+    //Set with the system property org.madiphs.weatherservice.DMI_POINTWEB_BASE_URL. The WSDL is still read from DMI
+    private static final String BASE_URL = SystemUtil.getBaseUrl("DMI_POINTWEB", DEFAULT_BASE_URL);
+
     private static final Map<Integer, WeatherDataParameter> PARAM_MAP;
     static
     {
@@ -80,6 +86,10 @@ public class DMIPointWebDataParser {
 
     		
             IWeatherService proxy = new WeatherService().getSslOffloadedBasicHttpBindingIWeatherService();
+            if(!DMIPointWebDataParser.BASE_URL.equals(DMIPointWebDataParser.DEFAULT_BASE_URL))
+            {
+                ((BindingProvider) proxy).getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, DMIPointWebDataParser.BASE_URL + "/DMIWeatherService.svc");
+            }
             UseableArrayOfWeatherDataSource wdsource = new UseableArrayOfWeatherDataSource();
             wdsource.add(WeatherDataSource.OBS);
             wdsource.add(WeatherDataSource.FORECAST);
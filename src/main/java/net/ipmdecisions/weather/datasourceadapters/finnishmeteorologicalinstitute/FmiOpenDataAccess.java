@@ -35,6 +35,8 @@ import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import net.ipmdecisions.weather.util.SystemUtil;
+
 /**
  * 
  * @author Markku Koistinen <markku.koistinen@luke.fi>
@@ -42,6 +44,9 @@ import org.xml.sax.SAXException;
  */
 public class FmiOpenDataAccess {
     
+    /** FMI's WFS. Set the base URL with the system property org.madiphs.weatherservice.FMI_BASE_URL */
+    public static final String WFS_URL = SystemUtil.getBaseUrl("FMI", "http://opendata.fmi.fi") + "/wfs";
+    
     public FmiOpenDataAccess() {
         
     }
@@ -56,7 +61,7 @@ public class FmiOpenDataAccess {
         fmiDateTime += "Z";
         //System.out.println(fmiDateTime);
         //String url = "http://data.fmi.fi/fmi-apikey/49804794-1f38-46f0-adad-bb3d1aae5ffa/wfs?request=getFeature&storedquery_id=fmi::forecast::hirlam::surface::point::multipointcoverage&place=Vihti&endtime" + fmiDateTime;
-        String url = "http://opendata.fmi.fi/wfs?request=getFeature&storedquery_id=fmi::forecast::hirlam::surface::point::multipointcoverage&place=Vihti&endtime" + fmiDateTime;
+        String url = WFS_URL + "?request=getFeature&storedquery_id=fmi::forecast::hirlam::surface::point::multipointcoverage&place=Vihti&endtime" + fmiDateTime;
         response = restGet(url);
         return response;
     }
@@ -106,7 +111,7 @@ public class FmiOpenDataAccess {
                 endDateISO = newEndDateTime.replace(" ", "T");
                 endDateISO += "Z";
                 //url = "http://data.fmi.fi/fmi-apikey/49804794-1f38-46f0-adad-bb3d1aae5ffa/wfs?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
-                url = "http://opendata.fmi.fi/wfs?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
+                url = WFS_URL + "?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
                 startDateTime = newEndDateTime;
                 fmiResponse = restGet(url);
                 response += fmiParser.getAsJSON_prototype(fmiResponse, temporalFactor);
@@ -119,7 +124,7 @@ public class FmiOpenDataAccess {
         endDateISO = endDateTime.replace(" ", "T");
         endDateISO += "Z";
         //url = "http://data.fmi.fi/fmi-apikey/49804794-1f38-46f0-adad-bb3d1aae5ffa/wfs?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
-        url = "http://opendata.fmi.fi/wfs?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
+        url = WFS_URL + "?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
         fmiResponse = restGet(url);
         response += fmiParser.getAsJSON_prototype(fmiResponse, temporalFactor);
         response = response.replace("][", ", ");
@@ -185,7 +190,7 @@ public class FmiOpenDataAccess {
                 endDateISO += "Z";
                 //System.out.println("End: " + newEndDateTime);
                 //url = "http://data.fmi.fi/fmi-apikey/49804794-1f38-46f0-adad-bb3d1aae5ffa/wfs?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
-                url = "http://opendata.fmi.fi/wfs?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
+                url = WFS_URL + "?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
                 startDateTime = newEndDateTime;
                 fmiResponse = restGet(url);
                 response += fmiParser.getAsJSON(fmiResponse, temporalFactor);
@@ -197,7 +202,7 @@ public class FmiOpenDataAccess {
         endDateISO = endDateTime.replace(" ", "T");
         endDateISO += "Z";
         //url = "http://data.fmi.fi/fmi-apikey/49804794-1f38-46f0-adad-bb3d1aae5ffa/wfs?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
-        url = "http://opendata.fmi.fi/wfs?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
+        url = WFS_URL + "?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage&fmisid=" + siteID + "&maxlocations=1&starttime=" + startDateISO + "&endtime=" + endDateISO;
         fmiResponse = restGet(url);
         response += fmiParser.getAsJSON(fmiResponse, temporalFactor);
         response = response.replace("][", ", ");
@@ -215,7 +220,7 @@ public class FmiOpenDataAccess {
     {
         try
         {
-        String URLTemplate = "http://opendata.fmi.fi/wfs?request=getFeature&storedquery_id=fmi::observations::radiation::multipointcoverage&fmisid={0}&parameters=GLOB_1MIN&starttime={1}&endtime={2}";
+        String URLTemplate = WFS_URL + "?request=getFeature&storedquery_id=fmi::observations::radiation::multipointcoverage&fmisid={0}&parameters=GLOB_1MIN&starttime={1}&endtime={2}";
             /*System.out.println(MessageFormat.format(URLTemplate, 
                     fmiSid, 
                     DateTimeFormatter.ISO_INSTANT.format(startDateTime), 
@@ -281,7 +286,7 @@ public class FmiOpenDataAccess {
     {
         try
         {
-            String URLTemplate = "http://opendata.fmi.fi/wfs?storedquery_id=fmi::forecast::hirlam::surface::point::multipointcoverage&latlon={0},{1}&request=getFeature&starttime={2}&parameters=Temperature,Humidity,WindSpeedMS,DewPoint,Precipitation1h,radiationglobal";
+            String URLTemplate = WFS_URL + "?storedquery_id=fmi::forecast::hirlam::surface::point::multipointcoverage&latlon={0},{1}&request=getFeature&starttime={2}&parameters=Temperature,Humidity,WindSpeedMS,DewPoint,Precipitation1h,radiationglobal";
             // Get today at midnight, GMT time zone
             LocalDateTime todayAtMidnight = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0);
             ZoneId UTCId = ZoneId.of("UTC");
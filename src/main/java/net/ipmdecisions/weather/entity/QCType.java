@@ -40,6 +40,8 @@ public class QCType {
     public final static Integer FAILED_LOGIC_TEST = 16;
     public final static Integer FAILED_STEP_TEST = 32;
     public final static Integer FAILED_FREEZE_TEST = 64;
+    // 128 is reserved for missing values, see qc_tests.yaml
+    public final static Integer FAILED_SPATIAL_TEST = 256;
     
     private Integer id;
     private String name, description;
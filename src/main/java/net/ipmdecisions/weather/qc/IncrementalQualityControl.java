@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.qc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.QCType;
+import net.ipmdecisions.weather.entity.WeatherData;
+
+/**
+ * Quality control of a dataset that grows over time, e.g. the observations of a 
+ * weather station that arrive hour by hour. 
+ * 
+ * The step and freeze tests need the values before the new rows, and the QC result 
+ * of a weather parameter covers all the rows of the dataset. Instead of testing the
+ * whole dataset again, the state of the tests after the last tested row is kept (per 
+ * location and weather parameter: the last value, the length of the current run of 
+ * equal values and the failed tests so far). Then only the new rows are tested, and 
+ * the result is the same as if the whole dataset had been tested.
+ * 
+ * The state can be encoded as a compact string, to be stored by the client. The state
+ * belongs to the client's dataset, so it is not kept in the server, where clients could 
+ * get each other's states.
+ */
+public class IncrementalQualityControl {
+
+    private static final int VERSION = 1;
+
+    private String qcType;
+    private Integer[] weatherParameters;
+    private Integer interval;
+    //The time of the last tested row. Null if no rows have been tested
+    private Instant timeEnd;
+    //One per location
+    private QCKernel.State[] states;
+
+    /**
+     * No rows tested yet
+     */
+    public IncrementalQualityControl() {
+    
+    }
+
+    /**
+     * Runs the quality control on the rows of the weather data that are after the
+     * last tested row, and updates the state. Rows at or before the last tested row
+     * are skipped. If there is a gap between the last tested row and the new rows, 
+     * the rows in the gap are tested as missing (all values null) before the new rows.
+     * 
+     * If the weather data do not match the state (other weather parameters, 
+     * interval, number of locations or QC type, or rows that are not aligned with
+     * the tested rows), the state is discarded and all the rows are tested.
+     * 
+     * @param weatherData The weather data. The QC arrays are updated in place
+     * @param qcType RT, NONRT or ALL (default)
+     * @return The weather data, with the QC results of all the rows tested so far
+     */
+    public WeatherData getQC(WeatherData weatherData, String qcType) {
+        if (qcType == null) qcType = "ALL";
+        List<LocationWeatherData> locationWeatherData = weatherData.getLocationWeatherData();
+        Integer[] weatherParameters = weatherData.getWeatherParameters();
+
+        if (!this.isResumable(weatherData, qcType)) {
+            this.qcType = qcType;
+            this.weatherParameters = weatherParameters.clone();
+            this.interval = weatherData.getInterval();
+            this.timeEnd = null;
+            this.states = new QCKernel.State[locationWeatherData.size()];
+            for (int location=0; location < this.states.length; location++) {
+                this.states[location] = new QCKernel.State(weatherParameters.length);
+            }
+        }
+
+        QCKernel qcKernel = new QCKernel(weatherParameters, !qcType.equals("NONRT"), !qcType.equals("RT"));
+        int firstRow = this.timeEnd == null ? 0 
+                : (int) Math.max(0, (this.timeEnd.getEpochSecond() - weatherData.getTimeStart().getEpochSecond()) / this.interval + 1);
+        //The rows between the last tested row and the first new row
+        long gapRows = this.timeEnd == null ? 0
+                : Math.max(0, (weatherData.getTimeStart().getEpochSecond() - this.timeEnd.getEpochSecond()) / this.interval - 1);
+        Double[] missingRow = new Double[weatherParameters.length];
+        int rows = 0;
+        for (int location=0; location < this.states.length; location++) {
+            LocationWeatherData locationWeatherDataObject = locationWeatherData.get(location);
+            Double[][] data = locationWeatherDataObject.getData() != null ? locationWeatherDataObject.getData() : new Double[0][];
+            for (long row=0; row < gapRows && data.length > 0; row++) {
+                qcKernel.test(missingRow, this.states[location]);
+            }
+            for (int row=firstRow; row < data.length; row++) {
+                qcKernel.test(data[row], this.states[location]);
+            }
+            rows = Math.max(rows, data.length);
+
+            Integer[] qc = qcKernel.addResults(this.states[location], locationWeatherDataObject.getQC());
+            for (int j=0; j < qc.length; j++) {
+                // If none of the tests have failed, we can declare the data as valid.
+                if (QCType.NO_QC.equals(qc[j])) {
+                    qc[j] = QCType.OK_FROM_IPM_DECISIONS;
+                }
+            }
+            locationWeatherDataObject.setQC(qc);
+        }
+
+        if (rows > firstRow && this.hasTimeGrid(weatherData)) {
+            this.timeEnd = weatherData.getTimeStart().plusSeconds((long) (rows - 1) * this.interval);
+        }
+        return weatherData;
+    }
+
+    /**
+     * @return The time of the last tested row, or null if no rows have been tested
+     */
+    public Instant getTimeEnd() {
+        return this.timeEnd;
+    }
+
+    private boolean isResumable(WeatherData weatherData, String qcType) {
+        //Without a time grid, the new rows cannot be told from the tested ones
+        if (this.states == null || !this.hasTimeGrid(weatherData) || !qcType.equals(this.qcType) 
+                || !Arrays.equals(weatherData.getWeatherParameters(), this.weatherParameters)
+                || !weatherData.getInterval().equals(this.interval)
+                || this.states.length != weatherData.getLocationWeatherData().size()) {
+            return false;
+        }
+        //The new rows must be on the same time grid as the tested ones
+        return this.timeEnd == null 
+                || (this.timeEnd.getEpochSecond() - weatherData.getTimeStart().getEpochSecond()) % this.interval == 0;
+    }
+
+    private boolean hasTimeGrid(WeatherData weatherData) {
+        return weatherData.getTimeStart() != null && weatherData.getInterval() != null && weatherData.getInterval() > 0;
+    }
+
+    /**
+     * @return The state as an URL safe string, see {@link #decode(String)}
+     */
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeBoolean(this.states != null);
+            if (this.states != null) {
+                out.writeUTF(this.qcType);
+                out.writeInt(this.interval != null ? this.interval : 0);
+                out.writeLong(this.timeEnd != null ? this.timeEnd.getEpochSecond() : Long.MIN_VALUE);
+                out.writeShort(this.weatherParameters.length);
+                for (Integer weatherParameter : this.weatherParameters) {
+                    out.writeInt(weatherParameter);
+                }
+                out.writeShort(this.states.length);
+                for (QCKernel.State state : this.states) {
+                    state.write(out);
+                }
+            }
+        } catch (IOException ex) {
+            //Not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(ex);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @param encoded The state, as returned by {@link #encode()}
+     * @return The decoded state
+     * @throws IllegalArgumentException if the state is malformed
+     */
+    public static IncrementalQualityControl decode(String encoded) {
+        IncrementalQualityControl incrementalQualityControl = new IncrementalQualityControl();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(encoded)))) {
+            if (in.readUnsignedByte() != VERSION) {
+                throw new IllegalArgumentException("Malformed QC state: Unknown version");
+            }
+            if (in.readBoolean()) {
+                incrementalQualityControl.qcType = in.readUTF();
+                int interval = in.readInt();
+                incrementalQualityControl.interval = interval != 0 ? interval : null;
+                long timeEnd = in.readLong();
+                incrementalQualityControl.timeEnd = timeEnd != Long.MIN_VALUE ? Instant.ofEpochSecond(timeEnd) : null;
+                incrementalQualityControl.weatherParameters = new Integer[in.readUnsignedShort()];
+                for (int index=0; index < incrementalQualityControl.weatherParameters.length; index++) {
+                    incrementalQualityControl.weatherParameters[index] = in.readInt();
+                }
+                incrementalQualityControl.states = new QCKernel.State[in.readUnsignedShort()];
+                for (int location=0; location < incrementalQualityControl.states.length; location++) {
+                    incrementalQualityControl.states[location] = QCKernel.State.read(in, incrementalQualityControl.weatherParameters.length);
+                }
+            }
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("Malformed QC state: Unexpected data at the end");
+            }
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Malformed QC state: " + ex.getMessage());
+        }
+        return incrementalQualityControl;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.qc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import net.ipmdecisions.weather.entity.QCType;
+import net.ipmdecisions.weather.qc.util.QCHelpers;
+import net.ipmdecisions.weather.qc.util.QCTestType;
+
+/**
+ * Runs the quality control tests for a set of weather parameters in one pass 
+ * over the data. The tests give the same results as the separate tests in
+ * {@link QCRTTester} and {@link QCNonRTTester}:
+ * 
+ * - Real time: Prequalification, interval and logical tests
+ * - Non-real time: Freeze and step tests
+ * 
+ * The thresholds and the logical test tuples are resolved once, when the kernel 
+ * is created, so the same kernel should be used for all locations of a dataset.
+ * The data are read row by row, without copying the columns.
+ */
+public class QCKernel {
+
+    private final int columns;
+    private final boolean realTime;
+    private final boolean nonRealTime;
+
+    //Interval test
+    private final boolean[] intervalTested;
+    private final double[] lowerLimits;
+    private final double[] upperLimits;
+
+    //Step test
+    private final boolean[] stepTested;
+    private final boolean[] stepRelative;
+    private final double[] stepThresholds;
+
+    //Freeze test
+    private final boolean[] freezeTested;
+    private final double[] freezeThresholds;
+    private final boolean[] precipitation;
+
+    //Logical test. Indices of mean, min and max values, see QCHelpers.getLogicalTuplesFromWeatherParameters
+    private final Integer[][] logicalTuples;
+
+    //Columns that can be tested independently of the others, and the logical test tuples within them
+    private final int[] allColumns;
+    private final List<int[]> columnGroups;
+    private final List<Integer[][]> columnGroupTuples;
+
+    /**
+     * @param weatherParameters The weather parameters of the dataset
+     * @param realTime Run the real time tests
+     * @param nonRealTime Run the non-real time tests
+     */
+    public QCKernel(Integer[] weatherParameters, boolean realTime, boolean nonRealTime) {
+        this.columns = weatherParameters.length;
+        this.realTime = realTime;
+        this.nonRealTime = nonRealTime;
+        this.intervalTested = new boolean[this.columns];
+        this.lowerLimits = new double[this.columns];
+        this.upperLimits = new double[this.columns];
+        this.stepTested = new boolean[this.columns];
+        this.stepRelative = new boolean[this.columns];
+        this.stepThresholds = new double[this.columns];
+        this.freezeTested = new boolean[this.columns];
+        this.freezeThresholds = new double[this.columns];
+        this.precipitation = new boolean[this.columns];
+
+        for (int index=0; index < this.columns; index++) {
+            int weatherParameter = weatherParameters[index];
+            Threshold threshold = ThresholdData.getThreshold(weatherParameter);
+
+            if (threshold != null && threshold.getLowerLimit() != null && threshold.getUpperLimit() != null
+                    && QCHelpers.isWeatherParameterHandledByQCTest(weatherParameter, QCTestType.INTERVAL)) {
+                this.intervalTested[index] = true;
+                this.lowerLimits[index] = threshold.getLowerLimit();
+                this.upperLimits[index] = threshold.getUpperLimit();
+            }
+
+            //Only absolute and relative step tests are defined
+            if (threshold != null && threshold.getStepTestThreshold() != null 
+                    && ("absolute".equals(threshold.getStepTestThresholdType()) || "relative".equals(threshold.getStepTestThresholdType()))
+                    && QCHelpers.isWeatherParameterHandledByQCTest(weatherParameter, QCTestType.STEP)) {
+                this.stepTested[index] = true;
+                this.stepRelative[index] = "relative".equals(threshold.getStepTestThresholdType());
+                this.stepThresholds[index] = threshold.getStepTestThreshold();
+            }
+
+            if (QCHelpers.isWeatherParameterHandledByQCTest(weatherParameter, QCTestType.FREEZE)) {
+                this.freezeTested[index] = true;
+                this.freezeThresholds[index] = threshold != null && threshold.getFreezeTestThreshold() != null ?
+                        threshold.getFreezeTestThreshold()
+                        : QCNonRTTester.defaultFreezeLengthThresholdValue;
+                this.precipitation[index] = QCHelpers.isWeatherParameterPrecipitation(weatherParameter);
+            }
+        }
+
+        this.logicalTuples = realTime ?
+                QCHelpers.getLogicalTuplesFromWeatherParameters(QCHelpers.filterWeatherParametersBasedOnQCType(weatherParameters, QCTestType.LOGICAL))
+                : new Integer[0][];
+
+        this.allColumns = IntStream.range(0, this.columns).toArray();
+        this.columnGroups = new ArrayList<>();
+        this.columnGroupTuples = new ArrayList<>();
+        //The columns in a logical test tuple must be tested together
+        boolean[] inTuple = new boolean[this.columns];
+        for (Integer[] tuple : this.logicalTuples) {
+            this.columnGroups.add(Arrays.stream(tuple).filter(Objects::nonNull).mapToInt(Integer::intValue).toArray());
+            this.columnGroupTuples.add(new Integer[][] {tuple});
+            for (Integer index : tuple) {
+                if (index != null) {
+                    inTuple[index] = true;
+                }
+            }
+        }
+        for (int index=0; index < this.columns; index++) {
+            if (!inTuple[index]) {
+                this.columnGroups.add(new int[] {index});
+                this.columnGroupTuples.add(new Integer[0][]);
+            }
+        }
+    }
+
+    /**
+     * @return The number of groups of columns that can be tested independently, see {@link #apply(Double[][], Integer[], int)}
+     */
+    public int getColumnGroupCount() {
+        return this.columnGroups.size();
+    }
+
+    /**
+     * Runs the tests on the data of one location
+     * @param data Location weather data, one row per time step and one column per weather parameter
+     * @param qcResult The QC results so far, one per weather parameter. The results of the tests are added (bitwise or)
+     * @return qcResult
+     */
+    public Integer[] apply(Double[][] data, Integer[] qcResult) {
+        return this.apply(data, qcResult, this.allColumns, this.logicalTuples);
+    }
+
+    /**
+     * Runs the tests for one group of columns on the data of one location. Only the 
+     * results of the columns in the group are changed, so the groups can be tested
+     * in parallel
+     * @param data Location weather data, one row per time step and one column per weather parameter
+     * @param qcResult The QC results so far, one per weather parameter. The results of the tests are added (bitwise or)
+     * @param columnGroup The group number, from 0 to {@link #getColumnGroupCount()} - 1
+     * @return qcResult
+     */
+    public Integer[] apply(Double[][] data, Integer[] qcResult, int columnGroup) {
+        return this.apply(data, qcResult, this.columnGroups.get(columnGroup), this.columnGroupTuples.get(columnGroup));
+    }
+
+    private Integer[] apply(Double[][] data, Integer[] qcResult, int[] columnIndexes, Integer[][] tuples) {
+        if (data == null) {
+            return qcResult;
+        }
+
+        State state = this.newState();
+        for (Double[] row : data) {
+            this.test(row, state, columnIndexes, tuples);
+        }
+        return this.addResults(state, qcResult, columnIndexes);
+    }
+
+    /**
+     * @return The state of the tests before the first row of a location, see {@link #test(Double[], State)}
+     */
+    public State newState() {
+        return new State(this.columns);
+    }
+
+    /**
+     * Runs the tests on the next row of a location, so that the data can be tested 
+     * without holding all of them in memory
+     * @param row The values of the weather parameters at one time step
+     * @param state The state of the tests after the previous rows of the location. Updated
+     */
+    public void test(Double[] row, State state) {
+        this.test(row, state, this.allColumns, this.logicalTuples);
+    }
+
+    /**
+     * @param state The state of the tests after the last row of a location
+     * @param qcResult The QC results so far, one per weather parameter. The results of the tests are added (bitwise or)
+     * @return qcResult
+     */
+    public Integer[] addResults(State state, Integer[] qcResult) {
+        return this.addResults(state, qcResult, this.allColumns);
+    }
+
+    private Integer[] addResults(State state, Integer[] qcResult, int[] columnIndexes) {
+        for (int index : columnIndexes) {
+            qcResult[index] = qcResult[index] | state.testResults[index];
+        }
+        return qcResult;
+    }
+
+    private void test(Double[] row, State state, int[] columnIndexes, Integer[][] tuples) {
+        //The step and freeze tests need at least two values, which they get from the state
+        for (int index : columnIndexes) {
+            Double weatherParameterValue = row[index];
+            if (weatherParameterValue == null) {
+                //Prequalification test
+                if (this.realTime) {
+                    state.testResults[index] |= QCType.FAILED_NAN;
+                }
+                continue;
+            }
+            double value = weatherParameterValue;
+
+            //Interval test
+            if (this.realTime && this.intervalTested[index] && (value > this.upperLimits[index] || value < this.lowerLimits[index])) {
+                state.testResults[index] |= QCType.FAILED_INTERVAL_TEST;
+            }
+
+            if (this.nonRealTime) {
+                //Step test
+                if (this.stepTested[index] && state.hasPrevious[index] && this.isStepTooLarge(index, state.previous[index], value)) {
+                    state.testResults[index] |= QCType.FAILED_STEP_TEST;
+                }
+                //Freeze test
+                if (this.freezeTested[index]) {
+                    if (!state.hasPrevious[index] || Double.compare(state.previous[index], value) != 0) {
+                        state.equalValues[index] = 1;
+                    } else {
+                        state.equalValues[index]++;
+                        //Precipitation with 0.0mm cannot fail
+                        if (!(this.precipitation[index] && Double.compare(value, 0.0) == 0) && state.equalValues[index] > this.freezeThresholds[index]) {
+                            state.testResults[index] |= QCType.FAILED_FREEZE_TEST;
+                        }
+                    }
+                }
+            }
+            state.hasPrevious[index] = true;
+            state.previous[index] = value;
+        }
+
+        //Logical test
+        for (Integer[] tuple : tuples) {
+            Double mean = tuple[0] != null ? row[tuple[0]] : null;
+            Double min = tuple[1] != null ? row[tuple[1]] : null;
+            Double max = tuple[2] != null ? row[tuple[2]] : null;
+            // check that minValue <= maxValue
+            if (min != null && max != null && min > max) {
+                state.testResults[tuple[1]] |= QCType.FAILED_LOGIC_TEST;
+                state.testResults[tuple[2]] |= QCType.FAILED_LOGIC_TEST;
+            }
+            // check that minValue <= mean
+            if (mean != null && min != null && min > mean) {
+                state.testResults[tuple[0]] |= QCType.FAILED_LOGIC_TEST;
+                state.testResults[tuple[1]] |= QCType.FAILED_LOGIC_TEST;
+            }
+            // check that mean <= maxValue
+            if (mean != null && max != null && mean > max) {
+                state.testResults[tuple[0]] |= QCType.FAILED_LOGIC_TEST;
+                state.testResults[tuple[2]] |= QCType.FAILED_LOGIC_TEST;
+            }
+        }
+    }
+
+    /**
+     * Step test, see {@link QCNonRTTester#getStepTestResult(Double[], double, String)}
+     */
+    private boolean isStepTooLarge(int index, double previousValue, double value) {
+        double thresholdValue = this.stepThresholds[index];
+        if (this.stepRelative[index]) {
+            double testValueMax = previousValue + ((previousValue/100) * thresholdValue);
+            double testValueMin = previousValue - ((previousValue/100) * thresholdValue);
+            return value >= testValueMax || value <= testValueMin;
+        }
+        return Math.abs(previousValue - value) >= thresholdValue;
+    }
+
+    /**
+     * What the tests need to know about the rows that have been tested so far, per 
+     * weather parameter. The size does not depend on the number of rows
+     */
+    public static final class State {
+
+        //The results of the tests so far
+        final int[] testResults;
+        //The last value that was not null, for the step and freeze tests
+        final boolean[] hasPrevious;
+        final double[] previous;
+        //Number of equal values in a row, for the freeze test
+        final int[] equalValues;
+
+        State(int columns) {
+            this.testResults = new int[columns];
+            this.hasPrevious = new boolean[columns];
+            this.previous = new double[columns];
+            this.equalValues = new int[columns];
+        }
+
+        /**
+         * Writes the state in a compact binary form, see {@link #read(DataInputStream, int)}
+         */
+        void write(DataOutputStream out) throws IOException {
+            for (int index=0; index < this.testResults.length; index++) {
+                out.writeByte(this.testResults[index]);
+                out.writeBoolean(this.hasPrevious[index]);
+                //The freeze count is only set together with the previous value
+                if (this.hasPrevious[index]) {
+                    out.writeDouble(this.previous[index]);
+                    out.writeInt(this.equalValues[index]);
+                }
+            }
+        }
+
+        static State read(DataInputStream in, int columns) throws IOException {
+            State state = new State(columns);
+            for (int index=0; index < columns; index++) {
+                state.testResults[index] = in.readUnsignedByte();
+                state.hasPrevious[index] = in.readBoolean();
+                if (state.hasPrevious[index]) {
+                    state.previous[index] = in.readDouble();
+                    state.equalValues[index] = in.readInt();
+                }
+            }
+            return state;
+        }
+    }
+}
@@ -26,7 +26,6 @@ import java.util.List;
 import net.ipmdecisions.weather.entity.QCType;
 import net.ipmdecisions.weather.qc.util.QCHelpers;
 import net.ipmdecisions.weather.qc.util.QCTestType;
-import org.json.JSONObject;
 
 /**
  * Collection of static methods for doing quality control checks
@@ -41,7 +40,7 @@ public class QCNonRTTester {
      * Used in Freeze QC test as a default value, when a weather parameter does 
      * not have `freeze_test_threshold` defined in `threshoddata.json`.
      */
-    private static final Double defaultFreezeLengthThresholdValue = 5.0;
+    static final Double defaultFreezeLengthThresholdValue = 5.0;
 
     public QCNonRTTester() { 
     }
@@ -69,18 +68,16 @@ public class QCNonRTTester {
         //Default QC response is 0.
         int returnValue = QCType.NO_QC;
 
-        //ThresholdData object
-        ThresholdData thresholdData = new ThresholdData();
-        //Weather data parameter key specific threshold data object
-        JSONObject thresholdDataObject = thresholdData.getThresholdDataObject(String.valueOf(weatherParameter));
+        //Weather data parameter key specific threshold data from the preloaded table
+        Threshold thresholdDataObject = ThresholdData.getThreshold(weatherParameter);
 
         //Run the test if the threshold data exists.
-        if (thresholdDataObject.has("step_test_threshold") && thresholdDataObject.has("step_test_threshold_type")) {
+        if (thresholdDataObject != null && thresholdDataObject.getStepTestThreshold() != null && thresholdDataObject.getStepTestThresholdType() != null) {
             //Threshold value from threshold data.
-            double thresholdValue = thresholdDataObject.getDouble("step_test_threshold");
+            double thresholdValue = thresholdDataObject.getStepTestThreshold();
             //Variable for step test type. This is weather data parameter specific and
             //is either absolute or relative.
-            String thresholdType = thresholdDataObject.getString("step_test_threshold_type");
+            String thresholdType = thresholdDataObject.getStepTestThresholdType();
             returnValue = getStepTestResult(weatherParameterValues, thresholdValue, thresholdType);
         }
         
@@ -25,7 +25,6 @@ import java.util.regex.Pattern;
 import net.ipmdecisions.weather.entity.QCType;
 import net.ipmdecisions.weather.qc.util.QCTestType;
 import net.ipmdecisions.weather.qc.util.QCHelpers;
-import org.json.JSONObject;
 
 /**
  * Collection of static methods for doing quality control checks
@@ -88,15 +87,16 @@ public class QCRTTester {
             return qcResult;
         }
         
-        //Threshold data Object
-        ThresholdData thresholdData = new ThresholdData();
-        //Threshold data as JSONObject
-        JSONObject lowerAndUpperLimits = thresholdData.getThresholdDataObject(String.valueOf(weatherParameter));
+        //Threshold data from the preloaded table
+        Threshold lowerAndUpperLimits = ThresholdData.getThreshold(weatherParameter);
+        if (lowerAndUpperLimits == null || lowerAndUpperLimits.getLowerLimit() == null || lowerAndUpperLimits.getUpperLimit() == null) {
+            return qcResult;
+        }
 
         //Lower limit value
-        double lowerLimit = lowerAndUpperLimits.getDouble("lower_limit");
+        double lowerLimit = lowerAndUpperLimits.getLowerLimit();
         //Upper limit value
-        double upperLimit = lowerAndUpperLimits.getDouble("upper_limit");
+        double upperLimit = lowerAndUpperLimits.getUpperLimit();
 
         //Weather data parameter value placeholder
         Double parameterValue;
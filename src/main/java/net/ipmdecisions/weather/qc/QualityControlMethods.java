@@ -27,19 +27,20 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.json.JSONObject;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 
+import net.ipmdecisions.weather.controller.ExecutorBean;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
-import net.ipmdecisions.weather.entity.LocationWeatherDataException;
 import net.ipmdecisions.weather.entity.QCType;
 import net.ipmdecisions.weather.entity.WeatherData;
-import net.ipmdecisions.weather.qc.QCRTTester;
-import net.ipmdecisions.weather.qc.QCNonRTTester;
-import net.ipmdecisions.weather.qc.util.QCHelpers;
-import net.ipmdecisions.weather.qc.util.QCTestType;
+import net.ipmdecisions.weather.util.SystemUtil;
 
 import org.json.JSONArray;
 
@@ -49,9 +50,28 @@ import org.json.JSONArray;
  * @author Tor-Einar Skog <tor-einar.skog@nibio.no>
  */
 public class QualityControlMethods {
+    
+    /**
+     * Datasets with fewer values (rows x weather parameters, all locations) than 
+     * this are always controlled sequentially, since splitting them up costs more 
+     * than it saves. Set with the system property org.madiphs.weatherservice.PARALLEL_QC_MIN_VALUES
+     */
+    public static final long PARALLEL_QC_MIN_VALUES = SystemUtil.getLongProperty("org.madiphs.weatherservice.PARALLEL_QC_MIN_VALUES", 100000);
+    
+    //If null: Sequential QC
+    private final ExecutorService executor;
         
     public QualityControlMethods() {
-        
+        this(null);
+    }
+    
+    /**
+     * @param executor Large datasets are controlled in parallel in this pool, 
+     * split by location and by independent weather parameters. It must not be the 
+     * pool that calls the quality control. See {@link ExecutorBean#getQCExecutor()}
+     */
+    public QualityControlMethods(ExecutorService executor) {
+        this.executor = executor;
     }
 
     /**
@@ -102,37 +122,41 @@ public class QualityControlMethods {
         
         //Location weather data array from inbound weather data
         List<LocationWeatherData> locationWeatherData = weatherData.getLocationWeatherData();
-        //Location weather data object def
         
         //Weather parameters as JSON array from inpound weather data
         Integer[] weatherParameters = weatherData.getWeatherParameters();
 
+        //The tests are decided by data type (either real time, non-real time or both), 
+        //and the thresholds are resolved once for all locations
+        QCKernel qcKernel = new QCKernel(weatherParameters, !qcType.equals("NONRT"), !qcType.equals("RT"));
+
+        if (this.executor != null && this.getNumberOfValues(locationWeatherData, weatherParameters) >= PARALLEL_QC_MIN_VALUES) {
+            //One task per location and independent group of weather parameters. The 
+            //tasks write to different elements of the QC arrays
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (LocationWeatherData locationWeatherDataObject: locationWeatherData) {
+                Double[][] data = locationWeatherDataObject.getData();
+                Integer[] qc = locationWeatherDataObject.getQC();
+                for (int columnGroup=0; columnGroup < qcKernel.getColumnGroupCount(); columnGroup++) {
+                    final int group = columnGroup;
+                    tasks.add(() -> {
+                        qcKernel.apply(data, qc, group);
+                        return null;
+                    });
+                }
+            }
+            this.invokeAll(tasks);
+        } else {
+            for (LocationWeatherData locationWeatherDataObject: locationWeatherData) {
+                qcKernel.apply(locationWeatherDataObject.getData(), locationWeatherDataObject.getQC());
+            }
+        }
+
         //Iterate through location weather data array
         for (LocationWeatherData locationWeatherDataObject: locationWeatherData) {
             
             Integer[] qc = locationWeatherDataObject.getQC();
             
-            //Decision tree based on data type (either real time or non-real time)
-            switch(qcType) {
-                //Real time weather data QC
-                case "RT": {
-                    // TODO: Check that this object is changed in the WeatherData "mother object"
-                    qc = this.getRtQC(weatherParameters, locationWeatherDataObject, qc);
-                    break;
-                }
-                //Non-real time weather data QC
-                case "NONRT": {
-                    qc = this.getNonRtQC(weatherParameters, locationWeatherDataObject, qc);
-                    break;
-                }
-                case "ALL":
-                default: {
-                    qc = this.getRtQC(weatherParameters, locationWeatherDataObject, qc);
-                    qc = this.getNonRtQC(weatherParameters, locationWeatherDataObject, qc);                    
-                    break;
-                }
-            }
-            
             for (Integer j=0; j<qc.length; j++) {
                 // If none of the tests have failed, we can declare the data as valid.
                 if (qc[j] == QCType.NO_QC) {
@@ -147,118 +171,33 @@ public class QualityControlMethods {
     }
 
     /**
-     * Real time quality control main method. The real time QC includes interval test. 
-     * The test result values are combined bitmapped integer values.
-     * 
-     * @param data USED -> Location weather data object weather parameter value array
-     * @param interval Not used but implemented for future use. Sampling interval value
-     * @param timeStart Not used but implemented for future use. Sampling start datetime 
-     * @param timeEnd Not used but implemented for future use. Sampling end datetime
-     * @param weatherParameters USED -> Inbound weather data object weather parameter key array
-     * @param longitude Not used but implemented for future use. Geolocation variables
-     * @param latitude Not used but implemented for future use. Geolocation variables
-     * @param altitude Not used but implemented for future use. Geolocation variables
-     * @return QC result as JSONArray
+     * Runs the tasks in the executor and waits for all of them
+     * @throws IllegalStateException if the thread is interrupted while waiting
      */
-    private Integer[] getRtQC(Integer[] weatherParameters, LocationWeatherData locationWeatherData, Integer[] qcResult) {
-        //Weather parameter values in specific index as List
-        //Basically jsonArray[index] -> List
-        Double[] weatherParameterValues;
-        
-        //Quality control test result
-        int testResult;
-
-        //Weather parameter (from weatherParameters[index])
-        int weatherParameter;
-        
-        //Iterate the weather parameter key array and couple weather data parameter keys and values
-        for (int index=0; index<weatherParameters.length; index++) {
-            try {
-                testResult = qcResult[index];
-                //Weather parameter from weather parameter array
-                weatherParameter = weatherParameters[index];
-                //Index pointed weather data parameter values into List
-                weatherParameterValues = locationWeatherData.getColumn(index);
-
-                testResult = testResult | QCRTTester.getPrequalificationTestResult(weatherParameterValues, weatherParameter);
-
-                testResult = testResult | QCRTTester.getIntervalTestResult(weatherParameterValues, weatherParameter);
-
-                //Put the final test result into qcResult
-                qcResult[index] = testResult;
+    private void invokeAll(List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> result : this.executor.invokeAll(tasks)) {
+                result.get();
             }
-            catch(LocationWeatherDataException ex)
-            {
-                // Pass
-                
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The quality control was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new IllegalStateException(e.getCause());
         }
-        
-        Integer[] qcResultLogical = QCRTTester.testForLogicalErrors(locationWeatherData.getData(), weatherParameters, qcResult);
-
-        for (Integer i=0; i<qcResult.length; i++) {
-            qcResult[i] = qcResult[i] | qcResultLogical[i];
-        }
-        
-        return qcResult;
     }
-    
-    /**
-     * Non-real time quality control main method. The non-real time QC includes step test
-     * and freeze test. The test result values are combined bitmapped integer values. 
-     * @param data USED -> Location weather data object weather parameter value array
-     * @param interval Not used but implemented for future use. Sampling interval value
-     * @param timeStart Not used but implemented for future use. Sampling start datetime 
-     * @param timeEnd Not used but implemented for future use. Sampling end datetime
-     * @param weatherParameters USED -> Inbound weather data object weather parameter key array
-     * @param longitude Not used but implemented for future use. Geolocation variables
-     * @param latitude Not used but implemented for future use. Geolocation variables
-     * @param altitude Not used but implemented for future use. Geolocation variables
-     * @return QC result as JSONArray
-     */
-    private Integer[] getNonRtQC(Integer[] weatherParameters, LocationWeatherData locationWeatherData, Integer[] qcResult) {
-        //Weather parameter values in specific index as List
-        //Basically jsonArray[index] -> List
-        Double[] weatherParameterValues;
-        
-        //Quality control test result
-        int testResult;
-        
-        //Weather parameter (from weatherParameters[index])
-        int weatherParameter;
-        
-        //Iterate the weather parameter key array and couple weather data parameter keys and values
-        for (int index=0; index<weatherParameters.length; index++) {
-        	try
-        	{
-                    testResult = qcResult[index];
-	            //Weather parameter from weather parameter array
-	            weatherParameter = weatherParameters[index];
-	            //Index pointed weather data parameter values into List
-	            weatherParameterValues = locationWeatherData.getColumn(index);
-
-	            //Freeze test
-                    if (QCHelpers.isWeatherParameterHandledByQCTest(weatherParameter, QCTestType.FREEZE)) {
-                        testResult = testResult | QCNonRTTester.testForFreezeErrors(weatherParameterValues, weatherParameter);
-                    }
 
-                    //Step test
-                    if (QCHelpers.isWeatherParameterHandledByQCTest(weatherParameter, QCTestType.STEP)) {
-                        testResult = testResult | QCNonRTTester.getStepTestResult(weatherParameterValues, weatherParameter);
-                    }
-                    
-	            qcResult[index] = testResult;
-        	}
-        	catch(LocationWeatherDataException ex)
-        	{
-        		// Pass
-        	}
+    private long getNumberOfValues(List<LocationWeatherData> locationWeatherData, Integer[] weatherParameters) {
+        long rows = 0;
+        for (LocationWeatherData locationWeatherDataObject: locationWeatherData) {
+            rows += locationWeatherDataObject.getData() != null ? locationWeatherDataObject.getData().length : 0;
         }
-        
-        return qcResult;
+        return rows * weatherParameters.length;
     }
-    
-    
+
     /**
      * Logical test is not implemented
      * @param data Not used. Location weather data object weather parameter value array
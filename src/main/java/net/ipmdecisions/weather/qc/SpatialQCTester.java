@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.qc;
+
+import java.util.Arrays;
+import java.util.List;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.QCType;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.qc.util.QCHelpers;
+import net.ipmdecisions.weather.qc.util.QCTestType;
+import net.ipmdecisions.weather.util.SystemUtil;
+
+/**
+ * Spatial consistency ("buddy check") test. The values of a weather parameter are 
+ * compared to the values of the nearest weather stations or grid points for the 
+ * same period, which catches spikes, offsets and drift that the tests of a single 
+ * time series miss.
+ * 
+ * For each time step, the robust z-score of the value is computed against the 
+ * neighbor values: (value - median) / scale, where the scale is the median absolute 
+ * deviation of the neighbor values (scaled to a standard deviation), but never less 
+ * than a minimum scale. Neighbor temperatures are first adjusted to the altitude of 
+ * the location with the lapse rate, and neighbors with an unknown altitude are not 
+ * used for temperatures. The test fails if
+ * 
+ * - Any z-score is larger than the spike threshold, or
+ * - The median of the z-scores is larger than the offset threshold (a systematic offset or drift)
+ * 
+ * Time steps with fewer neighbor values than the minimum are not tested. A failed test 
+ * flags the weather parameter for the whole period, so the test is disabled by default 
+ * until the thresholds are calibrated against the stations in use. Configuration (system properties):
+ * <ul>
+ * <li>org.madiphs.weatherservice.SPATIAL_QC_NEIGHBORS Number of neighbors to compare with (default 0, which disables the test)</li>
+ * <li>org.madiphs.weatherservice.SPATIAL_QC_MAX_DISTANCE_KM Maximum distance to a neighbor (default 50)</li>
+ * <li>org.madiphs.weatherservice.SPATIAL_QC_MIN_DISTANCE_KM Closer points are not independent neighbors, e.g. the cell of a gridded source that the location is in (default 1)</li>
+ * <li>org.madiphs.weatherservice.SPATIAL_QC_MIN_NEIGHBORS (default 3)</li>
+ * <li>org.madiphs.weatherservice.SPATIAL_QC_SPIKE_THRESHOLD (default 5)</li>
+ * <li>org.madiphs.weatherservice.SPATIAL_QC_OFFSET_THRESHOLD (default 3)</li>
+ * <li>org.madiphs.weatherservice.SPATIAL_QC_MIN_TEMPERATURE_SCALE In Celcius (default 2)</li>
+ * <li>org.madiphs.weatherservice.SPATIAL_QC_MIN_HUMIDITY_SCALE In %RH (default 8)</li>
+ * <li>org.madiphs.weatherservice.SPATIAL_QC_LAPSE_RATE The decrease in temperature with altitude, in Celcius per meter (default 0.0065)</li>
+ * </ul>
+ */
+public class SpatialQCTester {
+
+    public static final int NEIGHBORS = (int) SystemUtil.getLongProperty("org.madiphs.weatherservice.SPATIAL_QC_NEIGHBORS", 0);
+    /**
+     * Meters
+     */
+    public static final double MAX_DISTANCE = SystemUtil.getDoubleProperty("org.madiphs.weatherservice.SPATIAL_QC_MAX_DISTANCE_KM", 50) * 1000;
+    /**
+     * Meters
+     */
+    public static final double MIN_DISTANCE = SystemUtil.getDoubleProperty("org.madiphs.weatherservice.SPATIAL_QC_MIN_DISTANCE_KM", 1) * 1000;
+
+    //The median absolute deviation of normally distributed values, times this, is their standard deviation
+    private static final double MAD_TO_STANDARD_DEVIATION = 1.4826;
+    //The offset test needs a day of hourly values
+    private static final int MIN_OFFSET_TEST_VALUES = 24;
+
+    private final int minNeighbors;
+    private final double spikeThreshold;
+    private final double offsetThreshold;
+    private final double minTemperatureScale;
+    private final double minHumidityScale;
+    private final double lapseRate;
+
+    public SpatialQCTester() {
+        this(
+            (int) SystemUtil.getLongProperty("org.madiphs.weatherservice.SPATIAL_QC_MIN_NEIGHBORS", 3),
+            SystemUtil.getDoubleProperty("org.madiphs.weatherservice.SPATIAL_QC_SPIKE_THRESHOLD", 5),
+            SystemUtil.getDoubleProperty("org.madiphs.weatherservice.SPATIAL_QC_OFFSET_THRESHOLD", 3),
+            SystemUtil.getDoubleProperty("org.madiphs.weatherservice.SPATIAL_QC_MIN_TEMPERATURE_SCALE", 2),
+            SystemUtil.getDoubleProperty("org.madiphs.weatherservice.SPATIAL_QC_MIN_HUMIDITY_SCALE", 8),
+            SystemUtil.getDoubleProperty("org.madiphs.weatherservice.SPATIAL_QC_LAPSE_RATE", 0.0065)
+        );
+    }
+
+    /**
+     * @param minNeighbors The minimum number of neighbor values for a time step to be tested
+     * @param spikeThreshold The maximum z-score of a single value
+     * @param offsetThreshold The maximum median z-score
+     * @param minTemperatureScale The minimum scale of the temperature z-scores, so that small deviations from neighbors that agree do not fail
+     * @param minHumidityScale The minimum scale of the humidity z-scores
+     * @param lapseRate The decrease in temperature with altitude, in Celcius per meter
+     */
+    public SpatialQCTester(int minNeighbors, double spikeThreshold, double offsetThreshold, double minTemperatureScale, double minHumidityScale, double lapseRate) {
+        this.minNeighbors = Math.max(1, minNeighbors);
+        this.spikeThreshold = spikeThreshold;
+        this.offsetThreshold = offsetThreshold;
+        this.minTemperatureScale = minTemperatureScale;
+        this.minHumidityScale = minHumidityScale;
+        this.lapseRate = lapseRate;
+    }
+
+    /**
+     * Runs the test for the weather parameters of one location that are handled by 
+     * the spatial test, see {@link QCHelpers#isWeatherParameterHandledByQCTest(int, QCTestType)}
+     * @param weatherData The weather data. The QC arrays are updated in place
+     * @param location The index of the location in the weather data
+     * @param neighbors The weather data of the neighbors, one location each. The rows
+     * are matched by time, so the neighbors must have the same interval as the weather data
+     * @return The QC results of the location. A failed test is added to the result, which is then no longer OK
+     */
+    public Integer[] getQC(WeatherData weatherData, int location, List<WeatherData> neighbors) {
+        LocationWeatherData locationWeatherData = weatherData.getLocationWeatherData().get(location);
+        Integer[] weatherParameters = weatherData.getWeatherParameters();
+        Integer[] qc = locationWeatherData.getQC();
+        Double[][] data = locationWeatherData.getData();
+        if (data == null || data.length == 0 || neighbors.size() < this.minNeighbors) {
+            return qc;
+        }
+
+        for (int index=0; index < weatherParameters.length; index++) {
+            if (!QCHelpers.isWeatherParameterHandledByQCTest(weatherParameters[index], QCTestType.SPATIAL)) {
+                continue;
+            }
+            boolean temperature = SpatialQCTester.isTemperature(weatherParameters[index]);
+            if (temperature && locationWeatherData.getAltitude() == null) {
+                continue;
+            }
+            double[] values = new double[data.length];
+            for (int row=0; row < data.length; row++) {
+                values[row] = data[row][index] != null ? data[row][index] : Double.NaN;
+            }
+            double[][] neighborValues = new double[neighbors.size()][];
+            int neighborCount = 0;
+            for (WeatherData neighbor : neighbors) {
+                double[] neighborColumn = this.getAlignedValues(neighbor, weatherParameters[index], weatherData, data.length);
+                if (neighborColumn == null) {
+                    continue;
+                }
+                if (temperature) {
+                    Double neighborAltitude = neighbor.getLocationWeatherData().get(0).getAltitude();
+                    if (neighborAltitude == null) {
+                        continue;
+                    }
+                    // E.g. a neighbor 300 m higher up is about 2 degrees colder
+                    double adjustment = (neighborAltitude - locationWeatherData.getAltitude()) * this.lapseRate;
+                    for (int row=0; row < neighborColumn.length; row++) {
+                        neighborColumn[row] += adjustment;
+                    }
+                }
+                neighborValues[neighborCount++] = neighborColumn;
+            }
+            double minScale = temperature ? this.minTemperatureScale : this.minHumidityScale;
+            if (neighborCount >= this.minNeighbors
+                    && this.getSpatialTestResult(values, Arrays.copyOf(neighborValues, neighborCount), minScale) == QCType.FAILED_SPATIAL_TEST) {
+                qc[index] = (QCType.OK_FROM_IPM_DECISIONS.equals(qc[index]) ? QCType.NO_QC : qc[index]) | QCType.FAILED_SPATIAL_TEST;
+            }
+        }
+        locationWeatherData.setQC(qc);
+        return qc;
+    }
+
+    /**
+     * @param values The values of the weather parameter, one per time step. NaN if missing
+     * @param neighborValues The values of the neighbors, one row per neighbor and one column per time step. NaN if missing
+     * @param minScale The minimum scale of the z-scores, in the unit of the weather parameter
+     * @return {@link QCType#FAILED_SPATIAL_TEST} if the test failed, otherwise {@link QCType#NO_QC}
+     */
+    public int getSpatialTestResult(double[] values, double[][] neighborValues, double minScale) {
+        double[] buddies = new double[neighborValues.length];
+        double[] deviations = new double[neighborValues.length];
+        double[] zScores = new double[values.length];
+        int zScoreCount = 0;
+        for (int row=0; row < values.length; row++) {
+            if (Double.isNaN(values[row])) {
+                continue;
+            }
+            int buddyCount = 0;
+            for (double[] neighbor : neighborValues) {
+                if (!Double.isNaN(neighbor[row])) {
+                    buddies[buddyCount++] = neighbor[row];
+                }
+            }
+            if (buddyCount < this.minNeighbors) {
+                continue;
+            }
+            double median = SpatialQCTester.getMedian(buddies, buddyCount);
+            for (int i=0; i < buddyCount; i++) {
+                deviations[i] = Math.abs(buddies[i] - median);
+            }
+            double scale = Math.max(MAD_TO_STANDARD_DEVIATION * SpatialQCTester.getMedian(deviations, buddyCount), minScale);
+            double zScore = (values[row] - median) / scale;
+            if (Math.abs(zScore) > this.spikeThreshold) {
+                return QCType.FAILED_SPATIAL_TEST;
+            }
+            zScores[zScoreCount++] = zScore;
+        }
+        if (zScoreCount >= MIN_OFFSET_TEST_VALUES && Math.abs(SpatialQCTester.getMedian(zScores, zScoreCount)) > this.offsetThreshold) {
+            return QCType.FAILED_SPATIAL_TEST;
+        }
+        return QCType.NO_QC;
+    }
+
+    /**
+     * @return The values of the weather parameter of the neighbor, at the time steps of the weather data. 
+     * Null if the neighbor does not have the weather parameter, or has another interval
+     */
+    private double[] getAlignedValues(WeatherData neighbor, Integer weatherParameter, WeatherData weatherData, int rows) {
+        if (neighbor.getWeatherParameters() == null || neighbor.getLocationWeatherData() == null || neighbor.getLocationWeatherData().isEmpty()
+                || !weatherData.getInterval().equals(neighbor.getInterval())) {
+            return null;
+        }
+        int column = Arrays.asList(neighbor.getWeatherParameters()).indexOf(weatherParameter);
+        if (column < 0) {
+            return null;
+        }
+        Double[][] neighborData = neighbor.getLocationWeatherData().get(0).getData();
+        long offset = (weatherData.getTimeStart().getEpochSecond() - neighbor.getTimeStart().getEpochSecond()) / weatherData.getInterval();
+        double[] values = new double[rows];
+        for (int row=0; row < rows; row++) {
+            long neighborRow = row + offset;
+            Double value = neighborRow >= 0 && neighborRow < neighborData.length && column < neighborData[(int) neighborRow].length ?
+                    neighborData[(int) neighborRow][column] : null;
+            values[row] = value != null ? value : Double.NaN;
+        }
+        return values;
+    }
+
+    /**
+     * @return true if the weather parameter is a temperature, see {@link QCHelpers}. The rest 
+     * of the parameters that are handled by the spatial test are humidities
+     */
+    private static boolean isTemperature(Integer weatherParameter) {
+        return weatherParameter >= 1000 && weatherParameter < 2000;
+    }
+
+    /**
+     * @return The median of the first values. They are sorted in place
+     */
+    private static double getMedian(double[] values, int length) {
+        Arrays.sort(values, 0, length);
+        return length % 2 == 1 ? values[length / 2] : (values[length / 2 - 1] + values[length / 2]) / 2;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.qc;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.ipmdecisions.weather.entity.QCType;
+
+/**
+ * Quality control of weather data that are too large to hold in memory. The data are 
+ * read and written one row at a time, and only the state of the tests is kept (see 
+ * {@link QCKernel.State}), so the memory used depends on the number of weather 
+ * parameters, not on the number of rows. The results are the same as from 
+ * {@link QualityControlMethods#getQC(net.ipmdecisions.weather.entity.WeatherData, String)}.
+ * 
+ * The input must be in the weather data format, with weatherParameters before 
+ * locationWeatherData. In the output, the qc array is the last property of each 
+ * location. Other properties are copied as they are.
+ */
+public class StreamingQualityControl {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final JsonParser parser;
+    private final QCKernel qcKernel;
+    private final int columns;
+    //The properties before locationWeatherData. Small
+    private final Map<String, JsonNode> header;
+    private final boolean hasLocationWeatherData;
+
+    /**
+     * Reads the weather data up to locationWeatherData
+     * @param weatherData The weather data, as JSON
+     * @param qcType RT, NONRT or ALL (default)
+     * @throws IOException if the input is not JSON, or weatherParameters are not given before locationWeatherData
+     */
+    public StreamingQualityControl(InputStream weatherData, String qcType) throws IOException {
+        if (qcType == null) qcType = "ALL";
+        this.parser = OBJECT_MAPPER.getFactory().createParser(weatherData);
+        if (this.parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(this.parser, "The weather data must be a JSON object");
+        }
+        this.header = new LinkedHashMap<>();
+        boolean locationWeatherDataFound = false;
+        while (this.parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = this.parser.getCurrentName();
+            this.parser.nextToken();
+            if (fieldName.equals("locationWeatherData")) {
+                locationWeatherDataFound = true;
+                break;
+            }
+            this.header.put(fieldName, OBJECT_MAPPER.readTree(this.parser));
+        }
+        this.hasLocationWeatherData = locationWeatherDataFound;
+
+        JsonNode weatherParametersNode = this.header.get("weatherParameters");
+        if (weatherParametersNode == null || !weatherParametersNode.isArray()) {
+            throw new JsonParseException(this.parser, "weatherParameters must be given before locationWeatherData");
+        }
+        Integer[] weatherParameters = new Integer[weatherParametersNode.size()];
+        for (int i=0; i < weatherParameters.length; i++) {
+            weatherParameters[i] = weatherParametersNode.get(i).asInt();
+        }
+        this.columns = weatherParameters.length;
+        this.qcKernel = new QCKernel(weatherParameters, !qcType.equals("NONRT"), !qcType.equals("RT"));
+    }
+
+    /**
+     * Reads the rest of the weather data, and writes the quality controlled weather data
+     * @param output
+     * @throws IOException if the input is not in the weather data format, or the output can't be written
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        try (JsonParser input = this.parser; 
+             JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            for (Map.Entry<String, JsonNode> field : this.header.entrySet()) {
+                generator.writeFieldName(field.getKey());
+                OBJECT_MAPPER.writeTree(generator, field.getValue());
+            }
+            if (this.hasLocationWeatherData) {
+                generator.writeFieldName("locationWeatherData");
+                if (input.currentToken() != JsonToken.START_ARRAY) {
+                    throw new JsonParseException(input, "locationWeatherData must be an array");
+                }
+                generator.writeStartArray();
+                while (input.nextToken() == JsonToken.START_OBJECT) {
+                    this.writeLocationWeatherData(input, generator);
+                }
+                generator.writeEndArray();
+                //The properties after locationWeatherData
+                while (input.nextToken() == JsonToken.FIELD_NAME) {
+                    generator.writeFieldName(input.getCurrentName());
+                    input.nextToken();
+                    generator.copyCurrentStructure(input);
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeLocationWeatherData(JsonParser input, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        List<Integer> qcFromInput = new ArrayList<>();
+        QCKernel.State state = this.qcKernel.newState();
+        Double[] row = new Double[this.columns];
+        while (input.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = input.getCurrentName();
+            input.nextToken();
+            if (fieldName.equals("qc")) {
+                //Written after the data, with the results of the tests
+                if (input.currentToken() == JsonToken.START_ARRAY) {
+                    while (input.nextToken() != JsonToken.END_ARRAY) {
+                        qcFromInput.add(input.getValueAsInt());
+                    }
+                } else if (input.currentToken() != JsonToken.VALUE_NULL) {
+                    throw new JsonParseException(input, "qc must be an array or null");
+                }
+            } else if (fieldName.equals("data")) {
+                generator.writeFieldName(fieldName);
+                if (input.currentToken() == JsonToken.VALUE_NULL) {
+                    generator.writeNull();
+                    continue;
+                }
+                if (input.currentToken() != JsonToken.START_ARRAY) {
+                    throw new JsonParseException(input, "data must be an array or null");
+                }
+                generator.writeStartArray();
+                for (JsonToken rowToken = input.nextToken(); rowToken != JsonToken.END_ARRAY; rowToken = input.nextToken()) {
+                    Arrays.fill(row, null);
+                    //A missing row is tested as missing values, to keep the time steps in line
+                    if (rowToken == JsonToken.VALUE_NULL) {
+                        generator.writeNull();
+                    } else if (rowToken == JsonToken.START_ARRAY) {
+                        generator.writeStartArray();
+                        int column = 0;
+                        while (input.nextToken() != JsonToken.END_ARRAY) {
+                            generator.copyCurrentEvent(input);
+                            if (column < this.columns) {
+                                row[column] = getValue(input);
+                            }
+                            column++;
+                        }
+                        generator.writeEndArray();
+                    } else {
+                        throw new JsonParseException(input, "The rows of data must be arrays or null");
+                    }
+                    this.qcKernel.test(row, state);
+                }
+                generator.writeEndArray();
+            } else {
+                generator.writeFieldName(fieldName);
+                generator.copyCurrentStructure(input);
+            }
+        }
+
+        Integer[] qc = new Integer[Math.max(this.columns, qcFromInput.size())];
+        Arrays.fill(qc, QCType.NO_QC);
+        for (int i=0; i < qcFromInput.size(); i++) {
+            qc[i] = qcFromInput.get(i);
+        }
+        this.qcKernel.addResults(state, qc);
+        generator.writeArrayFieldStart("qc");
+        for (Integer qcValue : qc) {
+            // If none of the tests have failed, we can declare the data as valid.
+            generator.writeNumber(QCType.NO_QC.equals(qcValue) ? QCType.OK_FROM_IPM_DECISIONS : qcValue);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Reads a value the same way as {@link net.ipmdecisions.weather.entity.serializers.LocationWeatherDataDeserializer}
+     */
+    private static Double getValue(JsonParser input) throws IOException {
+        switch (input.currentToken()) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return input.getText().equalsIgnoreCase("null") ? null : input.getValueAsDouble(0.0);
+            default:
+                return input.getValueAsDouble(0.0);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.qc;
+
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The quality control thresholds for a group of weather parameters, as read from 
+ * the threshold data. Immutable. Values that are not set for the group are null.
+ */
+public final class Threshold {
+
+    private final String parameter;
+    private final List<String> ids;
+    private final Double lowerLimit;
+    private final Double upperLimit;
+    private final Double stepTestThreshold;
+    private final String stepTestThresholdType;
+    private final Double freezeTestThreshold;
+
+    /**
+     * @param thresholdDataItem An item from the threshold data
+     */
+    public Threshold(JSONObject thresholdDataItem) {
+        this.parameter = thresholdDataItem.optString("parameter", null);
+        JSONArray idArray = thresholdDataItem.getJSONArray("id_array");
+        String[] idsFromArray = new String[idArray.length()];
+        for (int index=0; index < idArray.length(); index++) {
+            idsFromArray[index] = idArray.getString(index);
+        }
+        this.ids = List.of(idsFromArray);
+        this.lowerLimit = getDoubleOrNull(thresholdDataItem, "lower_limit");
+        this.upperLimit = getDoubleOrNull(thresholdDataItem, "upper_limit");
+        this.stepTestThreshold = getDoubleOrNull(thresholdDataItem, "step_test_threshold");
+        this.stepTestThresholdType = thresholdDataItem.optString("step_test_threshold_type", null);
+        this.freezeTestThreshold = getDoubleOrNull(thresholdDataItem, "freeze_test_threshold");
+    }
+
+    private static Double getDoubleOrNull(JSONObject thresholdDataItem, String key) {
+        return thresholdDataItem.has(key) ? thresholdDataItem.getDouble(key) : null;
+    }
+
+    /**
+     * @param thresholdValueName The name of the value in the threshold data, e.g. freeze_test_threshold
+     * @return the value, or null if not set or not a numeric value
+     */
+    public Double getValue(String thresholdValueName) {
+        switch (thresholdValueName) {
+            case "lower_limit":
+                return this.lowerLimit;
+            case "upper_limit":
+                return this.upperLimit;
+            case "step_test_threshold":
+                return this.stepTestThreshold;
+            case "freeze_test_threshold":
+                return this.freezeTestThreshold;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the threshold in the same format as the threshold data
+     */
+    public JSONObject toJSONObject() {
+        JSONObject thresholdDataItem = new JSONObject();
+        thresholdDataItem.putOpt("parameter", this.parameter);
+        thresholdDataItem.put("id_array", new JSONArray(this.ids));
+        thresholdDataItem.putOpt("lower_limit", this.lowerLimit);
+        thresholdDataItem.putOpt("upper_limit", this.upperLimit);
+        thresholdDataItem.putOpt("step_test_threshold", this.stepTestThreshold);
+        thresholdDataItem.putOpt("step_test_threshold_type", this.stepTestThresholdType);
+        thresholdDataItem.putOpt("freeze_test_threshold", this.freezeTestThreshold);
+        return thresholdDataItem;
+    }
+
+    /**
+     * @return The name of the parameter group, e.g. "Air temperature"
+     */
+    public String getParameter() {
+        return this.parameter;
+    }
+
+    /**
+     * @return The weather parameter keys that the threshold applies to
+     */
+    public List<String> getIds() {
+        return this.ids;
+    }
+
+    /**
+     * @return The lowest physically possible value (interval test)
+     */
+    public Double getLowerLimit() {
+        return this.lowerLimit;
+    }
+
+    /**
+     * @return The highest physically possible value (interval test)
+     */
+    public Double getUpperLimit() {
+        return this.upperLimit;
+    }
+
+    /**
+     * @return The largest allowed change between two values (step test)
+     */
+    public Double getStepTestThreshold() {
+        return this.stepTestThreshold;
+    }
+
+    /**
+     * @return Either absolute or relative (step test)
+     */
+    public String getStepTestThresholdType() {
+        return this.stepTestThresholdType;
+    }
+
+    /**
+     * @return The largest allowed number of equal values in a row (freeze test)
+     */
+    public Double getFreezeTestThreshold() {
+        return this.freezeTestThreshold;
+    }
+}
@@ -18,141 +18,178 @@
  */
 package net.ipmdecisions.weather.qc;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * ThresholdData class provides the threshold data for quality control methods.
  * This release implements file based threshold data.
+ * 
+ * The threshold data are read once into a table indexed by weather parameter key, 
+ * so that the quality control does no I/O or JSON parsing. By default, the data are
+ * read from thresholddata.json in the classpath. Set the system property 
+ * org.madiphs.weatherservice.QC_THRESHOLD_FILE to read them from a file instead. 
+ * The file is read again when its modification time changes (checked at most once 
+ * every {@link #RELOAD_CHECK_INTERVAL} milliseconds), or when {@link #reload()} is called.
+ * If the data cannot be read, the table that was read before is kept.
  * @author 03080928
  */
 public class ThresholdData {
     
+    private static Logger LOGGER = LoggerFactory.getLogger(ThresholdData.class);
+    
+    /** The threshold data in the classpath */
+    public static final String RESOURCE_PATH = "thresholddata.json";
+    
+    /** How often (milliseconds) the threshold file is checked for changes */
+    public static final long RELOAD_CHECK_INTERVAL = 10000;
+    
+    //Threshold table, replaced as a whole on reload
+    private static volatile Map<Integer, Threshold> thresholds;
+    //Modification time of the threshold file the table was read from, 0 for the classpath
+    private static volatile long thresholdsVersion;
+    private static volatile long nextReloadCheck;
+    
     public ThresholdData() {}
     
     /**
      * Returns threshold data object related to weather data parameter key (parameterID)
      * @param parameterID Weather data parameter key
-     * @return Threshold data object as JSONObject if found
+     * @return Threshold data object as JSONObject if found, otherwise {}
      */
     public JSONObject getThresholdDataObject(String parameterID) {
         
-        return findFromJSONArray(getThresholdData("RESOURCE_READER", new JSONObject("{\"resource_path\":\"thresholddata.json\"}")), parameterID);
+        Threshold threshold = null;
+        try {
+            threshold = getThreshold(Integer.parseInt(parameterID.trim()));
+        } catch (NumberFormatException | NullPointerException e) {
+            //Not a weather parameter key, so no match
+        }
+        return threshold != null ? threshold.toJSONObject() : new JSONObject("{}");
           
     }
     
+    /**
+     * @param weatherParameter Weather data parameter key
+     * @return The thresholds for the weather parameter, or null if there are none
+     */
+    public static Threshold getThreshold(int weatherParameter) {
+        return getThresholds().get(weatherParameter);
+    }
     
     /**
-     * Threshold data search functions
-     * @param thresholdData Threshold data as JSONArray
-     * @param searchString Weather data parameter key
-     * @return Threshold data object as JSONObject if found
+     * @return The threshold table, indexed by weather data parameter key. Loaded on first use, 
+     * and again if the threshold file has changed
+     * @throws IllegalStateException if the threshold data have never been read successfully
      */
-    private JSONObject findFromJSONArray(JSONArray thresholdData, String searchString) {
-        
-        //Threshold data object
-        JSONObject thresholdDataItem;
-        //Return value as JSONObject. Set to be {} if search has no match
-        JSONObject returnObject = new JSONObject("{}");
-        
-        //Parameter id JSONArray from threshold data
-        JSONArray parameterIdArray;
-        //Individual parameter id from JSONArray
-        String compareValue;
-        
-        //Iterate threshold data objects
-        for (int index=0; index < thresholdData.length(); index++) {
-            //Set threshold data object
-            thresholdDataItem = thresholdData.getJSONObject(index);
-            //Parameter id array from threshold data
-            parameterIdArray = thresholdDataItem.getJSONArray("id_array");
-            //Iterate through parameter id array
-            for (int arrInd=0; arrInd < parameterIdArray.length(); arrInd++) {
-                //Compare value from parameter array
-                compareValue = parameterIdArray.getString(arrInd);
-                //Compare test
-                if (compareValue.equals(searchString)) {
-                    returnObject = thresholdDataItem;
+    public static Map<Integer, Threshold> getThresholds() {
+        Map<Integer, Threshold> current = thresholds;
+        if (current == null || System.currentTimeMillis() >= nextReloadCheck) {
+            synchronized (ThresholdData.class) {
+                if (thresholds == null || System.currentTimeMillis() >= nextReloadCheck) {
+                    nextReloadCheck = System.currentTimeMillis() + RELOAD_CHECK_INTERVAL;
+                    reloadIfChanged();
                 }
+                current = thresholds;
             }
         }
-        
-        return returnObject;
-        
+        return current;
     }
     
+    /**
+     * Reads the threshold data again. Quality control that is running keeps 
+     * using the table it started with. If the data cannot be read, the error is 
+     * logged and the previous table is kept
+     * @throws IllegalStateException if the data cannot be read and there is no previous table
+     */
+    public static synchronized void reload() {
+        long version = getThresholdFileVersion();
+        try {
+            thresholds = loadThresholds();
+            thresholdsVersion = version;
+        } catch (IOException | JSONException | NumberFormatException e) {
+            if (thresholds == null) {
+                throw new IllegalStateException("Could not read the QC threshold data", e);
+            }
+            //Don't try the same file again until it changes
+            thresholdsVersion = version;
+            LOGGER.error("Could not read the QC threshold data, keeping the previous thresholds", e);
+        }
+    }
     
     /**
-     * Returns threshold raw data as JSONArray from requested source.
-     * This release implements resource reader.
-     * @param reader Requested source. This release implements RESOURCE_READER
-     * @param params Reader specific parameters as JSONObject. This release expects
-     * only key value pair resource_path but this might also include DB access
-     * directives as well as instructions for REST requests. Readers can be additional
-     * methods or external classes.
-     * @return Threshold data as JSONArray
+     * Reads the threshold data if they have not been read yet or if the threshold 
+     * file has been modified since it was read
      */
-    private JSONArray getThresholdData(String reader, JSONObject params) {
-        
-        //Threshold data as string
-        String thresholdData = "";
-        
-        //Threshold data reader selection
-        switch(reader) {
-            //Resource reader
-            case "RESOURCE_READER":
-                //Threshold data using resource reader method
-                thresholdData = thresholdDataResourceReader(params);
-                break;
-            default:
-                //Return empty array if requested method is not implemented
-                thresholdData = "[]";
-                break;
+    static synchronized void reloadIfChanged() {
+        if (thresholds == null || getThresholdFileVersion() != thresholdsVersion) {
+            reload();
         }
-        
-        return new JSONArray(thresholdData);
-        
     }
     
+    /**
+     * @return The modification time of the file given by the system property 
+     * org.madiphs.weatherservice.QC_THRESHOLD_FILE, or 0 if the classpath is used
+     */
+    private static long getThresholdFileVersion() {
+        String thresholdFile = System.getProperty("org.madiphs.weatherservice.QC_THRESHOLD_FILE");
+        return thresholdFile != null ? new File(thresholdFile).lastModified() : 0;
+    }
     
     /**
-     * Resource reader for threshold data
-     * @param params Paramters for resource reader. Method expects JSONObject
-     * with the resource_path key value pair.
-     * @return 
+     * Builds the threshold table from the threshold data. If several threshold data
+     * objects apply to a weather parameter, the last one is used
+     * @return Immutable threshold table
+     * @throws IOException if the threshold data could not be read
+     * @throws JSONException if the threshold data are malformed
      */
-    private String thresholdDataResourceReader(JSONObject params) {
-        
-        //Threshold data as String
-        String thresholdDataAsString = "";
-        
-        //Resource path from params JSONObject
-        String resourcePath = params.getString("resource_path");
+    private static Map<Integer, Threshold> loadThresholds() throws IOException {
         
-        //Resource reader with anomaly and exception handling
-        try {
-            InputStream is = getClass().getClassLoader().getResourceAsStream(resourcePath);
-            InputStreamReader sr = new InputStreamReader(is, StandardCharsets.UTF_8);
-            BufferedReader br = new BufferedReader(sr);
-            String line;
-            while ((line = br.readLine()) != null) {
-                thresholdDataAsString += line;
+        JSONArray thresholdData = getThresholdData();
+        Map<Integer, Threshold> table = new HashMap<>();
+        for (int index=0; index < thresholdData.length(); index++) {
+            Threshold threshold = new Threshold(thresholdData.getJSONObject(index));
+            for (String id : threshold.getIds()) {
+                table.put(Integer.valueOf(id), threshold);
             }
-        } catch (Exception e) {
-            System.out.println(e.toString());
-            return "[]";
         }
+        return Map.copyOf(table);
         
-        if (thresholdDataAsString.length() == 0) {
-            thresholdDataAsString = "[]";
+    }
+    
+    /**
+     * Returns threshold raw data as JSONArray, either from the file given by the 
+     * system property org.madiphs.weatherservice.QC_THRESHOLD_FILE or from the classpath
+     * @return Threshold data as JSONArray
+     * @throws IOException if the threshold data could not be read or are empty
+     * @throws JSONException if the threshold data are not a JSON array
+     */
+    private static JSONArray getThresholdData() throws IOException {
+        
+        String thresholdFile = System.getProperty("org.madiphs.weatherservice.QC_THRESHOLD_FILE");
+        try (InputStream is = thresholdFile != null ? 
+                Files.newInputStream(new File(thresholdFile).toPath())
+                : ThresholdData.class.getClassLoader().getResourceAsStream(RESOURCE_PATH)) {
+            if (is == null) {
+                throw new IOException(RESOURCE_PATH + " not found in the classpath");
+            }
+            String thresholdDataAsString = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            if (thresholdDataAsString.isBlank()) {
+                throw new IOException("The threshold data " + (thresholdFile != null ? thresholdFile : RESOURCE_PATH) + " are empty");
+            }
+            return new JSONArray(thresholdDataAsString);
         }
         
-        return thresholdDataAsString;
-        
     }
     
 }
@@ -3,21 +3,52 @@ package net.ipmdecisions.weather.qc.util;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import net.ipmdecisions.weather.qc.util.QCTestType;
 import net.ipmdecisions.weather.qc.util.QCWeatherParameter;
 import net.ipmdecisions.weather.controller.MetaDataBean;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Set;
 import java.util.stream.Stream;
 import net.ipmdecisions.weather.entity.WeatherParameter;
+import net.ipmdecisions.weather.qc.Threshold;
 import net.ipmdecisions.weather.qc.ThresholdData;
-import org.json.JSONObject;
 
 public class QCHelpers {
     
+    //Which weather parameters the QC tests apply to. See isWeatherParameterHandledByQCTest
+    private static final Pattern LOGICAL_TEST_PARAMETERS = Pattern.compile("^((10|11)\\d\\d)|((3|4)\\d\\d\\d)$");
+    private static final Pattern STEP_TEST_EXCLUDED_PARAMETERS = Pattern.compile("^(31\\d\\d)|(2\\d\\d\\d)$");
+    private static final Pattern FREEZE_TEST_EXCLUDED_PARAMETERS = Pattern.compile("^(31\\d\\d)$");
+    private static final Pattern SPATIAL_TEST_PARAMETERS = Pattern.compile("^(1\\d\\d\\d)|(30\\d\\d)$");
+    private static final Pattern PRECIPITATION_PARAMETERS = Pattern.compile("^(2\\d\\d\\d)$");
+    
+    //The weather parameter codes have four digits, so the rules above are compiled once 
+    //into a table for all codes below this. Bit n is set if the QCTestType with ordinal n applies
+    private static final int QC_TABLE_SIZE = 10000;
+    private static final int[] QC_TESTS_BY_WEATHER_PARAMETER = new int[QC_TABLE_SIZE];
+    private static final BitSet PRECIPITATION = new BitSet(QC_TABLE_SIZE);
+    
+    static {
+        for (int weatherParameterId=0; weatherParameterId < QC_TABLE_SIZE; weatherParameterId++) {
+            for (QCTestType qctesttype : QCTestType.values()) {
+                if (isWeatherParameterHandledByQCTestRule(weatherParameterId, qctesttype)) {
+                    QC_TESTS_BY_WEATHER_PARAMETER[weatherParameterId] |= 1 << qctesttype.ordinal();
+                }
+            }
+            PRECIPITATION.set(weatherParameterId, PRECIPITATION_PARAMETERS.matcher(String.valueOf(weatherParameterId)).matches());
+        }
+    }
+    
+    //Memoized lookups. Bounded, since the weather parameters come from the users
+    private static final int MAX_MEMOIZED = 10000;
+    private static final Map<Integer, QCWeatherParameter> QC_WEATHER_PARAMETERS = new ConcurrentHashMap<>();
+    private static final Map<List<Integer>, Integer[][]> LOGICAL_TUPLES = new ConcurrentHashMap<>();
+    
     public QCHelpers() {
     }
 
@@ -64,19 +95,27 @@ public class QCHelpers {
 
         if (weatherParameter == null) return qcwp;
 
+        QCWeatherParameter memoized = QC_WEATHER_PARAMETERS.get(weatherParameter);
+        if (memoized != null) return memoized;
+
         // get WeatherParameter instance for getting aggregation type.
         WeatherParameter wp = null;
 
         try {
             wp = new MetaDataBean().getWeatherParameter(weatherParameter);                
         } catch(IOException e) {
-            // pass
+            // Not memoized, so that it's tried again
+            return qcwp;
         }
 
         if (wp != null) {
             qcwp.setWeatherParameter(wp);
         }
 
+        if (QC_WEATHER_PARAMETERS.size() < MAX_MEMOIZED) {
+            QC_WEATHER_PARAMETERS.put(weatherParameter, qcwp);
+        }
+
         return qcwp;
     }
     
@@ -104,10 +143,29 @@ public class QCHelpers {
      * Returned tuples are ordered in ascending order of ids (= the values 
      * that the indices in tuples point to).
      * 
+     * The tuples are memoized per list of weather parameters.
+     * 
      * @param weatherParameters
      * @return a list of aggregate tuples
      */
-    public static Integer[][] getLogicalTuplesFromWeatherParameters(Integer[] weatherParameters) {        
+    public static Integer[][] getLogicalTuplesFromWeatherParameters(Integer[] weatherParameters) {
+        List<Integer> signature = Arrays.asList(weatherParameters.clone());
+        Integer[][] tuples = LOGICAL_TUPLES.get(signature);
+        if (tuples == null) {
+            tuples = QCHelpers.findLogicalTuplesFromWeatherParameters(weatherParameters);
+            if (LOGICAL_TUPLES.size() < MAX_MEMOIZED) {
+                LOGICAL_TUPLES.put(signature, tuples);
+            }
+        }
+        // Copies, so that the memoized tuples can't be changed
+        Integer[][] copies = new Integer[tuples.length][];
+        for (int i=0; i<tuples.length; i++) {
+            copies[i] = tuples[i].clone();
+        }
+        return copies;
+    }
+
+    private static Integer[][] findLogicalTuplesFromWeatherParameters(Integer[] weatherParameters) {        
         // Key is type of weather parameter (its three first numbers - 123x), 
         // value is an array of 3 indices (mean, min, max - in that order),
         // where indices point to that values location in the 
@@ -184,7 +242,19 @@ public class QCHelpers {
         return tuples;
     }
 
+    /**
+     * @param weatherParameterId
+     * @param qctesttype
+     * @return true if the QC test applies to the weather parameter. Looked up in the compiled table
+     */
     public static boolean isWeatherParameterHandledByQCTest(int weatherParameterId, QCTestType qctesttype) {
+        if (weatherParameterId >= 0 && weatherParameterId < QC_TABLE_SIZE) {
+            return (QC_TESTS_BY_WEATHER_PARAMETER[weatherParameterId] & (1 << qctesttype.ordinal())) != 0;
+        }
+        return isWeatherParameterHandledByQCTestRule(weatherParameterId, qctesttype);
+    }
+
+    private static boolean isWeatherParameterHandledByQCTestRule(int weatherParameterId, QCTestType qctesttype) {
 
         switch(qctesttype) {
             // all weather parameters are checked for prequalification
@@ -201,26 +271,28 @@ public class QCHelpers {
             // * humidity 3000
             // * wind 4000
             case LOGICAL: {
-                Pattern pattern = Pattern.compile("^((10|11)\\d\\d)|((3|4)\\d\\d\\d)$");
-                Matcher m = pattern.matcher("" + weatherParameterId);
-                return m.matches();
+                return LOGICAL_TEST_PARAMETERS.matcher(String.valueOf(weatherParameterId)).matches();
             }
 
             // all weather parameters are checked for step qc except:
             // * precipitation 2000
             // * leaf wetness  3100
             case STEP: {
-                Pattern pattern = Pattern.compile("^(31\\d\\d)|(2\\d\\d\\d)$");
-                Matcher m = pattern.matcher("" + weatherParameterId);
-                return !m.matches();
+                return !STEP_TEST_EXCLUDED_PARAMETERS.matcher(String.valueOf(weatherParameterId)).matches();
             }
 
             // all weather parameters are checked for freeze qc except:
             // * leaf wetness 3100
             case FREEZE: {
-                Pattern pattern = Pattern.compile("^(31\\d\\d)$");
-                Matcher m = pattern.matcher("" + weatherParameterId);
-                return !m.matches();
+                return !FREEZE_TEST_EXCLUDED_PARAMETERS.matcher(String.valueOf(weatherParameterId)).matches();
+            }
+
+            // only following weather parameters are checked against the neighbors, 
+            // since the others vary too much over short distances:
+            // * temperature 1000
+            // * humidity 3000
+            case SPATIAL: {
+                return SPATIAL_TEST_PARAMETERS.matcher(String.valueOf(weatherParameterId)).matches();
             }
 
             // other qctypes are expected to be handled for all weather 
@@ -240,9 +312,10 @@ public class QCHelpers {
      * @return boolean 
      */
     public static boolean isWeatherParameterPrecipitation(Integer weatherParameter) {
-        Pattern pattern = Pattern.compile("^(2\\d\\d\\d)$");
-        Matcher m = pattern.matcher("" + weatherParameter);
-        return m.matches();
+        if (weatherParameter != null && weatherParameter >= 0 && weatherParameter < QC_TABLE_SIZE) {
+            return PRECIPITATION.get(weatherParameter);
+        }
+        return PRECIPITATION_PARAMETERS.matcher("" + weatherParameter).matches();
     }
     
     /**
@@ -255,14 +328,12 @@ public class QCHelpers {
      * replaced by null value.
      */
     public static Integer[] filterWeatherParametersBasedOnQCType(Integer[] weatherParameters, QCTestType qctesttype) {
-        List<Integer> wpList = new ArrayList<Integer>(Arrays.asList(weatherParameters));
-        Integer[] weatherParametersToHandle = wpList.stream().map((Integer wp) -> {
-            if (QCHelpers.isWeatherParameterHandledByQCTest(wp, qctesttype)) {
-                return wp;
-            } else {
-                return null;
+        Integer[] weatherParametersToHandle = new Integer[weatherParameters.length];
+        for (int i=0; i<weatherParameters.length; i++) {
+            if (QCHelpers.isWeatherParameterHandledByQCTest(weatherParameters[i], qctesttype)) {
+                weatherParametersToHandle[i] = weatherParameters[i];
             }
-        }).toArray(Integer[]::new);
+        }
 
         return weatherParametersToHandle;
     }
@@ -275,18 +346,10 @@ public class QCHelpers {
      * @return a threshold value.
      */
     public static Double getThresholdValueForWeatherParameter(Integer weatherParameter, String thresholdValueName) {
-        Double thresholdValue = null;
-        
-        //ThresholdData object
-        ThresholdData thresholdData = new ThresholdData();
-        //Weather data parameter key specific threshold data object
-        JSONObject thresholdDataObject = thresholdData.getThresholdDataObject(String.valueOf(weatherParameter));
+        //Weather data parameter key specific threshold data from the preloaded table
+        Threshold thresholdDataObject = ThresholdData.getThreshold(weatherParameter);
 
-        if (thresholdDataObject.has(thresholdValueName)) {
-            thresholdValue = thresholdDataObject.getDouble(thresholdValueName);
-        }
-        
-        return thresholdValue;
+        return thresholdDataObject != null ? thresholdDataObject.getValue(thresholdValueName) : null;
     }
 
 }
@@ -9,4 +9,5 @@ public enum QCTestType {
     LOGICAL,
     STEP,
     FREEZE,
+    SPATIAL,
 }
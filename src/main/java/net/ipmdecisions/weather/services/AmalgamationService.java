@@ -22,19 +22,35 @@ package net.ipmdecisions.weather.services;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 import javax.ejb.EJB;
 import javax.ws.rs.Consumes;
@@ -43,9 +59,17 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,21 +81,41 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import java.io.DataOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 
 
+import net.ipmdecisions.weather.amalgamation.AmalgamationCursor;
 import net.ipmdecisions.weather.amalgamation.AmalgamationServiceErrorMessage;
+import net.ipmdecisions.weather.amalgamation.Deadline;
 import net.ipmdecisions.weather.amalgamation.Interpolation;
+import net.ipmdecisions.weather.amalgamation.QueryPlanner;
+import net.ipmdecisions.weather.amalgamation.SharedSourceRequests;
+import net.ipmdecisions.weather.amalgamation.SourceHealth;
+import net.ipmdecisions.weather.amalgamation.SourcePlan;
+import net.ipmdecisions.weather.amalgamation.SourceRequest;
+import net.ipmdecisions.weather.amalgamation.WeatherDataFetcher;
 import net.ipmdecisions.weather.amalgamation.indices.IndicesBean;
 import net.ipmdecisions.weather.controller.AmalgamationBean;
+import net.ipmdecisions.weather.controller.AmalgamationCacheBean;
+import net.ipmdecisions.weather.controller.AmalgamationCacheBean.CachedWeatherData;
+import net.ipmdecisions.weather.controller.ExecutorBean;
+import net.ipmdecisions.weather.controller.MetricsBean;
+import net.ipmdecisions.weather.controller.RawDataCacheBean;
+import net.ipmdecisions.weather.controller.RequestCoalescingBean;
+import net.ipmdecisions.weather.controller.SourceHealthBean;
+import net.ipmdecisions.weather.controller.SourcePlanBean;
 import net.ipmdecisions.weather.controller.WeatherDataSourceBean;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
 import net.ipmdecisions.weather.entity.LocationWeatherDataException;
 import net.ipmdecisions.weather.entity.WeatherDataSourceException;
 import net.ipmdecisions.weather.qc.QualityControlMethods;
+import net.ipmdecisions.weather.qc.SpatialQCTester;
+import net.ipmdecisions.weather.util.StageTimings;
+import net.ipmdecisions.weather.util.SystemUtil;
 import net.ipmdecisions.weather.util.WeatherDataUtil;
 import net.ipmdecisions.weather.entity.WeatherData;
 import net.ipmdecisions.weather.entity.WeatherDataSource;
@@ -89,6 +133,19 @@ public class AmalgamationService {
 
 	private static Logger LOGGER = LoggerFactory.getLogger(AmalgamationService.class);
 
+	/** Response header with the cursor for incremental amalgamation */
+	public static final String CURSOR_HEADER = "X-Amalgamation-Cursor";
+
+	/** Response header with the ids of the weather data sources that did not deliver data, comma separated */
+	public static final String MISSING_SOURCES_HEADER = "X-Amalgamation-Missing-Sources";
+
+	/** Newline delimited JSON, used for streaming results */
+	public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+	private static final ObjectMapper NDJSON_OBJECT_MAPPER = new ObjectMapper()
+			.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+			.registerModule(new JavaTimeModule());
+
 	private Response returnError(Integer statusCode, String message)
 	{
 		// TODO: Create errormessage object - return it
@@ -105,6 +162,27 @@ public class AmalgamationService {
 	@EJB
 	WeatherDataSourceBean weatherDataSourceBean;
 
+	@EJB
+	AmalgamationCacheBean amalgamationCacheBean;
+
+	@EJB
+	RawDataCacheBean rawDataCacheBean;
+
+	@EJB
+	RequestCoalescingBean requestCoalescingBean;
+
+	@EJB
+	ExecutorBean executorBean;
+
+	@EJB
+	SourceHealthBean sourceHealthBean;
+
+	@EJB
+	MetricsBean metricsBean;
+
+	@EJB
+	SourcePlanBean sourcePlanBean;
+
 
 	/**
 	 * Attempts to give you all the requested parameters for the given location
@@ -115,19 +193,259 @@ public class AmalgamationService {
 	 * @param timeEndStr ISO Date (e.g. 2021-09-01)
 	 * @param interval logging interval for weather data in seconds. Hourly = 3600, daily= 86400
 	 * @param parametersStr
-	 * @return
+	 * @param sinceStr Incremental mode: Only return data from this time and onwards. ISO timestamp (e.g. 2021-06-01T00:00:00+02:00) or date (e.g. 2021-06-01)
+	 * @param cursor Incremental mode: The cursor (X-Amalgamation-Cursor header) returned by the previous request. Overrides since
+	 * @param serverTiming If true: The time spent in each stage of the amalgamation is returned in the Server-Timing header
+	 * @param maxLatency The time budget of the request, in milliseconds. Sources that usually can't respond in time are 
+	 * skipped, and sources that have not responded when the time is up are given up. The data that have arrived are 
+	 * then amalgamated and returned. The time for the amalgamation comes in addition, so leave some room for it
+	 * @param request Used for revalidation (If-None-Match) of cached results
+	 * @return the result, with ETag and Cache-Control headers. Results are cached, see {@link AmalgamationCacheBean}.
+	 * The X-Amalgamation-Cursor header holds a cursor for the next incremental request. In incremental mode, the
+	 * client should replace its data from the start of the returned data set and onwards with the returned data.
+	 * The X-Amalgamation-Missing-Sources header lists the weather data sources that did not deliver any data. 
+	 * Results with missing sources (e.g. due to maxLatency or a failing source) are neither cached nor given a cursor
 	 */
 	@GET
 	@Path("amalgamate")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response amalgamateGET(@QueryParam("longitude") Double longitude,
-								  @QueryParam("latitude") Double latitude,
-								  @QueryParam("timeStart") String timeStartStr,
-								  @QueryParam("timeEnd") String timeEndStr,
-								  @QueryParam("interval") Integer interval,
-								  @QueryParam("parameters") String parametersStr)
+	public void amalgamateGET(@Suspended AsyncResponse asyncResponse,
+							  @QueryParam("longitude") Double longitude,
+							  @QueryParam("latitude") Double latitude,
+							  @QueryParam("timeStart") String timeStartStr,
+							  @QueryParam("timeEnd") String timeEndStr,
+							  @QueryParam("interval") Integer interval,
+							  @QueryParam("parameters") String parametersStr,
+							  @QueryParam("since") String sinceStr,
+							  @QueryParam("cursor") String cursor,
+							  @QueryParam("serverTiming") Boolean serverTiming,
+							  @QueryParam("maxLatency") Long maxLatency,
+							  @Context Request request)
 	{
-		return this.amalgamate(longitude, latitude, timeStartStr, timeEndStr, interval, parametersStr, null);
+		if(maxLatency != null && maxLatency <= 0)
+		{
+			asyncResponse.resume(this.getInvalidMaxLatencyResponse());
+			return;
+		}
+		// The time budget includes any waiting for a free thread
+		Deadline deadline = maxLatency != null ? new Deadline(maxLatency) : null;
+		executorBean.runAsync(asyncResponse, () -> {
+			StageTimings timings = this.getStageTimings();
+			return this.withServerTiming(
+					this.amalgamateGET(longitude, latitude, timeStartStr, timeEndStr, interval, parametersStr, sinceStr, cursor, request, timings, deadline),
+					timings, serverTiming
+			);
+		});
+	}
+
+	Response amalgamateGET(Double longitude,
+						   Double latitude,
+						   String timeStartStr,
+						   String timeEndStr,
+						   Integer interval,
+						   String parametersStr,
+						   String sinceStr,
+						   String cursor,
+						   Request request,
+						   StageTimings timings,
+						   Deadline deadline)
+	{
+		// Incremental mode
+		if(sinceStr != null || cursor != null)
+		{
+			Instant since;
+			try
+			{
+				since = cursor != null ?
+						AmalgamationCursor.decode(cursor, longitude, latitude, parametersStr, interval).getHorizon()
+						: this.parseSince(sinceStr, longitude, latitude);
+			}
+			catch(IllegalArgumentException | DateTimeParseException ex)
+			{
+				return Response.status(Status.BAD_REQUEST).entity(
+						List.of(new AmalgamationServiceErrorMessage(null, ex.getMessage(), Status.BAD_REQUEST.getStatusCode()))
+				).build();
+			}
+			Response response = this.amalgamate(longitude, latitude, timeStartStr, timeEndStr, interval, parametersStr, null, since, timings, deadline, false);
+			if(response.getStatus() != Status.OK.getStatusCode() && response.getStatus() != Status.NO_CONTENT.getStatusCode()
+					|| this.isIncomplete(response))
+			{
+				return response;
+			}
+			return Response.fromResponse(response)
+					.header(CURSOR_HEADER, this.getCursor(longitude, latitude, timeEndStr, interval, parametersStr, since))
+					.build();
+		}
+
+		// Serve from the cache if possible
+		long start = System.nanoTime();
+		String cacheKey = amalgamationCacheBean.getCacheKey(longitude, latitude, parametersStr, interval, timeStartStr, timeEndStr);
+		CachedWeatherData cached = amalgamationCacheBean.get(cacheKey);
+		timings.record("cache", start);
+		if(cached == null)
+		{
+			Response response = this.amalgamate(longitude, latitude, timeStartStr, timeEndStr, interval, parametersStr, null, null, timings, deadline, false);
+			if(response.getStatus() != Status.OK.getStatusCode() || !(response.getEntity() instanceof WeatherData)
+					|| this.isIncomplete(response))
+			{
+				return response;
+			}
+			if(cacheKey == null)
+			{
+				return Response.fromResponse(response)
+						.header(CURSOR_HEADER, this.getCursor(longitude, latitude, timeEndStr, interval, parametersStr, null))
+						.build();
+			}
+			ZoneId tzForLocation;
+			try
+			{
+				List<Integer> requestedParameters = Arrays.asList(parametersStr.split(",")).stream()
+						.map(p->Integer.valueOf(p.trim()))
+						.collect(Collectors.toList());
+				tzForLocation = sourcePlanBean.getSourcePlan(longitude, latitude, requestedParameters, interval).getTimeZone();
+			}
+			catch(IOException ex)
+			{
+				LOGGER.error(ex.getMessage(), ex);
+				return Response.fromResponse(response)
+						.header(CURSOR_HEADER, this.getCursor(longitude, latitude, timeEndStr, interval, parametersStr, null))
+						.build();
+			}
+			cached = amalgamationCacheBean.put(cacheKey, (WeatherData) response.getEntity(), timeEndStr, tzForLocation);
+		}
+
+		CacheControl cacheControl = new CacheControl();
+		cacheControl.setMaxAge(cached.getMaxAge());
+		EntityTag eTag = new EntityTag(cached.getETag(longitude, latitude));
+		// Let the client revalidate cheaply
+		ResponseBuilder notModified = request != null ? request.evaluatePreconditions(eTag) : null;
+		if(notModified != null)
+		{
+			return notModified.cacheControl(cacheControl).build();
+		}
+		return Response.ok().entity(cached.getWeatherData(longitude, latitude)).tag(eTag).cacheControl(cacheControl)
+				.header(CURSOR_HEADER, this.getCursor(longitude, latitude, timeEndStr, interval, parametersStr, null))
+				.build();
+	}
+
+	/**
+	 * @param sinceStr ISO timestamp (e.g. 2021-06-01T00:00:00+02:00) or date (e.g. 2021-06-01). A date is interpreted as midnight at the location
+	 */
+	private Instant parseSince(String sinceStr, Double longitude, Double latitude)
+	{
+		try
+		{
+			return ZonedDateTime.parse(sinceStr).toInstant();
+		}
+		catch(DateTimeParseException ex)
+		{
+			return LocalDate.parse(sinceStr).atStartOfDay(amalgamationBean.getTimeZoneForLocation(longitude, latitude)).toInstant();
+		}
+	}
+
+	private Response getInvalidMaxLatencyResponse()
+	{
+		return Response.status(Status.BAD_REQUEST).entity(
+				List.of(new AmalgamationServiceErrorMessage(null, "maxLatency must be a positive number of milliseconds", Status.BAD_REQUEST.getStatusCode()))
+		).build();
+	}
+
+	/**
+	 * Data from the missing sources may arrive later (a source was down, its circuit breaker was open 
+	 * or it was given up due to the time budget). Such results must not be cached, and must not move 
+	 * the cursor past the data that are missing. Every error from a source is accompanied by its id 
+	 * in the missing sources, see {@link #getWeatherDataFromSources(List, List, Deadline, List, List)}
+	 * @return true if the result is missing data sources
+	 */
+	private boolean isIncomplete(Response response)
+	{
+		return response.getHeaderString(MISSING_SOURCES_HEADER) != null;
+	}
+
+	/**
+	 * @param missingSources The ids of the weather data sources that did not deliver any data
+	 * @return the response, with the missing sources in the X-Amalgamation-Missing-Sources header if it's a success
+	 */
+	private Response withMissingSources(Response response, List<String> missingSources)
+	{
+		if(missingSources.isEmpty() || response.getStatus() != Status.OK.getStatusCode())
+		{
+			return response;
+		}
+		return Response.fromResponse(response).header(MISSING_SOURCES_HEADER, String.join(",", missingSources)).build();
+	}
+
+	/**
+	 * @return timings that are also reported to the metrics, see {@link MetricsBean}
+	 */
+	private StageTimings getStageTimings()
+	{
+		return new StageTimings((stage, nanos) -> metricsBean.observe(MetricsBean.AMALGAMATION_STAGE_SECONDS, nanos, "stage", stage));
+	}
+
+	/**
+	 * @return the response, with the Server-Timing header if requested
+	 */
+	private Response withServerTiming(Response response, StageTimings timings, Boolean serverTiming)
+	{
+		if(serverTiming == null || ! serverTiming)
+		{
+			return response;
+		}
+		return Response.fromResponse(response).header("Server-Timing", timings.getServerTiming()).build();
+	}
+
+	/**
+	 * The cursor holds the settled horizon: Midnight at the location, as many days ago as the longest
+	 * settlement lag of the data sources (see {@link RawDataCacheBean}). Data before that time are not
+	 * expected to change. The horizon is never later than the end of the requested period, and
+	 * never earlier than the since time of the current request
+	 * @return the encoded cursor, or null if the request is incomplete
+	 */
+	private String getCursor(Double longitude, Double latitude, String timeEndStr, Integer interval, String parametersStr, Instant since)
+	{
+		if(longitude == null || latitude == null || timeEndStr == null || interval == null)
+		{
+			return null;
+		}
+		ZoneId tzForLocation = amalgamationBean.getTimeZoneForLocation(longitude, latitude);
+		Instant horizon = LocalDate.now(tzForLocation).minusDays(rawDataCacheBean.getMaxSettlementDays()).atStartOfDay(tzForLocation).toInstant();
+		Instant periodEnd = LocalDate.parse(timeEndStr).atStartOfDay(tzForLocation).toInstant().plusSeconds(interval);
+		horizon = horizon.isAfter(periodEnd) ? periodEnd : horizon;
+		horizon = since != null && since.isAfter(horizon) ? since : horizon;
+		return new AmalgamationCursor(horizon, longitude, latitude, parametersStr, interval).encode();
+	}
+
+	/**
+	 * Metrics for the amalgamation result cache, the raw data cache, the source plan cache and the coalescing of requests to the data sources
+	 * @return hits, misses, evictions, expirations, number of entries and estimated size (bytes) of the caches,
+	 * and the number of performed and coalesced data source requests
+	 */
+	@GET
+	@Path("cache/metrics")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getCacheMetrics()
+	{
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("amalgamationCache", amalgamationCacheBean.getMetrics());
+		metrics.put("rawDataCache", rawDataCacheBean.getMetrics());
+		metrics.put("requestCoalescing", requestCoalescingBean.getMetrics());
+		metrics.put("sourcePlans", sourcePlanBean.getMetrics());
+		return Response.ok().entity(metrics).build();
+	}
+
+	/**
+	 * The health of the weather data sources, as seen from the amalgamation service. Sources with
+	 * repeated failures are not requested for a while (the circuit is open), see {@link SourceHealthBean}
+	 * @return per source: state of the circuit (CLOSED, OPEN or HALF_OPEN), health score (0-1), number of recent
+	 * requests, error rate, empty response rate and average latency
+	 */
+	@GET
+	@Path("sources/health")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getSourceHealth()
+	{
+		return Response.ok().entity(sourceHealthBean.getStatus()).build();
 	}
 
 	/**
@@ -140,22 +458,700 @@ public class AmalgamationService {
 	 * @param interval logging interval for weather data in seconds. Hourly = 3600, daily= 86400
 	 * @param privateWeatherStationInfo Json information with information about the private weather data source. Example: {"weatherStationId": "18150444", "weatherSourceId": "com.meteobot", "userName": "theUser","password":"theSuperPassword"}
 	 * @param parametersStr
+	 * @param serverTiming If true: The time spent in each stage of the amalgamation is returned in the Server-Timing header
+	 * @param maxLatency The time budget of the request, in milliseconds. See {@link #amalgamateGET(AsyncResponse, Double, Double, String, String, Integer, String, String, String, Boolean, Long, Request)}
 	 * @return
 	 */
 	@POST
 	@Path("amalgamate/private")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response amalgamatePOST(@QueryParam("longitude") Double longitude,
-								   @QueryParam("latitude") Double latitude,
-								   @QueryParam("timeStart") String timeStartStr,
-								   @QueryParam("timeEnd") String timeEndStr,
-								   @QueryParam("interval") Integer interval,
-								   @QueryParam("parameters") String parametersStr,
-								   JsonNode privateWeatherStationInfo
+	public void amalgamatePOST(@Suspended AsyncResponse asyncResponse,
+							   @QueryParam("longitude") Double longitude,
+							   @QueryParam("latitude") Double latitude,
+							   @QueryParam("timeStart") String timeStartStr,
+							   @QueryParam("timeEnd") String timeEndStr,
+							   @QueryParam("interval") Integer interval,
+							   @QueryParam("parameters") String parametersStr,
+							   @QueryParam("serverTiming") Boolean serverTiming,
+							   @QueryParam("maxLatency") Long maxLatency,
+							   JsonNode privateWeatherStationInfo
+	)
+	{
+		if(maxLatency != null && maxLatency <= 0)
+		{
+			asyncResponse.resume(this.getInvalidMaxLatencyResponse());
+			return;
+		}
+		Deadline deadline = maxLatency != null ? new Deadline(maxLatency) : null;
+		executorBean.runAsync(asyncResponse, () -> {
+			StageTimings timings = this.getStageTimings();
+			return this.withServerTiming(
+					this.amalgamate(longitude, latitude, timeStartStr, timeEndStr, interval, parametersStr, privateWeatherStationInfo, null, timings, deadline, false),
+					timings, serverTiming
+			);
+		});
+	}
+
+	/**
+	 * Amalgamates weather data for the location as {@link #amalgamateGET(AsyncResponse, Double, Double, String, String, Integer, String, String, String, Boolean, Long, Request)},
+	 * but streams the result in segments, so that the client can start using the first part of a long period
+	 * while the rest is being processed. The data are fetched from the sources, amalgamated (fused, 
+	 * controlled and gap filled) and sent one segment at a time, so neither the time until the first 
+	 * segment nor the memory used depends on the length of the period.
+	 *
+	 * The result is newline delimited JSON:
+	 * <ol>
+	 * <li>A header: {"type":"header","timeStart":...,"timeEnd":...,"interval":3600,"weatherParameters":[1002,2001]}</li>
+	 * <li>One line per segment, in order: {"type":"segment","status":200,"weatherData":{...},"missingSources":[...],"errors":[...]}. 
+	 * The sources that failed for the segment are listed in missingSources, and their errors in errors. A segment with no data has 
+	 * status 204, and a segment where all the sources failed has status 503</li>
+	 * <li>The end: {"type":"end","segments":27}. If this line is missing, the stream was broken off</li>
+	 * </ol>
+	 *
+	 * The length of the segments is set by the system property org.madiphs.weatherservice.STREAM_SEGMENT_DAYS (default 7)
+	 *
+	 * @param longitude
+	 * @param latitude
+	 * @param timeStartStr ISO Date (e.g. 2021-03-01)
+	 * @param timeEndStr ISO Date (e.g. 2021-09-01)
+	 * @param interval logging interval for weather data in seconds. Hourly = 3600, daily= 86400
+	 * @param parametersStr
+	 * @param maxLatency The time budget for the requests to the data sources of each segment, in milliseconds
+	 * @return
+	 */
+	@GET
+	@Path("amalgamate/stream")
+	@Produces(NDJSON_MEDIA_TYPE)
+	public void amalgamateStream(@Suspended AsyncResponse asyncResponse,
+								 @QueryParam("longitude") Double longitude,
+								 @QueryParam("latitude") Double latitude,
+								 @QueryParam("timeStart") String timeStartStr,
+								 @QueryParam("timeEnd") String timeEndStr,
+								 @QueryParam("interval") Integer interval,
+								 @QueryParam("parameters") String parametersStr,
+								 @QueryParam("maxLatency") Long maxLatency
+	)
+	{
+		if(maxLatency != null && maxLatency <= 0)
+		{
+			asyncResponse.resume(this.getInvalidMaxLatencyResponse());
+			return;
+		}
+		Deadline deadline = maxLatency != null ? new Deadline(maxLatency) : null;
+		executorBean.runAsync(asyncResponse, () ->
+				this.amalgamate(longitude, latitude, timeStartStr, timeEndStr, interval, parametersStr, null, null, this.getStageTimings(), deadline, true)
+		);
+	}
+
+	/**
+	 * Amalgamates weather data for many locations in one request. The locations share the
+	 * period, the parameters and the interval. Locations that resolve to the same request to a
+	 * weather data source (e.g. the same weather station) share that request. The requests to the
+	 * data sources run in parallel, and each location is amalgamated as soon as its data are in place.
+	 *
+	 * The results are streamed as newline delimited JSON, one line per location, in the order they
+	 * are completed. Each line has the index of the location in the request, the coordinates, the
+	 * status (as for the single location amalgamation) and either the weather data or the errors.
+	 * Example: {"index":0,"longitude":10.781989,"latitude":59.660468,"status":200,"weatherData":{...}}
+	 *
+	 * The maximum number of locations is set by the system property org.madiphs.weatherservice.BATCH_MAX_LOCATIONS (default 500)
+	 *
+	 * @param batchRequest Example: {"timeStart":"2021-03-01","timeEnd":"2021-09-01","interval":3600,"parameters":[1002,2001],"locations":[{"longitude":10.781989,"latitude":59.660468},{"longitude":10.79,"latitude":59.67}]}
+	 * @return
+	 */
+	@POST
+	@Path("amalgamate/batch")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(NDJSON_MEDIA_TYPE)
+	public void amalgamateBatch(@Suspended AsyncResponse asyncResponse, JsonNode batchRequest)
+	{
+		executorBean.runAsync(asyncResponse, () -> this.amalgamateBatch(batchRequest));
+	}
+
+	private Response amalgamateBatch(JsonNode batchRequest)
+	{
+		String timeStartStr = batchRequest != null ? batchRequest.path("timeStart").asText(null) : null;
+		String timeEndStr = batchRequest != null ? batchRequest.path("timeEnd").asText(null) : null;
+		Integer interval = batchRequest != null && batchRequest.hasNonNull("interval") ? batchRequest.get("interval").asInt() : null;
+		JsonNode locations = batchRequest != null ? batchRequest.get("locations") : null;
+		String parametersStr = null;
+		if(batchRequest != null && batchRequest.hasNonNull("parameters"))
+		{
+			JsonNode parameters = batchRequest.get("parameters");
+			parametersStr = parameters.isArray() ?
+					StreamSupport.stream(parameters.spliterator(), false).map(JsonNode::asText).collect(Collectors.joining(","))
+					: parameters.asText();
+		}
+		long maxLocations = SystemUtil.getLongProperty("org.madiphs.weatherservice.BATCH_MAX_LOCATIONS", 500);
+		if(timeStartStr == null || timeEndStr == null || interval == null || parametersStr == null || parametersStr.isBlank()
+				|| locations == null || ! locations.isArray() || locations.size() == 0)
+		{
+			return Response.status(Status.BAD_REQUEST).entity(
+					List.of(new AmalgamationServiceErrorMessage(null,"The batch request must have timeStart, timeEnd, interval, parameters and at least one location", Status.BAD_REQUEST.getStatusCode()))
+			).build();
+		}
+		if(locations.size() > maxLocations)
+		{
+			return Response.status(Status.BAD_REQUEST).entity(
+					List.of(new AmalgamationServiceErrorMessage(null,"Too many locations. Max number of locations is " + maxLocations, Status.BAD_REQUEST.getStatusCode()))
+			).build();
+		}
+		List<Integer> requestedParameters;
+		try
+		{
+			requestedParameters = Arrays.asList(parametersStr.split(",")).stream()
+					.map(p->Integer.valueOf(p.trim()))
+					.collect(Collectors.toList());
+			LocalDate.parse(timeStartStr);
+			LocalDate.parse(timeEndStr);
+		}
+		catch(NumberFormatException | DateTimeParseException ex)
+		{
+			return Response.status(Status.BAD_REQUEST).entity(
+					List.of(new AmalgamationServiceErrorMessage(null, ex.getMessage(), Status.BAD_REQUEST.getStatusCode()))
+			).build();
+		}
+
+		// Start all the requests to the data sources, and amalgamate each location once its data are in place
+		long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(executorBean.getRequestTimeoutSeconds());
+		BlockingQueue<String> results = new LinkedBlockingQueue<>();
+		// Each location gets exactly one result
+		Set<Integer> pendingLocations = ConcurrentHashMap.newKeySet();
+		IntStream.range(0, locations.size()).forEach(pendingLocations::add);
+		SharedSourceRequests sharedSourceRequests = new SharedSourceRequests(executorBean.getFetchExecutor());
+		for(int index=0; index < locations.size(); index++)
+		{
+			int locationIndex = index;
+			JsonNode location = locations.get(index);
+			Double longitude = location.hasNonNull("longitude") ? location.get("longitude").asDouble() : null;
+			Double latitude = location.hasNonNull("latitude") ? location.get("latitude").asDouble() : null;
+			if(longitude == null || latitude == null)
+			{
+				this.addBatchResult(results, pendingLocations, locationIndex, longitude, latitude, Response.status(Status.BAD_REQUEST).entity(
+						List.of(new AmalgamationServiceErrorMessage(null,"The location must have longitude and latitude", Status.BAD_REQUEST.getStatusCode()))
+				).build());
+				continue;
+			}
+			SourcePlan sourcePlan;
+			try
+			{
+				sourcePlan = sourcePlanBean.getSourcePlan(longitude, latitude, requestedParameters, interval);
+			}
+			catch(IOException ex)
+			{
+				LOGGER.error(ex.getMessage(), ex);
+				this.addBatchResult(results, pendingLocations, locationIndex, longitude, latitude, Response.status(Status.SERVICE_UNAVAILABLE).entity(
+						new AmalgamationServiceErrorMessage(null, ex.getMessage(), Status.SERVICE_UNAVAILABLE.getStatusCode())
+				).build());
+				continue;
+			}
+			ZoneId tzForLocation = sourcePlan.getTimeZone();
+			Instant timeStart = LocalDate.parse(timeStartStr).atStartOfDay(tzForLocation).toInstant();
+			Instant timeEnd = LocalDate.parse(timeEndStr).atStartOfDay(tzForLocation).toInstant();
+			List<WeatherDataSource> wdss = amalgamationBean.getWeatherDataSourcesInPriorityOrder(sourcePlan.getWeatherDataSources(), timeStart, timeEnd);
+			if(wdss.isEmpty())
+			{
+				this.addBatchResult(results, pendingLocations, locationIndex, longitude, latitude, Response.status(Status.NOT_FOUND).entity(
+						List.of(new AmalgamationServiceErrorMessage(null,"No weather data found for given location and period", Status.NOT_FOUND.getStatusCode()))
+				).build());
+				continue;
+			}
+			List<SourceRequest> sourceRequests = this.getSourceRequests(sourcePlan, wdss, null, null, longitude, latitude, interval);
+			List<CompletableFuture<WeatherData>> weatherDataRequests;
+			try
+			{
+				weatherDataRequests = sourceRequests.stream()
+						.map(sourceRequest -> sharedSourceRequests.get(sourceRequest, timeStart, timeEnd,
+								(fetchStart, fetchEnd) -> this.getWeatherDataFromSource(sourceRequest, fetchStart, fetchEnd, this.getAuthentication(sourceRequest), null)
+						))
+						.collect(Collectors.toList());
+			}
+			catch(RejectedExecutionException ex)
+			{
+				// The requests that were started are still shared with the other locations
+				this.addBatchResult(results, pendingLocations, locationIndex, longitude, latitude, executorBean.getOverloadedResponse());
+				continue;
+			}
+			CompletableFuture.allOf(weatherDataRequests.toArray(new CompletableFuture<?>[0]))
+					.whenComplete((done, failure) -> {
+						// Submitted here rather than with handleAsync(), since a rejection from handleAsync() 
+						// would be thrown to the thread that completes the last request, and the location 
+						// would never get a result
+						try
+						{
+							executorBean.getComputeExecutor().execute(() -> {
+								Response response;
+								try
+								{
+									response = this.getAmalgamatedResponse(sourceRequests, weatherDataRequests, requestedParameters, timeStart, timeEnd, interval, tzForLocation, this.getStageTimings());
+								}
+								catch(RuntimeException ex)
+								{
+									LOGGER.error(ex.getMessage(), ex);
+									response = Response.serverError().entity(
+											List.of(new AmalgamationServiceErrorMessage(null, ex.getMessage(), Status.INTERNAL_SERVER_ERROR.getStatusCode()))
+									).build();
+								}
+								this.addBatchResult(results, pendingLocations, locationIndex, longitude, latitude, response);
+							});
+						}
+						catch(RejectedExecutionException ex)
+						{
+							this.addBatchResult(results, pendingLocations, locationIndex, longitude, latitude, executorBean.getOverloadedResponse());
+						}
+					});
+		}
+		LOGGER.debug("Batch of " + locations.size() + " locations shares " + sharedSourceRequests.getNumberOfRequests() + " requests to the data sources");
+
+		int numberOfResults = locations.size();
+		StreamingOutput stream = output -> {
+			for(int i=0; i < numberOfResults; i++)
+			{
+				try
+				{
+					String result = results.poll(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+					if(result == null)
+					{
+						// The remaining locations are given up, and any later results for them are dropped
+						for(Integer locationIndex:new TreeSet<>(pendingLocations))
+						{
+							JsonNode location = locations.get(locationIndex);
+							this.addBatchResult(results, pendingLocations, locationIndex, 
+									location.hasNonNull("longitude") ? location.get("longitude").asDouble() : null,
+									location.hasNonNull("latitude") ? location.get("latitude").asDouble() : null,
+									Response.status(Status.GATEWAY_TIMEOUT).entity(
+											List.of(new AmalgamationServiceErrorMessage(null, "The location was not amalgamated within " + executorBean.getRequestTimeoutSeconds() + " seconds", Status.GATEWAY_TIMEOUT.getStatusCode()))
+									).build());
+						}
+						result = results.take();
+					}
+					output.write(result.getBytes(StandardCharsets.UTF_8));
+					output.write('\n');
+					output.flush();
+				}
+				catch(InterruptedException ex)
+				{
+					Thread.currentThread().interrupt();
+					throw new IOException(ex);
+				}
+			}
+		};
+		return Response.ok(stream).build();
+	}
+
+	/**
+	 * Amalgamates the data from the finished requests to the data sources
+	 * @param sourceRequests The requests to the data sources, in priority order
+	 * @param weatherDataRequests The data from the requests, in the same order
+	 */
+	private Response getAmalgamatedResponse(
+			List<SourceRequest> sourceRequests,
+			List<CompletableFuture<WeatherData>> weatherDataRequests,
+			List<Integer> requestedParameters,
+			Instant timeStart,
+			Instant timeEnd,
+			Integer interval,
+			ZoneId tzForLocation,
+			StageTimings timings
+	)
+	{
+		List<AmalgamationServiceErrorMessage> errorLog = new ArrayList<>();
+		List<String> missingSources = new ArrayList<>();
+		try
+		{
+			List<WeatherData> weatherDataFromSources = this.getWeatherDataFromSources(sourceRequests, weatherDataRequests, null, errorLog, missingSources);
+			return this.withMissingSources(
+					this.getAmalgamatedResponse(sourceRequests, weatherDataFromSources, errorLog, requestedParameters, timeStart, timeEnd, interval, tzForLocation, null, timings),
+					missingSources
+			);
+		}
+		catch(IOException ex)
+		{
+			LOGGER.error(ex.getMessage(), ex);
+			return Response.status(Status.SERVICE_UNAVAILABLE).entity(
+					new AmalgamationServiceErrorMessage(null, ex.getMessage(), Status.SERVICE_UNAVAILABLE.getStatusCode())
+			).build();
+		}
+	}
+
+	/**
+	 * Requests the data from the planned sources, and from the fallback tier if the 
+	 * planned sources fall short. See {@link QueryPlanner}. If a planned source fails, the
+	 * fallback tier is requested right away, in parallel with the rest of the planned sources. 
+	 * Otherwise the fallback tier is requested when the planned sources have finished, if 
+	 * their data do not cover the request, with the time that is left before the deadline
+	 * @param plannedSourceRequests The sources that together should cover the request
+	 * @param fallbackSourceRequests The rest of the sources
+	 * @return the data from the sources that succeeded, the planned sources first
+	 * @throws IOException if a request failed for other reasons than an error from the data source
+	 */
+	private List<WeatherData> fetchWeatherData(
+			List<SourceRequest> plannedSourceRequests,
+			List<SourceRequest> fallbackSourceRequests,
+			List<Integer> requestedParameters,
+			Instant timeStart,
+			Instant timeEnd,
+			Integer interval,
+			Deadline deadline,
+			List<AmalgamationServiceErrorMessage> errorLog,
+			List<String> missingSources
+	) throws IOException
+	{
+		List<SourceRequest> startedSourceRequests = new ArrayList<>();
+		List<CompletableFuture<WeatherData>> weatherDataRequests = this.startWeatherDataRequests(plannedSourceRequests, timeStart, timeEnd, deadline, startedSourceRequests, errorLog, missingSources);
+		List<SourceRequest> startedFallbackRequests = new ArrayList<>();
+		List<CompletableFuture<WeatherData>> fallbackRequests = null;
+		if(! fallbackSourceRequests.isEmpty())
+		{
+			// Waiting for the first failed planned source, or for all of them to finish
+			CompletableFuture<Void> failed = new CompletableFuture<>();
+			weatherDataRequests.forEach(request -> request.whenComplete((weatherData, ex) -> {
+				if(ex != null)
+				{
+					failed.complete(null);
+				}
+			}));
+			CompletableFuture<Object> failedOrFinished = CompletableFuture.anyOf(failed, CompletableFuture.allOf(weatherDataRequests.toArray(new CompletableFuture[0])));
+			try
+			{
+				if(deadline != null)
+				{
+					failedOrFinished.get(deadline.getRemainingMillis(), TimeUnit.MILLISECONDS);
+				}
+				else
+				{
+					failedOrFinished.get();
+				}
+			}
+			catch(ExecutionException | TimeoutException ex)
+			{
+				// The failures are handled when the data are collected below
+			}
+			catch(InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException(ex);
+			}
+			if(! missingSources.isEmpty() || failed.isDone())
+			{
+				LOGGER.debug("A planned source failed. Fetching from the fallback tier");
+				fallbackRequests = this.startWeatherDataRequests(fallbackSourceRequests, timeStart, timeEnd, deadline, startedFallbackRequests, errorLog, missingSources);
+			}
+		}
+		List<WeatherData> weatherDataFromSources = this.getWeatherDataFromSources(startedSourceRequests, weatherDataRequests, deadline, errorLog, missingSources);
+		// E.g. a station with an outage is filled in by the gridded sources
+		QueryPlanner queryPlanner = amalgamationBean.getQueryPlanner();
+		if(fallbackRequests == null && ! fallbackSourceRequests.isEmpty() 
+				&& (! missingSources.isEmpty() 
+					|| ! queryPlanner.getUncoveredParameters(weatherDataFromSources, requestedParameters).isEmpty()
+					|| ! queryPlanner.getPoorlyCoveredParameters(weatherDataFromSources, plannedSourceRequests, requestedParameters, timeStart, timeEnd, interval, QueryPlanner.MIN_COVERAGE).isEmpty()
+				)
+		)
+		{
+			LOGGER.debug("The planned sources fell short. Fetching from the fallback tier");
+			fallbackRequests = this.startWeatherDataRequests(fallbackSourceRequests, timeStart, timeEnd, deadline, startedFallbackRequests, errorLog, missingSources);
+		}
+		if(fallbackRequests != null)
+		{
+			weatherDataFromSources.addAll(this.getWeatherDataFromSources(startedFallbackRequests, fallbackRequests, deadline, errorLog, missingSources));
+		}
+		return weatherDataFromSources;
+	}
+
+	/**
+	 * Starts the requests to the data sources in parallel. Sources that usually need more time 
+	 * than what's left before the deadline are not requested
+	 * @param sourceRequests The requests to the data sources, in priority order
+	 * @param deadline If null: No sources are left out
+	 * @param startedSourceRequests The requests that were started are added here, in priority order
+	 * @param errorLog The errors from the sources that were not requested are added here
+	 * @param missingSources The ids of the sources that were not requested are added here
+	 * @return the data from the started requests, in the same order as startedSourceRequests
+	 */
+	private List<CompletableFuture<WeatherData>> startWeatherDataRequests(
+			List<SourceRequest> sourceRequests,
+			Instant timeStart,
+			Instant timeEnd,
+			Deadline deadline,
+			List<SourceRequest> startedSourceRequests,
+			List<AmalgamationServiceErrorMessage> errorLog,
+			List<String> missingSources
 	)
 	{
-		return this.amalgamate(longitude, latitude, timeStartStr, timeEndStr, interval, parametersStr, privateWeatherStationInfo);
+		List<CompletableFuture<WeatherData>> weatherDataRequests = new ArrayList<>();
+		for(SourceRequest sourceRequest:sourceRequests)
+		{
+			LOGGER.debug(sourceRequest.getWeatherDataSource().getName() + ":  " + sourceRequest.getEndpoint() + "?" + sourceRequest.getQueryString(timeStart, timeEnd));
+			long typicalLatency = deadline != null ? sourceHealthBean.getTypicalLatencyMillis(sourceRequest.getWeatherDataSource().getId()) : -1;
+			if(deadline != null && typicalLatency > deadline.getRemainingMillis())
+			{
+				errorLog.add(new AmalgamationServiceErrorMessage(
+						sourceRequest.getEndpoint(),
+						"Not requested, since the data source usually needs " + typicalLatency + " ms to respond, which is more than the time left (maxLatency)",
+						Status.GATEWAY_TIMEOUT.getStatusCode()
+				));
+				missingSources.add(sourceRequest.getWeatherDataSource().getId());
+				continue;
+			}
+			startedSourceRequests.add(sourceRequest);
+			weatherDataRequests.add(this.startWeatherDataRequest(sourceRequest, timeStart, timeEnd, deadline));
+		}
+		return weatherDataRequests;
+	}
+
+	/**
+	 * Waits for the requests to the data sources. Requests that have not finished by the deadline are given up
+	 * @param sourceRequests The requests to the data sources, in priority order
+	 * @param weatherDataRequests The data from the requests, in the same order
+	 * @param deadline If null: Wait until all requests have finished
+	 * @param errorLog The errors from the sources that failed are added here
+	 * @param missingSources The ids of the sources that failed are added here
+	 * @return the data from the sources that succeeded, in priority order
+	 * @throws IOException if a request failed for other reasons than an error from the data source
+	 */
+	private List<WeatherData> getWeatherDataFromSources(
+			List<SourceRequest> sourceRequests,
+			List<CompletableFuture<WeatherData>> weatherDataRequests,
+			Deadline deadline,
+			List<AmalgamationServiceErrorMessage> errorLog,
+			List<String> missingSources
+	) throws IOException
+	{
+		List<WeatherData> weatherDataFromSources = new ArrayList<>();
+		for(int i=0; i < weatherDataRequests.size(); i++)
+		{
+			SourceRequest sourceRequest = sourceRequests.get(i);
+			CompletableFuture<WeatherData> weatherDataRequest = weatherDataRequests.get(i);
+			try
+			{
+				weatherDataFromSources.add(deadline != null ?
+						weatherDataRequest.get(deadline.getRemainingMillis(), TimeUnit.MILLISECONDS)
+						: weatherDataRequest.get()
+				);
+			}
+			catch(TimeoutException ex)
+			{
+				// Shared requests run on until the source timeout, see getCoalescedWeatherDataFromSource.
+				// The settled days of their results are then cached for the next request, see RawDataCacheBean
+				weatherDataRequest.cancel(true);
+				errorLog.add(new AmalgamationServiceErrorMessage(
+						sourceRequest.getEndpoint(),
+						"No response from the data source within the time limit (maxLatency)",
+						Status.GATEWAY_TIMEOUT.getStatusCode()
+				));
+				missingSources.add(sourceRequest.getWeatherDataSource().getId());
+			}
+			catch(ExecutionException ex)
+			{
+				if(ex.getCause() instanceof WeatherDataSourceException)
+				{
+					WeatherDataSourceException wdsEx = (WeatherDataSourceException) ex.getCause();
+					errorLog.add(new AmalgamationServiceErrorMessage(wdsEx.getDataSourceURL(), wdsEx.getMessage(), wdsEx.getHttpErrorCode()));
+					missingSources.add(sourceRequest.getWeatherDataSource().getId());
+				}
+				else if(ex.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException) ex.getCause();
+				}
+				else
+				{
+					throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+				}
+			}
+			catch(InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException(ex);
+			}
+		}
+		return weatherDataFromSources;
+	}
+
+	/**
+	 * Starts the request to the data source on the fetch executor, see {@link ExecutorBean}
+	 * @return the data from the source. Completes exceptionally if the request failed
+	 */
+	private CompletableFuture<WeatherData> startWeatherDataRequest(SourceRequest sourceRequest, Instant timeStart, Instant timeEnd, Deadline deadline)
+	{
+		return CompletableFuture.supplyAsync(() -> {
+			try
+			{
+				return this.getWeatherDataFromSource(sourceRequest, timeStart, timeEnd, this.getAuthentication(sourceRequest), deadline);
+			}
+			catch(IOException | WeatherDataSourceException ex)
+			{
+				throw new CompletionException(ex);
+			}
+		}, executorBean.getFetchExecutor());
+	}
+
+	/**
+	 * Fetches and amalgamates the data one segment at a time, and streams each segment as soon
+	 * as it is finished. Each segment is fetched and amalgamated with a day of context on both sides, 
+	 * for the QC and the gap filling. The header is written before anything is fetched, and only 
+	 * one segment's data are kept in memory. The context days that the segments share are usually 
+	 * read from the raw data cache the second time
+	 * @param sourceRequests The requests to the weather data sources of the location, in priority order
+	 * @param plannedSourceRequests The sources that are fetched for each segment
+	 * @param fallbackSourceRequests The sources that are fetched for a segment if the planned sources fall short
+	 * @param deadline If not null: The time budget of the requests to the data sources, renewed for each segment
+	 * @return the stream, see {@link #amalgamateStream(AsyncResponse, Double, Double, String, String, Integer, String, Long)}
+	 */
+	private Response getStreamedResponse(
+			List<SourceRequest> sourceRequests,
+			List<SourceRequest> plannedSourceRequests,
+			List<SourceRequest> fallbackSourceRequests,
+			List<Integer> requestedParameters,
+			Instant timeStart,
+			Instant timeEnd,
+			Integer interval,
+			ZoneId tzForLocation,
+			Deadline deadline,
+			StageTimings timings
+	)
+	{
+		long segmentDays = Math.max(1, SystemUtil.getLongProperty("org.madiphs.weatherservice.STREAM_SEGMENT_DAYS", 7));
+		WeatherDataUtil wdUtil = new WeatherDataUtil();
+		StreamingOutput stream = output -> {
+			Map<String, Object> header = new LinkedHashMap<>();
+			header.put("type", "header");
+			header.put("timeStart", timeStart);
+			header.put("timeEnd", timeEnd);
+			header.put("interval", interval);
+			header.put("weatherParameters", requestedParameters);
+			this.writeFrame(output, header);
+
+			int segments = 0;
+			LocalDate segmentDate = timeStart.atZone(tzForLocation).toLocalDate();
+			Instant segmentStart = timeStart;
+			while(! segmentStart.isAfter(timeEnd))
+			{
+				segmentDate = segmentDate.plusDays(segmentDays);
+				Instant nextSegmentStart = segmentDate.atStartOfDay(tzForLocation).toInstant();
+				Instant segmentEnd = nextSegmentStart.minusSeconds(interval).isBefore(timeEnd) ? nextSegmentStart.minusSeconds(interval) : timeEnd;
+				Instant contextStart = segmentStart.minus(1, ChronoUnit.DAYS).isAfter(timeStart) ? segmentStart.minus(1, ChronoUnit.DAYS) : timeStart;
+				Instant contextEnd = segmentEnd.plus(1, ChronoUnit.DAYS).isBefore(timeEnd) ? segmentEnd.plus(1, ChronoUnit.DAYS) : timeEnd;
+
+				List<AmalgamationServiceErrorMessage> errorLog = new ArrayList<>();
+				List<String> missingSources = new ArrayList<>();
+				Response response;
+				try
+				{
+					long start = System.nanoTime();
+					List<WeatherData> segmentFromSources = new ArrayList<>();
+					for(WeatherData weatherData:this.fetchWeatherData(plannedSourceRequests, fallbackSourceRequests, requestedParameters, 
+							contextStart, contextEnd, interval, deadline != null ? deadline.renew() : null, errorLog, missingSources))
+					{
+						if(weatherData.getLocationWeatherData().stream().anyMatch(lwd -> lwd.getLength() > 0))
+						{
+							segmentFromSources.add(weatherData);
+						}
+					}
+					timings.record("fetch", start);
+					response = ! segmentFromSources.isEmpty() ?
+							this.getAmalgamatedResponse(sourceRequests, segmentFromSources, errorLog, requestedParameters, contextStart, contextEnd, interval, tzForLocation, null, timings)
+							: ! missingSources.isEmpty() ?
+								Response.status(Status.SERVICE_UNAVAILABLE).entity(errorLog).build()
+								: Response.noContent().build();
+				}
+				catch(IOException ex)
+				{
+					LOGGER.error(ex.getMessage(), ex);
+					errorLog.add(new AmalgamationServiceErrorMessage(null, ex.getMessage(), Status.SERVICE_UNAVAILABLE.getStatusCode()));
+					response = Response.status(Status.SERVICE_UNAVAILABLE).entity(errorLog).build();
+				}
+
+				Map<String, Object> frame = new LinkedHashMap<>();
+				frame.put("type", "segment");
+				if(response.getEntity() instanceof WeatherData)
+				{
+					// Remove the context
+					WeatherData segment = wdUtil.getPeriod((WeatherData) response.getEntity(), segmentStart, segmentEnd);
+					boolean empty = segment.getLocationWeatherData().stream().allMatch(lwd -> lwd.getLength() == 0);
+					frame.put("status", empty ? Status.NO_CONTENT.getStatusCode() : Status.OK.getStatusCode());
+					if(! empty)
+					{
+						frame.put("weatherData", segment);
+					}
+				}
+				else
+				{
+					frame.put("status", response.getStatus());
+				}
+				if(! missingSources.isEmpty())
+				{
+					frame.put("missingSources", missingSources);
+				}
+				if(! errorLog.isEmpty())
+				{
+					frame.put("errors", errorLog);
+				}
+				this.writeFrame(output, frame);
+				segments++;
+				segmentStart = nextSegmentStart;
+			}
+
+			Map<String, Object> end = new LinkedHashMap<>();
+			end.put("type", "end");
+			end.put("segments", segments);
+			this.writeFrame(output, end);
+		};
+		return Response.ok(stream).build();
+	}
+
+	/**
+	 * Writes one line of newline delimited JSON, and flushes it to the client
+	 */
+	private void writeFrame(OutputStream output, Object frame) throws IOException
+	{
+		output.write(NDJSON_OBJECT_MAPPER.writeValueAsBytes(frame));
+		output.write('\n');
+		output.flush();
+	}
+
+	/**
+	 * @return one line in the batch response
+	 */
+	/**
+	 * Adds the result of the location to the batch results, unless the location already has a result
+	 */
+	private void addBatchResult(BlockingQueue<String> results, Set<Integer> pendingLocations, int index, Double longitude, Double latitude, Response response)
+	{
+		if(pendingLocations.remove(index))
+		{
+			results.add(this.getBatchResult(index, longitude, latitude, response));
+		}
+	}
+
+	private String getBatchResult(int index, Double longitude, Double latitude, Response response)
+	{
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("index", index);
+		result.put("longitude", longitude);
+		result.put("latitude", latitude);
+		result.put("status", response.getStatus());
+		if(response.getEntity() instanceof WeatherData)
+		{
+			result.put("weatherData", response.getEntity());
+		}
+		else if(response.getEntity() != null)
+		{
+			result.put("errors", response.getEntity());
+		}
+		if(response.getHeaderString(MISSING_SOURCES_HEADER) != null)
+		{
+			result.put("missingSources", response.getHeaderString(MISSING_SOURCES_HEADER).split(","));
+		}
+		try
+		{
+			return NDJSON_OBJECT_MAPPER.writeValueAsString(result);
+		}
+		catch(JsonProcessingException ex)
+		{
+			LOGGER.error(ex.getMessage(), ex);
+			return "{\"index\":" + index + ",\"status\":" + Status.INTERNAL_SERVER_ERROR.getStatusCode() + "}";
+		}
 	}
 
 	/**
@@ -167,21 +1163,30 @@ public class AmalgamationService {
 	 * @param timeEndStr ISO Date (e.g. 2021-09-01)
 	 * @param interval logging interval for weather data in seconds. Hourly = 3600, daily= 86400
 	 * @param parametersStr
+	 * @param since If not null: Only return data from this time and onwards (incremental mode). Only the data 
+	 * from the day before this time are fetched and processed
+	 * @param timings The time spent in each stage is recorded here
+	 * @param deadline If not null: Skip the sources that usually can't respond in time, and give up the ones that 
+	 * haven't responded at the deadline. The missing sources are listed in the X-Amalgamation-Missing-Sources header
+	 * @param streamed If true: The result is amalgamated and streamed in segments, see {@link #getStreamedResponse(List, List, List, List, Instant, Instant, Integer, ZoneId, Deadline, StageTimings)}
 	 * @return
 	 */
 	@GET
 	@Path("amalgamate")
 	@Produces(MediaType.APPLICATION_JSON)
-	private Response amalgamate(
+	Response amalgamate(
 			@QueryParam("longitude") Double longitude,
 			@QueryParam("latitude") Double latitude,
 			@QueryParam("timeStart") String timeStartStr,
 			@QueryParam("timeEnd") String timeEndStr,
 			@QueryParam("interval") Integer interval,
 			@QueryParam("parameters") String parametersStr,
-			JsonNode privateWeatherStationInfo
+			JsonNode privateWeatherStationInfo,
+			Instant since,
+			StageTimings timings,
+			Deadline deadline,
+			boolean streamed
 	) {
-		WeatherDataUtil wdUtil = new WeatherDataUtil();
 		try
 		{
 			if(parametersStr == null)
@@ -193,14 +1198,25 @@ public class AmalgamationService {
 			List<Integer> requestedParameters = Arrays.asList(parametersStr.split(",")).stream()
 					.map(p->Integer.valueOf(p.trim()))
 					.collect(Collectors.toList());
-			ZoneId tzForLocation = amalgamationBean.getTimeZoneForLocation(longitude, latitude);
+			long start = System.nanoTime();
+			SourcePlan sourcePlan = sourcePlanBean.getSourcePlan(longitude, latitude, requestedParameters, interval);
+			ZoneId tzForLocation = sourcePlan.getTimeZone();
+			timings.record("plan", start);
 			Instant timeStart = LocalDate.parse(timeStartStr).atStartOfDay(tzForLocation).toInstant();
 			Instant timeEnd = LocalDate.parse(timeEndStr).atStartOfDay(tzForLocation).toInstant();
-			DateTimeFormatter format = DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(tzForLocation);
-			List<WeatherDataSource> wdss = amalgamationBean.getWeatherDataSourcesInPriorityOrder(longitude, latitude,
-					requestedParameters,
-					timeStart,
-					timeEnd);
+			// Incremental mode: Only process the data from the day before the requested
+			// time, which gives the QC and the interpolation some context
+			if(since != null)
+			{
+				if(since.isAfter(timeEnd))
+				{
+					return Response.noContent().build();
+				}
+				Instant contextStart = since.atZone(tzForLocation).toLocalDate().minusDays(1).atStartOfDay(tzForLocation).toInstant();
+				timeStart = contextStart.isAfter(timeStart) ? contextStart : timeStart;
+			}
+			start = System.nanoTime();
+			List<WeatherDataSource> wdss = amalgamationBean.getWeatherDataSourcesInPriorityOrder(sourcePlan.getWeatherDataSources(), timeStart, timeEnd);
 			//wdss.forEach(w->System.out.println(w.getName()));
 
 			// If the user has provided info about a private weather station,
@@ -236,96 +1252,143 @@ public class AmalgamationService {
 						List.of(new AmalgamationServiceErrorMessage(null,"No weather data found for given location and period", Status.NOT_FOUND.getStatusCode()))
 				).build();
 			}
-			List<WeatherData> weatherDataFromSources = new ArrayList<>();
+			// Only the sources that together cover the request at the lowest cost are fetched.
+			// The rest are a fallback tier, fetched if the planned sources fall short
+			List<SourceRequest> sourceRequests = this.getSourceRequests(sourcePlan, wdss, privateWeatherDataSource, privateWeatherStationInfo, longitude, latitude, interval);
+			QueryPlanner queryPlanner = amalgamationBean.getQueryPlanner();
+			final WeatherDataSource requiredWeatherDataSource = privateWeatherDataSource;
+			List<SourceRequest> plannedSourceRequests = queryPlanner.plan(
+					sourceRequests, requestedParameters, timeStart, timeEnd,
+					sourceHealthBean::getTypicalLatencyMillis,
+					sourceRequest -> sourceRequest.getWeatherDataSource() == requiredWeatherDataSource
+			);
+			List<SourceRequest> fallbackSourceRequests = new ArrayList<>(sourceRequests);
+			fallbackSourceRequests.removeAll(plannedSourceRequests);
+			timings.record("sources", start);
+
+			if(streamed)
+			{
+				return this.getStreamedResponse(sourceRequests, plannedSourceRequests, fallbackSourceRequests, requestedParameters, timeStart, timeEnd, interval, tzForLocation, deadline, timings);
+			}
+
+			// The requests to the data sources run in parallel
+			start = System.nanoTime();
 			List<AmalgamationServiceErrorMessage> errorLog = new ArrayList<>();
-			for(WeatherDataSource currentWDS:wdss)
-			{
-				// The data source might not provide the requested interval.
-				// If so: Find the least fine-grained one that's still
-				// more fine-grained than the requested interval.
-				Integer bestAvailableInterval = Arrays.asList(currentWDS.getTemporal().getIntervals()).stream()
-						.filter(i -> i <= interval)
-						.max(Integer::compare).get();
-
-				// Is the data source location or station based?
-				String endpoint;
-				String parameters;
-				//URLEncoder urlEncoder = URLEncoder.
-				if(currentWDS.getAccess_type().equals(WeatherDataSource.ACCESS_TYPE_STATIONS))
-				{
-					String weatherStationId = currentWDS !=  privateWeatherDataSource ?
-							currentWDS.getIdOfClosestStation(longitude, latitude)
-							: privateWeatherStationInfo.get("weatherStationId").asText();
-					// Is it close enough??
-					// For now: Set default max distance between location and distance to 3 km (3000 m)
-					// TODO: Define the tolerance more generally
-					try
-					{
-						if(currentWDS.getDistanceToStation(weatherStationId, longitude, latitude) > 3000.0){
-							continue;
-						}
-					}
-					catch(NullPointerException ex)
-					{
+			List<String> missingSources = new ArrayList<>();
+			List<WeatherData> weatherDataFromSources = this.fetchWeatherData(plannedSourceRequests, fallbackSourceRequests, requestedParameters, timeStart, timeEnd, interval, deadline, errorLog, missingSources);
+			timings.record("fetch", start);
 
-					}
-					// Making sure we get all the parameters available for the station
-					Set<Integer> wdsParameters = Arrays.stream(currentWDS.getParameters().getCommon()).boxed().collect(Collectors.toSet());
-					if(wdsParameters == null)
-					{
-						wdsParameters = new HashSet<>();
-					}
-					wdsParameters.addAll(currentWDS.getAdditionalParametersForStation(weatherStationId));
-
-					endpoint = currentWDS.getEndpointFullPath() ;
-					parameters = "weatherStationId=" +  weatherStationId
-							+ "&timeZone=" + URLEncoder.encode(tzForLocation.getId(), "UTF-8")
-							+ "&timeStart=" + URLEncoder.encode(format.format(timeStart), "UTF-8")
-							+ "&timeEnd=" + URLEncoder.encode(format.format(timeEnd), "UTF-8")
-							+ "&interval=" + bestAvailableInterval
-							+ "&parameters=" + wdsParameters.stream().map(String::valueOf).collect(Collectors.joining(","));
-					LOGGER.debug("currentWDS.getAccess_type()=" + currentWDS.getAccess_type());
-					if(currentWDS.getAuthentication_type() != null && currentWDS.getAuthentication_type().equals(WeatherDataSource.AUTHENTICATION_TYPE_CREDENTIALS))
-					{
-						parameters += "&credentials={\"userName\":\"" + privateWeatherStationInfo.get("userName").asText() + "\", \"password\":\"" + privateWeatherStationInfo.get("password").asText() + "\"}";
-					}
-				}
-				else
-				{
-					endpoint = currentWDS.getEndpointFullPath();
-					parameters = "longitude=" + longitude
-							+ "&latitude=" + latitude
-							+ "&timeStart=" + URLEncoder.encode(format.format(timeStart), "UTF-8")
-							+ "&timeEnd=" + URLEncoder.encode(format.format(timeEnd), "UTF-8")
-							+ "&interval=" + bestAvailableInterval;
+			return this.withMissingSources(
+					this.getAmalgamatedResponse(sourceRequests, weatherDataFromSources, errorLog, requestedParameters, timeStart, timeEnd, interval, tzForLocation, since, timings),
+					missingSources
+			);
+		}
+		catch(IOException ex)
+		{
+			LOGGER.error(ex.getMessage(), ex);
+			return Response.status(Status.SERVICE_UNAVAILABLE).entity(
+					new AmalgamationServiceErrorMessage(null, ex.getMessage(), Status.SERVICE_UNAVAILABLE.getStatusCode())
+			).build();
 
-				}
+		}
 
-				LOGGER.debug(currentWDS.getName() + ":  " + endpoint + "?" + parameters);
 
-				try
+	}
+
+	/**
+	 * Decides which requests to make to the weather data sources for the given location
+	 * @param sourcePlan The plan for the location, parameters and interval. See {@link SourcePlanBean}
+	 * @param wdss The weather data sources, in priority order
+	 * @param privateWeatherDataSource The data source of the private weather station, if any
+	 * @param privateWeatherStationInfo see {@link #amalgamatePOST(AsyncResponse, Double, Double, String, String, Integer, String, Boolean, Long, JsonNode)}
+	 * @return one request per data source, in priority order. Station based sources without a station close enough to the location are skipped
+	 */
+	private List<SourceRequest> getSourceRequests(
+			SourcePlan sourcePlan,
+			List<WeatherDataSource> wdss,
+			WeatherDataSource privateWeatherDataSource,
+			JsonNode privateWeatherStationInfo,
+			Double longitude,
+			Double latitude,
+			Integer interval
+	)
+	{
+		List<SourceRequest> sourceRequests = new ArrayList<>();
+		for(WeatherDataSource currentWDS:wdss)
+		{
+			SourceRequest sourceRequest;
+			if(currentWDS != privateWeatherDataSource)
+			{
+				sourceRequest = sourcePlan.getSourceRequest(currentWDS, longitude, latitude);
+			}
+			else if(currentWDS.getAccess_type().equals(WeatherDataSource.ACCESS_TYPE_STATIONS))
+			{
+				String weatherStationId = privateWeatherStationInfo.get("weatherStationId").asText();
+				if(! SourcePlan.isCloseEnough(currentWDS, weatherStationId, longitude, latitude))
 				{
-					Map<String, String> authentication = null;
-					if(currentWDS.getAuthentication_type().equals(WeatherDataSource.AUTHENTICATION_TYPE_BEARER_TOKEN))
-					{
-						authentication = new HashMap<>();
-						authentication.put(WeatherDataSource.AUTHENTICATION_TYPE_BEARER_TOKEN, this.getWeatherDataSourceBearerToken(currentWDS.getId()));
-					}
-					weatherDataFromSources.add(this.getWeatherDataFromSource(endpoint, parameters, currentWDS.getAuthentication_type(),authentication));
-					//System.out.println("Successfully added " + currentWDS.getName());
+					continue;
 				}
-				catch(WeatherDataSourceException ex)
+				LOGGER.debug("currentWDS.getAccess_type()=" + currentWDS.getAccess_type());
+				String credentials = null;
+				if(currentWDS.getAuthentication_type() != null && currentWDS.getAuthentication_type().equals(WeatherDataSource.AUTHENTICATION_TYPE_CREDENTIALS))
 				{
-					errorLog.add( new AmalgamationServiceErrorMessage(
-									ex.getDataSourceURL(),
-									ex.getMessage(),
-									ex.getHttpErrorCode()
-							)
-					);
-
+					credentials = "{\"userName\":\"" + privateWeatherStationInfo.get("userName").asText() + "\", \"password\":\"" + privateWeatherStationInfo.get("password").asText() + "\"}";
 				}
+				sourceRequest = SourceRequest.forStation(currentWDS, weatherStationId, sourcePlan.getTimeZone(),
+						SourcePlan.getBestAvailableInterval(currentWDS, interval),
+						SourcePlan.getStationParameters(currentWDS, weatherStationId),
+						credentials
+				);
+			}
+			else
+			{
+				sourceRequest = SourceRequest.forLocation(currentWDS, longitude, latitude, sourcePlan.getTimeZone(), SourcePlan.getBestAvailableInterval(currentWDS, interval));
 			}
+			if(sourceRequest != null)
+			{
+				sourceRequests.add(sourceRequest);
+			}
+		}
+		return sourceRequests;
+	}
 
+	private Map<String, String> getAuthentication(SourceRequest sourceRequest)
+	{
+		Map<String, String> authentication = null;
+		if(WeatherDataSource.AUTHENTICATION_TYPE_BEARER_TOKEN.equals(sourceRequest.getAuthenticationType()))
+		{
+			authentication = new HashMap<>();
+			authentication.put(WeatherDataSource.AUTHENTICATION_TYPE_BEARER_TOKEN, this.getWeatherDataSourceBearerToken(sourceRequest.getWeatherDataSource().getId()));
+		}
+		return authentication;
+	}
+
+	/**
+	 * Fuses the data from the sources, and then controls and fixes the result
+	 * @param sourceRequests The requests to the weather data sources of the location. Their cached data are 
+	 * not used as neighbors in the spatial QC, since they are not independent of the data being controlled
+	 * @param weatherDataFromSources The data from each source, in priority order. The data are altered
+	 * @param errorLog The errors from the sources that failed
+	 * @param since If not null: Only return data from this time and onwards
+	 * @param timings The time spent in each stage is recorded here
+	 * @return the amalgamated data, 204 if there's nothing new since the given time, or 503 with the error log if all sources failed
+	 */
+	private Response getAmalgamatedResponse(
+			List<SourceRequest> sourceRequests,
+			List<WeatherData> weatherDataFromSources,
+			List<AmalgamationServiceErrorMessage> errorLog,
+			List<Integer> requestedParameters,
+			Instant timeStart,
+			Instant timeEnd,
+			Integer interval,
+			ZoneId tzForLocation,
+			Instant since,
+			StageTimings timings
+	)
+	{
+		WeatherDataUtil wdUtil = new WeatherDataUtil();
+		try
+		{
 			// Fail or success?
 			// Error on all data sources -> safe to say that we've failed
 			if(weatherDataFromSources.isEmpty())
@@ -338,6 +1401,7 @@ public class AmalgamationService {
                         Arrays.asList(test.getLocationWeatherData().get(0).getData()[0]).forEach(d->System.out.println(d));
                         Arrays.asList(test.getWeatherParameters()).forEach(d->System.out.println(d));
                         System.out.println("timeStart=" + test.getTimeStart() + ", timeEnd=" + test.getTimeEnd());*/
+			long start = System.nanoTime();
 			WeatherData fusionedData = amalgamationBean.getFusionedWeatherData(
 					weatherDataFromSources,
 					timeStart,
@@ -345,6 +1409,7 @@ public class AmalgamationService {
 					interval,
 					tzForLocation
 			);
+			timings.record("fusion", start);
 
 			// Dumping current weather data to console
 			//System.out.println(wdUtil.serializeWeatherData(fusionedData));
@@ -357,7 +1422,9 @@ public class AmalgamationService {
 			// First fix: Map interchangeable parameters (e.g. instantaneous and average temperatures)
 			if(missingParameters.size() > 0)
 			{
+				start = System.nanoTime();
 				fusionedData = amalgamationBean.addFallbackParameters(fusionedData, missingParameters);
+				timings.record("fallback", start);
 				// Refresh the missing parameters
 				missingParameters = requestedParameters != null && ! requestedParameters.isEmpty() ?
 						this.getMissingParameters(requestedParameters, Arrays.asList(fusionedData.getWeatherParameters()))
@@ -380,8 +1447,25 @@ public class AmalgamationService {
 			}
 
 			// Controlling the data
-			QualityControlMethods qcm = new QualityControlMethods();
+			start = System.nanoTime();
+			QualityControlMethods qcm = new QualityControlMethods(executorBean.getQCExecutor());
 			fusionedData = qcm.getQC(fusionedData);
+			// Comparing with the neighbors that are in the raw data cache, so no extra data source requests
+			if(SpatialQCTester.NEIGHBORS > 0)
+			{
+				SpatialQCTester spatialQCTester = new SpatialQCTester();
+				for(int location=0; location < fusionedData.getLocationWeatherData().size(); location++)
+				{
+					LocationWeatherData lwd = fusionedData.getLocationWeatherData().get(location);
+					List<WeatherData> neighbors = rawDataCacheBean.getNeighborWeatherData(
+							lwd.getLongitude(), lwd.getLatitude(), sourceRequests, 
+							SpatialQCTester.NEIGHBORS, SpatialQCTester.MIN_DISTANCE, SpatialQCTester.MAX_DISTANCE,
+							fusionedData.getTimeStart(), fusionedData.getTimeEnd(), fusionedData.getInterval()
+					);
+					spatialQCTester.getQC(fusionedData, location, neighbors);
+				}
+			}
+			timings.record("qc", start);
 			// Collecting failed parameters
 			Set<Integer> failedParameters = new HashSet<>();
 			for(LocationWeatherData lwd:fusionedData.getLocationWeatherData())
@@ -401,15 +1485,16 @@ public class AmalgamationService {
 
 
 			// 2.  Data restoration/generation of failed parameters
-			for(Integer failedParam:failedParameters)
-			{
-				// 2.1 Interpolate
-				fusionedData = new Interpolation().interpolate(fusionedData, Set.of(1001,1002),1);
-			}
+			// 2.1 Fill the gaps
+			start = System.nanoTime();
+			fusionedData = amalgamationBean.fillGaps(fusionedData, failedParameters);
+			timings.record("gapfilling", start);
 
 			// Calculate entire missing parameters - now that we have the best available dataset
 			// E.g. Leaf wetness
+			start = System.nanoTime();
 			fusionedData = indicesBean.calculateIndicesBestEffort(fusionedData, missingParameters);
+			timings.record("indices", start);
 			missingParameters = requestedParameters != null && ! requestedParameters.isEmpty() ?
 					this.getMissingParameters(requestedParameters, Arrays.asList(fusionedData.getWeatherParameters()))
 					: new HashSet<>();
@@ -427,13 +1512,27 @@ public class AmalgamationService {
 			objectMapper.registerModule(new JavaTimeModule());
 			//System.out.println(objectMapper.writeValueAsString(fusionedData));
 
-			// Chop away any missing data at the beginning and end of the data set
+			// Incremental mode: Remove the context
+			start = System.nanoTime();
+			if(since != null)
+			{
+				fusionedData = wdUtil.getDataSince(fusionedData, since);
+				if(fusionedData.getLocationWeatherData().isEmpty() || fusionedData.getLocationWeatherData().get(0).getLength() == 0)
+				{
+					return Response.noContent().build();
+				}
+			}
 
-			fusionedData = wdUtil.trimDataSet(fusionedData);
+			// Chop away any missing data at the beginning and end of the data set. 
+			// In incremental mode the data must start at the requested time, so that 
+			// the client can tell that the leading rows are missing
+
+			fusionedData = wdUtil.trimDataSet(fusionedData, since == null);
+			timings.record("trim", start);
 
 			return Response.ok().entity(fusionedData).build();
 		}
-		catch(IOException | LocationWeatherDataException ex)
+		catch(IOException ex)
 		{
 			LOGGER.error(ex.getMessage(), ex);
 			return Response.status(Status.SERVICE_UNAVAILABLE).entity(
@@ -441,8 +1540,6 @@ public class AmalgamationService {
 			).build();
 
 		}
-
-
 	}
 
 	/**
@@ -459,17 +1556,27 @@ public class AmalgamationService {
 	@GET
 	@Path("amalgamate/proxy")
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response amalgamateProxy(
+	public void amalgamateProxy(
+			@Suspended AsyncResponse asyncResponse,
 			@QueryParam("endpointURL") String endpointURL,
 			@QueryParam("endpointQueryStr") String endpointQueryStr,
 			@QueryParam("longitude") Double longitude,
 			@QueryParam("latitude") Double latitude
+	) {
+		executorBean.runAsync(asyncResponse, () -> this.amalgamateProxy(endpointURL, endpointQueryStr, longitude, latitude));
+	}
+
+	private Response amalgamateProxy(
+			String endpointURL,
+			String endpointQueryStr,
+			Double longitude,
+			Double latitude
 	) {
 		try {
 			//System.out.println(endpointURL);
 			//System.out.println(endpointQueryStr);
 			//URL completeURL = new URL(endpointURL + (endpointQueryStr.indexOf("?") == 0 ? "" : "?") + endpointQueryStr);
-			WeatherData dataFromSource = this.getWeatherDataFromSource(endpointURL, endpointQueryStr, null, null);
+			WeatherData dataFromSource = this.getWeatherDataFromSource(endpointURL, endpointQueryStr, null, null, null);
 			// Checks!
 
 			// 1. Are there missing parameters?
@@ -599,15 +1706,140 @@ public class AmalgamationService {
 		return null;
 	}
 
-	private WeatherData getWeatherDataFromSource(String endpoint, String parameters, String authenticationType, Map<String,String> authentication) throws JsonMappingException, JsonProcessingException, IOException, WeatherDataSourceException
+	/**
+	 * Gets the data for the source request. Settled days are taken from the raw data cache
+	 * if possible, see {@link RawDataCacheBean}
+	 * @param deadline If not null: The request to the source times out at the deadline
+	 */
+	private WeatherData getWeatherDataFromSource(SourceRequest sourceRequest, Instant timeStart, Instant timeEnd, Map<String,String> authentication, Deadline deadline) throws IOException, WeatherDataSourceException
+	{
+		WeatherDataFetcher fetcher = (fetchStart, fetchEnd) -> this.getCoalescedWeatherDataFromSource(sourceRequest, fetchStart, fetchEnd, authentication, deadline);
+		if(rawDataCacheBean.isCacheable(sourceRequest))
+		{
+			return rawDataCacheBean.getWeatherData(sourceRequest, timeStart, timeEnd, fetcher);
+		}
+		return fetcher.fetch(timeStart, timeEnd);
+	}
+
+	/**
+	 * Identical concurrent requests share one request to the data source, see {@link RequestCoalescingBean}.
+	 * Requests for private weather stations are not coalesced. The shared request runs until the 
+	 * source timeout, so that the callers are not affected by each other's deadlines. Each caller 
+	 * gives up at its own deadline
+	 */
+	private WeatherData getCoalescedWeatherDataFromSource(SourceRequest sourceRequest, Instant timeStart, Instant timeEnd, Map<String,String> authentication, Deadline deadline) throws IOException, WeatherDataSourceException
+	{
+		String queryString = sourceRequest.getQueryString(timeStart, timeEnd);
+		if(sourceRequest.hasCredentials())
+		{
+			return this.getWeatherDataFromSource(sourceRequest.getEndpoint(), queryString, sourceRequest.getAuthenticationType(), authentication, deadline);
+		}
+		if(deadline != null && deadline.isExpired())
+		{
+			throw new WeatherDataSourceException(
+					sourceRequest.getEndpoint(),
+					"The time limit (maxLatency) was reached before the data source was requested",
+					Status.GATEWAY_TIMEOUT.getStatusCode()
+			);
+		}
+		try
+		{
+			// The data are shared, each caller gets its own copy
+			WeatherData weatherData = requestCoalescingBean.execute(
+					sourceRequest.getDataKey() + "|" + timeStart + "|" + timeEnd,
+					() -> this.getMonitoredWeatherDataFromSource(sourceRequest, queryString, authentication),
+					deadline != null ? deadline.getRemainingMillis() : -1
+			);
+			return new WeatherDataUtil().getCopy(weatherData);
+		}
+		catch(TimeoutException ex)
+		{
+			throw new WeatherDataSourceException(
+					sourceRequest.getEndpoint(),
+					"No response from the data source within the time limit (maxLatency)",
+					Status.GATEWAY_TIMEOUT.getStatusCode()
+			);
+		}
+		catch(ExecutionException ex)
+		{
+			if(ex.getCause() instanceof WeatherDataSourceException)
+			{
+				throw (WeatherDataSourceException) ex.getCause();
+			}
+			if(ex.getCause() instanceof IOException)
+			{
+				throw (IOException) ex.getCause();
+			}
+			if(ex.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Requests the data from the source, unless its circuit is open, and records the
+	 * outcome and latency. See {@link SourceHealthBean}. The request times out at the 
+	 * source timeout, see {@link #getResponseAsPlainText(String, String, String, Map, Deadline)}
+	 */
+	private WeatherData getMonitoredWeatherDataFromSource(SourceRequest sourceRequest, String queryString, Map<String,String> authentication) throws IOException, WeatherDataSourceException
+	{
+		String weatherDataSourceId = sourceRequest.getWeatherDataSource().getId();
+		if(! sourceHealthBean.allowRequest(weatherDataSourceId))
+		{
+			throw new WeatherDataSourceException(
+					sourceRequest.getEndpoint(),
+					"The data source is temporarily not used, due to repeated failures. See rest/amalgamation/sources/health",
+					Status.SERVICE_UNAVAILABLE.getStatusCode()
+			);
+		}
+		long start = System.nanoTime();
+		try
+		{
+			WeatherData weatherData = this.getWeatherDataFromSource(sourceRequest.getEndpoint(), queryString, sourceRequest.getAuthenticationType(), authentication, null);
+			boolean empty = weatherData.getLocationWeatherData() == null
+					|| weatherData.getLocationWeatherData().stream().allMatch(lwd -> lwd.getLength() == 0);
+			this.recordSourceRequest(weatherDataSourceId, empty ? SourceHealth.EMPTY : SourceHealth.SUCCESS, start);
+			return weatherData;
+		}
+		catch(WeatherDataSourceException ex)
+		{
+			// Client errors (except Too Many Requests) mean that the source is alive
+			boolean clientError = ex.getHttpErrorCode() >= 400 && ex.getHttpErrorCode() < 500 && ex.getHttpErrorCode() != 429;
+			this.recordSourceRequest(weatherDataSourceId, clientError ? SourceHealth.SUCCESS : SourceHealth.ERROR, start);
+			throw ex;
+		}
+		catch(IOException | RuntimeException ex)
+		{
+			this.recordSourceRequest(weatherDataSourceId, SourceHealth.ERROR, start);
+			throw ex;
+		}
+	}
+
+	private void recordSourceRequest(String weatherDataSourceId, int outcome, long startNanos)
+	{
+		long nanos = System.nanoTime() - startNanos;
+		sourceHealthBean.record(weatherDataSourceId, outcome, nanos / 1000000);
+		metricsBean.observe(MetricsBean.SOURCE_REQUEST_SECONDS, nanos, "source", weatherDataSourceId,
+				"outcome", outcome == SourceHealth.SUCCESS ? "success" : outcome == SourceHealth.EMPTY ? "empty" : "error");
+	}
+
+	private WeatherData getWeatherDataFromSource(String endpoint, String parameters, String authenticationType, Map<String,String> authentication, Deadline deadline) throws JsonMappingException, JsonProcessingException, IOException, WeatherDataSourceException
 	{
 		ObjectMapper objectMapper = new ObjectMapper();
-		WeatherData weatherData = objectMapper.readValue(this.getResponseAsPlainText(endpoint, parameters, authenticationType, authentication),
+		WeatherData weatherData = objectMapper.readValue(this.getResponseAsPlainText(endpoint, parameters, authenticationType, authentication, deadline),
 				WeatherData.class);
 		return weatherData;
 	}
 
-	private String getResponseAsPlainText(String endpoint, String parameters, String authenticationType, Map<String,String> authentication) throws IOException, WeatherDataSourceException {
+	/**
+	 * The connect and read timeouts of the request are set by the system property 
+	 * org.madiphs.weatherservice.SOURCE_TIMEOUT_SECONDS (default 60), or by the deadline if that comes first
+	 * @param deadline May be null
+	 * @throws WeatherDataSourceException with status 504 if the request times out
+	 */
+	private String getResponseAsPlainText(String endpoint, String parameters, String authenticationType, Map<String,String> authentication, Deadline deadline) throws IOException, WeatherDataSourceException {
 
 		URL theURL = new URL(endpoint + (
 				authenticationType != null && authenticationType.equals(WeatherDataSource.AUTHENTICATION_TYPE_CREDENTIALS) ?
@@ -615,7 +1847,27 @@ public class AmalgamationService {
 						:"?" + parameters
 		)
 		);
+		long sourceTimeoutMillis = SystemUtil.getLongProperty("org.madiphs.weatherservice.SOURCE_TIMEOUT_SECONDS", 60) * 1000;
+		int timeoutMillis = deadline != null ? deadline.getTimeoutMillis(sourceTimeoutMillis) : (int) sourceTimeoutMillis;
+		try
+		{
+			return this.getResponseAsPlainText(theURL, parameters, authenticationType, authentication, timeoutMillis);
+		}
+		catch(SocketTimeoutException ex)
+		{
+			throw new WeatherDataSourceException(
+					theURL.toString(),
+					"No response from the data source within " + timeoutMillis + " ms",
+					Status.GATEWAY_TIMEOUT.getStatusCode()
+			);
+		}
+	}
+
+	private String getResponseAsPlainText(URL theURL, String parameters, String authenticationType, Map<String,String> authentication, int timeoutMillis) throws IOException, WeatherDataSourceException {
+
 		HttpURLConnection conn = (HttpURLConnection) theURL.openConnection();
+		conn.setConnectTimeout(timeoutMillis);
+		conn.setReadTimeout(timeoutMillis);
 		if(authenticationType != null && ! authenticationType.equals(WeatherDataSource.AUTHENTICATION_TYPE_NONE))
 		{
 			if(authenticationType.equals(WeatherDataSource.AUTHENTICATION_TYPE_BEARER_TOKEN))
@@ -643,6 +1895,8 @@ public class AmalgamationService {
 			String location = conn.getHeaderField("Location");
 			conn.disconnect();
 			conn = (HttpURLConnection)  new URL(location).openConnection();
+			conn.setConnectTimeout(timeoutMillis);
+			conn.setReadTimeout(timeoutMillis);
 		}
 
 		StringBuffer response = new StringBuffer();
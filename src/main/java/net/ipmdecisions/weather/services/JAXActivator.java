@@ -52,6 +52,7 @@ public class JAXActivator extends Application{
         resources.add(net.ipmdecisions.weather.services.AmalgamationService.class);
         resources.add(net.ipmdecisions.weather.services.JacksonConfig.class);
         resources.add(net.ipmdecisions.weather.services.MetaDataService.class);
+        resources.add(net.ipmdecisions.weather.services.MetricsService.class);
         resources.add(net.ipmdecisions.weather.services.QualityControlService.class);
         resources.add(net.ipmdecisions.weather.services.TestDataService.class);
         resources.add(net.ipmdecisions.weather.services.WeatherAdapterService.class);
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.services;
+
+import javax.ejb.EJB;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+import net.ipmdecisions.weather.controller.MetricsBean;
+
+/**
+ * Operational metrics for monitoring, e.g. with Prometheus
+ */
+@Path("rest/metrics")
+public class MetricsService {
+	
+	@EJB
+	MetricsBean metricsBean;
+	
+	/**
+	 * Timing histograms for each stage of the amalgamation, each weather data source 
+	 * (as requested by the amalgamation) and each adapter
+	 * @return the metrics in the Prometheus text format
+	 */
+	@GET
+	@Produces("text/plain; version=0.0.4; charset=utf-8")
+	public Response getMetrics()
+	{
+		return Response.ok().entity(metricsBean.getPrometheusText()).build();
+	}
+}
@@ -1,5 +1,8 @@
 package net.ipmdecisions.weather.services;
 
+import java.io.IOException;
+import java.io.InputStream;
+import javax.ejb.EJB;
 import javax.ws.rs.Path;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -8,10 +11,15 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
+import net.ipmdecisions.weather.controller.ExecutorBean;
 import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.qc.IncrementalQualityControl;
 import net.ipmdecisions.weather.qc.QualityControlMethods;
+import net.ipmdecisions.weather.qc.StreamingQualityControl;
 import net.ipmdecisions.weather.qc.ThresholdData;
 
 
@@ -24,6 +32,14 @@ import net.ipmdecisions.weather.qc.ThresholdData;
 @Path("rest/weatherdata/qualitycontrol")
 public class QualityControlService {
     
+    /**
+     * The state of the incremental quality control, see {@link #getQCIncremental(String, String, String)}
+     */
+    public static final String QC_STATE_HEADER = "X-QC-State";
+    
+    @EJB
+    ExecutorBean executorBean;
+    
     /**
      * Get API heart beat
      * @pathExample /rest/weatherdata/qualitycontrol/heartbeat
@@ -71,7 +87,7 @@ public class QualityControlService {
     public Response getQC_RT(String weatherDataStr) {
     	try
     	{
-	        QualityControlMethods qualityControlMethods = new QualityControlMethods();
+	        QualityControlMethods qualityControlMethods = new QualityControlMethods(executorBean.getQCExecutor());
 	        return Response.ok().entity(qualityControlMethods.getQC(WeatherData.getInstanceFromString(weatherDataStr), "RT")).build();
     	}
     	catch(JsonProcessingException ex)
@@ -94,7 +110,7 @@ public class QualityControlService {
     public Response getQC_nonRT(String weatherDataStr) {
     	try
     	{
-	        QualityControlMethods qualityControlMethods = new QualityControlMethods();
+	        QualityControlMethods qualityControlMethods = new QualityControlMethods(executorBean.getQCExecutor());
 	        return Response.ok().entity(qualityControlMethods.getQC(WeatherData.getInstanceFromString(weatherDataStr), "NONRT")).build();
     	}
     	catch(JsonProcessingException ex)
@@ -103,4 +119,83 @@ public class QualityControlService {
     	}
     }
     
+    /**
+     * Post weather data for quality control without reading the whole data set into memory.
+     * The data are read and written one row at a time, so this is meant for very large
+     * uploads. The weatherParameters field must come before locationWeatherData, and the
+     * qc array of each location is written after its data
+     * @param qcType RT, NONRT or ALL (default)
+     * @body Wather data in platform defined format
+     * @pathExample /rest/weatherdata/qualitycontrol/stream?qcType=RT
+     * @return Quality controlled weather data. The end-point appends qc arrays 
+     * into location weather data objects.
+     */
+    @POST
+    @Path("stream")
+    @Consumes (MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getQCStreamed(
+                    @QueryParam("qcType") String qcType,
+                    InputStream weatherData
+    ) {
+        try
+        {
+            StreamingQualityControl streamingQualityControl = new StreamingQualityControl(weatherData, qcType);
+            return Response.ok((StreamingOutput) output -> streamingQualityControl.writeTo(output)).build();
+        }
+        catch(IOException ex)
+        {
+            return Response.status(Status.BAD_REQUEST).entity(ex.getMessage()).build();
+        }
+    }
+    
+    /**
+     * Post the rows that have been added to a dataset (e.g. the latest observations
+     * of a weather station) since the previous quality control. Only the new rows are 
+     * tested, but the results are the same as if the whole dataset had been tested,
+     * since the state of the tests (last values, runs of equal values and failed tests)
+     * is kept between the requests. Rows that have been tested before are skipped.
+     * The state is held by the client, and is not kept in the server.
+     * @param qcType RT, NONRT or ALL (default)
+     * @param state Optional. The X-QC-State header of the previous response. If not given, all the rows are tested
+     * @body Wather data in platform defined format
+     * @pathExample /rest/weatherdata/qualitycontrol/incremental?qcType=ALL
+     * @return Quality controlled weather data, with the QC results of all the rows tested so far.
+     * The X-QC-State header holds the state for the next request
+     */
+    @POST
+    @Path("incremental")
+    @Consumes (MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getQCIncremental(
+                    @QueryParam("qcType") String qcType,
+                    @QueryParam("state") String state,
+                    String weatherDataStr
+    ) {
+        IncrementalQualityControl incrementalQualityControl;
+        try
+        {
+            incrementalQualityControl = state != null ? IncrementalQualityControl.decode(state) : null;
+        }
+        catch(IllegalArgumentException ex)
+        {
+            return Response.status(Status.BAD_REQUEST).entity(ex.getMessage()).build();
+        }
+        if(incrementalQualityControl == null)
+        {
+            incrementalQualityControl = new IncrementalQualityControl();
+        }
+        try
+        {
+            WeatherData weatherData = incrementalQualityControl.getQC(WeatherData.getInstanceFromString(weatherDataStr), qcType);
+            return Response.ok().entity(weatherData)
+                    .header(QC_STATE_HEADER, incrementalQualityControl.encode())
+                    .build();
+        }
+        catch(JsonProcessingException ex)
+        {
+            return Response.serverError().entity(ex.getMessage()).build();
+        }
+    }
+    
 }
@@ -19,17 +19,27 @@
 package net.ipmdecisions.weather.services;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.jboss.resteasy.annotations.GZIP;
 
 import net.ipmdecisions.weather.util.FileUtils;
+import net.ipmdecisions.weather.util.SyntheticWeatherDataGenerator;
+import net.ipmdecisions.weather.util.SystemUtil;
 
 /**
  * Various test data
@@ -82,5 +92,84 @@ public class TestDataService {
 		}
     	
 	}
-        
+
+	/**
+	 * Synthetic weather data for load testing, e.g. of quality control, interpolation and 
+	 * fusion. The data are the same for the same seed and parameters, and are streamed, 
+	 * so large data sets can be generated. Without faults, the data pass the quality control.
+	 * The number of values (rows * parameters * locations) is limited to 1 000 000, since 
+	 * the endpoint is public. Set the system property org.madiphs.weatherservice.SYNTHETIC_DATA_MAX_VALUES 
+	 * to allow larger data sets, e.g. on a load test server
+	 * @param seed The seed of the random values. Default is 1
+	 * @param timeStartStr ISO Date (e.g. 2021-03-01). Default is 2015-01-01
+	 * @param rows The number of rows per location. Default is 8760 (one year of hourly data)
+	 * @param interval The interval between the rows, in seconds. Default is 3600
+	 * @param parametersStr Comma separated list of weather parameters. Default is air temperature, precipitation, humidity, leaf wetness, wind and radiation
+	 * @param locations The number of locations. Default is 1
+	 * @param missingRate The share of missing values, from 0 to 1. Default is 0
+	 * @param spikeRate The share of values that are spikes far outside the valid range, from 0 to 1. Default is 0
+	 * @param freezeRate The share of values where a freeze (the same value repeated) starts, from 0 to 1. Default is 0
+	 * @param minMaxRate The share of rows where min and max values are swapped, from 0 to 1. Default is 0
+	 * @pathExample /rest/testdata/weather/synthetic?seed=42&rows=8760&locations=5&missingRate=0.01&spikeRate=0.001
+	 * @return Weather data in platform defined format
+	 */
+	@GET
+	@Path("weather/synthetic")
+	@GZIP
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getSyntheticWeatherData(
+			@QueryParam("seed") @DefaultValue("1") Long seed,
+			@QueryParam("timeStart") String timeStartStr,
+			@QueryParam("rows") Integer rows,
+			@QueryParam("interval") Integer interval,
+			@QueryParam("parameters") String parametersStr,
+			@QueryParam("locations") Integer locations,
+			@QueryParam("missingRate") Double missingRate,
+			@QueryParam("spikeRate") Double spikeRate,
+			@QueryParam("freezeRate") Double freezeRate,
+			@QueryParam("minMaxRate") Double minMaxRate
+	)
+	{
+		SyntheticWeatherDataGenerator generator = new SyntheticWeatherDataGenerator(seed);
+		try
+		{
+			if(timeStartStr != null)
+			{
+				generator.setTimeStart(LocalDate.parse(timeStartStr).atStartOfDay(ZoneOffset.UTC).toInstant());
+			}
+			if(parametersStr != null)
+			{
+				generator.setWeatherParameters(Arrays.stream(parametersStr.split(","))
+						.map(p->Integer.valueOf(p.trim()))
+						.toArray(Integer[]::new));
+			}
+		}
+		catch(DateTimeParseException | NumberFormatException ex)
+		{
+			return Response.status(Status.BAD_REQUEST).entity(ex.getMessage()).build();
+		}
+		if(rows != null) generator.setRows(rows);
+		if(interval != null) generator.setInterval(interval);
+		if(locations != null) generator.setLocations(locations);
+		if(missingRate != null) generator.setMissingRate(missingRate);
+		if(spikeRate != null) generator.setSpikeRate(spikeRate);
+		if(freezeRate != null) generator.setFreezeRate(freezeRate);
+		if(minMaxRate != null) generator.setMinMaxRate(minMaxRate);
+
+		try
+		{
+			// Before the streaming starts, and before the size is checked, so that no factor is negative
+			generator.validate();
+		}
+		catch(IllegalArgumentException ex)
+		{
+			return Response.status(Status.BAD_REQUEST).entity(ex.getMessage()).build();
+		}
+		long maxValues = SystemUtil.getLongProperty("org.madiphs.weatherservice.SYNTHETIC_DATA_MAX_VALUES", 1000000);
+		if(generator.getSize() > maxValues)
+		{
+			return Response.status(Status.BAD_REQUEST).entity("Too many values. Max number of values (rows * parameters * locations) is " + maxValues).build();
+		}
+		return Response.ok((StreamingOutput) output -> generator.writeTo(output)).build();
+	}
 }
@@ -31,15 +31,22 @@ import java.security.GeneralSecurityException;
 import java.time.*;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.ejb.EJB;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
 import net.ipmdecisions.weather.controller.AmalgamationBean;
+import net.ipmdecisions.weather.controller.ExecutorBean;
+import net.ipmdecisions.weather.controller.MetricsBean;
+import net.ipmdecisions.weather.controller.RequestCoalescingBean;
 import net.ipmdecisions.weather.controller.WeatherDataSourceBean;
 import net.ipmdecisions.weather.datasourceadapters.*;
 import net.ipmdecisions.weather.datasourceadapters.finnishmeteorologicalinstitute.FinnishMeteorologicalInstituteAdapter;
@@ -90,6 +97,15 @@ public class WeatherAdapterService {
 
     @EJB
     private WeatherDataSourceBean weatherDataSourceBean;
+
+    @EJB
+    private RequestCoalescingBean requestCoalescingBean;
+
+    @EJB
+    private ExecutorBean executorBean;
+
+    @EJB
+    private MetricsBean metricsBean;
     
     /**
      * Get 9 day weather forecasts from <a href="https://www.met.no/en" target="new">The Norwegian Meteorological Institute</a>'s 
@@ -106,12 +122,23 @@ public class WeatherAdapterService {
     @Path("yr/")
     @GZIP
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getYRForecasts(
+    public void getYRForecasts(
+                    @Suspended AsyncResponse asyncResponse,
                     @QueryParam("longitude") Double longitude,
                     @QueryParam("latitude") Double latitude,
                     @QueryParam("altitude") Double altitude,
                     @QueryParam("parameters") String parameters
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("yr", () -> this.getYRForecasts(longitude, latitude, altitude, parameters)));
+    }
+
+    private Response getYRForecasts(
+                    Double longitude,
+                    Double latitude,
+                    Double altitude,
+                    String parameters
+    )
     {
         if(longitude == null || latitude == null)
         {
@@ -128,16 +155,24 @@ public class WeatherAdapterService {
         
         try 
         {
-            WeatherData theData = new YrWeatherForecastAdapter().getWeatherForecasts(longitude, latitude, altitude);
-            if(ipmDecisionsParameters != null && ipmDecisionsParameters.size() > 0)
-            {
-            	theData = new WeatherDataUtil().filterParameters(theData, ipmDecisionsParameters);
-            }
+            // Identical concurrent requests share one request to the forecast service
+            final Double altitudeForRequest = altitude;
+            WeatherData theData = requestCoalescingBean.execute(
+                    "yr|" + requestCoalescingBean.getCoordinateKey(longitude, latitude) + "|" + Math.round(altitude) + "|" + this.getParametersKey(ipmDecisionsParameters),
+                    () -> {
+                        WeatherData forecasts = new YrWeatherForecastAdapter().getWeatherForecasts(longitude, latitude, altitudeForRequest);
+                        if(ipmDecisionsParameters != null && ipmDecisionsParameters.size() > 0)
+                        {
+                            forecasts = new WeatherDataUtil().filterParameters(forecasts, ipmDecisionsParameters);
+                        }
+                        return forecasts;
+                    }
+            );
             return Response.ok().entity(theData).build();
         } 
-        catch (ParseWeatherDataException ex) 
+        catch (ExecutionException ex) 
         {
-            return Response.serverError().entity(ex.getMessage()).build();
+            return Response.serverError().entity(ex.getCause().getMessage()).build();
         }
 
     }
@@ -155,12 +190,23 @@ public class WeatherAdapterService {
     @Path("meteireann/")
     @GZIP
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getMetIrelandForecasts(
+    public void getMetIrelandForecasts(
+                    @Suspended AsyncResponse asyncResponse,
                     @QueryParam("longitude") Double longitude,
                     @QueryParam("latitude") Double latitude,
                     @QueryParam("altitude") Double altitude,
                     @QueryParam("parameters") String parameters
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("meteireann", () -> this.getMetIrelandForecasts(longitude, latitude, altitude, parameters)));
+    }
+
+    private Response getMetIrelandForecasts(
+                    Double longitude,
+                    Double latitude,
+                    Double altitude,
+                    String parameters
+    )
     {
         if(longitude == null || latitude == null)
         {
@@ -177,16 +223,24 @@ public class WeatherAdapterService {
         
         try 
         {
-            WeatherData theData = new MetIrelandWeatherForecastAdapter().getWeatherForecasts(longitude, latitude, altitude);
-            if(ipmDecisionsParameters != null && ipmDecisionsParameters.size() > 0)
-            {
-            	theData = new WeatherDataUtil().filterParameters(theData, ipmDecisionsParameters);
-            }
+            // Identical concurrent requests share one request to the forecast service
+            final Double altitudeForRequest = altitude;
+            WeatherData theData = requestCoalescingBean.execute(
+                    "meteireann|" + requestCoalescingBean.getCoordinateKey(longitude, latitude) + "|" + Math.round(altitude) + "|" + this.getParametersKey(ipmDecisionsParameters),
+                    () -> {
+                        WeatherData forecasts = new MetIrelandWeatherForecastAdapter().getWeatherForecasts(longitude, latitude, altitudeForRequest);
+                        if(ipmDecisionsParameters != null && ipmDecisionsParameters.size() > 0)
+                        {
+                            forecasts = new WeatherDataUtil().filterParameters(forecasts, ipmDecisionsParameters);
+                        }
+                        return forecasts;
+                    }
+            );
             return Response.ok().entity(theData).build();
         } 
-        catch (ParseWeatherDataException ex) 
+        catch (ExecutionException ex) 
         {
-            return Response.serverError().entity(ex.getMessage()).build();
+            return Response.serverError().entity(ex.getCause().getMessage()).build();
         }
 
     }
@@ -205,11 +259,21 @@ public class WeatherAdapterService {
     @Path("fmi/forecasts/")
     @GZIP
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getFMIForecasts(
+    public void getFMIForecasts(
+                    @Suspended AsyncResponse asyncResponse,
                     @QueryParam("longitude") Double longitude,
                     @QueryParam("latitude") Double latitude,
                     @QueryParam("parameters") String parameters
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("fmi/forecasts", () -> this.getFMIForecasts(longitude, latitude, parameters)));
+    }
+
+    private Response getFMIForecasts(
+                    Double longitude,
+                    Double latitude,
+                    String parameters
+    )
     {
         if(longitude == null || latitude == null)
         {
@@ -220,12 +284,26 @@ public class WeatherAdapterService {
                 .map(paramstr->Integer.parseInt(paramstr.strip())).collect(Collectors.toSet())
                 : null;
         
-        WeatherData theData = new FinnishMeteorologicalInstituteAdapter().getWeatherForecasts(longitude, latitude);
-        if(ipmDecisionsParameters != null && ipmDecisionsParameters.size() > 0)
+        try
         {
-        	theData = new WeatherDataUtil().filterParameters(theData, ipmDecisionsParameters);
+            // Identical concurrent requests share one request to the forecast service
+            WeatherData theData = requestCoalescingBean.execute(
+                    "fmi/forecasts|" + requestCoalescingBean.getCoordinateKey(longitude, latitude) + "|" + this.getParametersKey(ipmDecisionsParameters),
+                    () -> {
+                        WeatherData forecasts = new FinnishMeteorologicalInstituteAdapter().getWeatherForecasts(longitude, latitude);
+                        if(ipmDecisionsParameters != null && ipmDecisionsParameters.size() > 0)
+                        {
+                            forecasts = new WeatherDataUtil().filterParameters(forecasts, ipmDecisionsParameters);
+                        }
+                        return forecasts;
+                    }
+            );
+            return Response.ok().entity(theData).build();
+        }
+        catch (ExecutionException ex)
+        {
+            return Response.serverError().entity(ex.getCause().getMessage()).build();
         }
-        return Response.ok().entity(theData).build();
     }
     
     /**
@@ -246,7 +324,8 @@ public class WeatherAdapterService {
     @Path("fmi/")
     @GZIP
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getFMIObservations(
+    public void getFMIObservations(
+            @Suspended AsyncResponse asyncResponse,
             @QueryParam("weatherStationId") Integer weatherStationId,
             @QueryParam("timeStart") String timeStart,
             @QueryParam("timeEnd") String timeEnd,
@@ -254,6 +333,18 @@ public class WeatherAdapterService {
             @QueryParam("parameters") String parameters,
             @QueryParam("ignoreErrors") String ignoreErrors
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("fmi", () -> this.getFMIObservations(weatherStationId, timeStart, timeEnd, logInterval, parameters, ignoreErrors)));
+    }
+
+    private Response getFMIObservations(
+            Integer weatherStationId,
+            String timeStart,
+            String timeEnd,
+            Integer logInterval,
+            String parameters,
+            String ignoreErrors
+    )
     {
         List<Integer> ipmDecisionsParameters = Arrays.asList(parameters.split(",")).stream()
                     .map(paramstr->Integer.parseInt(paramstr.strip())).collect(Collectors.toList());
@@ -307,7 +398,8 @@ public class WeatherAdapterService {
     @Path("dmipoint/")
     @GZIP
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getDMIPointWebObservations(
+    public void getDMIPointWebObservations(
+            @Suspended AsyncResponse asyncResponse,
             @QueryParam("longitude") Double longitude,
             @QueryParam("latitude") Double latitude,
             @QueryParam("timeStart") String timeStart,
@@ -316,6 +408,19 @@ public class WeatherAdapterService {
             @QueryParam("parameters") String parameters,
             @QueryParam("ignoreErrors") String ignoreErrors
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("dmipoint", () -> this.getDMIPointWebObservations(longitude, latitude, timeStart, timeEnd, logInterval, parameters, ignoreErrors)));
+    }
+
+    private Response getDMIPointWebObservations(
+            Double longitude,
+            Double latitude,
+            String timeStart,
+            String timeEnd,
+            Integer logInterval,
+            String parameters,
+            String ignoreErrors
+    )
     {
          Set<Integer> ipmDecisionsParameters = parameters != null ? Arrays.asList(parameters.split(",")).stream()
                     .map(paramstr->Integer.parseInt(paramstr.strip())).collect(Collectors.toSet())
@@ -393,7 +498,8 @@ public class WeatherAdapterService {
     @Path("lantmet/")
     @GZIP
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getSLULantMetObservations(
+    public void getSLULantMetObservations(
+            @Suspended AsyncResponse asyncResponse,
             @QueryParam("longitude") Double longitude,
             @QueryParam("latitude") Double latitude,
             @QueryParam("timeStart") String timeStart,
@@ -402,6 +508,19 @@ public class WeatherAdapterService {
             @QueryParam("parameters") String parameters,
             @QueryParam("ignoreErrors") String ignoreErrors
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("lantmet", () -> this.getSLULantMetObservations(longitude, latitude, timeStart, timeEnd, logInterval, parameters, ignoreErrors)));
+    }
+
+    private Response getSLULantMetObservations(
+            Double longitude,
+            Double latitude,
+            String timeStart,
+            String timeEnd,
+            Integer logInterval,
+            String parameters,
+            String ignoreErrors
+    )
     {
          List<Integer> ipmDecisionsParameters = parameters != null ? Arrays.asList(parameters.split(",")).stream()
                     .map(paramstr->Integer.parseInt(paramstr.strip())).collect(Collectors.toList())
@@ -476,7 +595,8 @@ public class WeatherAdapterService {
     @Path("openmeteo/")
     @GZIP
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getOpenMeteoObservations(
+    public void getOpenMeteoObservations(
+            @Suspended AsyncResponse asyncResponse,
             @QueryParam("longitude") Double longitude,
             @QueryParam("latitude") Double latitude,
             @QueryParam("timeStart") String timeStart,
@@ -485,6 +605,19 @@ public class WeatherAdapterService {
             @QueryParam("parameters") String parameters,
             @QueryParam("ignoreErrors") String ignoreErrors
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("openmeteo", () -> this.getOpenMeteoObservations(longitude, latitude, timeStart, timeEnd, logInterval, parameters, ignoreErrors)));
+    }
+
+    private Response getOpenMeteoObservations(
+            Double longitude,
+            Double latitude,
+            String timeStart,
+            String timeEnd,
+            Integer logInterval,
+            String parameters,
+            String ignoreErrors
+    )
     {
         List<Integer> ipmDecisionsParameters = parameters != null ? Arrays.asList(parameters.split(",")).stream()
                 .map(paramstr->Integer.valueOf(paramstr.strip())).collect(Collectors.toList())
@@ -522,11 +655,18 @@ public class WeatherAdapterService {
 
         try
         {
-            WeatherData theData = new OpenMeteoAdapter().getData(
-                    longitude, latitude, tzForLocation,
-                    timeStartInstant,timeEndInstant,
-                    logInterval,
-                    ipmDecisionsParameters
+            // Identical concurrent requests share one request to Open-Meteo
+            final Instant timeStartForRequest = timeStartInstant;
+            final Instant timeEndForRequest = timeEndInstant;
+            final Integer intervalForRequest = logInterval;
+            WeatherData theData = requestCoalescingBean.execute(
+                    "openmeteo|" + requestCoalescingBean.getCoordinateKey(longitude, latitude) + "|" + timeStartInstant + "|" + timeEndInstant + "|" + logInterval + "|" + this.getParametersKey(ipmDecisionsParameters),
+                    () -> new OpenMeteoAdapter().getData(
+                            longitude, latitude, tzForLocation,
+                            timeStartForRequest,timeEndForRequest,
+                            intervalForRequest,
+                            ipmDecisionsParameters
+                    )
             );
             if(theData == null)
             {
@@ -535,9 +675,9 @@ public class WeatherAdapterService {
 
             return Response.ok().entity(theData).build();
         }
-        catch(WeatherDataSourceException ex)
+        catch(ExecutionException ex)
         {
-            return Response.serverError().entity(ex.getMessage()).build();
+            return Response.serverError().entity(ex.getCause().getMessage()).build();
         }
 
     }
@@ -570,7 +710,8 @@ public class WeatherAdapterService {
     @GZIP
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getMeteobotObservations(
+    public void getMeteobotObservations(
+            @Suspended AsyncResponse asyncResponse,
             @FormParam("weatherStationId") Integer weatherStationId,
             @FormParam("timeStart") String timeStart,
             @FormParam("timeEnd") String timeEnd,
@@ -579,6 +720,19 @@ public class WeatherAdapterService {
             @FormParam("ignoreErrors") String ignoreErrors,
             @FormParam("credentials") String credentials
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("meteobot", () -> this.getMeteobotObservations(weatherStationId, timeStart, timeEnd, logInterval, parameters, ignoreErrors, credentials)));
+    }
+
+    private Response getMeteobotObservations(
+            Integer weatherStationId,
+            String timeStart,
+            String timeEnd,
+            Integer logInterval,
+            String parameters,
+            String ignoreErrors,
+            String credentials
+    )
     {
         // We only accept requests for hourly data
         if(!logInterval.equals(3600))
@@ -650,7 +804,8 @@ public class WeatherAdapterService {
     @GZIP
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getTahmoObservations(
+    public void getTahmoObservations(
+            @Suspended AsyncResponse asyncResponse,
             @FormParam("weatherStationId") String stationCode,
             @FormParam("timeStart") String timeStart,
             @FormParam("timeEnd") String timeEnd,
@@ -659,6 +814,20 @@ public class WeatherAdapterService {
             @FormParam("ignoreErrors") String ignoreErrors,
             @FormParam("credentials") String credentials,
             @HeaderParam(HttpHeaders.AUTHORIZATION) String authHeader
+    )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("tahmo", () -> this.getTahmoObservations(stationCode, timeStart, timeEnd, logInterval, parameters, ignoreErrors, credentials, authHeader)));
+    }
+
+    private Response getTahmoObservations(
+            String stationCode,
+            String timeStart,
+            String timeEnd,
+            Integer logInterval,
+            String parameters,
+            String ignoreErrors,
+            String credentials,
+            String authHeader
     ) {
         LOGGER.debug("Request Tahmo observations for weather station {}", stationCode);
 
@@ -780,7 +949,8 @@ public class WeatherAdapterService {
     @GZIP
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getMetosObservations(
+    public void getMetosObservations(
+            @Suspended AsyncResponse asyncResponse,
             @FormParam("weatherStationId") String weatherStationId,
             @FormParam("timeStart") String timeStart,
             @FormParam("timeEnd") String timeEnd,
@@ -789,6 +959,19 @@ public class WeatherAdapterService {
             @FormParam("ignoreErrors") String ignoreErrors,
             @FormParam("credentials") String credentials
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("metos", () -> this.getMetosObservations(weatherStationId, timeStart, timeEnd, logInterval, parameters, ignoreErrors, credentials)));
+    }
+
+    private Response getMetosObservations(
+            String weatherStationId,
+            String timeStart,
+            String timeEnd,
+            Integer logInterval,
+            String parameters,
+            String ignoreErrors,
+            String credentials
+    )
     {
         // We only accept requests for hourly data
         if(!logInterval.equals(3600))
@@ -867,7 +1050,8 @@ public class WeatherAdapterService {
     @GZIP
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getDavisFruitwebObservations(
+    public void getDavisFruitwebObservations(
+            @Suspended AsyncResponse asyncResponse,
             @FormParam("weatherStationId") String weatherStationId,
             @FormParam("timeZone") String timeZoneId,
             @FormParam("timeStart") String timeStart,
@@ -877,6 +1061,20 @@ public class WeatherAdapterService {
             @FormParam("ignoreErrors") String ignoreErrors,
             @FormParam("credentials") String credentials
     )
+    {
+        executorBean.runAdapterAsync(asyncResponse, () -> this.timed("davisfruitweb", () -> this.getDavisFruitwebObservations(weatherStationId, timeZoneId, timeStart, timeEnd, logInterval, parameters, ignoreErrors, credentials)));
+    }
+
+    private Response getDavisFruitwebObservations(
+            String weatherStationId,
+            String timeZoneId,
+            String timeStart,
+            String timeEnd,
+            Integer logInterval,
+            String parameters,
+            String ignoreErrors,
+            String credentials
+    )
     {
         //LOGGER.debug("(getDavisFruitwebObservations) timeZone=" + timeZoneId);
         TimeZone timeZone = timeZoneId != null ? TimeZone.getTimeZone(ZoneId.of(timeZoneId)) : TimeZone.getTimeZone("UTC");
@@ -965,4 +1163,32 @@ public class WeatherAdapterService {
             } 
         }
     }
+
+    /**
+     * @return the parameters sorted and comma separated, for use in request keys
+     */
+    private String getParametersKey(Collection<Integer> parameters)
+    {
+        return parameters != null ? new TreeSet<>(parameters).stream().map(String::valueOf).collect(Collectors.joining(",")) : "";
+    }
+
+    /**
+     * Runs the adapter request and reports its duration to the metrics, see {@link MetricsBean}
+     * @param adapter the name of the adapter, used as label
+     */
+    private Response timed(String adapter, Supplier<Response> request)
+    {
+        long start = System.nanoTime();
+        String status = "500";
+        try
+        {
+            Response response = request.get();
+            status = String.valueOf(response.getStatus());
+            return response;
+        }
+        finally
+        {
+            metricsBean.observe(MetricsBean.ADAPTER_REQUEST_SECONDS, System.nanoTime() - start, "adapter", adapter, "status", status);
+        }
+    }
 }
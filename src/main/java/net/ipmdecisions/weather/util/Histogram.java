@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, with fixed buckets, that can be written in the 
+ * Prometheus text format. Observations are lock free.
+ */
+public class Histogram {
+
+	/** Upper bounds of the buckets, in seconds */
+	public static final double[] DEFAULT_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+	private final double[] buckets;
+	private final long[] bucketNanos;
+	// Not cumulative. The last one is +Inf
+	private final AtomicLongArray counts;
+	private final LongAdder sumNanos = new LongAdder();
+
+	public Histogram()
+	{
+		this(DEFAULT_BUCKETS);
+	}
+
+	/**
+	 * @param buckets Upper bounds of the buckets, in seconds, ascending
+	 */
+	public Histogram(double[] buckets)
+	{
+		this.buckets = buckets;
+		this.bucketNanos = new long[buckets.length];
+		for(int i=0; i < buckets.length; i++)
+		{
+			this.bucketNanos[i] = Math.round(buckets[i] * 1e9);
+		}
+		this.counts = new AtomicLongArray(buckets.length + 1);
+	}
+
+	/**
+	 * @param nanos the duration
+	 */
+	public void observe(long nanos)
+	{
+		int bucket = 0;
+		while(bucket < this.bucketNanos.length && nanos > this.bucketNanos[bucket])
+		{
+			bucket++;
+		}
+		this.counts.incrementAndGet(bucket);
+		this.sumNanos.add(nanos);
+	}
+
+	/**
+	 * @return the number of observations
+	 */
+	public long getCount()
+	{
+		long count = 0;
+		for(int i=0; i < this.counts.length(); i++)
+		{
+			count += this.counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the bucket, sum and count lines
+	 * @param out
+	 * @param name The metric name
+	 * @param labels The labels, e.g. stage="fusion". Empty string if none
+	 */
+	public void write(StringBuilder out, String name, String labels)
+	{
+		String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+		long cumulative = 0;
+		for(int i=0; i < this.buckets.length; i++)
+		{
+			cumulative += this.counts.get(i);
+			out.append(name).append("_bucket{").append(labelPrefix).append("le=\"").append(String.format(Locale.ROOT, "%s", this.buckets[i])).append("\"} ").append(cumulative).append('\n');
+		}
+		cumulative += this.counts.get(this.buckets.length);
+		out.append(name).append("_bucket{").append(labelPrefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+		String labelSet = labels.isEmpty() ? "" : "{" + labels + "}";
+		out.append(name).append("_sum").append(labelSet).append(' ').append(String.format(Locale.ROOT, "%.6f", this.sumNanos.sum() / 1e9)).append('\n');
+		out.append(name).append("_count").append(labelSet).append(' ').append(cumulative).append('\n');
+	}
+}
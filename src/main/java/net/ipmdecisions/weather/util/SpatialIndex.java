@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A thread safe index of items (e.g. weather stations) by their location, for finding 
+ * the items nearest to a point. 
+ * 
+ * The items are kept in buckets of a regular longitude/latitude grid, so a search only
+ * looks at the buckets within the maximum distance. The distances are great circle
+ * distances (meters). Searches do not wrap around the 180th meridian.
+ *
+ * @param <T> the item type
+ */
+public class SpatialIndex<T> {
+	
+	private static final double EARTH_RADIUS = 6371008.8;
+	private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+	
+	private final double cellSize;
+	private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+	private final Map<String, Entry<T>> entries = new HashMap<>();
+	
+	/**
+	 * @param cellSize The size of the grid cells (degrees). Should be in the order of the maximum search distance
+	 */
+	public SpatialIndex(double cellSize)
+	{
+		this.cellSize = cellSize;
+	}
+	
+	/**
+	 * Adds the item, or moves it if the key is already in the index
+	 * @param key identifies the item
+	 * @param item
+	 * @param longitude
+	 * @param latitude
+	 */
+	public synchronized void put(String key, T item, double longitude, double latitude)
+	{
+		this.remove(key);
+		Entry<T> entry = new Entry<>(item, longitude, latitude);
+		this.entries.put(key, entry);
+		this.cells.computeIfAbsent(this.getCell(longitude, latitude), cell -> new ArrayList<>()).add(entry);
+	}
+	
+	/**
+	 * @param key
+	 * @return the removed item, or null if it was not in the index
+	 */
+	public synchronized T remove(String key)
+	{
+		Entry<T> removed = this.entries.remove(key);
+		if(removed == null)
+		{
+			return null;
+		}
+		long cell = this.getCell(removed.longitude, removed.latitude);
+		List<Entry<T>> cellEntries = this.cells.get(cell);
+		cellEntries.remove(removed);
+		if(cellEntries.isEmpty())
+		{
+			this.cells.remove(cell);
+		}
+		return removed.item;
+	}
+	
+	public synchronized int size()
+	{
+		return this.entries.size();
+	}
+	
+	/**
+	 * @param longitude
+	 * @param latitude
+	 * @param maxItems The maximum number of items to return
+	 * @param maxDistance The maximum distance (meters) from the point
+	 * @param filter Only items matching the filter are returned
+	 * @return the items nearest to the point, nearest first
+	 */
+	public List<T> getNearest(double longitude, double latitude, int maxItems, double maxDistance, Predicate<T> filter)
+	{
+		return this.getNearest(longitude, latitude, maxItems, 0.0, maxDistance, filter);
+	}
+	
+	/**
+	 * @param longitude
+	 * @param latitude
+	 * @param maxItems The maximum number of items to return
+	 * @param minDistance Items closer (meters) to the point are not returned
+	 * @param maxDistance The maximum distance (meters) from the point
+	 * @param filter Only items matching the filter are returned
+	 * @return the items nearest to the point, nearest first
+	 */
+	public synchronized List<T> getNearest(double longitude, double latitude, int maxItems, double minDistance, double maxDistance, Predicate<T> filter)
+	{
+		double latitudeRange = maxDistance / METERS_PER_DEGREE;
+		// The longitude degrees shrink towards the poles
+		double cosLatitude = Math.cos(Math.toRadians(Math.min(90, Math.abs(latitude) + latitudeRange)));
+		double longitudeRange = cosLatitude > 0.01 ? latitudeRange / cosLatitude : 360;
+		int minRow = (int) Math.floor((latitude - latitudeRange) / this.cellSize);
+		int maxRow = (int) Math.floor((latitude + latitudeRange) / this.cellSize);
+		int minColumn = (int) Math.floor(Math.max(-180, longitude - longitudeRange) / this.cellSize);
+		int maxColumn = (int) Math.floor(Math.min(180, longitude + longitudeRange) / this.cellSize);
+		
+		List<Entry<T>> candidates = new ArrayList<>();
+		for(int row = minRow; row <= maxRow; row++)
+		{
+			for(int column = minColumn; column <= maxColumn; column++)
+			{
+				List<Entry<T>> cellEntries = this.cells.get(this.getCell(row, column));
+				if(cellEntries == null)
+				{
+					continue;
+				}
+				for(Entry<T> entry:cellEntries)
+				{
+					entry.distance = SpatialIndex.getDistance(longitude, latitude, entry.longitude, entry.latitude);
+					if(entry.distance >= minDistance && entry.distance <= maxDistance && filter.test(entry.item))
+					{
+						candidates.add(entry);
+					}
+				}
+			}
+		}
+		candidates.sort(Comparator.comparingDouble(entry -> entry.distance));
+		List<T> nearest = new ArrayList<>();
+		for(int i=0; i < Math.min(maxItems, candidates.size()); i++)
+		{
+			nearest.add(candidates.get(i).item);
+		}
+		return nearest;
+	}
+	
+	/**
+	 * @return the great circle distance (meters) between the two points (haversine formula)
+	 */
+	public static double getDistance(double longitude1, double latitude1, double longitude2, double latitude2)
+	{
+		double sinHalfLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+		double sinHalfLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+		double a = sinHalfLatitude * sinHalfLatitude
+				+ Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * sinHalfLongitude * sinHalfLongitude;
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+	
+	private long getCell(double longitude, double latitude)
+	{
+		return this.getCell((int) Math.floor(latitude / this.cellSize), (int) Math.floor(longitude / this.cellSize));
+	}
+	
+	private long getCell(int row, int column)
+	{
+		return ((long) row << 32) | (column & 0xffffffffL);
+	}
+	
+	private static class Entry<T> {
+		private final T item;
+		private final double longitude, latitude;
+		// Set during a search
+		private double distance;
+		
+		private Entry(T item, double longitude, double latitude)
+		{
+			this.item = item;
+			this.longitude = longitude;
+			this.latitude = latitude;
+		}
+	}
+}
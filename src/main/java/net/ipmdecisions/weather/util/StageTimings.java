@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.util;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * The time spent in each stage of one request. Each stage is also reported to the 
+ * given listener, e.g. for the metrics. Can be written as a Server-Timing header.
+ * 
+ * Usage: 
+ * <pre>
+ * long start = System.nanoTime();
+ * ... the stage ...
+ * timings.record("fusion", start);
+ * </pre>
+ */
+public class StageTimings {
+
+	private final ObjLongConsumer<String> listener;
+	private final Map<String, Long> durations = new LinkedHashMap<>();
+
+	/**
+	 * @param listener Gets the stage and duration (nanoseconds) of every recorded stage. May be null
+	 */
+	public StageTimings(ObjLongConsumer<String> listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Records the time since the start. Stages that are recorded several times are added up
+	 * @param stage The name of the stage. Must be a valid token (letters, digits, "-", "_" and ".")
+	 * @param startNanos from System.nanoTime()
+	 */
+	public void record(String stage, long startNanos)
+	{
+		long nanos = System.nanoTime() - startNanos;
+		synchronized(this.durations)
+		{
+			this.durations.merge(stage, nanos, Long::sum);
+		}
+		if(this.listener != null)
+		{
+			this.listener.accept(stage, nanos);
+		}
+	}
+
+	/**
+	 * @return e.g. "plan;dur=0.4, fetch;dur=812.3, fusion;dur=10.1" (milliseconds)
+	 */
+	public String getServerTiming()
+	{
+		synchronized(this.durations)
+		{
+			return this.durations.entrySet().stream()
+					.map(e -> String.format(Locale.ROOT, "%s;dur=%.1f", e.getKey(), e.getValue() / 1e6))
+					.collect(Collectors.joining(", "));
+		}
+	}
+}
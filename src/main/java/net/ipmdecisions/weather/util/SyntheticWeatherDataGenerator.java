@@ -0,0 +1,588 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.qc.Threshold;
+import net.ipmdecisions.weather.qc.ThresholdData;
+import net.ipmdecisions.weather.qc.util.QCHelpers;
+import net.ipmdecisions.weather.qc.util.QCWeatherParameterAggregationType;
+
+/**
+ * Generates synthetic weather data for load testing, e.g. of the quality control,
+ * interpolation, validation and fusion, without access to the weather data sources.
+ * The data are deterministic for a given seed and configuration.
+ * 
+ * The values follow daily and yearly cycles with some noise, within the QC limits of 
+ * each weather parameter, and mean, min and max values of the same type are consistent. 
+ * So without faults, the data pass the QC tests. Faults can be injected at given rates:
+ * <ul>
+ * <li>Spikes: A single value far outside the valid range of the parameter</li>
+ * <li>Freezes: The same value repeated for {@link #FREEZE_ROWS} rows</li>
+ * <li>Min &gt; max: The min and max values of a type are swapped</li>
+ * </ul>
+ * Whether a fault is caught depends on the QC tests for the parameter, e.g. frozen 
+ * precipitation of 0.0mm or leaf wetness is not a failure.
+ * 
+ * The data can be generated as a {@link WeatherData} object, or written as JSON one 
+ * row at a time, so that the size is not limited by the memory.
+ */
+public class SyntheticWeatherDataGenerator {
+
+	public static final Instant DEFAULT_TIME_START = Instant.parse("2015-01-01T00:00:00Z");
+
+	// Temperature, precipitation, humidity, leaf wetness, wind and radiation
+	public static final Integer[] DEFAULT_WEATHER_PARAMETERS = {
+			1001, 1002, 1003, 1004, 2001, 3001, 3002, 3003, 3004, 3101, 4002, 4003, 4004, 4005, 5001
+	};
+
+	/** The number of rows with the same value in a freeze fault */
+	public static final int FREEZE_ROWS = 24;
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final long seed;
+	private Instant timeStart = DEFAULT_TIME_START;
+	private int rows = 8760;
+	private int interval = WeatherDataUtil.INTERVAL_HOURLY;
+	private Integer[] weatherParameters = DEFAULT_WEATHER_PARAMETERS;
+	private int locations = 1;
+	private double longitude = 10.0;
+	private double latitude = 59.0;
+	private double missingRate = 0;
+	private double spikeRate = 0;
+	private double freezeRate = 0;
+	private double minMaxRate = 0;
+
+	/**
+	 * One year of hourly data for the default weather parameters at one location, 
+	 * without missing values or faults
+	 * @param seed
+	 */
+	public SyntheticWeatherDataGenerator(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the generated weather data
+	 * @throws IllegalArgumentException if the configuration is not valid
+	 */
+	public WeatherData getWeatherData()
+	{
+		this.validate();
+		WeatherData weatherData = new WeatherData();
+		weatherData.setTimeStart(this.timeStart);
+		weatherData.setTimeEnd(this.getTimeEnd());
+		weatherData.setInterval(this.interval);
+		weatherData.setWeatherParameters(this.weatherParameters.clone());
+		List<LocationWeatherData> locationWeatherData = new ArrayList<>();
+		for(int location=0; location < this.locations; location++)
+		{
+			LocationGenerator generator = new LocationGenerator(location);
+			LocationWeatherData lwd = new LocationWeatherData(generator.longitude, generator.latitude, generator.altitude, this.rows, this.weatherParameters.length);
+			for(int row=0; row < this.rows; row++)
+			{
+				generator.nextRow(lwd.getData()[row]);
+			}
+			Integer[] qc = new Integer[this.weatherParameters.length];
+			Arrays.fill(qc, 0);
+			lwd.setQC(qc);
+			locationWeatherData.add(lwd);
+		}
+		weatherData.setLocationWeatherData(locationWeatherData);
+		return weatherData;
+	}
+
+	/**
+	 * Writes the generated weather data as JSON, one row at a time. The data are the 
+	 * same as from {@link #getWeatherData()}
+	 * @param output Not closed
+	 * @throws IOException if the output can't be written
+	 * @throws IllegalArgumentException if the configuration is not valid
+	 */
+	public void writeTo(OutputStream output) throws IOException
+	{
+		this.validate();
+		try(JsonGenerator generator = JSON_FACTORY.createGenerator(output))
+		{
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartObject();
+			generator.writeStringField("timeStart", this.timeStart.toString());
+			generator.writeStringField("timeEnd", this.getTimeEnd().toString());
+			generator.writeNumberField("interval", this.interval);
+			generator.writeArrayFieldStart("weatherParameters");
+			for(Integer weatherParameter:this.weatherParameters)
+			{
+				generator.writeNumber(weatherParameter);
+			}
+			generator.writeEndArray();
+			generator.writeArrayFieldStart("locationWeatherData");
+			Double[] row = new Double[this.weatherParameters.length];
+			for(int location=0; location < this.locations; location++)
+			{
+				LocationGenerator locationGenerator = new LocationGenerator(location);
+				generator.writeStartObject();
+				generator.writeNumberField("longitude", locationGenerator.longitude);
+				generator.writeNumberField("latitude", locationGenerator.latitude);
+				generator.writeNumberField("altitude", locationGenerator.altitude);
+				generator.writeArrayFieldStart("qc");
+				for(int column=0; column < row.length; column++)
+				{
+					generator.writeNumber(0);
+				}
+				generator.writeEndArray();
+				generator.writeArrayFieldStart("data");
+				for(int i=0; i < this.rows; i++)
+				{
+					locationGenerator.nextRow(row);
+					generator.writeStartArray();
+					for(Double value:row)
+					{
+						if(value == null)
+						{
+							generator.writeNull();
+						}
+						else
+						{
+							generator.writeNumber(value);
+						}
+					}
+					generator.writeEndArray();
+				}
+				generator.writeEndArray();
+				generator.writeNumberField("length", this.rows);
+				generator.writeNumberField("width", row.length);
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * @return The number of values in the data set (rows * weather parameters * locations), 
+	 * or Long.MAX_VALUE if it's too large for a long. Only meaningful for a valid configuration, see {@link #validate()}
+	 */
+	public long getSize()
+	{
+		try
+		{
+			return Math.multiplyExact(Math.multiplyExact((long) this.rows, (long) this.weatherParameters.length), (long) this.locations);
+		}
+		catch(ArithmeticException ex)
+		{
+			return Long.MAX_VALUE;
+		}
+	}
+
+	private Instant getTimeEnd()
+	{
+		return this.timeStart.plusSeconds((long) this.interval * (this.rows - 1));
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the configuration is not valid
+	 */
+	public void validate()
+	{
+		if(this.timeStart == null)
+		{
+			throw new IllegalArgumentException("timeStart must be given");
+		}
+		if(this.rows < 1 || this.interval < 1 || this.locations < 1)
+		{
+			throw new IllegalArgumentException("The number of rows and locations, and the interval, must be positive");
+		}
+		if(this.weatherParameters == null || this.weatherParameters.length == 0 || Arrays.asList(this.weatherParameters).contains(null))
+		{
+			throw new IllegalArgumentException("At least one weather parameter must be given");
+		}
+		for(double rate:new double[] {this.missingRate, this.spikeRate, this.freezeRate, this.minMaxRate})
+		{
+			if(!(rate >= 0 && rate <= 1))
+			{
+				throw new IllegalArgumentException("The missing value and fault rates must be between 0 and 1");
+			}
+		}
+	}
+
+	/**
+	 * Generates the rows of one location. Weather parameters of the same type (e.g. mean, 
+	 * min and max air temperature) share the same signal
+	 */
+	private class LocationGenerator {
+
+		private final Double longitude;
+		private final Double latitude;
+		private final Double altitude;
+		private final Random random;
+		private final int[] signalIndexes;
+		private final int[] signalParameters;
+		private final double[] signals;
+		private final QCWeatherParameterAggregationType[] aggregationTypes;
+		private final Integer[][] logicalTuples;
+		private final Double[] lastValues;
+		private final int[] frozenRows;
+		private int row = 0;
+
+		LocationGenerator(int location)
+		{
+			// A 100 column grid with about 1km between the locations
+			this.longitude = SyntheticWeatherDataGenerator.this.longitude + (location % 100) * 0.02;
+			this.latitude = SyntheticWeatherDataGenerator.this.latitude + (location / 100) * 0.01;
+			this.altitude = 90.0;
+			this.random = new Random(31 * SyntheticWeatherDataGenerator.this.seed + location);
+
+			Integer[] parameters = SyntheticWeatherDataGenerator.this.weatherParameters;
+			Map<Integer, Integer> signalIndexesByType = new HashMap<>();
+			this.signalIndexes = new int[parameters.length];
+			for(int column=0; column < parameters.length; column++)
+			{
+				this.signalIndexes[column] = signalIndexesByType.computeIfAbsent(getSignalType(parameters[column]), type -> signalIndexesByType.size());
+			}
+			this.signalParameters = new int[signalIndexesByType.size()];
+			for(int column=0; column < parameters.length; column++)
+			{
+				this.signalParameters[this.signalIndexes[column]] = parameters[column];
+			}
+			this.signals = new double[this.signalParameters.length];
+			Arrays.fill(this.signals, Double.NaN);
+			this.aggregationTypes = new QCWeatherParameterAggregationType[parameters.length];
+			for(int column=0; column < parameters.length; column++)
+			{
+				this.aggregationTypes[column] = QCHelpers.getQCWeatherParameter(parameters[column]).getAggregationType();
+			}
+			this.logicalTuples = QCHelpers.getLogicalTuplesFromWeatherParameters(parameters);
+			this.lastValues = new Double[parameters.length];
+			this.frozenRows = new int[parameters.length];
+		}
+
+		/**
+		 * @param values The values of the next row
+		 */
+		void nextRow(Double[] values)
+		{
+			SyntheticWeatherDataGenerator config = SyntheticWeatherDataGenerator.this;
+			long time = config.timeStart.getEpochSecond() + (long) config.interval * this.row++;
+			// 1 at 15:00 UTC and -1 at 03:00 UTC
+			double daily = Math.sin(2 * Math.PI * (Math.floorMod(time, 86400) / 3600.0 - 9) / 24);
+			// 1 in the middle of the year
+			double yearly = -Math.cos(2 * Math.PI * Math.floorMod(time, 31557600L) / 31557600.0);
+			for(int i=0; i < this.signals.length; i++)
+			{
+				this.signals[i] = this.getSignal(this.signalParameters[i], this.signals[i], daily, yearly);
+			}
+
+			for(int column=0; column < values.length; column++)
+			{
+				int weatherParameter = config.weatherParameters[column];
+				double signal = this.signals[this.signalIndexes[column]];
+				if(this.aggregationTypes[column] == QCWeatherParameterAggregationType.MINIMUM)
+				{
+					// Only temperatures can be below 0
+					signal = weatherParameter / 1000 == 1 ? 
+							signal - this.getSpread(weatherParameter)
+							: Math.min(signal, Math.max(0, signal - this.getSpread(weatherParameter)));
+				}
+				else if(this.aggregationTypes[column] == QCWeatherParameterAggregationType.MAXIMUM)
+				{
+					signal = signal + this.getSpread(weatherParameter);
+				}
+				values[column] = round(signal);
+			}
+
+			// Min > max
+			if(config.minMaxRate > 0)
+			{
+				for(Integer[] tuple:this.logicalTuples)
+				{
+					if(this.random.nextDouble() < config.minMaxRate && tuple[1] != null && tuple[2] != null)
+					{
+						Double min = values[tuple[1]];
+						values[tuple[1]] = values[tuple[2]];
+						values[tuple[2]] = min;
+					}
+				}
+			}
+
+			for(int column=0; column < values.length; column++)
+			{
+				// Freezes
+				if(this.frozenRows[column] > 0 && this.lastValues[column] != null)
+				{
+					values[column] = this.lastValues[column];
+					this.frozenRows[column]--;
+				}
+				else if(config.freezeRate > 0 && this.random.nextDouble() < config.freezeRate)
+				{
+					// This is the first of the frozen values
+					this.frozenRows[column] = FREEZE_ROWS - 1;
+				}
+				// Spikes
+				else if(config.spikeRate > 0 && this.random.nextDouble() < config.spikeRate)
+				{
+					values[column] = getSpike(config.weatherParameters[column], values[column]);
+				}
+				this.lastValues[column] = values[column];
+
+				// Missing values
+				if(config.missingRate > 0 && this.random.nextDouble() < config.missingRate)
+				{
+					values[column] = null;
+				}
+			}
+		}
+
+		/**
+		 * @return The next value of the signal for the type of the weather parameter
+		 */
+		private double getSignal(int weatherParameter, double previous, double daily, double yearly)
+		{
+			double noise = 2 * this.random.nextDouble() - 1;
+			switch(weatherParameter / 1000)
+			{
+				case 1: // Temperature
+					if(weatherParameter / 100 == 19)
+					{
+						// Dew point, above 0
+						return 8 + 4 * yearly + daily + noise;
+					}
+					if(weatherParameter / 100 == 11)
+					{
+						// Soil temperature, less variation deeper down
+						int depth = (weatherParameter / 10) % 10;
+						return 6 + 8 * yearly + 3.0 / (depth + 1) * daily + 0.4 * noise;
+					}
+					return 6 + 10 * yearly + 4 * daily + noise;
+				case 2: // Precipitation, mostly 0
+					return this.random.nextDouble() < 0.1 ? 2 * (noise + 1) : 0.0;
+				case 3:
+					if(weatherParameter / 100 == 31)
+					{
+						// Leaf wetness
+						return this.random.nextDouble() < 0.3 ? 60.0 : 0.0;
+					}
+					// Humidity
+					return 75 - 15 * daily + 5 * noise;
+				case 4:
+					if(weatherParameter % 10 == 1)
+					{
+						// Wind direction, changing slowly
+						return Double.isNaN(previous) ? 180 * (noise + 1) : Math.floorMod(Math.round(previous + 30 * noise), 360);
+					}
+					// Wind speed, changing slowly
+					return 0.8 * (Double.isNaN(previous) ? 3 : previous) + 0.2 * (3 + 3 * noise);
+				case 5: // Radiation, with some noise at night
+					return Math.max(0, 400 * daily * (1 + 0.5 * yearly)) + 2 * noise;
+				default:
+					return 10 + noise;
+			}
+		}
+
+		/**
+		 * @return The difference between the mean, and the min or max value
+		 */
+		private double getSpread(int weatherParameter)
+		{
+			switch(weatherParameter / 1000)
+			{
+				case 1: return 1 + 2 * this.random.nextDouble();
+				case 3: return 1 + 3 * this.random.nextDouble();
+				default: return 0.5 + this.random.nextDouble();
+			}
+		}
+	}
+
+	/**
+	 * The signal type of wind direction is not the same as of wind speed
+	 */
+	private static int getSignalType(int weatherParameter)
+	{
+		return weatherParameter / 1000 == 4 && weatherParameter % 10 == 1 ? weatherParameter : weatherParameter / 10;
+	}
+
+	/**
+	 * @return A value far outside the valid range of the weather parameter
+	 */
+	private static Double getSpike(int weatherParameter, Double value)
+	{
+		Threshold threshold = ThresholdData.getThreshold(weatherParameter);
+		if(threshold != null && threshold.getLowerLimit() != null && threshold.getUpperLimit() != null)
+		{
+			return round(threshold.getUpperLimit() + (threshold.getUpperLimit() - threshold.getLowerLimit()) / 2);
+		}
+		return round((value != null ? value : 0) + 1000);
+	}
+
+	private static double round(double value)
+	{
+		return Math.round(value * 100) / 100.0;
+	}
+
+	public long getSeed()
+	{
+		return this.seed;
+	}
+
+	public Instant getTimeStart()
+	{
+		return this.timeStart;
+	}
+
+	public void setTimeStart(Instant timeStart)
+	{
+		this.timeStart = timeStart;
+	}
+
+	public int getRows()
+	{
+		return this.rows;
+	}
+
+	public void setRows(int rows)
+	{
+		this.rows = rows;
+	}
+
+	/**
+	 * @return The interval between the rows, in seconds
+	 */
+	public int getInterval()
+	{
+		return this.interval;
+	}
+
+	public void setInterval(int interval)
+	{
+		this.interval = interval;
+	}
+
+	public Integer[] getWeatherParameters()
+	{
+		return this.weatherParameters;
+	}
+
+	public void setWeatherParameters(Integer[] weatherParameters)
+	{
+		this.weatherParameters = weatherParameters;
+	}
+
+	public int getLocations()
+	{
+		return this.locations;
+	}
+
+	public void setLocations(int locations)
+	{
+		this.locations = locations;
+	}
+
+	/**
+	 * @return The longitude of the first location. The others are on a grid east and north of it
+	 */
+	public double getLongitude()
+	{
+		return this.longitude;
+	}
+
+	public void setLongitude(double longitude)
+	{
+		this.longitude = longitude;
+	}
+
+	/**
+	 * @return The latitude of the first location
+	 */
+	public double getLatitude()
+	{
+		return this.latitude;
+	}
+
+	public void setLatitude(double latitude)
+	{
+		this.latitude = latitude;
+	}
+
+	/**
+	 * @return The share of the values that are missing (null), from 0 to 1
+	 */
+	public double getMissingRate()
+	{
+		return this.missingRate;
+	}
+
+	public void setMissingRate(double missingRate)
+	{
+		this.missingRate = missingRate;
+	}
+
+	/**
+	 * @return The share of the values that are spikes, from 0 to 1
+	 */
+	public double getSpikeRate()
+	{
+		return this.spikeRate;
+	}
+
+	public void setSpikeRate(double spikeRate)
+	{
+		this.spikeRate = spikeRate;
+	}
+
+	/**
+	 * @return The share of the values where a freeze starts, from 0 to 1
+	 */
+	public double getFreezeRate()
+	{
+		return this.freezeRate;
+	}
+
+	public void setFreezeRate(double freezeRate)
+	{
+		this.freezeRate = freezeRate;
+	}
+
+	/**
+	 * @return The share of the rows where min and max values are swapped, from 0 to 1
+	 */
+	public double getMinMaxRate()
+	{
+		return this.minMaxRate;
+	}
+
+	public void setMinMaxRate(double minMaxRate)
+	{
+		this.minMaxRate = minMaxRate;
+	}
+}
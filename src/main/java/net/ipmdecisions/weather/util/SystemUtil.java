@@ -35,4 +35,68 @@ public class SystemUtil {
     	return System.getProperty("net.ipmdecisions.weatherservice.WEATHER_API_URL") != null && ! System.getProperty("net.ipmdecisions.weatherservice.WEATHER_API_URL").isBlank() ? System.getProperty("net.ipmdecisions.weatherservice.WEATHER_API_URL")
     			: "https://test.madiphs.org/weather";
     }
+
+	/**
+	 * 
+	 * @param propertyName the name of the system property
+	 * @param defaultValue returned if the property is not set, or is not a number
+	 * @return the system property as a long, or the default value
+	 */
+	public static long getLongProperty(String propertyName, long defaultValue)
+	{
+		String value = System.getProperty(propertyName);
+		if(value == null || value.isBlank())
+		{
+			return defaultValue;
+		}
+		try
+		{
+			return Long.parseLong(value.trim());
+		}
+		catch(NumberFormatException ex)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * 
+	 * @param propertyName the name of the system property
+	 * @param defaultValue returned if the property is not set, or is not a number
+	 * @return the system property as a double, or the default value
+	 */
+	public static double getDoubleProperty(String propertyName, double defaultValue)
+	{
+		String value = System.getProperty(propertyName);
+		if(value == null || value.isBlank())
+		{
+			return defaultValue;
+		}
+		try
+		{
+			return Double.parseDouble(value.trim());
+		}
+		catch(NumberFormatException ex)
+		{
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * The base URLs of the weather data providers that the weather adapters call can 
+	 * be replaced, e.g. to load test the adapters against a local stand-in
+	 * @param provider e.g. FMI for the system property org.madiphs.weatherservice.FMI_BASE_URL
+	 * @param defaultBaseUrl the provider's base URL, without trailing slash
+	 * @return the base URL from the system property (without trailing slash), or the default base URL
+	 */
+	public static String getBaseUrl(String provider, String defaultBaseUrl)
+	{
+		String value = System.getProperty("org.madiphs.weatherservice." + provider + "_BASE_URL");
+		if(value == null || value.isBlank())
+		{
+			return defaultBaseUrl;
+		}
+		value = value.trim();
+		return value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+	}
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+
+/**
+ * Stores weather data segments (e.g. one day for one weather station) as compact binary 
+ * files on local disk. 
+ * 
+ * The store is bounded by the total size of the files. When a segment is written, the least 
+ * recently used segments are deleted until the total size is within bounds. At startup, the 
+ * existing segments are taken to be used in the order they were last written.
+ * 
+ * The segment paths need not be unique for each segment, e.g. if they contain a hash. The 
+ * key of the segment is stored in the file, and a segment with another key is not returned.
+ * 
+ * File layout: magic number, format version, the key (length and UTF-8 bytes), time start 
+ * (epoch seconds), interval, number of parameters, the parameters, number of locations, and 
+ * for each location: longitude, latitude, altitude, number of rows, the data row by row, the 
+ * QC and the amalgamation of each parameter. Missing values are stored as NaN.
+ */
+public class WeatherDataSegmentStore {
+	
+	private static Logger LOGGER = LoggerFactory.getLogger(WeatherDataSegmentStore.class);
+	
+	private static final int MAGIC = 0x57445347; // "WDSG"
+	private static final int VERSION = 2;
+	private static final String SUFFIX = ".seg";
+	
+	private final Path directory;
+	private final long maxBytes;
+	// The size of the stored segments, by path relative to the root directory. Least recently used first
+	private final LinkedHashMap<Path, Long> segments = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes = 0;
+	private long evictions = 0;
+	
+	/**
+	 * @param directory the root directory of the store. Created if missing
+	 * @param maxBytes The maximum total size of the segment files. 0 or less: Nothing is stored
+	 */
+	public WeatherDataSegmentStore(Path directory, long maxBytes)
+	{
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.indexExistingSegments();
+	}
+	
+	/**
+	 * @param segmentPath the path of the segment, relative to the root directory
+	 * @param key identifies the segment
+	 * @return the segment, or null if not stored, or if the segment at the path has another key
+	 * @throws IOException if the segment file is unreadable
+	 */
+	public WeatherData read(Path segmentPath, String key) throws IOException
+	{
+		ByteBuffer buffer;
+		try
+		{
+			buffer = ByteBuffer.wrap(Files.readAllBytes(this.directory.resolve(segmentPath)));
+		}
+		catch(NoSuchFileException ex)
+		{
+			return null;
+		}
+		try
+		{
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			{
+				throw new IOException("ERROR: " + segmentPath + " is not a weather data segment file");
+			}
+			byte[] storedKey = new byte[buffer.getInt()];
+			buffer.get(storedKey);
+			if(! key.equals(new String(storedKey, StandardCharsets.UTF_8)))
+			{
+				return null;
+			}
+			this.touch(segmentPath);
+			WeatherData weatherData = new WeatherData();
+			weatherData.setTimeStart(Instant.ofEpochSecond(buffer.getLong()));
+			weatherData.setInterval(buffer.getInt());
+			Integer[] parameters = new Integer[buffer.getInt()];
+			for(int i=0; i < parameters.length; i++)
+			{
+				parameters[i] = buffer.getInt();
+			}
+			weatherData.setWeatherParameters(parameters);
+			int locations = buffer.getInt();
+			List<LocationWeatherData> lwds = new ArrayList<>(locations);
+			int rows = 0;
+			for(int l=0; l < locations; l++)
+			{
+				Double longitude = this.getNullable(buffer.getDouble());
+				Double latitude = this.getNullable(buffer.getDouble());
+				Double altitude = this.getNullable(buffer.getDouble());
+				rows = buffer.getInt();
+				LocationWeatherData lwd = new LocationWeatherData(longitude, latitude, altitude, rows, parameters.length);
+				Double[][] data = lwd.getData();
+				for(int row=0; row < rows; row++)
+				{
+					for(int col=0; col < parameters.length; col++)
+					{
+						data[row][col] = this.getNullable(buffer.getDouble());
+					}
+				}
+				Integer[] qc = new Integer[parameters.length];
+				Integer[] amalgamation = new Integer[parameters.length];
+				for(int col=0; col < parameters.length; col++)
+				{
+					qc[col] = buffer.getInt();
+				}
+				for(int col=0; col < parameters.length; col++)
+				{
+					amalgamation[col] = buffer.getInt();
+				}
+				lwd.setQC(qc);
+				lwd.setAmalgamation(amalgamation);
+				lwds.add(lwd);
+			}
+			weatherData.setLocationWeatherData(lwds);
+			weatherData.setTimeEnd(weatherData.getTimeStart().plusSeconds((long) Math.max(0, rows - 1) * weatherData.getInterval()));
+			return weatherData;
+		}
+		catch(BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException ex)
+		{
+			throw new IOException("ERROR: " + segmentPath + " is truncated or corrupt");
+		}
+	}
+	
+	/**
+	 * Writes the segment. The file is written to a temporary file first, and then 
+	 * moved into place, so that concurrent readers never see a partial segment.
+	 * Then the least recently used segments are deleted, if the store is full
+	 * @param segmentPath the path of the segment, relative to the root directory
+	 * @param key identifies the segment
+	 * @param weatherData the segment
+	 * @throws IOException
+	 */
+	public void write(Path segmentPath, String key, WeatherData weatherData) throws IOException
+	{
+		if(this.maxBytes <= 0)
+		{
+			return;
+		}
+		Path target = this.directory.resolve(segmentPath);
+		Files.createDirectories(target.getParent());
+		Path temporary = Files.createTempFile(target.getParent(), "segment", ".tmp");
+		try(OutputStream out = Files.newOutputStream(temporary); DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out)))
+		{
+			Integer[] parameters = weatherData.getWeatherParameters();
+			byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(keyBytes.length);
+			data.write(keyBytes);
+			data.writeLong(weatherData.getTimeStart().getEpochSecond());
+			data.writeInt(weatherData.getInterval());
+			data.writeInt(parameters.length);
+			for(Integer parameter:parameters)
+			{
+				data.writeInt(parameter);
+			}
+			data.writeInt(weatherData.getLocationWeatherData().size());
+			for(LocationWeatherData lwd:weatherData.getLocationWeatherData())
+			{
+				data.writeDouble(this.getStorable(lwd.getLongitude()));
+				data.writeDouble(this.getStorable(lwd.getLatitude()));
+				data.writeDouble(this.getStorable(lwd.getAltitude()));
+				data.writeInt(lwd.getLength());
+				for(Double[] row:lwd.getData())
+				{
+					for(int col=0; col < parameters.length; col++)
+					{
+						data.writeDouble(this.getStorable(col < row.length ? row[col] : null));
+					}
+				}
+				for(int col=0; col < parameters.length; col++)
+				{
+					data.writeInt(col < lwd.getQC().length && lwd.getQC()[col] != null ? lwd.getQC()[col] : 0);
+				}
+				for(int col=0; col < parameters.length; col++)
+				{
+					data.writeInt(col < lwd.getAmalgamation().length && lwd.getAmalgamation()[col] != null ? lwd.getAmalgamation()[col] : 0);
+				}
+			}
+		}
+		try
+		{
+			long size = Files.size(temporary);
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			this.added(segmentPath, size);
+		}
+		finally
+		{
+			Files.deleteIfExists(temporary);
+		}
+	}
+	
+	/**
+	 * @return the number and total size (bytes) of the stored segments, and the number of deleted segments
+	 */
+	public synchronized Map<String, Object> getMetrics()
+	{
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("entries", this.segments.size());
+		metrics.put("bytes", this.bytes);
+		metrics.put("maxBytes", this.maxBytes);
+		metrics.put("evictions", this.evictions);
+		return metrics;
+	}
+	
+	private synchronized void touch(Path segmentPath)
+	{
+		this.segments.get(segmentPath);
+	}
+	
+	/**
+	 * Registers the segment, and deletes the least recently used segments until the store is within bounds
+	 */
+	private void added(Path segmentPath, long size)
+	{
+		List<Path> evicted = new ArrayList<>();
+		synchronized(this)
+		{
+			Long replaced = this.segments.put(segmentPath, size);
+			this.bytes += size - (replaced != null ? replaced : 0);
+			Iterator<Map.Entry<Path, Long>> eldest = this.segments.entrySet().iterator();
+			while(this.bytes > this.maxBytes && eldest.hasNext())
+			{
+				Map.Entry<Path, Long> entry = eldest.next();
+				eldest.remove();
+				this.bytes -= entry.getValue();
+				this.evictions++;
+				evicted.add(entry.getKey());
+			}
+		}
+		for(Path path:evicted)
+		{
+			try
+			{
+				Files.deleteIfExists(this.directory.resolve(path));
+			}
+			catch(IOException ex)
+			{
+				LOGGER.warn("Could not delete segment " + path + ": " + ex.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Finds the segments from before a restart, oldest first. Leftover temporary files are deleted
+	 */
+	private void indexExistingSegments()
+	{
+		if(! Files.isDirectory(this.directory))
+		{
+			return;
+		}
+		List<Path> existing;
+		try(Stream<Path> paths = Files.walk(this.directory))
+		{
+			existing = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		catch(IOException ex)
+		{
+			LOGGER.warn("Could not list the segments in " + this.directory + ": " + ex.getMessage());
+			return;
+		}
+		List<Map.Entry<Path, BasicFileAttributes>> segmentFiles = new ArrayList<>();
+		for(Path path:existing)
+		{
+			try
+			{
+				if(path.getFileName().toString().endsWith(SUFFIX))
+				{
+					segmentFiles.add(Map.entry(path, Files.readAttributes(path, BasicFileAttributes.class)));
+				}
+				else if(path.getFileName().toString().endsWith(".tmp"))
+				{
+					Files.deleteIfExists(path);
+				}
+			}
+			catch(IOException ex)
+			{
+				LOGGER.warn("Could not read " + path + ": " + ex.getMessage());
+			}
+		}
+		segmentFiles.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+		for(Map.Entry<Path, BasicFileAttributes> segmentFile:segmentFiles)
+		{
+			this.added(this.directory.relativize(segmentFile.getKey()), segmentFile.getValue().size());
+		}
+	}
+	
+	private double getStorable(Double value)
+	{
+		return value != null ? value : Double.NaN;
+	}
+	
+	private Double getNullable(double value)
+	{
+		return Double.isNaN(value) ? null : value;
+	}
+}
@@ -22,8 +22,10 @@ package net.ipmdecisions.weather.util;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
@@ -86,6 +88,17 @@ public class WeatherDataUtil {
 	}
 
 	public WeatherData trimDataSet(WeatherData source)
+	{
+		return this.trimDataSet(source, true);
+	}
+
+	/**
+	 * Removes the rows without any data at the end of the data set, and optionally at the start
+	 * @param source
+	 * @param trimStart If false: The data set starts where it did, e.g. at the requested time in incremental mode
+	 * @return the source, trimmed
+	 */
+	public WeatherData trimDataSet(WeatherData source, boolean trimStart)
 	{
 		//System.out.println(source.getLocationWeatherData().get(0).toString());
 		// Find min and max index with data
@@ -124,6 +137,10 @@ public class WeatherDataUtil {
 			}
 		}
 
+		if(! trimStart && min < source.getLocationWeatherData().get(0).getLength())
+		{
+			min = 0;
+		}
 		Integer rowsToChopAtEnd = source.getLocationWeatherData().get(0).getLength() - max;
 
 		/*
@@ -160,6 +177,106 @@ public class WeatherDataUtil {
 		return source;
 	}
 
+	/**
+	 * Removes the rows before the given time
+	 * @param source
+	 * @param since the time of the first row to keep
+	 * @return the source, starting at the first row at or after since. May have no rows at all
+	 */
+	public WeatherData getDataSince(WeatherData source, Instant since)
+	{
+		long secondsFromStart = since.getEpochSecond() - source.getTimeStart().getEpochSecond();
+		if(secondsFromStart <= 0)
+		{
+			return source;
+		}
+		int firstRow = (int) ((secondsFromStart + source.getInterval() - 1) / source.getInterval());
+		for(LocationWeatherData lwd:source.getLocationWeatherData())
+		{
+			lwd.setData(Arrays.copyOfRange(lwd.getData(), Math.min(firstRow, lwd.getLength()), lwd.getLength()));
+		}
+		source.setTimeStart(source.getTimeStart().plusSeconds((long) firstRow * source.getInterval()));
+		return source;
+	}
+
+	/**
+	 * The amalgamation alters the weather data in place, so data that are shared
+	 * (e.g. between several locations in a batch) must be copied first
+	 * @param source
+	 * @return a deep copy of the source
+	 */
+	public WeatherData getCopy(WeatherData source)
+	{
+		WeatherData copy = new WeatherData();
+		copy.setTimeStart(source.getTimeStart());
+		copy.setTimeEnd(source.getTimeEnd());
+		copy.setInterval(source.getInterval());
+		copy.setWeatherParameters(source.getWeatherParameters() != null ? source.getWeatherParameters().clone() : null);
+		List<LocationWeatherData> locationWeatherData = new ArrayList<>();
+		if(source.getLocationWeatherData() != null)
+		{
+			for(LocationWeatherData lwd:source.getLocationWeatherData())
+			{
+				LocationWeatherData lwdCopy = new LocationWeatherData(lwd.getLongitude(), lwd.getLatitude(), lwd.getAltitude(), 0, 0);
+				Double[][] data = new Double[lwd.getData().length][];
+				for(int row=0;row<data.length;row++)
+				{
+					data[row] = lwd.getData()[row].clone();
+				}
+				lwdCopy.setData(data);
+				lwdCopy.setQC(lwd.getQC().clone());
+				lwdCopy.setAmalgamation(lwd.getAmalgamation().clone());
+				locationWeatherData.add(lwdCopy);
+			}
+		}
+		copy.setLocationWeatherData(locationWeatherData);
+		return copy;
+	}
+
+	/**
+	 * Copies the rows in the given period
+	 * @param source
+	 * @param timeStart The time of the first row to include
+	 * @param timeEnd The time of the last row to include
+	 * @return a copy of the source with only the rows in the period. May have no rows at all
+	 */
+	public WeatherData getPeriod(WeatherData source, Instant timeStart, Instant timeEnd)
+	{
+		long interval = source.getInterval();
+		long sourceStart = source.getTimeStart().getEpochSecond();
+		// Rounding up for the first row, and down for the last one
+		int firstRow = (int) Math.max(0, -Math.floorDiv(sourceStart - timeStart.getEpochSecond(), interval));
+		int endRow = (int) Math.max(firstRow, Math.floorDiv(timeEnd.getEpochSecond() - sourceStart, interval) + 1);
+		WeatherData period = new WeatherData();
+		period.setTimeStart(Instant.ofEpochSecond(sourceStart + firstRow * interval));
+		period.setInterval(source.getInterval());
+		period.setWeatherParameters(source.getWeatherParameters() != null ? source.getWeatherParameters().clone() : null);
+		List<LocationWeatherData> locationWeatherData = new ArrayList<>();
+		int rows = 0;
+		if(source.getLocationWeatherData() != null)
+		{
+			for(LocationWeatherData lwd:source.getLocationWeatherData())
+			{
+				LocationWeatherData lwdPeriod = new LocationWeatherData(lwd.getLongitude(), lwd.getLatitude(), lwd.getAltitude(), 0, 0);
+				int from = Math.min(firstRow, lwd.getLength());
+				int to = Math.min(endRow, lwd.getLength());
+				Double[][] data = new Double[to - from][];
+				for(int row=0;row<data.length;row++)
+				{
+					data[row] = lwd.getData()[from + row].clone();
+				}
+				lwdPeriod.setData(data);
+				lwdPeriod.setQC(lwd.getQC().clone());
+				lwdPeriod.setAmalgamation(lwd.getAmalgamation().clone());
+				locationWeatherData.add(lwdPeriod);
+				rows = Math.max(rows, data.length);
+			}
+		}
+		period.setLocationWeatherData(locationWeatherData);
+		period.setTimeEnd(period.getTimeStart().plusSeconds(Math.max(0, rows - 1) * interval));
+		return period;
+	}
+
 	public String serializeWeatherData(WeatherData weatherData)
 	{
 		ObjectMapper om = new ObjectMapper();
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+
+package net.ipmdecisions.weather.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A thread safe, least recently used cache, bounded by the total weight (e.g. the 
+ * estimated size in bytes) of its entries. Each entry has its own expiry time.
+ * 
+ * Counters for hits, misses, evictions and expirations are kept for monitoring.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class WeightedLRUCache<K,V> {
+	
+	private final long maxWeight;
+	private long weight = 0;
+	
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+	
+	private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+	
+	/**
+	 * @param maxWeight The maximum total weight of the entries in the cache
+	 */
+	public WeightedLRUCache(long maxWeight)
+	{
+		this.maxWeight = maxWeight;
+	}
+	
+	/**
+	 * @param key
+	 * @param now the current time (epoch milliseconds)
+	 * @return the cached value, or null if missing or expired
+	 */
+	public synchronized V get(K key, long now)
+	{
+		Entry<V> entry = this.entries.get(key);
+		if(entry == null)
+		{
+			this.misses++;
+			return null;
+		}
+		if(entry.expires <= now)
+		{
+			this.remove(key);
+			this.expirations++;
+			this.misses++;
+			return null;
+		}
+		this.hits++;
+		return entry.value;
+	}
+	
+	/**
+	 * Adds the value to the cache, evicting the least recently used entries 
+	 * until the total weight is within bounds. Values heavier than the
+	 * maximum total weight are not cached.
+	 * @param key
+	 * @param value
+	 * @param weight the weight of the value
+	 * @param expires when the value expires (epoch milliseconds)
+	 */
+	public synchronized void put(K key, V value, long weight, long expires)
+	{
+		this.remove(key);
+		if(weight > this.maxWeight)
+		{
+			return;
+		}
+		this.entries.put(key, new Entry<>(value, weight, expires));
+		this.weight += weight;
+		Iterator<Map.Entry<K, Entry<V>>> eldest = this.entries.entrySet().iterator();
+		while(this.weight > this.maxWeight && eldest.hasNext())
+		{
+			Entry<V> evicted = eldest.next().getValue();
+			eldest.remove();
+			this.weight -= evicted.weight;
+			this.evictions++;
+		}
+	}
+	
+	/**
+	 * @param key
+	 * @return the removed value, or null if it was not in the cache
+	 */
+	public synchronized V remove(K key)
+	{
+		Entry<V> removed = this.entries.remove(key);
+		if(removed == null)
+		{
+			return null;
+		}
+		this.weight -= removed.weight;
+		return removed.value;
+	}
+	
+	/**
+	 * Removes all the entries with a key matching the filter
+	 * @param filter
+	 */
+	public synchronized void removeIf(Predicate<K> filter)
+	{
+		Iterator<Map.Entry<K, Entry<V>>> iterator = this.entries.entrySet().iterator();
+		while(iterator.hasNext())
+		{
+			Map.Entry<K, Entry<V>> entry = iterator.next();
+			if(filter.test(entry.getKey()))
+			{
+				iterator.remove();
+				this.weight -= entry.getValue().weight;
+			}
+		}
+	}
+	
+	public synchronized void clear()
+	{
+		this.entries.clear();
+		this.weight = 0;
+	}
+	
+	/**
+	 * @return the cache counters and size, e.g. for a monitoring endpoint
+	 */
+	public synchronized Map<String, Object> getMetrics()
+	{
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("entries", this.entries.size());
+		metrics.put("weight", this.weight);
+		metrics.put("maxWeight", this.maxWeight);
+		metrics.put("hits", this.hits);
+		metrics.put("misses", this.misses);
+		metrics.put("hitRatio", this.hits + this.misses > 0 ? (double) this.hits / (this.hits + this.misses) : 0.0);
+		metrics.put("evictions", this.evictions);
+		metrics.put("expirations", this.expirations);
+		return metrics;
+	}
+	
+	private static class Entry<V> {
+		private final V value;
+		private final long weight;
+		private final long expires;
+		
+		private Entry(V value, long weight, long expires)
+		{
+			this.value = value;
+			this.weight = weight;
+			this.expires = expires;
+		}
+	}
+}
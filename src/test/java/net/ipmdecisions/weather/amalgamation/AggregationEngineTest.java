@@ -0,0 +1,148 @@
+package net.ipmdecisions.weather.amalgamation;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.entity.WeatherParameter;
+import net.ipmdecisions.weather.util.FileUtils;
+
+public class AggregationEngineTest {
+
+	public AggregationEngineTest() {
+		
+	}
+	
+	private WeatherData getTestData(String fileName) throws Exception
+	{
+		FileUtils fileUtils = new FileUtils();
+		String weatherDataJson = fileUtils.getStringFromFileInApp(fileName);
+		return new ObjectMapper().readValue(weatherDataJson, WeatherData.class);
+	}
+	
+	/**
+	 * Creates a data set with one location and one parameter, where each value is the row index
+	 */
+	private WeatherData getRowIndexData(Instant timeStart, Integer interval, Integer length)
+	{
+		WeatherData weatherData = new WeatherData();
+		weatherData.setTimeStart(timeStart);
+		weatherData.setTimeEnd(timeStart.plusSeconds((long) (length - 1) * interval));
+		weatherData.setInterval(interval);
+		weatherData.setWeatherParameters(new Integer[] {1002});
+		Double[][] data = new Double[length][1];
+		for(int row=0; row < length; row++)
+		{
+			data[row][0] = (double) row;
+		}
+		LocationWeatherData lwd = new LocationWeatherData(10.0, 59.0, null, length, 1);
+		lwd.setData(data);
+		List<LocationWeatherData> lwds = new ArrayList<>();
+		lwds.add(lwd);
+		weatherData.setLocationWeatherData(lwds);
+		return weatherData;
+	}
+	
+	@Test
+	public void testAggregateHourlyToDaily() throws Exception
+	{
+		System.out.println("testAggregateHourlyToDaily");
+		WeatherData weatherData = this.getTestData("/yr_weatherdata_correct.json");
+		// Parameters are [1001,3001,2001,4002]
+		AggregationEngine instance = new AggregationEngine(new String[] {
+				WeatherParameter.AGGREGATION_TYPE_AVERAGE,
+				WeatherParameter.AGGREGATION_TYPE_AVERAGE,
+				WeatherParameter.AGGREGATION_TYPE_SUM,
+				WeatherParameter.AGGREGATION_TYPE_AVERAGE
+		});
+		Double[][] hourly = weatherData.getLocationWeatherData().get(0).getData();
+		WeatherData result = instance.aggregate(weatherData, 86400, ZoneId.of("Europe/Oslo"));
+		
+		assertEquals(86400, result.getInterval());
+		// First local midnight after 2020-03-10T09:00Z
+		assertEquals(Instant.parse("2020-03-10T23:00:00Z"), result.getTimeStart());
+		assertEquals(9, result.getLocationWeatherData().get(0).getLength());
+		// The first day is rows 14-37 in the hourly data
+		double expectedSum = 0d;
+		for(int row=14; row < 38; row++)
+		{
+			expectedSum += hourly[row][2];
+		}
+		assertEquals(expectedSum, result.getLocationWeatherData().get(0).getData()[0][2], 0.0001);
+	}
+	
+	@Test
+	public void testAggregateAverageSkipsMissingValues() throws Exception
+	{
+		System.out.println("testAggregateAverageSkipsMissingValues");
+		WeatherData weatherData = this.getRowIndexData(Instant.parse("2020-06-10T22:00:00Z"), 3600, 24);
+		Double[][] data = weatherData.getLocationWeatherData().get(0).getData();
+		for(int row=12; row < 24; row++)
+		{
+			data[row][0] = null;
+		}
+		WeatherData result = new AggregationEngine(new String[] {WeatherParameter.AGGREGATION_TYPE_AVERAGE})
+				.aggregate(weatherData, 86400, ZoneId.of("Europe/Oslo"));
+		
+		assertEquals(1, result.getLocationWeatherData().get(0).getLength());
+		// Average of 0..11
+		assertEquals(5.5, result.getLocationWeatherData().get(0).getData()[0][0]);
+	}
+	
+	@Test
+	public void testAggregateDaylightSavingTimeTransition() throws Exception
+	{
+		System.out.println("testAggregateDaylightSavingTimeTransition");
+		// 2020-03-29 has only 23 hours in Europe/Oslo
+		WeatherData weatherData = this.getRowIndexData(Instant.parse("2020-03-27T23:00:00Z"), 3600, 71);
+		WeatherData result = new AggregationEngine(new String[] {WeatherParameter.AGGREGATION_TYPE_MINIMUM})
+				.aggregate(weatherData, 86400, ZoneId.of("Europe/Oslo"));
+		
+		Double[][] data = result.getLocationWeatherData().get(0).getData();
+		assertEquals(3, data.length);
+		assertEquals(0.0, data[0][0]);
+		assertEquals(24.0, data[1][0]);
+		// The day after the transition starts one hour earlier in UTC
+		assertEquals(47.0, data[2][0]);
+	}
+	
+	@Test
+	public void testAggregateTenMinutesToHourly() throws Exception
+	{
+		System.out.println("testAggregateTenMinutesToHourly");
+		WeatherData weatherData = this.getRowIndexData(Instant.parse("2020-06-11T10:20:00Z"), 600, 20);
+		WeatherData result = new AggregationEngine(new String[] {WeatherParameter.AGGREGATION_TYPE_MAXIMUM})
+				.aggregate(weatherData, 3600, ZoneId.of("Europe/Oslo"));
+		
+		// The partial hour at the start is skipped
+		assertEquals(Instant.parse("2020-06-11T11:00:00Z"), result.getTimeStart());
+		Double[][] data = result.getLocationWeatherData().get(0).getData();
+		assertEquals(3, data.length);
+		assertEquals(9.0, data[0][0]);
+		assertEquals(15.0, data[1][0]);
+		assertEquals(19.0, data[2][0]);
+	}
+	
+	@Test
+	public void testAggregateNoFullWindow() throws Exception
+	{
+		System.out.println("testAggregateNoFullWindow");
+		// Five hours in the middle of a day at the location
+		WeatherData weatherData = this.getRowIndexData(Instant.parse("2020-06-10T10:00:00Z"), 3600, 5);
+		WeatherData result = new AggregationEngine(new String[] {WeatherParameter.AGGREGATION_TYPE_AVERAGE})
+				.aggregate(weatherData, 86400, ZoneId.of("Europe/Oslo"));
+		
+		assertEquals(86400, result.getInterval());
+		assertEquals(0, result.getLocationWeatherData().get(0).getLength());
+		assertEquals(result.getTimeStart(), result.getTimeEnd());
+	}
+}
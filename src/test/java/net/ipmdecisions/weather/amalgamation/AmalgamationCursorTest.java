@@ -0,0 +1,34 @@
+package net.ipmdecisions.weather.amalgamation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+
+public class AmalgamationCursorTest {
+
+	public AmalgamationCursorTest() {
+		
+	}
+	
+	@Test
+	public void testEncodeDecode()
+	{
+		System.out.println("testEncodeDecode");
+		Instant horizon = Instant.parse("2021-06-01T22:00:00Z");
+		String cursor = new AmalgamationCursor(horizon, 10.781, 59.660, "1002,2001", 3600).encode();
+		// The parameter order does not matter
+		assertEquals(horizon, AmalgamationCursor.decode(cursor, 10.781, 59.660, "2001, 1002", 3600).getHorizon());
+	}
+	
+	@Test
+	public void testDecodeRejectsOtherRequests()
+	{
+		System.out.println("testDecodeRejectsOtherRequests");
+		String cursor = new AmalgamationCursor(Instant.parse("2021-06-01T22:00:00Z"), 10.781, 59.660, "1002,2001", 3600).encode();
+		assertThrows(IllegalArgumentException.class, () -> AmalgamationCursor.decode(cursor, 10.781, 59.660, "1002,2001", 86400));
+		assertThrows(IllegalArgumentException.class, () -> AmalgamationCursor.decode(cursor, 11.781, 59.660, "1002,2001", 3600));
+		assertThrows(IllegalArgumentException.class, () -> AmalgamationCursor.decode("not a cursor!", 10.781, 59.660, "1002,2001", 3600));
+	}
+}
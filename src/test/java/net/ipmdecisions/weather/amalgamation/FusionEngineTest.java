@@ -0,0 +1,86 @@
+package net.ipmdecisions.weather.amalgamation;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.FileUtils;
+
+public class FusionEngineTest {
+
+	public FusionEngineTest() {
+		
+	}
+	
+	private WeatherData getTestData(String fileName) throws Exception
+	{
+		FileUtils fileUtils = new FileUtils();
+		String weatherDataJson = fileUtils.getStringFromFileInApp(fileName);
+		return new ObjectMapper().readValue(weatherDataJson, WeatherData.class);
+	}
+	
+	@Test
+	public void testFuseFillsHolesFromLowerPrioritySources() throws Exception
+	{
+		System.out.println("testFuseFillsHolesFromLowerPrioritySources");
+		WeatherData first = this.getTestData("/lmt_amalgamation_testdata.json");
+		WeatherData second = this.getTestData("/lmt_amalgamation_testdata.json");
+		Integer tempIndex = first.getParameterIndex(1002);
+		// Punch a hole in the first source
+		first.getLocationWeatherData().get(0).getData()[5][tempIndex] = null;
+		second.getLocationWeatherData().get(0).getData()[5][tempIndex] = 12.5;
+		
+		WeatherData result = new FusionEngine(Map.of()).fuse(
+				List.of(first, second),
+				first.getTimeStart(),
+				first.getTimeEnd(),
+				first.getInterval()
+		);
+		
+		assertArrayEquals(first.getWeatherParameters(), result.getWeatherParameters());
+		assertEquals(12.5, result.getLocationWeatherData().get(0).getData()[5][result.getParameterIndex(1002)]);
+		// Both locations should be fused, not only the first
+		assertEquals(2, result.getLocationWeatherData().size());
+		for(LocationWeatherData lwd:result.getLocationWeatherData())
+		{
+			assertEquals(49, lwd.getLength());
+		}
+	}
+	
+	@Test
+	public void testFuseUsesFallbackParameters() throws Exception
+	{
+		System.out.println("testFuseUsesFallbackParameters");
+		WeatherData first = this.getTestData("/lmt_amalgamation_testdata.json");
+		WeatherData second = this.getTestData("/lmt_amalgamation_testdata.json");
+		Integer tempIndex = first.getParameterIndex(1002);
+		first.getLocationWeatherData().get(0).getData()[0][tempIndex] = null;
+		// The second source only has instantaneous temperature
+		second.setWeatherParameters(new Integer[] {1001, 3002, 2001});
+		second.getLocationWeatherData().get(0).getData()[0][0] = 7.0;
+		// Starting one hour later than the requested period
+		Instant timeStart = first.getTimeStart().minusSeconds(3600);
+		
+		WeatherData result = new FusionEngine(Map.of(1002, List.of(1001))).fuse(
+				List.of(first, second),
+				timeStart,
+				first.getTimeEnd(),
+				first.getInterval()
+		);
+		
+		// 1001 is added after the parameters of the first source
+		assertEquals(Integer.valueOf(3), result.getParameterIndex(1001));
+		Double[][] data = result.getLocationWeatherData().get(0).getData();
+		assertEquals(50, data.length);
+		assertNull(data[0][result.getParameterIndex(1002)]);
+		assertEquals(7.0, data[1][result.getParameterIndex(1002)]);
+	}
+}
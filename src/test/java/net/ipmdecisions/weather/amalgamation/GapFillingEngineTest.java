@@ -0,0 +1,115 @@
+package net.ipmdecisions.weather.amalgamation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import net.ipmdecisions.weather.entity.AmalgamationType;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.entity.WeatherParameter;
+
+public class GapFillingEngineTest {
+
+	public GapFillingEngineTest() {
+		
+	}
+	
+	/**
+	 * Hourly temperature (1002), precipitation (2001) and relative humidity (3002)
+	 */
+	private WeatherData getWeatherData(Double[][] data)
+	{
+		WeatherData weatherData = new WeatherData();
+		weatherData.setTimeStart(Instant.parse("2021-06-01T00:00:00Z"));
+		weatherData.setTimeEnd(Instant.parse("2021-06-01T00:00:00Z").plusSeconds((data.length - 1) * 3600L));
+		weatherData.setInterval(3600);
+		weatherData.setWeatherParameters(new Integer[] {1002, 2001, 3002});
+		LocationWeatherData lwd = new LocationWeatherData(10.78, 59.66, 94.0, 0, 0);
+		lwd.setData(data);
+		List<LocationWeatherData> lwds = new ArrayList<>();
+		lwds.add(lwd);
+		weatherData.setLocationWeatherData(lwds);
+		return weatherData;
+	}
+	
+	private GapFillingEngine getInstance()
+	{
+		return new GapFillingEngine(
+				new Integer[] {1002, 2001, 3002}, 
+				new String[] {WeatherParameter.AGGREGATION_TYPE_AVERAGE, WeatherParameter.AGGREGATION_TYPE_SUM, WeatherParameter.AGGREGATION_TYPE_AVERAGE},
+				2 * 3600,
+				3600
+		);
+	}
+	
+	@Test
+	public void testGetStrategy()
+	{
+		System.out.println("testGetStrategy");
+		assertEquals(GapFillingEngine.LINEAR, GapFillingEngine.getStrategy(1002, WeatherParameter.AGGREGATION_TYPE_AVERAGE));
+		assertEquals(GapFillingEngine.LINEAR, GapFillingEngine.getStrategy(1003, WeatherParameter.AGGREGATION_TYPE_MINIMUM));
+		assertEquals(GapFillingEngine.ZERO, GapFillingEngine.getStrategy(2001, WeatherParameter.AGGREGATION_TYPE_SUM));
+		assertEquals(GapFillingEngine.NONE, GapFillingEngine.getStrategy(4001, WeatherParameter.AGGREGATION_TYPE_AVERAGE));
+		assertEquals(GapFillingEngine.NONE, GapFillingEngine.getStrategy(1002, null));
+	}
+	
+	@Test
+	public void testFill()
+	{
+		System.out.println("testFill");
+		WeatherData weatherData = this.getWeatherData(new Double[][] {
+			{null, 0.0, 80.0},
+			{10.0, 0.2, null},
+			{null, null, 82.0},
+			{null, 0.4, 83.0},
+			{13.0, null, 84.0},
+			{null, null, null},
+			{null, null, null},
+			{null, 1.0, null},
+			{20.0, null, 90.0}
+		});
+		
+		this.getInstance().fill(weatherData, Set.of(1002, 2001, 3002));
+		Double[][] data = weatherData.getLocationWeatherData().get(0).getData();
+		
+		// Temperature: Gap of two hours is interpolated, the gap of three hours and the leading gap are not
+		assertNull(data[0][0]);
+		assertEquals(11.0, data[2][0], 0.0001);
+		assertEquals(12.0, data[3][0], 0.0001);
+		assertNull(data[5][0]);
+		assertNull(data[7][0]);
+		// Precipitation: Gaps of one hour are set to zero, longer gaps and trailing gaps are not
+		assertEquals(0.0, data[2][1], 0.0001);
+		assertNull(data[4][1]);
+		assertNull(data[8][1]);
+		// Relative humidity is not filled
+		assertNull(data[1][2]);
+		
+		Integer[] amalgamation = weatherData.getLocationWeatherData().get(0).getAmalgamation();
+		assertEquals(AmalgamationType.INTERPOLATED, amalgamation[0]);
+		assertEquals(AmalgamationType.INTERPOLATED, amalgamation[1]);
+		assertEquals(AmalgamationType.NONE, amalgamation[2]);
+	}
+	
+	@Test
+	public void testFillOnlyGivenParameters()
+	{
+		System.out.println("testFillOnlyGivenParameters");
+		WeatherData weatherData = this.getWeatherData(new Double[][] {
+			{10.0, 0.0, 80.0},
+			{null, null, 81.0},
+			{12.0, 0.4, 82.0}
+		});
+		this.getInstance().fill(weatherData, Set.of(2001));
+		Double[][] data = weatherData.getLocationWeatherData().get(0).getData();
+		assertNull(data[1][0]);
+		assertEquals(0.0, data[1][1], 0.0001);
+		assertEquals(AmalgamationType.NONE, weatherData.getLocationWeatherData().get(0).getAmalgamation()[0]);
+	}
+}
@@ -0,0 +1,140 @@
+package net.ipmdecisions.weather.amalgamation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+
+public class QueryPlannerTest {
+
+	public QueryPlannerTest() {
+		
+	}
+	
+	private SourceRequest getSourceRequest(String id, String start, String end, int... parameters)
+	{
+		WeatherDataSource source = new WeatherDataSource();
+		source.setId(id);
+		source.setAccess_type(WeatherDataSource.ACCESS_TYPE_LOCATION);
+		WeatherDataSource.Temporal.Historic historic = new WeatherDataSource.Temporal.Historic();
+		historic.setStart(LocalDate.parse(start));
+		historic.setEnd(LocalDate.parse(end));
+		WeatherDataSource.Temporal temporal = new WeatherDataSource.Temporal();
+		temporal.setHistoric(historic);
+		temporal.setIntervals(new Integer[] {3600});
+		source.setTemporal(temporal);
+		WeatherDataSource.Parameters sourceParameters = new WeatherDataSource.Parameters();
+		sourceParameters.setCommon(parameters);
+		source.setParameters(sourceParameters);
+		return SourceRequest.forLocation(source, 10.781, 59.660, ZoneId.of("Europe/Oslo"), 3600);
+	}
+	
+	@Test
+	public void testPlan()
+	{
+		System.out.println("testPlan");
+		SourceRequest observations = this.getSourceRequest("test.observations", "2020-01-01", "2021-01-01", 1002, 2001);
+		SourceRequest duplicate = this.getSourceRequest("test.duplicate", "2020-01-01", "2021-01-01", 1002, 2001);
+		SourceRequest humidity = this.getSourceRequest("test.humidity", "2020-01-01", "2022-01-01", 3002);
+		SourceRequest later = this.getSourceRequest("test.later", "2021-01-01", "2022-01-01", 1001);
+		List<SourceRequest> sourceRequests = List.of(observations, duplicate, humidity, later);
+		
+		// 1001 can replace 1002
+		QueryPlanner instance = new QueryPlanner(Map.of(1002, List.of(1001)), Map.of());
+		List<SourceRequest> result = instance.plan(
+				sourceRequests, List.of(1002, 3002), 
+				Instant.parse("2020-06-01T00:00:00Z"), Instant.parse("2021-06-01T00:00:00Z"), 
+				id -> 100L, sourceRequest -> false
+		);
+		assertEquals(List.of(observations, humidity, later), result);
+		
+		// A fast source may win over a slow one with higher priority
+		result = instance.plan(
+				sourceRequests, List.of(1002), 
+				Instant.parse("2020-06-01T00:00:00Z"), Instant.parse("2020-07-01T00:00:00Z"), 
+				id -> id.equals("test.observations") ? 10000L : 100L, sourceRequest -> false
+		);
+		assertEquals(List.of(duplicate), result);
+		
+		// Required requests are always planned
+		result = instance.plan(
+				sourceRequests, List.of(1002), 
+				Instant.parse("2020-06-01T00:00:00Z"), Instant.parse("2020-07-01T00:00:00Z"), 
+				id -> -1L, sourceRequest -> sourceRequest == humidity
+		);
+		assertEquals(List.of(observations, humidity), result);
+	}
+	
+	@Test
+	public void testGetUncoveredParameters()
+	{
+		System.out.println("testGetUncoveredParameters");
+		QueryPlanner instance = new QueryPlanner(Map.of(1002, List.of(1001)), Map.of(3101, List.of(1002, 3002)));
+		WeatherData weatherData = new WeatherData();
+		weatherData.setWeatherParameters(new Integer[] {1001, 3002});
+		
+		assertEquals(Set.of(2001), instance.getUncoveredParameters(List.of(weatherData), List.of(1002, 2001, 3101)));
+		assertEquals(Set.of(1002), instance.getUncoveredParameters(List.of(), List.of(1002)));
+	}
+	
+	private WeatherData getWeatherData(Instant timeStart, int interval, int rows, Integer... parameters)
+	{
+		WeatherData weatherData = new WeatherData();
+		weatherData.setTimeStart(timeStart);
+		weatherData.setTimeEnd(timeStart.plusSeconds((long) (rows - 1) * interval));
+		weatherData.setInterval(interval);
+		weatherData.setWeatherParameters(parameters);
+		LocationWeatherData lwd = new LocationWeatherData(10.781, 59.660, 94.0, rows, parameters.length);
+		for(int row=0; row < rows; row++)
+		{
+			for(int column=0; column < parameters.length; column++)
+			{
+				lwd.setValue(row, column, 10.0);
+			}
+		}
+		weatherData.addLocationWeatherData(lwd);
+		return weatherData;
+	}
+	
+	@Test
+	public void testGetPoorlyCoveredParameters()
+	{
+		System.out.println("testGetPoorlyCoveredParameters");
+		QueryPlanner instance = new QueryPlanner(Map.of(1002, List.of(1001)), Map.of());
+		Instant timeStart = Instant.parse("2021-06-01T00:00:00Z");
+		Instant timeEnd = Instant.parse("2021-06-03T00:00:00Z");
+		// The station has all the data, except for a six hour outage for precipitation
+		List<SourceRequest> sourceRequests = List.of(this.getSourceRequest("test.station", "2020-01-01", "2022-01-01", 1001, 2001));
+		WeatherData station = this.getWeatherData(timeStart, 3600, 49, 1001, 2001);
+		for(int row=10; row < 16; row++)
+		{
+			station.getLocationWeatherData().get(0).setValue(row, 1, null);
+		}
+		assertEquals(Set.of(), instance.getPoorlyCoveredParameters(List.of(station), sourceRequests, List.of(1002, 2001), timeStart, timeEnd, 3600, 0.8));
+		assertEquals(Set.of(2001), instance.getPoorlyCoveredParameters(List.of(station), sourceRequests, List.of(1002, 2001), timeStart, timeEnd, 3600, 0.95));
+		// The gridded source fills the gap
+		WeatherData gridded = this.getWeatherData(timeStart.plusSeconds(6 * 3600), 3600, 24, 2001);
+		assertEquals(Set.of(), instance.getPoorlyCoveredParameters(List.of(station, gridded), sourceRequests, List.of(1002, 2001), timeStart, timeEnd, 3600, 0.95));
+		// Daily values cover all the hours of the day
+		WeatherData daily = this.getWeatherData(timeStart, 86400, 3, 2001);
+		assertEquals(Set.of(), instance.getPoorlyCoveredParameters(List.of(station, daily), sourceRequests, List.of(2001), timeStart, timeEnd, 3600, 1.0));
+		// Nothing to check
+		assertEquals(Set.of(), instance.getPoorlyCoveredParameters(List.of(station), sourceRequests, List.of(2001), timeStart, timeEnd, 3600, 0.0));
+		// The source ends after the first day, so the missing second day does not count
+		List<SourceRequest> ending = List.of(this.getSourceRequest("test.ending", "2020-01-01", "2021-06-02", 1001));
+		WeatherData firstDay = this.getWeatherData(timeStart, 3600, 25, 1001);
+		assertEquals(Set.of(), instance.getPoorlyCoveredParameters(List.of(firstDay), ending, List.of(1002), timeStart, timeEnd, 3600, 1.0));
+		firstDay.getLocationWeatherData().get(0).setValue(20, 0, null);
+		assertEquals(Set.of(1002), instance.getPoorlyCoveredParameters(List.of(firstDay), ending, List.of(1002), timeStart, timeEnd, 3600, 1.0));
+	}
+}
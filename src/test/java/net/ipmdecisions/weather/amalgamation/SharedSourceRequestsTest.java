@@ -0,0 +1,114 @@
+package net.ipmdecisions.weather.amalgamation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+
+public class SharedSourceRequestsTest {
+
+	public SharedSourceRequestsTest() {
+		
+	}
+	
+	private WeatherData getWeatherData(Instant timeStart)
+	{
+		WeatherData weatherData = new WeatherData();
+		weatherData.setTimeStart(timeStart);
+		weatherData.setTimeEnd(timeStart.plusSeconds(3600));
+		weatherData.setInterval(3600);
+		weatherData.setWeatherParameters(new Integer[] {1002});
+		LocationWeatherData lwd = new LocationWeatherData(10.78, 59.66, 94.0, 2, 1);
+		lwd.getData()[0][0] = 10.0;
+		lwd.getData()[1][0] = 11.0;
+		List<LocationWeatherData> lwds = new ArrayList<>();
+		lwds.add(lwd);
+		weatherData.setLocationWeatherData(lwds);
+		return weatherData;
+	}
+	
+	private WeatherDataSource getWeatherDataSource()
+	{
+		WeatherDataSource source = new WeatherDataSource();
+		source.setId("test.source");
+		return source;
+	}
+	
+	@Test
+	public void testIdenticalRequestsAreShared() throws Exception
+	{
+		System.out.println("testIdenticalRequestsAreShared");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			SharedSourceRequests instance = new SharedSourceRequests(executor);
+			AtomicInteger fetches = new AtomicInteger();
+			WeatherDataFetcher fetcher = (fetchStart, fetchEnd) -> {
+				fetches.incrementAndGet();
+				return this.getWeatherData(fetchStart);
+			};
+			ZoneId timeZone = ZoneId.of("Europe/Oslo");
+			Instant timeStart = Instant.parse("2021-06-01T22:00:00Z");
+			Instant timeEnd = Instant.parse("2021-06-02T22:00:00Z");
+			// Two locations close to the same weather station
+			CompletableFuture<WeatherData> first = instance.get(SourceRequest.forStation(this.getWeatherDataSource(), "5", timeZone, 3600, Set.of(1002), null), timeStart, timeEnd, fetcher);
+			CompletableFuture<WeatherData> second = instance.get(SourceRequest.forStation(this.getWeatherDataSource(), "5", timeZone, 3600, Set.of(1002), null), timeStart, timeEnd, fetcher);
+			CompletableFuture<WeatherData> otherStation = instance.get(SourceRequest.forStation(this.getWeatherDataSource(), "6", timeZone, 3600, Set.of(1002), null), timeStart, timeEnd, fetcher);
+			
+			WeatherData firstData = first.get();
+			WeatherData secondData = second.get();
+			otherStation.get();
+			assertEquals(2, fetches.get());
+			assertEquals(2, instance.getNumberOfRequests());
+			
+			// Each caller gets its own copy
+			assertNotSame(firstData, secondData);
+			firstData.getLocationWeatherData().get(0).getData()[0][0] = 20.0;
+			assertEquals(10.0, secondData.getLocationWeatherData().get(0).getData()[0][0]);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testPrivateRequestsAreNotShared() throws Exception
+	{
+		System.out.println("testPrivateRequestsAreNotShared");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			SharedSourceRequests instance = new SharedSourceRequests(executor);
+			AtomicInteger fetches = new AtomicInteger();
+			WeatherDataFetcher fetcher = (fetchStart, fetchEnd) -> {
+				fetches.incrementAndGet();
+				return this.getWeatherData(fetchStart);
+			};
+			ZoneId timeZone = ZoneId.of("Europe/Oslo");
+			Instant timeStart = Instant.parse("2021-06-01T22:00:00Z");
+			Instant timeEnd = Instant.parse("2021-06-02T22:00:00Z");
+			String credentials = "{\"userName\":\"theUser\", \"password\":\"thePassword\"}";
+			instance.get(SourceRequest.forStation(this.getWeatherDataSource(), "5", timeZone, 3600, Set.of(1002), credentials), timeStart, timeEnd, fetcher).get();
+			instance.get(SourceRequest.forStation(this.getWeatherDataSource(), "5", timeZone, 3600, Set.of(1002), credentials), timeStart, timeEnd, fetcher).get();
+			assertEquals(2, fetches.get());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package net.ipmdecisions.weather.amalgamation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SourceHealthTest {
+
+	public SourceHealthTest() {
+		
+	}
+	
+	private SourceHealth getInstance()
+	{
+		// Window of 10, at least 4 requests, 50% failures, slow after 1 s, open for 60 s
+		return new SourceHealth(10, 4, 0.5, 1000, 60000);
+	}
+	
+	@Test
+	public void testCircuitOpensAndRecovers()
+	{
+		System.out.println("testCircuitOpensAndRecovers");
+		SourceHealth instance = this.getInstance();
+		long now = 1000000;
+		instance.record(SourceHealth.SUCCESS, 100, now);
+		instance.record(SourceHealth.ERROR, 100, now);
+		instance.record(SourceHealth.ERROR, 100, now);
+		assertEquals(SourceHealth.State.CLOSED, instance.getState(now));
+		// Slow requests count as failures
+		instance.record(SourceHealth.SUCCESS, 5000, now);
+		assertEquals(SourceHealth.State.OPEN, instance.getState(now));
+		assertFalse(instance.allowRequest(now + 1000));
+		assertEquals(0.0, instance.getScore(now));
+		
+		// After the open time, one probe is let through
+		now += 60000;
+		assertEquals(SourceHealth.State.HALF_OPEN, instance.getState(now));
+		assertTrue(instance.allowRequest(now));
+		assertFalse(instance.allowRequest(now));
+		// The probe fails, and the circuit opens again
+		instance.record(SourceHealth.ERROR, 100, now);
+		assertEquals(SourceHealth.State.OPEN, instance.getState(now));
+		
+		now += 60000;
+		assertTrue(instance.allowRequest(now));
+		instance.record(SourceHealth.SUCCESS, 100, now);
+		assertEquals(SourceHealth.State.CLOSED, instance.getState(now));
+		assertTrue(instance.allowRequest(now));
+		assertEquals(1.0, instance.getScore(now), 0.0001);
+	}
+	
+	@Test
+	public void testScore()
+	{
+		System.out.println("testScore");
+		SourceHealth instance = this.getInstance();
+		long now = 1000000;
+		assertEquals(1.0, instance.getScore(now), 0.0001);
+		instance.record(SourceHealth.SUCCESS, 200, now);
+		instance.record(SourceHealth.EMPTY, 200, now);
+		instance.record(SourceHealth.SUCCESS, 200, now);
+		instance.record(SourceHealth.ERROR, 200, now);
+		// 25% errors and 25% empty responses
+		assertEquals(0.75 * 0.875, instance.getScore(now), 0.0001);
+		assertEquals(SourceHealth.State.CLOSED, instance.getState(now));
+	}
+	
+	@Test
+	public void testTypicalLatency()
+	{
+		System.out.println("testTypicalLatency");
+		SourceHealth instance = this.getInstance();
+		long now = 1000000;
+		instance.record(SourceHealth.SUCCESS, 300, now);
+		instance.record(SourceHealth.SUCCESS, 100, now);
+		// Too few requests to tell
+		assertEquals(-1, instance.getTypicalLatency());
+		instance.record(SourceHealth.ERROR, 50, now);
+		instance.record(SourceHealth.EMPTY, 200, now);
+		instance.record(SourceHealth.SUCCESS, 400, now);
+		// Failed requests are not counted
+		assertEquals(300, instance.getTypicalLatency());
+	}
+}
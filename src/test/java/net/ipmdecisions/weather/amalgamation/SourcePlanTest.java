@@ -0,0 +1,51 @@
+package net.ipmdecisions.weather.amalgamation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+
+public class SourcePlanTest {
+
+	public SourcePlanTest() {
+		
+	}
+	
+	private WeatherDataSource getWeatherDataSource(String id, Integer... intervals)
+	{
+		WeatherDataSource source = new WeatherDataSource();
+		source.setId(id);
+		source.setAccess_type(WeatherDataSource.ACCESS_TYPE_LOCATION);
+		WeatherDataSource.Temporal temporal = new WeatherDataSource.Temporal();
+		temporal.setIntervals(intervals);
+		source.setTemporal(temporal);
+		return source;
+	}
+	
+	@Test
+	public void testLocationBasedSources()
+	{
+		System.out.println("testLocationBasedSources");
+		ZoneId timeZone = ZoneId.of("Europe/Oslo");
+		WeatherDataSource hourly = this.getWeatherDataSource("test.hourly", 3600, 86400);
+		WeatherDataSource subHourly = this.getWeatherDataSource("test.subhourly", 900);
+		SourcePlan instance = new SourcePlan(10.781, 59.660, timeZone, List.of(hourly, subHourly), 86400);
+		
+		assertEquals(timeZone, instance.getTimeZone());
+		assertEquals(List.of(hourly, subHourly), instance.getWeatherDataSources());
+		
+		// The exact location is used in the request, and the best available interval
+		Instant timeStart = Instant.parse("2021-06-01T00:00:00Z");
+		SourceRequest request = instance.getSourceRequest(hourly, 10.781234, 59.660468);
+		assertEquals(86400, request.getInterval());
+		assertTrue(request.getQueryString(timeStart, timeStart).startsWith("longitude=10.781234&latitude=59.660468"));
+		assertEquals(900, instance.getSourceRequest(subHourly, 10.781234, 59.660468).getInterval());
+		
+		assertThrows(UnsupportedOperationException.class, () -> instance.getWeatherDataSources().clear());
+	}
+}
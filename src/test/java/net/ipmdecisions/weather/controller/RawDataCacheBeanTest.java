@@ -0,0 +1,179 @@
+package net.ipmdecisions.weather.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import net.ipmdecisions.weather.amalgamation.SourceRequest;
+import net.ipmdecisions.weather.amalgamation.WeatherDataFetcher;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.entity.WeatherDataSource;
+
+public class RawDataCacheBeanTest {
+
+	public RawDataCacheBeanTest() {
+		
+	}
+	
+	/**
+	 * Hourly data where the value is the hour since the epoch
+	 */
+	private WeatherData getHourlyData(Instant timeStart, Instant timeEnd)
+	{
+		return this.getHourlyData(timeStart, timeEnd, 10.78, 59.66);
+	}
+	
+	private WeatherData getHourlyData(Instant timeStart, Instant timeEnd, double longitude, double latitude)
+	{
+		int length = (int) ((timeEnd.getEpochSecond() - timeStart.getEpochSecond()) / 3600) + 1;
+		WeatherData weatherData = new WeatherData();
+		weatherData.setTimeStart(timeStart);
+		weatherData.setTimeEnd(timeEnd);
+		weatherData.setInterval(3600);
+		weatherData.setWeatherParameters(new Integer[] {1002});
+		LocationWeatherData lwd = new LocationWeatherData(longitude, latitude, 94.0, length, 1);
+		for(int row=0; row < length; row++)
+		{
+			lwd.getData()[row][0] = (double) (timeStart.getEpochSecond() / 3600 + row);
+		}
+		List<LocationWeatherData> lwds = new ArrayList<>();
+		lwds.add(lwd);
+		weatherData.setLocationWeatherData(lwds);
+		return weatherData;
+	}
+	
+	@Test
+	public void testFetchesOnlyMissingAndUnsettledDays() throws Exception
+	{
+		System.out.println("testFetchesOnlyMissingAndUnsettledDays");
+		System.setProperty("org.madiphs.weatherservice.RAW_DATA_CACHE_DIR", Files.createTempDirectory("segments").toString());
+		RawDataCacheBean instance = new RawDataCacheBean();
+		
+		WeatherDataSource source = new WeatherDataSource();
+		source.setId("test.source");
+		WeatherDataSource.Temporal temporal = new WeatherDataSource.Temporal();
+		WeatherDataSource.Temporal.Historic historic = new WeatherDataSource.Temporal.Historic();
+		historic.setStart(LocalDate.of(2010, 1, 1));
+		temporal.setHistoric(historic);
+		source.setTemporal(temporal);
+		
+		ZoneId timeZone = ZoneId.of("Europe/Oslo");
+		SourceRequest request = SourceRequest.forStation(source, "5", timeZone, 3600, Set.of(1002), null);
+		assertTrue(instance.isCacheable(request));
+		
+		LocalDate today = LocalDate.now(timeZone);
+		Instant timeStart = today.minusDays(20).atStartOfDay(timeZone).toInstant();
+		Instant timeEnd = today.atStartOfDay(timeZone).toInstant();
+		List<Instant> fetchStarts = new ArrayList<>();
+		WeatherDataFetcher fetcher = (fetchStart, fetchEnd) -> {
+			fetchStarts.add(fetchStart);
+			return this.getHourlyData(fetchStart, fetchEnd);
+		};
+		
+		WeatherData first = instance.getWeatherData(request, timeStart, timeEnd, fetcher);
+		WeatherData second = instance.getWeatherData(request, timeStart, timeEnd, fetcher);
+		
+		assertEquals(timeStart, fetchStarts.get(0));
+		// Only the unsettled days are fetched the second time
+		assertEquals(today.minusDays(instance.getSettlementDays("test.source")).atStartOfDay(timeZone).toInstant(), fetchStarts.get(1));
+		assertEquals(first.getLocationWeatherData().get(0).getLength(), second.getLocationWeatherData().get(0).getLength());
+		assertArrayEquals(first.getLocationWeatherData().get(0).getData(), second.getLocationWeatherData().get(0).getData());
+		
+		// The disk tier survives a restart
+		fetchStarts.clear();
+		WeatherData third = new RawDataCacheBean().getWeatherData(request, timeStart, timeEnd, fetcher);
+		assertEquals(today.minusDays(instance.getSettlementDays("test.source")).atStartOfDay(timeZone).toInstant(), fetchStarts.get(0));
+		assertArrayEquals(first.getLocationWeatherData().get(0).getData(), third.getLocationWeatherData().get(0).getData());
+	}
+	
+	@Test
+	public void testNeighborWeatherDataFromCacheOnly() throws Exception
+	{
+		System.out.println("testNeighborWeatherDataFromCacheOnly");
+		System.setProperty("org.madiphs.weatherservice.RAW_DATA_CACHE_DIR", Files.createTempDirectory("segments").toString());
+		RawDataCacheBean instance = new RawDataCacheBean();
+		
+		WeatherDataSource source = new WeatherDataSource();
+		source.setId("test.source");
+		WeatherDataSource.Temporal temporal = new WeatherDataSource.Temporal();
+		WeatherDataSource.Temporal.Historic historic = new WeatherDataSource.Temporal.Historic();
+		historic.setStart(LocalDate.of(2010, 1, 1));
+		temporal.setHistoric(historic);
+		source.setTemporal(temporal);
+		
+		ZoneId timeZone = ZoneId.of("Europe/Oslo");
+		LocalDate today = LocalDate.now(timeZone);
+		Instant timeStart = today.minusDays(20).atStartOfDay(timeZone).toInstant();
+		Instant timeEnd = today.minusDays(10).atStartOfDay(timeZone).toInstant();
+		
+		// Not known before its data have been fetched
+		assertTrue(instance.getNeighborWeatherData(10.8, 59.7, List.of(), 5, 0, 50000, timeStart, timeEnd, 3600).isEmpty());
+		SourceRequest request = SourceRequest.forStation(source, "5", timeZone, 3600, Set.of(1002), null);
+		WeatherData fetched = instance.getWeatherData(request, timeStart, timeEnd, (fetchStart, fetchEnd) -> this.getHourlyData(fetchStart, fetchEnd));
+		
+		// Only whole days are cached, so the last hour (at midnight) is not
+		Instant lastCachedHour = timeEnd.minusSeconds(3600);
+		List<WeatherData> neighbors = instance.getNeighborWeatherData(10.8, 59.7, List.of(), 5, 0, 50000, timeStart, lastCachedHour, 3600);
+		assertEquals(1, neighbors.size());
+		Double[][] fetchedData = fetched.getLocationWeatherData().get(0).getData();
+		assertArrayEquals(Arrays.copyOf(fetchedData, fetchedData.length - 1), neighbors.get(0).getLocationWeatherData().get(0).getData());
+		// Too far away, or another interval
+		assertTrue(instance.getNeighborWeatherData(12.0, 59.7, List.of(), 5, 0, 50000, timeStart, timeEnd, 3600).isEmpty());
+		assertTrue(instance.getNeighborWeatherData(10.8, 59.7, List.of(), 5, 0, 50000, timeStart, timeEnd, 86400).isEmpty());
+	}
+	
+	@Test
+	public void testNeighborWeatherDataExcludesOwnData() throws Exception
+	{
+		System.out.println("testNeighborWeatherDataExcludesOwnData");
+		System.setProperty("org.madiphs.weatherservice.RAW_DATA_CACHE_DIR", Files.createTempDirectory("segments").toString());
+		RawDataCacheBean instance = new RawDataCacheBean();
+		
+		WeatherDataSource source = new WeatherDataSource();
+		source.setId("test.source");
+		WeatherDataSource.Temporal temporal = new WeatherDataSource.Temporal();
+		WeatherDataSource.Temporal.Historic historic = new WeatherDataSource.Temporal.Historic();
+		historic.setStart(LocalDate.of(2010, 1, 1));
+		temporal.setHistoric(historic);
+		source.setTemporal(temporal);
+		
+		ZoneId timeZone = ZoneId.of("Europe/Oslo");
+		LocalDate today = LocalDate.now(timeZone);
+		Instant timeStart = today.minusDays(12).atStartOfDay(timeZone).toInstant();
+		Instant timeEnd = today.minusDays(10).atStartOfDay(timeZone).toInstant();
+		
+		// The station being controlled, cached for two sets of parameters
+		SourceRequest own = SourceRequest.forStation(source, "5", timeZone, 3600, Set.of(1002), null);
+		instance.getWeatherData(own, timeStart, timeEnd, (fetchStart, fetchEnd) -> this.getHourlyData(fetchStart, fetchEnd));
+		SourceRequest ownOtherParameters = SourceRequest.forStation(source, "5", timeZone, 3600, Set.of(1002, 3002), null);
+		instance.getWeatherData(ownOtherParameters, timeStart, timeEnd, (fetchStart, fetchEnd) -> this.getHourlyData(fetchStart, fetchEnd));
+		// Another station, cached for two sets of parameters
+		SourceRequest other = SourceRequest.forStation(source, "6", timeZone, 3600, Set.of(1002), null);
+		instance.getWeatherData(other, timeStart, timeEnd, (fetchStart, fetchEnd) -> this.getHourlyData(fetchStart, fetchEnd, 10.9, 59.7));
+		SourceRequest otherOtherParameters = SourceRequest.forStation(source, "6", timeZone, 3600, Set.of(1002, 3002), null);
+		instance.getWeatherData(otherOtherParameters, timeStart, timeEnd, (fetchStart, fetchEnd) -> this.getHourlyData(fetchStart, fetchEnd, 10.9, 59.7));
+		// A gridded location a few meters from the station
+		SourceRequest gridded = SourceRequest.forLocation(source, 10.7801, 59.6601, timeZone, 3600);
+		instance.getWeatherData(gridded, timeStart, timeEnd, (fetchStart, fetchEnd) -> this.getHourlyData(fetchStart, fetchEnd, 10.7801, 59.6601));
+		
+		Instant lastCachedHour = timeEnd.minusSeconds(3600);
+		// Without exclusions, the station's own data are the nearest, and each station appears once
+		List<WeatherData> neighbors = instance.getNeighborWeatherData(10.78, 59.66, List.of(), 5, 0, 50000, timeStart, lastCachedHour, 3600);
+		assertEquals(3, neighbors.size());
+		assertEquals(10.78, neighbors.get(0).getLocationWeatherData().get(0).getLongitude());
+		
+		neighbors = instance.getNeighborWeatherData(10.78, 59.66, List.of(own), 5, 1000, 50000, timeStart, lastCachedHour, 3600);
+		assertEquals(1, neighbors.size());
+		assertEquals(10.9, neighbors.get(0).getLocationWeatherData().get(0).getLongitude());
+	}
+}
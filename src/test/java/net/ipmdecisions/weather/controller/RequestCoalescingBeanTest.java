@@ -0,0 +1,104 @@
+package net.ipmdecisions.weather.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestCoalescingBeanTest {
+
+	public RequestCoalescingBeanTest() {
+		
+	}
+	
+	@Test
+	public void testConcurrentIdenticalRequestsShareOneCall() throws Exception
+	{
+		System.out.println("testConcurrentIdenticalRequestsShareOneCall");
+		RequestCoalescingBean instance = new RequestCoalescingBean();
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		int callers = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		List<Future<String>> results = new ArrayList<>();
+		for(int i=0; i < callers; i++)
+		{
+			results.add(executor.submit(() -> instance.execute("yr|10.7800,59.6600", () -> {
+				calls.incrementAndGet();
+				release.await();
+				return "forecast";
+			})));
+		}
+		// Wait until all but the first caller are waiting for the first one
+		long deadline = System.currentTimeMillis() + 5000;
+		while(((Long) instance.getMetrics().get("coalesced")) < callers - 1 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		release.countDown();
+		for(Future<String> result:results)
+		{
+			assertEquals("forecast", result.get(5, TimeUnit.SECONDS));
+		}
+		executor.shutdown();
+		
+		assertEquals(1, calls.get());
+		assertEquals(0, instance.getMetrics().get("inFlight"));
+		// The next request is performed anew
+		assertEquals("new forecast", instance.execute("yr|10.7800,59.6600", () -> "new forecast"));
+	}
+	
+	@Test
+	public void testFailureIsPropagated()
+	{
+		System.out.println("testFailureIsPropagated");
+		RequestCoalescingBean instance = new RequestCoalescingBean();
+		ExecutionException ex = assertThrows(ExecutionException.class, () -> instance.execute("key", () -> {
+			throw new IOException("Service unavailable");
+		}));
+		assertTrue(ex.getCause() instanceof IOException);
+		assertEquals(0, instance.getMetrics().get("inFlight"));
+	}
+	
+	@Test
+	public void testEachCallerWaitsWithItsOwnTimeLimit() throws Exception
+	{
+		System.out.println("testEachCallerWaitsWithItsOwnTimeLimit");
+		RequestCoalescingBean instance = new RequestCoalescingBean();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		// The first caller has a short time limit, but the call is not affected by it
+		Future<String> first = executor.submit(() -> instance.execute("yr|10.7800,59.6600", () -> {
+			started.countDown();
+			release.await();
+			return "forecast";
+		}, 10));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		// A caller with a short time limit gives up on its own
+		assertThrows(TimeoutException.class, () -> instance.execute("yr|10.7800,59.6600", () -> "not called", 50));
+		// A caller without a time limit waits for the result
+		Future<String> patient = executor.submit(() -> instance.execute("yr|10.7800,59.6600", () -> "not called"));
+		long deadline = System.currentTimeMillis() + 5000;
+		while(((Long) instance.getMetrics().get("coalesced")) < 2 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		release.countDown();
+		assertEquals("forecast", first.get(5, TimeUnit.SECONDS));
+		assertEquals("forecast", patient.get(5, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertEquals(1L, instance.getMetrics().get("requests"));
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The latencies and status codes of the requests in a load test. Not thread safe, 
+ * so each thread records its own, and they are merged at the end
+ */
+public class LatencyStats
+{
+	private long[] latencies = new long[1024];
+	private int count = 0;
+	private int errors = 0;
+	private final Map<Integer, Integer> statusCounts = new TreeMap<>();
+	private boolean sorted = true;
+
+	/**
+	 * @param latencyNanos
+	 * @param status The HTTP status code, or 0 if there was no response
+	 */
+	public void record(long latencyNanos, int status)
+	{
+		if(this.count == this.latencies.length)
+		{
+			this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+		}
+		this.latencies[this.count++] = latencyNanos;
+		this.sorted = false;
+		this.statusCounts.merge(status, 1, Integer::sum);
+		if(status == 0 || status >= 400)
+		{
+			this.errors++;
+		}
+	}
+
+	/**
+	 * Adds the recorded requests of the other
+	 * @param other
+	 */
+	public void add(LatencyStats other)
+	{
+		for(int i=0; i < other.count; i++)
+		{
+			if(this.count == this.latencies.length)
+			{
+				this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+			}
+			this.latencies[this.count++] = other.latencies[i];
+		}
+		this.sorted = false;
+		this.errors += other.errors;
+		other.statusCounts.forEach((status, statusCount) -> this.statusCounts.merge(status, statusCount, Integer::sum));
+	}
+
+	public int getCount()
+	{
+		return this.count;
+	}
+
+	/**
+	 * @return The number of requests without a response, or with a 4xx or 5xx status
+	 */
+	public int getErrors()
+	{
+		return this.errors;
+	}
+
+	/**
+	 * @return The number of requests per HTTP status code. 0 if there was no response
+	 */
+	public Map<Integer, Integer> getStatusCounts()
+	{
+		return this.statusCounts;
+	}
+
+	/**
+	 * @param percentile from 0 to 100
+	 * @return The latency in milliseconds (nearest rank), or 0 if there are no requests
+	 */
+	public double getPercentileMillis(double percentile)
+	{
+		if(this.count == 0)
+		{
+			return 0;
+		}
+		if(! this.sorted)
+		{
+			Arrays.sort(this.latencies, 0, this.count);
+			this.sorted = true;
+		}
+		int rank = (int) Math.ceil(percentile / 100 * this.count);
+		return this.latencies[Math.min(this.count, Math.max(1, rank)) - 1] / 1e6;
+	}
+
+	/**
+	 * @return The mean latency in milliseconds, or 0 if there are no requests
+	 */
+	public double getMeanMillis()
+	{
+		long sum = 0;
+		for(int i=0; i < this.count; i++)
+		{
+			sum += this.latencies[i];
+		}
+		return this.count == 0 ? 0 : sum / 1e6 / this.count;
+	}
+}
@@ -0,0 +1,41 @@
+package net.ipmdecisions.weather.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyStatsTest {
+
+	public LatencyStatsTest() {
+		
+	}
+	
+	@Test
+	public void testGetPercentileMillis()
+	{
+		System.out.println("testGetPercentileMillis");
+		LatencyStats instance = new LatencyStats();
+		assertEquals(0, instance.getPercentileMillis(50));
+		// 1 - 100 ms, in reverse order
+		for(int i=100; i >= 1; i--)
+		{
+			instance.record(i * 1000000L, i <= 95 ? 200 : 503);
+		}
+		assertEquals(100, instance.getCount());
+		assertEquals(5, instance.getErrors());
+		assertEquals(50.0, instance.getPercentileMillis(50));
+		assertEquals(99.0, instance.getPercentileMillis(99));
+		assertEquals(100.0, instance.getPercentileMillis(100));
+		assertEquals(1.0, instance.getPercentileMillis(0));
+		assertEquals(50.5, instance.getMeanMillis(), 0.001);
+		
+		LatencyStats other = new LatencyStats();
+		other.record(1000 * 1000000L, 0);
+		instance.add(other);
+		assertEquals(101, instance.getCount());
+		assertEquals(6, instance.getErrors());
+		assertEquals(1000.0, instance.getPercentileMillis(100));
+		assertEquals(Integer.valueOf(5), instance.getStatusCounts().get(503));
+		assertEquals(Integer.valueOf(1), instance.getStatusCounts().get(0));
+	}
+}
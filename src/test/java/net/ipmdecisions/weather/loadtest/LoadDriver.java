@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replays a mix of requests to the weather service from a number of concurrent clients, 
+ * and reports the throughput and latency percentiles, in total and per request. The 
+ * requests are sent in the order they are given, round robin, so the mix is the same 
+ * in every run.
+ * 
+ * The requests are read from a Postman collection (e.g. postman_tests/MaDiPHS Weather API tests.postman_collection.json),
+ * or from a text file with one request per line: [METHOD] URL. URLs that don't start 
+ * with http are relative to the base URL. Lines starting with # are ignored.
+ * 
+ * Run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=net.ipmdecisions.weather.loadtest.LoadDriver -Dexec.args="--baseUrl http://localhost:8080/MaDiPHSWeatherService --requests postman_tests/MaDiPHS\ Weather\ API\ tests.postman_collection.json --folder AmalgamationService --concurrency 8 --duration 60"
+ * </pre>
+ */
+public class LoadDriver
+{
+	private static final Pattern POSTMAN_VARIABLE = Pattern.compile("\\{\\{([^}]+)\\}\\}");
+
+	/**
+	 * A request in the mix
+	 */
+	public static class LoadRequest
+	{
+		private final String name;
+		private final String method;
+		private final URI uri;
+		private final String body;
+
+		/**
+		 * @param name Used in the report
+		 * @param method GET or POST
+		 * @param uri
+		 * @param body The JSON body of a POST request. May be null
+		 */
+		public LoadRequest(String name, String method, URI uri, String body)
+		{
+			this.name = name;
+			this.method = method;
+			this.uri = uri;
+			this.body = body;
+		}
+
+		public String getName()
+		{
+			return this.name;
+		}
+
+		public URI getUri()
+		{
+			return this.uri;
+		}
+
+		HttpRequest toHttpRequest(Duration timeout)
+		{
+			HttpRequest.Builder builder = HttpRequest.newBuilder(this.uri).timeout(timeout);
+			if(this.body != null)
+			{
+				builder.header("Content-Type", "application/json");
+			}
+			return builder.method(this.method, this.body != null ? 
+					HttpRequest.BodyPublishers.ofString(this.body) 
+					: HttpRequest.BodyPublishers.noBody()
+			).build();
+		}
+	}
+
+	private final List<LoadRequest> requests;
+	private final HttpClient client;
+	private int concurrency = 4;
+	private Duration duration = Duration.ofSeconds(60);
+	private long maxRequests = 0;
+	private Duration warmup = Duration.ZERO;
+	private Duration timeout = Duration.ofSeconds(120);
+	private double measuredSeconds = 0;
+
+	/**
+	 * @param requests The request mix
+	 */
+	public LoadDriver(List<LoadRequest> requests)
+	{
+		if(requests.isEmpty())
+		{
+			throw new IllegalArgumentException("There are no requests to send");
+		}
+		this.requests = requests;
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+	}
+
+	/**
+	 * Sends the requests until the duration or the max number of requests is reached
+	 * @return The latencies of the requests after the warmup, per request name
+	 * @throws InterruptedException
+	 */
+	public Map<String, LatencyStats> run() throws InterruptedException
+	{
+		long measureStart = System.nanoTime() + this.warmup.toNanos();
+		long end = measureStart + this.duration.toNanos();
+		AtomicLong sequence = new AtomicLong();
+		ExecutorService executor = Executors.newFixedThreadPool(this.concurrency);
+		List<Future<Map<String, LatencyStats>>> clients = new ArrayList<>();
+		for(int i=0; i < this.concurrency; i++)
+		{
+			clients.add(executor.submit(() -> {
+				Map<String, LatencyStats> stats = new HashMap<>();
+				while(true)
+				{
+					long next = sequence.getAndIncrement();
+					long start = System.nanoTime();
+					if((this.maxRequests > 0 && next >= this.maxRequests) || start >= end)
+					{
+						return stats;
+					}
+					LoadRequest request = this.requests.get((int) (next % this.requests.size()));
+					int status = this.send(request);
+					if(start >= measureStart)
+					{
+						stats.computeIfAbsent(request.getName(), name -> new LatencyStats()).record(System.nanoTime() - start, status);
+					}
+				}
+			}));
+		}
+		executor.shutdown();
+		Map<String, LatencyStats> result = new LinkedHashMap<>();
+		for(LoadRequest request:this.requests)
+		{
+			result.put(request.getName(), new LatencyStats());
+		}
+		try
+		{
+			for(Future<Map<String, LatencyStats>> client:clients)
+			{
+				client.get().forEach((name, stats) -> result.get(name).add(stats));
+			}
+		}
+		catch(ExecutionException ex)
+		{
+			throw new IllegalStateException(ex.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		this.measuredSeconds = Math.max(0, System.nanoTime() - measureStart) / 1e9;
+		return result;
+	}
+
+	/**
+	 * @return The HTTP status code, or 0 if there was no response
+	 */
+	private int send(LoadRequest request) throws InterruptedException
+	{
+		try
+		{
+			// The response is read, but not kept
+			return this.client.send(request.toHttpRequest(this.timeout), HttpResponse.BodyHandlers.discarding()).statusCode();
+		}
+		catch(IOException ex)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * @param stats The result of {@link #run()}
+	 * @param seconds The measured time, see {@link #getMeasuredSeconds()}
+	 * @return A table with the throughput and latency percentiles (ms), in total and per request
+	 */
+	public static String getReport(Map<String, LatencyStats> stats, double seconds)
+	{
+		LatencyStats total = new LatencyStats();
+		stats.values().forEach(total::add);
+		StringBuilder report = new StringBuilder();
+		String format = "%-50s %8s %7s %9s %9s %9s %9s %9s %9s %9s%n";
+		report.append(String.format(Locale.ROOT, format, "Request", "Count", "Errors", "Req/s", "Mean", "p50", "p90", "p95", "p99", "Max"));
+		Map<String, LatencyStats> rows = new LinkedHashMap<>(stats);
+		rows.put("Total", total);
+		rows.forEach((name, row) -> report.append(String.format(Locale.ROOT, format, 
+				name.length() > 50 ? name.substring(0, 47) + "..." : name,
+				row.getCount(),
+				row.getErrors(),
+				String.format(Locale.ROOT, "%.1f", seconds > 0 ? row.getCount() / seconds : 0),
+				String.format(Locale.ROOT, "%.1f", row.getMeanMillis()),
+				String.format(Locale.ROOT, "%.1f", row.getPercentileMillis(50)),
+				String.format(Locale.ROOT, "%.1f", row.getPercentileMillis(90)),
+				String.format(Locale.ROOT, "%.1f", row.getPercentileMillis(95)),
+				String.format(Locale.ROOT, "%.1f", row.getPercentileMillis(99)),
+				String.format(Locale.ROOT, "%.1f", row.getPercentileMillis(100))
+		)));
+		report.append("Status codes: ").append(total.getStatusCounts()).append(System.lineSeparator());
+		return report.toString();
+	}
+
+	/**
+	 * Reads the requests in a Postman collection
+	 * @param collection
+	 * @param baseUrl Replaces the {{madiphs_weather_url}} variable. Other variables are replaced by their values in the collection
+	 * @param folder Only the requests in this folder are read. All if null
+	 * @return The requests
+	 * @throws IOException
+	 */
+	public static List<LoadRequest> readPostmanCollection(File collection, String baseUrl, String folder) throws IOException
+	{
+		JsonNode root = new ObjectMapper().readTree(collection);
+		Map<String, String> variables = new HashMap<>();
+		for(JsonNode variable:root.path("variable"))
+		{
+			variables.put(variable.path("key").asText(), variable.path("value").asText());
+		}
+		variables.put("madiphs_weather_url", baseUrl);
+		List<LoadRequest> requests = new ArrayList<>();
+		readPostmanItems(root.path("item"), variables, folder, folder == null, requests);
+		return requests;
+	}
+
+	private static void readPostmanItems(JsonNode items, Map<String, String> variables, String folder, boolean inFolder, List<LoadRequest> requests)
+	{
+		for(JsonNode item:items)
+		{
+			if(item.has("item"))
+			{
+				readPostmanItems(item.path("item"), variables, folder, inFolder || item.path("name").asText().equals(folder), requests);
+			}
+			else if(inFolder && item.has("request"))
+			{
+				JsonNode request = item.path("request");
+				JsonNode url = request.path("url");
+				String rawUrl = url.isTextual() ? url.asText() : url.path("raw").asText();
+				Matcher matcher = POSTMAN_VARIABLE.matcher(rawUrl);
+				StringBuilder resolved = new StringBuilder();
+				while(matcher.find())
+				{
+					matcher.appendReplacement(resolved, Matcher.quoteReplacement(variables.getOrDefault(matcher.group(1), "")));
+				}
+				matcher.appendTail(resolved);
+				String body = request.path("body").path("mode").asText().equals("raw") ? request.path("body").path("raw").asText() : null;
+				requests.add(new LoadRequest(
+						item.path("name").asText(),
+						request.path("method").asText("GET"),
+						URI.create(resolved.toString().replace(" ", "%20")),
+						body
+				));
+			}
+		}
+	}
+
+	/**
+	 * Reads the requests in a text file with one request per line: [METHOD] URL. 
+	 * Lines starting with # are ignored
+	 * @param requestList
+	 * @param baseUrl URLs that don't start with http are relative to this
+	 * @return The requests, named by their URLs
+	 * @throws IOException
+	 */
+	public static List<LoadRequest> readRequestList(File requestList, String baseUrl) throws IOException
+	{
+		List<LoadRequest> requests = new ArrayList<>();
+		for(String line:Files.readAllLines(requestList.toPath()))
+		{
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+			String[] parts = line.split("\\s+", 2);
+			String method = parts.length == 2 ? parts[0].toUpperCase(Locale.ROOT) : "GET";
+			String url = parts.length == 2 ? parts[1] : parts[0];
+			requests.add(new LoadRequest(line, method, URI.create(url.startsWith("http") ? url : baseUrl + url), null));
+		}
+		return requests;
+	}
+
+	/**
+	 * @return The time after the warmup in the last {@link #run()}
+	 */
+	public double getMeasuredSeconds()
+	{
+		return this.measuredSeconds;
+	}
+
+	public void setConcurrency(int concurrency)
+	{
+		this.concurrency = concurrency;
+	}
+
+	public void setDuration(Duration duration)
+	{
+		this.duration = duration;
+	}
+
+	/**
+	 * @param maxRequests Stop after this number of requests, including the warmup. 0 for no limit
+	 */
+	public void setMaxRequests(long maxRequests)
+	{
+		this.maxRequests = maxRequests;
+	}
+
+	/**
+	 * @param warmup The requests in this period are not measured
+	 */
+	public void setWarmup(Duration warmup)
+	{
+		this.warmup = warmup;
+	}
+
+	/**
+	 * @param timeout The timeout of each request
+	 */
+	public void setTimeout(Duration timeout)
+	{
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Runs the load test and prints the report
+	 * @param args --baseUrl (http://localhost:8080/MaDiPHSWeatherService), --requests (Postman collection or text file, 
+	 * required), --folder (Postman folder, e.g. AmalgamationService), --concurrency (4), --duration (seconds, 60), 
+	 * --maxRequests (0 for no limit), --warmup (seconds, 10), --timeout (seconds, 120)
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		Map<String, String> arguments = UpstreamStandInServer.getArguments(args);
+		if(! arguments.containsKey("requests"))
+		{
+			System.err.println("--requests must be given");
+			System.exit(1);
+		}
+		String baseUrl = arguments.getOrDefault("baseUrl", "http://localhost:8080/MaDiPHSWeatherService");
+		File requestFile = new File(arguments.get("requests"));
+		List<LoadRequest> requests = requestFile.getName().endsWith(".json") ?
+				readPostmanCollection(requestFile, baseUrl, arguments.get("folder"))
+				: readRequestList(requestFile, baseUrl);
+
+		LoadDriver driver = new LoadDriver(requests);
+		driver.setConcurrency(Integer.parseInt(arguments.getOrDefault("concurrency", "4")));
+		driver.setDuration(Duration.ofSeconds(Long.parseLong(arguments.getOrDefault("duration", "60"))));
+		driver.setMaxRequests(Long.parseLong(arguments.getOrDefault("maxRequests", "0")));
+		driver.setWarmup(Duration.ofSeconds(Long.parseLong(arguments.getOrDefault("warmup", "10"))));
+		driver.setTimeout(Duration.ofSeconds(Long.parseLong(arguments.getOrDefault("timeout", "120"))));
+		System.out.println("Sending " + requests.size() + " different requests from " + driver.concurrency + " clients");
+
+		Map<String, LatencyStats> stats = driver.run();
+		System.out.print(getReport(stats, driver.getMeasuredSeconds()));
+	}
+}
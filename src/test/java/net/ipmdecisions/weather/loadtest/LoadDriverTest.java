@@ -0,0 +1,75 @@
+package net.ipmdecisions.weather.loadtest;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadDriverTest {
+
+	public LoadDriverTest() {
+		
+	}
+	
+	@Test
+	public void testRun() throws Exception
+	{
+		System.out.println("testRun");
+		UpstreamStandInServer server = new UpstreamStandInServer(0, 1);
+		server.addDataSource("test.source", new Integer[] {1002});
+		server.start();
+		try
+		{
+			LoadDriver instance = new LoadDriver(List.of(
+					new LoadDriver.LoadRequest("found", "GET", URI.create(server.getUrl() + "/test.source?longitude=10.5&latitude=59.5&timeStart=2022-01-01T00%3A00%3A00Z&timeEnd=2022-01-02T00%3A00%3A00Z"), null),
+					new LoadDriver.LoadRequest("not found", "GET", URI.create(server.getUrl() + "/other.source"), null)
+			));
+			instance.setConcurrency(4);
+			instance.setMaxRequests(20);
+			instance.setDuration(Duration.ofSeconds(30));
+			Map<String, LatencyStats> result = instance.run();
+			assertEquals(List.of("found", "not found"), List.copyOf(result.keySet()));
+			assertEquals(10, result.get("found").getCount());
+			assertEquals(0, result.get("found").getErrors());
+			assertEquals(10, result.get("not found").getCount());
+			assertEquals(10, result.get("not found").getErrors());
+			assertEquals(20, server.getRequestCount());
+			assertTrue(instance.getMeasuredSeconds() > 0);
+			
+			String report = LoadDriver.getReport(result, instance.getMeasuredSeconds());
+			assertTrue(report.contains("Total"));
+			assertTrue(report.contains("404=10"));
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+	
+	@Test
+	public void testReadRequests() throws Exception
+	{
+		System.out.println("testReadRequests");
+		List<LoadDriver.LoadRequest> requests = LoadDriver.readPostmanCollection(
+				new File("postman_tests/MaDiPHS Weather API tests.postman_collection.json"), "http://localhost:8080/MaDiPHSWeatherService", "AmalgamationService"
+		);
+		assertFalse(requests.isEmpty());
+		for(LoadDriver.LoadRequest request:requests)
+		{
+			assertTrue(request.getUri().toString().startsWith("http://localhost:8080/MaDiPHSWeatherService/rest/amalgamation/"), request.getUri().toString());
+		}
+		
+		File requestList = Files.writeString(Files.createTempFile("requests", ".txt"), 
+				"# Comment\n/rest/parameter\nPOST http://example.com/rest/qc\n"
+		).toFile();
+		requests = LoadDriver.readRequestList(requestList, "http://localhost:8080/MaDiPHSWeatherService");
+		assertEquals(2, requests.size());
+		assertEquals(URI.create("http://localhost:8080/MaDiPHSWeatherService/rest/parameter"), requests.get(0).getUri());
+		assertEquals(URI.create("http://example.com/rest/qc"), requests.get(1).getUri());
+	}
+}
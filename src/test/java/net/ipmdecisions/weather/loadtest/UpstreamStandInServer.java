@@ -0,0 +1,483 @@
+/*
+ * Copyright (c) 2026 NIBIO <http://www.nibio.no/>. 
+ * 
+ * This file is part of IPM Decisions Weather Service.
+ * IPM Decisions Weather Service is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * IPM Decisions Weather Service is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with IPM Decisions Weather Service.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package net.ipmdecisions.weather.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.ipmdecisions.weather.util.SyntheticWeatherDataGenerator;
+
+/**
+ * A local stand-in for the weather data sources, so that the amalgamation can be load 
+ * tested end to end without network access. The amalgamation requests all data from the
+ * endpoints in the weather data source list, so the stand-in serves:
+ * <ul>
+ * <li>/{weather data source id}: Synthetic weather data (see {@link SyntheticWeatherDataGenerator}) 
+ * for the location (or weather station), period, interval and parameters in the query 
+ * string or form data. The same request always gets the same data</li>
+ * <li>Recorded responses: Files in the recordings folder, served by the path of the 
+ * request. The extension may be left out of the path, and gives the content type (.json, 
+ * .xml for XML and SOAP, .csv, .fb for flatbuffers). Recordings take precedence over 
+ * synthetic data</li>
+ * </ul>
+ * All responses are delayed by the latency plus a random jitter, and a share of the 
+ * requests fail with 503 Service Unavailable.
+ * 
+ * Run it with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=net.ipmdecisions.weather.loadtest.UpstreamStandInServer -Dexec.args="--port 8090 --latency 200 --jitter 100 --errorRate 0.01"
+ * </pre>
+ * and start the application server with the weather data source list that is written 
+ * by the stand-in, where the endpoints of all the sources point to the stand-in
+ * (-Dorg.madiphs.weatherservice.DATASOURCE_LIST_FILE=target/standin_weather_datasources.yaml).
+ * 
+ * This leaves out the weather adapters, which request and parse the providers' own formats. 
+ * To include them, start the stand-in with --adapters true. The sources that are served by 
+ * the weather adapters then keep their endpoints, and the application server must be started 
+ * with the base URLs of the providers pointing to the stand-in (see {@link #ADAPTER_PROVIDERS}). 
+ * The stand-in serves the providers' responses from the recordings, e.g. recordings/fmi/wfs.xml 
+ * for FMI.
+ */
+public class UpstreamStandInServer
+{
+	private static final Map<String, String> CONTENT_TYPES = new LinkedHashMap<>();
+	static
+	{
+		CONTENT_TYPES.put(".json", "application/json");
+		CONTENT_TYPES.put(".xml", "text/xml; charset=utf-8");
+		CONTENT_TYPES.put(".csv", "text/csv; charset=utf-8");
+		CONTENT_TYPES.put(".fb", "application/octet-stream");
+	}
+
+	/**
+	 * The providers that the weather adapters call, by the name of their base URL system 
+	 * property (e.g. org.madiphs.weatherservice.FMI_BASE_URL). See SystemUtil.getBaseUrl()
+	 */
+	public static final List<String> ADAPTER_PROVIDERS = List.of(
+			"FMI", "OPENMETEO", "OPENMETEO_ARCHIVE", "METEOBOT", "YR", "SLU_LANTMET", 
+			"MET_IRELAND", "METOS", "DAVIS_FRUITWEB", "TAHMO", "DMI_POINTWEB"
+	);
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final long seed;
+	private final Random random;
+	private final Map<String, Integer[]> dataSources = new HashMap<>();
+	private final LongAdder requestCount = new LongAdder();
+	private final LongAdder errorCount = new LongAdder();
+	private File recordings;
+	private long latencyMillis = 0;
+	private long jitterMillis = 0;
+	private double errorRate = 0;
+
+	/**
+	 * @param port 0 for any free port
+	 * @param seed The seed of the synthetic data, latencies and errors
+	 * @throws IOException if the port can't be used
+	 */
+	public UpstreamStandInServer(int port, long seed) throws IOException
+	{
+		this.seed = seed;
+		this.random = new Random(seed);
+		this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		this.server.createContext("/", this::handle);
+		// Many requests may be waiting at the same time, due to the latency
+		this.executor = Executors.newCachedThreadPool();
+		this.server.setExecutor(this.executor);
+	}
+
+	public void start()
+	{
+		this.server.start();
+	}
+
+	public void stop()
+	{
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * @return e.g. http://localhost:8090
+	 */
+	public String getUrl()
+	{
+		return "http://localhost:" + this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Serves synthetic data from /{id}
+	 * @param id The weather data source id
+	 * @param weatherParameters The weather parameters to serve if not given in the request
+	 */
+	public void addDataSource(String id, Integer[] weatherParameters)
+	{
+		this.dataSources.put(id, weatherParameters);
+	}
+
+	/**
+	 * Serves synthetic data for all the weather data sources in the list
+	 * @param weatherDataSourceList in the format of weather_datasources.yaml
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public void addDataSources(File weatherDataSourceList) throws IOException
+	{
+		for(Map<String, Object> dataSource:getDataSources(readDataSourceList(weatherDataSourceList)))
+		{
+			Map<String, Object> parameters = (Map<String, Object>) dataSource.get("parameters");
+			Integer[] weatherParameters = parameters == null ? new Integer[0] : 
+				Stream.of("common", "optional")
+					.filter(key -> parameters.get(key) instanceof List)
+					.flatMap(key -> ((List<Object>) parameters.get(key)).stream())
+					.map(parameter -> Integer.valueOf(String.valueOf(parameter)))
+					.toArray(Integer[]::new);
+			this.addDataSource(String.valueOf(dataSource.get("id")), weatherParameters);
+		}
+	}
+
+	/**
+	 * Writes a copy of the weather data source list, where the endpoints of all the 
+	 * sources point to this server
+	 * @param weatherDataSourceList in the format of weather_datasources.yaml
+	 * @param target The copy
+	 * @throws IOException
+	 */
+	public void writeDataSourceList(File weatherDataSourceList, File target) throws IOException
+	{
+		this.writeDataSourceList(weatherDataSourceList, target, false);
+	}
+
+	/**
+	 * Writes a copy of the weather data source list, where the endpoints of the 
+	 * sources point to this server
+	 * @param weatherDataSourceList in the format of weather_datasources.yaml
+	 * @param target The copy
+	 * @param throughAdapters If true, the sources that are served by the weather adapters of 
+	 * the application server (endpoints starting with {WEATHER_API_URL}) keep their endpoints
+	 * @throws IOException
+	 */
+	public void writeDataSourceList(File weatherDataSourceList, File target, boolean throughAdapters) throws IOException
+	{
+		Map<String, Object> list = readDataSourceList(weatherDataSourceList);
+		for(Map<String, Object> dataSource:getDataSources(list))
+		{
+			if(throughAdapters && String.valueOf(dataSource.get("endpoint")).startsWith("{WEATHER_API_URL}"))
+			{
+				continue;
+			}
+			dataSource.put("endpoint", this.getUrl() + "/" + dataSource.get("id"));
+		}
+		new ObjectMapper(new YAMLFactory()).writeValue(target, list);
+	}
+
+	/**
+	 * @return The system properties that point the weather adapters to this server, 
+	 * e.g. -Dorg.madiphs.weatherservice.FMI_BASE_URL=http://localhost:8090/fmi
+	 */
+	public String getAdapterSystemProperties()
+	{
+		StringBuilder properties = new StringBuilder();
+		for(String provider:ADAPTER_PROVIDERS)
+		{
+			properties.append(properties.length() > 0 ? " " : "")
+					.append("-Dorg.madiphs.weatherservice.").append(provider).append("_BASE_URL=")
+					.append(this.getUrl()).append("/").append(provider.toLowerCase(Locale.ROOT));
+		}
+		return properties.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> readDataSourceList(File weatherDataSourceList) throws IOException
+	{
+		return new ObjectMapper(new YAMLFactory()).readValue(weatherDataSourceList, LinkedHashMap.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> getDataSources(Map<String, Object> weatherDataSourceList)
+	{
+		return (List<Map<String, Object>>) weatherDataSourceList.get("datasources");
+	}
+
+	/**
+	 * @param recordings The folder with the recorded responses
+	 */
+	public void setRecordings(File recordings)
+	{
+		this.recordings = recordings;
+	}
+
+	public void setLatencyMillis(long latencyMillis)
+	{
+		this.latencyMillis = latencyMillis;
+	}
+
+	/**
+	 * @param jitterMillis The maximum random addition to the latency
+	 */
+	public void setJitterMillis(long jitterMillis)
+	{
+		this.jitterMillis = jitterMillis;
+	}
+
+	/**
+	 * @param errorRate The share of the requests that fail, from 0 to 1
+	 */
+	public void setErrorRate(double errorRate)
+	{
+		this.errorRate = errorRate;
+	}
+
+	public long getRequestCount()
+	{
+		return this.requestCount.sum();
+	}
+
+	/**
+	 * @return The number of injected errors
+	 */
+	public long getErrorCount()
+	{
+		return this.errorCount.sum();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		this.requestCount.increment();
+		try(exchange)
+		{
+			long delay = this.latencyMillis + (this.jitterMillis > 0 ? (long) (this.random.nextDouble() * this.jitterMillis) : 0);
+			if(delay > 0)
+			{
+				Thread.sleep(delay);
+			}
+			if(this.errorRate > 0 && this.random.nextDouble() < this.errorRate)
+			{
+				this.errorCount.increment();
+				this.send(exchange, 503, "text/plain", "Injected error".getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+
+			String path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "");
+			File recording = this.getRecording(path);
+			if(recording != null)
+			{
+				String fileName = recording.getName();
+				String extension = fileName.contains(".") ? fileName.substring(fileName.lastIndexOf('.')) : "";
+				this.send(exchange, 200, CONTENT_TYPES.getOrDefault(extension, "application/octet-stream"), Files.readAllBytes(recording.toPath()));
+				return;
+			}
+
+			Integer[] weatherParameters = this.dataSources.get(path);
+			if(weatherParameters == null)
+			{
+				this.send(exchange, 404, "text/plain", ("No recording or weather data source for " + path).getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			SyntheticWeatherDataGenerator generator;
+			try
+			{
+				generator = this.getGenerator(path, weatherParameters, this.getQuery(exchange));
+				generator.validate();
+			}
+			catch(DateTimeParseException | IllegalArgumentException | NullPointerException ex)
+			{
+				this.send(exchange, 400, "text/plain", ("Invalid request: " + ex.getMessage()).getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, 0);
+			try(OutputStream output = exchange.getResponseBody())
+			{
+				generator.writeTo(output);
+			}
+		}
+		catch(InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return The synthetic data for the request. The seed depends on the data source and location
+	 */
+	private SyntheticWeatherDataGenerator getGenerator(String dataSourceId, Integer[] weatherParameters, Map<String, String> query)
+	{
+		OffsetDateTime timeStart = OffsetDateTime.parse(query.get("timeStart"));
+		OffsetDateTime timeEnd = OffsetDateTime.parse(query.get("timeEnd"));
+		int interval = query.containsKey("interval") ? Integer.parseInt(query.get("interval")) : 3600;
+		String location = query.containsKey("weatherStationId") ? query.get("weatherStationId") 
+				: String.format(Locale.ROOT, "%.3f,%.3f", Double.parseDouble(query.get("longitude")), Double.parseDouble(query.get("latitude")));
+
+		SyntheticWeatherDataGenerator generator = new SyntheticWeatherDataGenerator(this.seed * 31 + (dataSourceId + "|" + location).hashCode());
+		generator.setTimeStart(timeStart.toInstant());
+		generator.setInterval(interval);
+		generator.setRows((int) ((timeEnd.toEpochSecond() - timeStart.toEpochSecond()) / interval + 1));
+		if(query.containsKey("parameters"))
+		{
+			generator.setWeatherParameters(Arrays.stream(query.get("parameters").split(","))
+					.map(p -> Integer.valueOf(p.trim()))
+					.toArray(Integer[]::new));
+		}
+		else
+		{
+			generator.setWeatherParameters(weatherParameters);
+		}
+		if(query.containsKey("longitude") && query.containsKey("latitude"))
+		{
+			generator.setLongitude(Double.parseDouble(query.get("longitude")));
+			generator.setLatitude(Double.parseDouble(query.get("latitude")));
+		}
+		return generator;
+	}
+
+	/**
+	 * @return The parameters in the query string, or in the form data of a POST request
+	 */
+	private Map<String, String> getQuery(HttpExchange exchange) throws IOException
+	{
+		String query = exchange.getRequestURI().getRawQuery();
+		if(exchange.getRequestMethod().equals("POST"))
+		{
+			try(InputStream body = exchange.getRequestBody())
+			{
+				query = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+			}
+		}
+		Map<String, String> parameters = new HashMap<>();
+		if(query != null)
+		{
+			for(String parameter:query.split("&"))
+			{
+				int separator = parameter.indexOf('=');
+				if(separator > 0)
+				{
+					parameters.put(
+							URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+							URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8)
+					);
+				}
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * @return The recorded response for the path, or null if there is none. Only files in the recordings folder are served
+	 */
+	private File getRecording(String path) throws IOException
+	{
+		if(this.recordings == null || path.isEmpty())
+		{
+			return null;
+		}
+		String folder = this.recordings.getCanonicalPath() + File.separator;
+		for(String extension:new String[] {"", ".json", ".xml", ".csv", ".fb"})
+		{
+			File candidate = new File(this.recordings, path + extension);
+			if(candidate.isFile() && candidate.getCanonicalPath().startsWith(folder))
+			{
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body.length);
+		try(OutputStream output = exchange.getResponseBody())
+		{
+			output.write(body);
+		}
+	}
+
+	/**
+	 * @param args --name value pairs
+	 * @return The values by name
+	 */
+	static Map<String, String> getArguments(String[] args)
+	{
+		Map<String, String> arguments = new HashMap<>();
+		for(int i=0; i < args.length - 1; i++)
+		{
+			if(args[i].startsWith("--"))
+			{
+				arguments.put(args[i].substring(2), args[++i]);
+			}
+		}
+		return arguments;
+	}
+
+	/**
+	 * Starts the stand-in, and writes the weather data source list that points to it
+	 * @param args --port (8090), --seed (1), --latency (milliseconds, 0), --jitter (milliseconds, 0), 
+	 * --errorRate (0), --recordings (folder), --datasources (src/main/resources/weather_datasources.yaml), 
+	 * --output (target/standin_weather_datasources.yaml), --adapters (false)
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		Map<String, String> arguments = getArguments(args);
+		UpstreamStandInServer server = new UpstreamStandInServer(
+				Integer.parseInt(arguments.getOrDefault("port", "8090")),
+				Long.parseLong(arguments.getOrDefault("seed", "1"))
+		);
+		server.setLatencyMillis(Long.parseLong(arguments.getOrDefault("latency", "0")));
+		server.setJitterMillis(Long.parseLong(arguments.getOrDefault("jitter", "0")));
+		server.setErrorRate(Double.parseDouble(arguments.getOrDefault("errorRate", "0")));
+		if(arguments.containsKey("recordings"))
+		{
+			server.setRecordings(new File(arguments.get("recordings")));
+		}
+		File dataSourceList = new File(arguments.getOrDefault("datasources", "src/main/resources/weather_datasources.yaml"));
+		File output = new File(arguments.getOrDefault("output", "target/standin_weather_datasources.yaml"));
+		server.addDataSources(dataSourceList);
+		boolean throughAdapters = Boolean.parseBoolean(arguments.getOrDefault("adapters", "false"));
+		server.writeDataSourceList(dataSourceList, output, throughAdapters);
+		server.start();
+		System.out.println("Serving weather data sources at " + server.getUrl());
+		System.out.println("Start the application server with -Dorg.madiphs.weatherservice.DATASOURCE_LIST_FILE=" + output.getAbsolutePath()
+				+ (throughAdapters ? " " + server.getAdapterSystemProperties() : ""));
+	}
+}
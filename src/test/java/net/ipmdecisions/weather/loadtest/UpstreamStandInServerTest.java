@@ -0,0 +1,190 @@
+package net.ipmdecisions.weather.loadtest;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import net.ipmdecisions.weather.entity.WeatherData;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpstreamStandInServerTest {
+
+	private static final String QUERY = "?longitude=10.5&latitude=59.5&timeStart=2022-01-01T00%3A00%3A00%2B01%3A00&timeEnd=2022-01-02T00%3A00%3A00%2B01%3A00&interval=3600";
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	public UpstreamStandInServerTest() {
+		
+	}
+	
+	private HttpResponse<String> get(UpstreamStandInServer server, String pathAndQuery) throws Exception
+	{
+		return this.client.send(HttpRequest.newBuilder(URI.create(server.getUrl() + pathAndQuery)).build(), HttpResponse.BodyHandlers.ofString());
+	}
+	
+	@Test
+	public void testSyntheticWeatherData() throws Exception
+	{
+		System.out.println("testSyntheticWeatherData");
+		UpstreamStandInServer instance = new UpstreamStandInServer(0, 1);
+		instance.addDataSource("test.source", new Integer[] {1002, 2001});
+		instance.start();
+		try
+		{
+			HttpResponse<String> response = this.get(instance, "/test.source/" + QUERY);
+			assertEquals(200, response.statusCode());
+			WeatherData result = WeatherData.getInstanceFromString(response.body());
+			assertEquals(Instant.parse("2021-12-31T23:00:00Z"), result.getTimeStart());
+			assertEquals(Instant.parse("2022-01-01T23:00:00Z"), result.getTimeEnd());
+			assertArrayEquals(new Integer[] {1002, 2001}, result.getWeatherParameters());
+			assertEquals(25, result.getLocationWeatherData().get(0).getLength());
+			assertEquals(10.5, result.getLocationWeatherData().get(0).getLongitude());
+			// The same request gets the same data
+			assertEquals(response.body(), this.get(instance, "/test.source/" + QUERY).body());
+			
+			// Weather station, with form data
+			response = this.client.send(HttpRequest.newBuilder(URI.create(instance.getUrl() + "/test.source"))
+					.header("Content-Type", "application/x-www-form-urlencoded")
+					.POST(HttpRequest.BodyPublishers.ofString("weatherStationId=42&timeStart=2022-01-01T00%3A00%3A00Z&timeEnd=2022-01-10T00%3A00%3A00Z&interval=86400&parameters=1002"))
+					.build(), HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, response.statusCode());
+			result = WeatherData.getInstanceFromString(response.body());
+			assertArrayEquals(new Integer[] {1002}, result.getWeatherParameters());
+			assertEquals(10, result.getLocationWeatherData().get(0).getLength());
+			
+			assertEquals(400, this.get(instance, "/test.source?longitude=10.5&latitude=59.5").statusCode());
+			assertEquals(404, this.get(instance, "/other.source" + QUERY).statusCode());
+			assertEquals(5, instance.getRequestCount());
+		}
+		finally
+		{
+			instance.stop();
+		}
+	}
+	
+	@Test
+	public void testRecordings() throws Exception
+	{
+		System.out.println("testRecordings");
+		Path folder = Files.createTempDirectory("standin");
+		Path recordings = Files.createDirectory(folder.resolve("recordings"));
+		Files.writeString(recordings.resolve("wfs.xml"), "<wfs/>");
+		Files.writeString(folder.resolve("secret.json"), "{}");
+		UpstreamStandInServer instance = new UpstreamStandInServer(0, 1);
+		instance.setRecordings(recordings.toFile());
+		instance.start();
+		try
+		{
+			HttpResponse<String> response = this.get(instance, "/wfs?request=getFeature");
+			assertEquals(200, response.statusCode());
+			assertEquals("<wfs/>", response.body());
+			assertTrue(response.headers().firstValue("Content-Type").get().startsWith("text/xml"));
+			// Only files in the recordings folder
+			assertEquals(404, this.get(instance, "/%2E%2E/secret").statusCode());
+		}
+		finally
+		{
+			instance.stop();
+		}
+	}
+	
+	@Test
+	public void testLatencyAndErrors() throws Exception
+	{
+		System.out.println("testLatencyAndErrors");
+		UpstreamStandInServer instance = new UpstreamStandInServer(0, 1);
+		instance.addDataSource("test.source", new Integer[] {1002});
+		instance.setLatencyMillis(100);
+		instance.start();
+		try
+		{
+			long start = System.nanoTime();
+			assertEquals(200, this.get(instance, "/test.source" + QUERY).statusCode());
+			assertTrue(System.nanoTime() - start >= 100000000L);
+			
+			instance.setLatencyMillis(0);
+			instance.setErrorRate(1);
+			assertEquals(503, this.get(instance, "/test.source" + QUERY).statusCode());
+			assertEquals(1, instance.getErrorCount());
+		}
+		finally
+		{
+			instance.stop();
+		}
+	}
+	
+	@Test
+	public void testWriteDataSourceList() throws Exception
+	{
+		System.out.println("testWriteDataSourceList");
+		Path folder = Files.createTempDirectory("standin");
+		// JSON is also YAML
+		File dataSourceList = Files.writeString(folder.resolve("datasources.yaml"), 
+				"{\"datasources\": [{\"id\": \"test.source\", \"endpoint\": \"https://example.com/\", \"parameters\": {\"common\": [1002], \"optional\": [2001]}}]}"
+		).toFile();
+		File target = folder.resolve("standin.yaml").toFile();
+		UpstreamStandInServer instance = new UpstreamStandInServer(0, 1);
+		instance.addDataSources(dataSourceList);
+		instance.writeDataSourceList(dataSourceList, target);
+		Map<String, Object> written = new ObjectMapper(new YAMLFactory()).readValue(target, Map.class);
+		Map<String, Object> dataSource = ((List<Map<String, Object>>) written.get("datasources")).get(0);
+		assertEquals(instance.getUrl() + "/test.source", dataSource.get("endpoint"));
+		
+		instance.start();
+		try
+		{
+			WeatherData result = WeatherData.getInstanceFromString(this.get(instance, "/test.source" + QUERY).body());
+			assertArrayEquals(new Integer[] {1002, 2001}, result.getWeatherParameters());
+		}
+		finally
+		{
+			instance.stop();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testWriteDataSourceListThroughAdapters() throws Exception
+	{
+		System.out.println("testWriteDataSourceListThroughAdapters");
+		Path folder = Files.createTempDirectory("standin");
+		File dataSourceList = Files.writeString(folder.resolve("datasources.yaml"), 
+				"{\"datasources\": [{\"id\": \"test.source\", \"endpoint\": \"https://example.com/\", \"parameters\": {\"common\": [1002]}}, "
+				+ "{\"id\": \"test.fmi\", \"endpoint\": \"{WEATHER_API_URL}/rest/weatheradapter/fmi/\", \"parameters\": {\"common\": [1002]}}]}"
+		).toFile();
+		Path recordings = Files.createDirectory(folder.resolve("recordings"));
+		Files.writeString(Files.createDirectory(recordings.resolve("fmi")).resolve("wfs.xml"), "<wfs/>");
+		File target = folder.resolve("standin.yaml").toFile();
+		UpstreamStandInServer instance = new UpstreamStandInServer(0, 1);
+		instance.setRecordings(recordings.toFile());
+		instance.addDataSources(dataSourceList);
+		instance.writeDataSourceList(dataSourceList, target, true);
+		List<Map<String, Object>> dataSources = (List<Map<String, Object>>) new ObjectMapper(new YAMLFactory()).readValue(target, Map.class).get("datasources");
+		assertEquals(instance.getUrl() + "/test.source", dataSources.get(0).get("endpoint"));
+		// Served by the weather adapter, which requests the provider's own format from the stand-in
+		assertEquals("{WEATHER_API_URL}/rest/weatheradapter/fmi/", dataSources.get(1).get("endpoint"));
+		assertTrue(instance.getAdapterSystemProperties().contains("-Dorg.madiphs.weatherservice.FMI_BASE_URL=" + instance.getUrl() + "/fmi"));
+		
+		instance.start();
+		try
+		{
+			HttpResponse<String> response = this.get(instance, "/fmi/wfs?request=getFeature&storedquery_id=fmi::observations::weather::multipointcoverage");
+			assertEquals(200, response.statusCode());
+			assertEquals("<wfs/>", response.body());
+		}
+		finally
+		{
+			instance.stop();
+		}
+	}
+}
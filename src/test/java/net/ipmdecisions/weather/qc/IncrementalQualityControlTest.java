@@ -0,0 +1,125 @@
+package net.ipmdecisions.weather.qc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IncrementalQualityControlTest {
+    
+    private static final Integer[] WEATHER_PARAMETERS = {1001, 1002, 1003, 1004, 2001, 3002, 3101, 4002, 5001};
+    private static final Instant TIME_START = Instant.parse("2026-04-01T00:00:00Z");
+    
+    public IncrementalQualityControlTest() {
+    
+    }
+    
+    private WeatherData getWeatherData(List<Double[][]> data, int fromRow, int toRow) {
+        return this.getWeatherData(data, fromRow, toRow, WEATHER_PARAMETERS.length);
+    }
+    
+    /**
+     * @return The given rows and the first columns of the data, as a weather data set with one location per data set
+     */
+    private WeatherData getWeatherData(List<Double[][]> data, int fromRow, int toRow, int columns) {
+        WeatherData weatherData = new WeatherData();
+        weatherData.setWeatherParameters(Arrays.copyOf(WEATHER_PARAMETERS, columns));
+        weatherData.setInterval(3600);
+        weatherData.setTimeStart(TIME_START.plusSeconds(3600L * fromRow));
+        weatherData.setTimeEnd(TIME_START.plusSeconds(3600L * (toRow - 1)));
+        List<LocationWeatherData> locationWeatherData = new ArrayList<>();
+        for (Double[][] locationData : data) {
+            LocationWeatherData locationWeatherDataObject = new LocationWeatherData(10.0, 60.0, 0.0, 0, 0);
+            Double[][] rows = new Double[toRow - fromRow][];
+            for (int row=fromRow; row < toRow; row++) {
+                rows[row - fromRow] = Arrays.copyOf(locationData[row], columns);
+            }
+            locationWeatherDataObject.setData(rows);
+            locationWeatherData.add(locationWeatherDataObject);
+        }
+        weatherData.setLocationWeatherData(locationWeatherData);
+        return weatherData;
+    }
+    
+    @Test
+    public void testSameResultAsFullQualityControl() {
+        System.out.println("testSameResultAsFullQualityControl");
+        Random random = new Random(46);
+        List<Double[][]> data = List.of(
+                QCKernelTest.getRandomData(random, 500, WEATHER_PARAMETERS.length),
+                QCKernelTest.getRandomData(random, 500, WEATHER_PARAMETERS.length)
+        );
+        for (String qcType : new String[] {"RT", "NONRT", "ALL"}) {
+            String state = new IncrementalQualityControl().encode();
+            for (int toRow = 1; toRow <= 500; toRow += random.nextInt(24) + 1) {
+                // The new rows, with some of the tested rows repeated
+                int fromRow = Math.max(0, toRow - 30);
+                IncrementalQualityControl instance = IncrementalQualityControl.decode(state);
+                WeatherData result = instance.getQC(this.getWeatherData(data, fromRow, toRow), qcType);
+                state = instance.encode();
+                
+                WeatherData expResult = new QualityControlMethods().getQC(this.getWeatherData(data, 0, toRow), qcType);
+                for (int location=0; location < data.size(); location++) {
+                    assertArrayEquals(expResult.getLocationWeatherData().get(location).getQC(), result.getLocationWeatherData().get(location).getQC(), qcType + " " + toRow);
+                }
+                assertEquals(TIME_START.plusSeconds(3600L * (toRow - 1)), instance.getTimeEnd());
+            }
+        }
+    }
+    
+    @Test
+    public void testOtherParametersStartOver() {
+        System.out.println("testOtherParametersStartOver");
+        Random random = new Random(47);
+        List<Double[][]> data = Collections.singletonList(QCKernelTest.getRandomData(random, 100, WEATHER_PARAMETERS.length));
+        IncrementalQualityControl instance = new IncrementalQualityControl();
+        instance.getQC(this.getWeatherData(data, 0, 50), "ALL");
+        
+        WeatherData expResult = new QualityControlMethods().getQC(this.getWeatherData(data, 50, 100, 5), "ALL");
+        WeatherData result = instance.getQC(this.getWeatherData(data, 50, 100, 5), "ALL");
+        assertArrayEquals(expResult.getLocationWeatherData().get(0).getQC(), result.getLocationWeatherData().get(0).getQC());
+    }
+    
+    @Test
+    public void testDecodeMalformedState() {
+        System.out.println("testDecodeMalformedState");
+        assertNull(IncrementalQualityControl.decode(new IncrementalQualityControl().encode()).getTimeEnd());
+        assertThrows(IllegalArgumentException.class, () -> IncrementalQualityControl.decode("not a state"));
+        
+        IncrementalQualityControl instance = new IncrementalQualityControl();
+        instance.getQC(this.getWeatherData(Collections.singletonList(new Double[10][WEATHER_PARAMETERS.length]), 0, 10), "ALL");
+        String state = instance.encode();
+        assertThrows(IllegalArgumentException.class, () -> IncrementalQualityControl.decode(state.substring(0, state.length() - 4)));
+    }
+    
+    @Test
+    public void testGapIsTestedAsMissing() {
+        System.out.println("testGapIsTestedAsMissing");
+        Random random = new Random(48);
+        List<Double[][]> data = Collections.singletonList(QCKernelTest.getRandomData(random, 100, WEATHER_PARAMETERS.length));
+        for (String qcType : new String[] {"RT", "NONRT", "ALL"}) {
+            IncrementalQualityControl instance = new IncrementalQualityControl();
+            instance.getQC(this.getWeatherData(data, 0, 50), qcType);
+            // Rows 50-59 never arrive
+            WeatherData result = instance.getQC(this.getWeatherData(data, 60, 100), qcType);
+            
+            Double[][] withGap = data.get(0).clone();
+            for (int row=50; row < 60; row++) {
+                withGap[row] = new Double[WEATHER_PARAMETERS.length];
+            }
+            WeatherData expResult = new QualityControlMethods().getQC(this.getWeatherData(Collections.singletonList(withGap), 0, 100), qcType);
+            assertArrayEquals(expResult.getLocationWeatherData().get(0).getQC(), result.getLocationWeatherData().get(0).getQC(), qcType);
+            assertEquals(TIME_START.plusSeconds(3600L * 99), instance.getTimeEnd());
+        }
+    }
+}
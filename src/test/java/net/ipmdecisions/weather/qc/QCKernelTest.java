@@ -0,0 +1,103 @@
+package net.ipmdecisions.weather.qc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.QCType;
+import net.ipmdecisions.weather.qc.util.QCHelpers;
+import net.ipmdecisions.weather.qc.util.QCTestType;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QCKernelTest {
+    
+    private static final Integer[] WEATHER_PARAMETERS = {1001, 1002, 1003, 1004, 2001, 3002, 3101, 4002, 5001};
+    
+    public QCKernelTest() {
+    
+    }
+    
+    /**
+     * Random data with nulls, repeated values and some large steps, so that all tests fail now and then
+     */
+    static Double[][] getRandomData(Random random, int rows, int columns) {
+        Double[][] data = new Double[rows][columns];
+        for (int row=0; row < rows; row++) {
+            for (int column=0; column < columns; column++) {
+                double draw = random.nextDouble();
+                if (draw < 0.01) {
+                    data[row][column] = null;
+                } else if (draw < 0.5 && row > 0) {
+                    data[row][column] = data[row-1][column];
+                } else if (draw < 0.6) {
+                    data[row][column] = 0.0;
+                } else {
+                    data[row][column] = Math.round((random.nextDouble() * 120 - 40) * 10) / 10.0;
+                }
+            }
+        }
+        return data;
+    }
+    
+    /**
+     * The QC as it was done before the kernel, one test and one column at a time
+     */
+    static Integer[] getQCTestByTest(Integer[] weatherParameters, Double[][] data) throws Exception {
+        LocationWeatherData locationWeatherData = new LocationWeatherData(10.0, 60.0, 0.0, data.length, weatherParameters.length);
+        locationWeatherData.setData(data);
+        Integer[] qcResult = new Integer[weatherParameters.length];
+        for (int index=0; index < weatherParameters.length; index++) {
+            Double[] weatherParameterValues = locationWeatherData.getColumn(index);
+            int weatherParameter = weatherParameters[index];
+            int testResult = QCType.NO_QC;
+            testResult = testResult | QCRTTester.getPrequalificationTestResult(weatherParameterValues, weatherParameter);
+            testResult = testResult | QCRTTester.getIntervalTestResult(weatherParameterValues, weatherParameter);
+            if (QCHelpers.isWeatherParameterHandledByQCTest(weatherParameter, QCTestType.FREEZE)) {
+                testResult = testResult | QCNonRTTester.testForFreezeErrors(weatherParameterValues, weatherParameter);
+            }
+            if (QCHelpers.isWeatherParameterHandledByQCTest(weatherParameter, QCTestType.STEP)) {
+                testResult = testResult | QCNonRTTester.getStepTestResult(weatherParameterValues, weatherParameter);
+            }
+            qcResult[index] = testResult;
+        }
+        Integer[] qcResultLogical = QCRTTester.testForLogicalErrors(data, weatherParameters, qcResult);
+        for (int index=0; index < qcResult.length; index++) {
+            qcResult[index] = qcResult[index] | qcResultLogical[index];
+        }
+        return qcResult;
+    }
+    
+    @Test
+    public void testApplyGivesSameResultAsSeparateTests() throws Exception {
+        System.out.println("testApplyGivesSameResultAsSeparateTests");
+        Random random = new Random(42);
+        QCKernel instance = new QCKernel(WEATHER_PARAMETERS, true, true);
+        int failures = 0;
+        for (int dataset=0; dataset < 200; dataset++) {
+            Double[][] data = getRandomData(random, 1 + random.nextInt(48), WEATHER_PARAMETERS.length);
+            Integer[] expResult = getQCTestByTest(WEATHER_PARAMETERS, data);
+            Integer[] qcResult = new Integer[WEATHER_PARAMETERS.length];
+            Arrays.fill(qcResult, QCType.NO_QC);
+            Integer[] result = instance.apply(data, qcResult);
+            assertArrayEquals(expResult, result, "Dataset " + dataset);
+            for (Integer qc : result) {
+                failures += qc != QCType.NO_QC ? 1 : 0;
+            }
+        }
+        // Make sure the data actually trigger the tests
+        assertEquals(true, failures > 0);
+    }
+    
+    @Test
+    public void testApplyOnlyRealTime() {
+        System.out.println("testApplyOnlyRealTime");
+        // A frozen air temperature is not tested in real time QC, but the values outside the interval are
+        Double[][] data = {{5.0, 60.0}, {5.0, 60.0}, {5.0, 60.0}, {5.0, 60.0}, {5.0, 60.0}, {5.0, 60.0}, {5.0, null}};
+        QCKernel instance = new QCKernel(new Integer[] {1001, 1002}, true, false);
+        assertArrayEquals(new Integer[] {0, 12}, instance.apply(data, new Integer[] {0, 0}));
+        instance = new QCKernel(new Integer[] {1001, 1002}, false, true);
+        assertArrayEquals(new Integer[] {64, 64}, instance.apply(data, new Integer[] {0, 0}));
+    }
+}
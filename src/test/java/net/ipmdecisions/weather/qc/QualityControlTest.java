@@ -7,8 +7,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import net.ipmdecisions.weather.entity.LocationWeatherData;
 import net.ipmdecisions.weather.entity.QCType;
 
@@ -758,4 +762,43 @@ public class QualityControlTest {
 
         assertArrayEquals(expResult,result);
     }
+
+    @Test
+    public void testParallelQualityControl() throws Exception {
+        QualityControlTest.printTestName();
+
+        Integer[] weatherParameters = {1001, 1002, 1003, 1004, 2001, 3002, 3101, 4002, 5001};
+        // Large enough to be controlled in parallel
+        int rows = (int) (QualityControlMethods.PARALLEL_QC_MIN_VALUES / weatherParameters.length);
+        Random random = new Random(42);
+        WeatherData sequentialData = new WeatherData();
+        sequentialData.setWeatherParameters(weatherParameters);
+        WeatherData parallelData = new WeatherData();
+        parallelData.setWeatherParameters(weatherParameters);
+        List<LocationWeatherData> sequentialLocations = new ArrayList<>();
+        List<LocationWeatherData> parallelLocations = new ArrayList<>();
+        for (int location=0; location < 4; location++) {
+            Double[][] data = QCKernelTest.getRandomData(random, rows, weatherParameters.length);
+            LocationWeatherData sequentialLocation = new LocationWeatherData(10.0 + location, 60.0, 0.0, 0, 0);
+            sequentialLocation.setData(data);
+            sequentialLocations.add(sequentialLocation);
+            LocationWeatherData parallelLocation = new LocationWeatherData(10.0 + location, 60.0, 0.0, 0, 0);
+            parallelLocation.setData(data);
+            parallelLocations.add(parallelLocation);
+        }
+        sequentialData.setLocationWeatherData(sequentialLocations);
+        parallelData.setLocationWeatherData(parallelLocations);
+
+        new QualityControlMethods().getQC(sequentialData, "ALL");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            new QualityControlMethods(pool).getQC(parallelData, "ALL");
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int location=0; location < 4; location++) {
+            assertArrayEquals(sequentialLocations.get(location).getQC(), parallelLocations.get(location).getQC());
+        }
+    }
 }
@@ -0,0 +1,149 @@
+package net.ipmdecisions.weather.qc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.QCType;
+import net.ipmdecisions.weather.entity.WeatherData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SpatialQCTesterTest {
+    
+    private static final int ROWS = 240;
+    
+    public SpatialQCTesterTest() {
+    
+    }
+    
+    /**
+     * A daily temperature cycle, plus noise
+     */
+    private double[] getTemperatures(Random random, double offset) {
+        double[] values = new double[ROWS];
+        for (int row=0; row < ROWS; row++) {
+            values[row] = 10 + 5 * Math.sin(row * 2 * Math.PI / 24) + random.nextGaussian() * 0.3 + offset;
+        }
+        return values;
+    }
+    
+    private double[][] getNeighbors(Random random) {
+        double[][] neighbors = new double[5][];
+        for (int i=0; i < neighbors.length; i++) {
+            neighbors[i] = this.getTemperatures(random, random.nextGaussian() * 0.5);
+        }
+        return neighbors;
+    }
+    
+    @Test
+    public void testGetSpatialTestResult() {
+        System.out.println("testGetSpatialTestResult");
+        Random random = new Random(47);
+        SpatialQCTester instance = new SpatialQCTester(3, 5, 3, 0.5, 5, 0.0065);
+        
+        assertEquals(QCType.NO_QC, instance.getSpatialTestResult(this.getTemperatures(random, 0), this.getNeighbors(random), 0.5));
+        
+        // Spike
+        double[] values = this.getTemperatures(random, 0);
+        values[100] += 15;
+        assertEquals(QCType.FAILED_SPATIAL_TEST, instance.getSpatialTestResult(values, this.getNeighbors(random), 0.5));
+        
+        // Offset, which the single series tests do not catch
+        assertEquals(QCType.FAILED_SPATIAL_TEST, instance.getSpatialTestResult(this.getTemperatures(random, 4), this.getNeighbors(random), 0.5));
+        
+        // Drift
+        values = this.getTemperatures(random, 0);
+        for (int row=0; row < ROWS; row++) {
+            values[row] += row * 0.05;
+        }
+        assertEquals(QCType.FAILED_SPATIAL_TEST, instance.getSpatialTestResult(values, this.getNeighbors(random), 0.5));
+        
+        // Too few neighbor values
+        double[][] neighbors = this.getNeighbors(random);
+        for (int i=0; i < 3; i++) {
+            Arrays.fill(neighbors[i], Double.NaN);
+        }
+        assertEquals(QCType.NO_QC, instance.getSpatialTestResult(this.getTemperatures(random, 4), neighbors, 0.5));
+    }
+    
+    private WeatherData getWeatherData(Integer[] weatherParameters, Instant timeStart, double[]... columns) {
+        return this.getWeatherData(0.0, weatherParameters, timeStart, columns);
+    }
+    
+    private WeatherData getWeatherData(Double altitude, Integer[] weatherParameters, Instant timeStart, double[]... columns) {
+        WeatherData weatherData = new WeatherData();
+        weatherData.setWeatherParameters(weatherParameters);
+        weatherData.setInterval(3600);
+        weatherData.setTimeStart(timeStart);
+        weatherData.setTimeEnd(timeStart.plusSeconds(3600L * (columns[0].length - 1)));
+        LocationWeatherData locationWeatherData = new LocationWeatherData(10.0, 60.0, altitude, columns[0].length, columns.length);
+        for (int row=0; row < columns[0].length; row++) {
+            for (int column=0; column < columns.length; column++) {
+                locationWeatherData.getData()[row][column] = columns[column][row];
+            }
+        }
+        List<LocationWeatherData> locationWeatherDataList = new ArrayList<>();
+        locationWeatherDataList.add(locationWeatherData);
+        weatherData.setLocationWeatherData(locationWeatherDataList);
+        return weatherData;
+    }
+    
+    @Test
+    public void testGetQC() {
+        System.out.println("testGetQC");
+        Random random = new Random(48);
+        Instant timeStart = Instant.parse("2026-06-01T00:00:00Z");
+        // Temperature with an offset, and precipitation, which is not tested
+        double[] precipitation = new double[ROWS];
+        precipitation[10] = 30;
+        WeatherData weatherData = this.getWeatherData(new Integer[] {1002, 2001}, timeStart, this.getTemperatures(random, 4), precipitation);
+        weatherData.getLocationWeatherData().get(0).setQC(new Integer[] {QCType.OK_FROM_IPM_DECISIONS, QCType.OK_FROM_IPM_DECISIONS});
+        
+        List<WeatherData> neighbors = new ArrayList<>();
+        for (int i=0; i < 4; i++) {
+            // The neighbors start earlier, and have the parameters in another order
+            double[] temperatures = new double[ROWS + 24];
+            System.arraycopy(this.getTemperatures(random, 0), 0, temperatures, 24, ROWS);
+            neighbors.add(this.getWeatherData(new Integer[] {2001, 1002}, timeStart.minusSeconds(24 * 3600), new double[ROWS + 24], temperatures));
+        }
+        
+        Integer[] result = new SpatialQCTester(3, 5, 3, 0.5, 5, 0.0065).getQC(weatherData, 0, neighbors);
+        assertArrayEquals(new Integer[] {QCType.FAILED_SPATIAL_TEST, QCType.OK_FROM_IPM_DECISIONS}, result);
+        
+        // Not enough neighbors
+        weatherData.getLocationWeatherData().get(0).setQC(new Integer[] {QCType.OK_FROM_IPM_DECISIONS, QCType.OK_FROM_IPM_DECISIONS});
+        result = new SpatialQCTester(3, 5, 3, 0.5, 5, 0.0065).getQC(weatherData, 0, neighbors.subList(0, 2));
+        assertArrayEquals(new Integer[] {QCType.OK_FROM_IPM_DECISIONS, QCType.OK_FROM_IPM_DECISIONS}, result);
+    }
+    
+    @Test
+    public void testGetQCAdjustsForAltitude() {
+        System.out.println("testGetQCAdjustsForAltitude");
+        Random random = new Random(49);
+        Instant timeStart = Instant.parse("2026-06-01T00:00:00Z");
+        // The neighbors are 600 m higher up, and about 4 degrees colder
+        List<WeatherData> neighbors = new ArrayList<>();
+        for (int i=0; i < 4; i++) {
+            neighbors.add(this.getWeatherData(600.0, new Integer[] {1002}, timeStart, this.getTemperatures(random, -3.9)));
+        }
+        WeatherData weatherData = this.getWeatherData(0.0, new Integer[] {1002}, timeStart, this.getTemperatures(random, 0));
+        weatherData.getLocationWeatherData().get(0).setQC(new Integer[] {QCType.OK_FROM_IPM_DECISIONS});
+        Integer[] result = new SpatialQCTester(3, 5, 3, 0.5, 5, 0.0065).getQC(weatherData, 0, neighbors);
+        assertArrayEquals(new Integer[] {QCType.OK_FROM_IPM_DECISIONS}, result);
+        
+        // Without the lapse rate, the location looks like it has an offset
+        result = new SpatialQCTester(3, 5, 3, 0.5, 5, 0).getQC(weatherData, 0, neighbors);
+        assertArrayEquals(new Integer[] {QCType.FAILED_SPATIAL_TEST}, result);
+        
+        // The altitude of the location is unknown, so the temperatures are not tested
+        weatherData.getLocationWeatherData().get(0).setAltitude(null);
+        weatherData.getLocationWeatherData().get(0).setQC(new Integer[] {QCType.OK_FROM_IPM_DECISIONS});
+        result = new SpatialQCTester(3, 5, 3, 0.5, 5, 0).getQC(weatherData, 0, neighbors);
+        assertArrayEquals(new Integer[] {QCType.OK_FROM_IPM_DECISIONS}, result);
+    }
+}
@@ -0,0 +1,99 @@
+package net.ipmdecisions.weather.qc;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import net.ipmdecisions.weather.entity.QCType;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.FileUtils;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StreamingQualityControlTest {
+    
+    public StreamingQualityControlTest() {
+    
+    }
+    
+    private WeatherData getStreamedQC(String weatherDataJson, String qcType) throws Exception {
+        StreamingQualityControl instance = new StreamingQualityControl(new ByteArrayInputStream(weatherDataJson.getBytes(StandardCharsets.UTF_8)), qcType);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        instance.writeTo(output);
+        return new ObjectMapper().readValue(output.toByteArray(), WeatherData.class);
+    }
+    
+    @Test
+    public void testSameResultAsQualityControlMethods() throws Exception {
+        System.out.println("testSameResultAsQualityControlMethods");
+        FileUtils fileUtils = new FileUtils();
+        for (String file : new String[] {"/weatherdata_no_errors.json", "/weatherdata_rt_errors.json", "/weatherdata_nonrt_errors.json"}) {
+            String weatherDataJson = fileUtils.getStringFromFileInApp(file);
+            for (String qcType : new String[] {"RT", "NONRT", "ALL"}) {
+                WeatherData expResult = new QualityControlMethods().getQC(weatherDataJson, qcType);
+                WeatherData result = this.getStreamedQC(weatherDataJson, qcType);
+                assertArrayEquals(expResult.getWeatherParameters(), result.getWeatherParameters());
+                assertEquals(expResult.getLocationWeatherData().size(), result.getLocationWeatherData().size());
+                for (int i=0; i < expResult.getLocationWeatherData().size(); i++) {
+                    assertArrayEquals(expResult.getLocationWeatherData().get(i).getQC(), result.getLocationWeatherData().get(i).getQC(), file + " " + qcType);
+                    assertArrayEquals(expResult.getLocationWeatherData().get(i).getData(), result.getLocationWeatherData().get(i).getData());
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testWeatherParametersMustComeFirst() throws Exception {
+        System.out.println("testWeatherParametersMustComeFirst");
+        String weatherDataJson = "{\"locationWeatherData\":[{\"longitude\":10.0,\"latitude\":60.0,\"altitude\":0.0,\"data\":[[1.0]]}],\"weatherParameters\":[1002]}";
+        assertThrows(JsonParseException.class, () -> new StreamingQualityControl(new ByteArrayInputStream(weatherDataJson.getBytes(StandardCharsets.UTF_8)), null));
+    }
+    
+    private JsonNode getStreamedQCTree(String weatherDataJson) throws Exception {
+        StreamingQualityControl instance = new StreamingQualityControl(new ByteArrayInputStream(weatherDataJson.getBytes(StandardCharsets.UTF_8)), null);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        instance.writeTo(output);
+        return new ObjectMapper().readTree(output.toByteArray());
+    }
+    
+    @Test
+    public void testNullData() throws Exception {
+        System.out.println("testNullData");
+        //The location after the one without data must be tested as usual
+        String weatherDataJson = "{\"weatherParameters\":[1002],\"locationWeatherData\":["
+                + "{\"longitude\":10.0,\"latitude\":60.0,\"altitude\":0.0,\"data\":null,\"qc\":[0]},"
+                + "{\"longitude\":11.0,\"latitude\":60.0,\"altitude\":0.0,\"data\":[[1.0],[100.0]]}"
+                + "],\"interval\":3600}";
+        JsonNode result = this.getStreamedQCTree(weatherDataJson);
+        assertEquals(2, result.get("locationWeatherData").size());
+        assertTrue(result.get("locationWeatherData").get(0).get("data").isNull());
+        assertEquals(QCType.OK_FROM_IPM_DECISIONS.intValue(), result.get("locationWeatherData").get(0).get("qc").get(0).asInt());
+        assertEquals(11.0, result.get("locationWeatherData").get(1).get("longitude").asDouble());
+        assertEquals(2, result.get("locationWeatherData").get(1).get("data").size());
+        assertTrue((result.get("locationWeatherData").get(1).get("qc").get(0).asInt() & QCType.FAILED_INTERVAL_TEST) != 0);
+        assertEquals(3600, result.get("interval").asInt());
+    }
+    
+    @Test
+    public void testNullQC() throws Exception {
+        System.out.println("testNullQC");
+        String weatherDataJson = "{\"weatherParameters\":[1002],\"locationWeatherData\":["
+                + "{\"longitude\":10.0,\"latitude\":60.0,\"altitude\":0.0,\"qc\":null,\"data\":[[1.0],null,[100.0]]},"
+                + "{\"longitude\":11.0,\"latitude\":60.0,\"altitude\":0.0,\"data\":[[1.0]],\"qc\":null}"
+                + "]}";
+        JsonNode result = this.getStreamedQCTree(weatherDataJson);
+        assertEquals(2, result.get("locationWeatherData").size());
+        JsonNode first = result.get("locationWeatherData").get(0);
+        assertEquals(3, first.get("data").size());
+        assertTrue(first.get("data").get(1).isNull());
+        assertEquals(1, first.get("qc").size());
+        assertTrue((first.get("qc").get(0).asInt() & QCType.FAILED_INTERVAL_TEST) != 0);
+        assertEquals(QCType.OK_FROM_IPM_DECISIONS.intValue(), result.get("locationWeatherData").get(1).get("qc").get(0).asInt());
+    }
+}
@@ -0,0 +1,85 @@
+package net.ipmdecisions.weather.qc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ThresholdDataTest {
+    
+    public ThresholdDataTest() {
+    
+    }
+    
+    @Test
+    public void testGetThreshold() {
+        System.out.println("testGetThreshold");
+        Threshold airTemperature = ThresholdData.getThreshold(1002);
+        assertEquals(-55.0, airTemperature.getLowerLimit());
+        assertEquals(50.0, airTemperature.getUpperLimit());
+        assertEquals(7.5, airTemperature.getStepTestThreshold());
+        assertEquals("absolute", airTemperature.getStepTestThresholdType());
+        assertNull(airTemperature.getFreezeTestThreshold());
+        // All parameters in a group share the same thresholds
+        assertSame(airTemperature, ThresholdData.getThreshold(1001));
+        
+        assertEquals(12.0, ThresholdData.getThreshold(5001).getValue("freeze_test_threshold"));
+        assertNull(ThresholdData.getThreshold(-1));
+        assertThrows(UnsupportedOperationException.class, () -> ThresholdData.getThresholds().clear());
+    }
+    
+    @Test
+    public void testGetThresholdDataObject() {
+        System.out.println("testGetThresholdDataObject");
+        ThresholdData instance = new ThresholdData();
+        assertEquals(-55.0, instance.getThresholdDataObject("1002").getDouble("lower_limit"));
+        assertEquals("Air temperature", instance.getThresholdDataObject("1002").getString("parameter"));
+        assertEquals("{}", instance.getThresholdDataObject("not a parameter").toString());
+        
+        ThresholdData.reload();
+        assertEquals(50.0, ThresholdData.getThreshold(1002).getUpperLimit());
+    }
+    
+    @Test
+    public void testReloadFromFile() throws IOException {
+        System.out.println("testReloadFromFile");
+        Path thresholdFile = Files.createTempFile("thresholddata", ".json");
+        Files.writeString(thresholdFile, 
+                "[{\"id_array\":[\"1002\"],\"parameter\":\"Air temperature\",\"lower_limit\":-40.0,\"upper_limit\":40.0}]", 
+                StandardCharsets.UTF_8);
+        System.setProperty("org.madiphs.weatherservice.QC_THRESHOLD_FILE", thresholdFile.toString());
+        try {
+            ThresholdData.reload();
+            assertEquals(40.0, ThresholdData.getThreshold(1002).getUpperLimit());
+            
+            // A changed file is read again
+            Files.writeString(thresholdFile, 
+                    "[{\"id_array\":[\"1002\"],\"parameter\":\"Air temperature\",\"lower_limit\":-40.0,\"upper_limit\":45.0}]", 
+                    StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(thresholdFile, FileTime.fromMillis(Files.getLastModifiedTime(thresholdFile).toMillis() + 2000));
+            ThresholdData.reloadIfChanged();
+            assertEquals(45.0, ThresholdData.getThreshold(1002).getUpperLimit());
+            
+            // A broken file does not replace the thresholds
+            Files.writeString(thresholdFile, "[{\"id_array\":", StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(thresholdFile, FileTime.fromMillis(Files.getLastModifiedTime(thresholdFile).toMillis() + 4000));
+            ThresholdData.reloadIfChanged();
+            assertEquals(45.0, ThresholdData.getThreshold(1002).getUpperLimit());
+            Files.writeString(thresholdFile, "", StandardCharsets.UTF_8);
+            ThresholdData.reload();
+            assertEquals(45.0, ThresholdData.getThreshold(1002).getUpperLimit());
+        } finally {
+            System.clearProperty("org.madiphs.weatherservice.QC_THRESHOLD_FILE");
+            ThresholdData.reload();
+        }
+        assertEquals(50.0, ThresholdData.getThreshold(1002).getUpperLimit());
+    }
+}
@@ -174,7 +174,42 @@ public class QCHelpersTest {
         };
         
         assertArrayEquals(expResult, result);
-    } 
-    
-}
+    }
+
+    @Test
+    public void testWeatherParameterHandledByQCTest() throws Exception{
+        
+        System.out.println("testWeatherParameterHandledByQCTest");
+        
+        assertEquals(true, QCHelpers.isWeatherParameterHandledByQCTest(1002, QCTestType.LOGICAL));
+        assertEquals(true, QCHelpers.isWeatherParameterHandledByQCTest(1112, QCTestType.LOGICAL));
+        assertEquals(true, QCHelpers.isWeatherParameterHandledByQCTest(4003, QCTestType.LOGICAL));
+        assertEquals(false, QCHelpers.isWeatherParameterHandledByQCTest(2001, QCTestType.LOGICAL));
+        assertEquals(false, QCHelpers.isWeatherParameterHandledByQCTest(2001, QCTestType.STEP));
+        assertEquals(false, QCHelpers.isWeatherParameterHandledByQCTest(3101, QCTestType.STEP));
+        assertEquals(false, QCHelpers.isWeatherParameterHandledByQCTest(3101, QCTestType.FREEZE));
+        assertEquals(true, QCHelpers.isWeatherParameterHandledByQCTest(2001, QCTestType.FREEZE));
+        assertEquals(true, QCHelpers.isWeatherParameterHandledByQCTest(5001, QCTestType.INTERVAL));
+        // Outside the compiled table
+        assertEquals(false, QCHelpers.isWeatherParameterHandledByQCTest(10001, QCTestType.LOGICAL));
+        assertEquals(true, QCHelpers.isWeatherParameterHandledByQCTest(-1, QCTestType.STEP));
+        
+        assertEquals(true, QCHelpers.isWeatherParameterPrecipitation(2001));
+        assertEquals(false, QCHelpers.isWeatherParameterPrecipitation(3101));
+        assertEquals(false, QCHelpers.isWeatherParameterPrecipitation(null));
+    }
 
+    @Test
+    public void testLogicalTuplesAreMemoizedAsCopies() throws Exception{
+        
+        System.out.println("testLogicalTuplesAreMemoizedAsCopies");
+        
+        Integer[] weatherParameters = {1002, 1003, 1004};
+        Integer[][] result = QCHelpers.getLogicalTuplesFromWeatherParameters(weatherParameters);
+        result[0][0] = null;
+        weatherParameters[0] = 5001;
+        
+        Integer[][] expResult = {{0, 1, 2}};
+        assertArrayEquals(expResult, QCHelpers.getLogicalTuplesFromWeatherParameters(new Integer[] {1002, 1003, 1004}));
+    }
+}
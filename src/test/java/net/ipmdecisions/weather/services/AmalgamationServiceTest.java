@@ -0,0 +1,133 @@
+package net.ipmdecisions.weather.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import net.ipmdecisions.weather.amalgamation.Deadline;
+import net.ipmdecisions.weather.amalgamation.SourcePlan;
+import net.ipmdecisions.weather.controller.AmalgamationBean;
+import net.ipmdecisions.weather.controller.AmalgamationCacheBean;
+import net.ipmdecisions.weather.controller.RawDataCacheBean;
+import net.ipmdecisions.weather.controller.SourcePlanBean;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.util.StageTimings;
+import net.ipmdecisions.weather.util.SyntheticWeatherDataGenerator;
+
+public class AmalgamationServiceTest {
+
+	/** The missing sources of each amalgamation, in order. The amalgamation is counted */
+	private List<String> missingSources;
+	private int amalgamations;
+	private AmalgamationService instance;
+
+	public AmalgamationServiceTest() {
+
+	}
+
+	@BeforeEach
+	public void setUp() throws IOException
+	{
+		this.missingSources = new ArrayList<>();
+		this.amalgamations = 0;
+		// The sources are simulated: Every amalgamation returns the same data, but may be missing a source
+		this.instance = new AmalgamationService() {
+			@Override
+			Response amalgamate(Double longitude, Double latitude, String timeStartStr, String timeEndStr, Integer interval, String parametersStr,
+					JsonNode privateWeatherStationInfo, Instant since, StageTimings timings, Deadline deadline, boolean streamed)
+			{
+				String missing = missingSources.get(amalgamations++);
+				SyntheticWeatherDataGenerator generator = new SyntheticWeatherDataGenerator(1);
+				generator.setRows(24);
+				Response response = Response.ok().entity(generator.getWeatherData()).build();
+				return missing == null ? response
+						: Response.fromResponse(response).header(AmalgamationService.MISSING_SOURCES_HEADER, missing).build();
+			}
+		};
+		this.instance.amalgamationCacheBean = new AmalgamationCacheBean();
+		this.instance.amalgamationBean = Mockito.mock(AmalgamationBean.class);
+		Mockito.when(this.instance.amalgamationBean.getTimeZoneForLocation(any(), any())).thenReturn(ZoneOffset.UTC);
+		this.instance.rawDataCacheBean = Mockito.mock(RawDataCacheBean.class);
+		Mockito.when(this.instance.rawDataCacheBean.getMaxSettlementDays()).thenReturn(2L);
+		this.instance.sourcePlanBean = Mockito.mock(SourcePlanBean.class);
+		Mockito.when(this.instance.sourcePlanBean.getSourcePlan(any(), any(), any(), any()))
+				.thenReturn(new SourcePlan(10.78, 59.66, ZoneOffset.UTC, List.of(), 3600));
+	}
+
+	private Response amalgamateGET(String sinceStr)
+	{
+		return this.amalgamateGET(10.78, sinceStr);
+	}
+
+	private Response amalgamateGET(Double longitude, String sinceStr)
+	{
+		return this.instance.amalgamateGET(longitude, 59.66, "2015-01-01", "2015-01-02", 3600, "1002", sinceStr, null, null,
+				new StageTimings((stage, nanos) -> {}), null);
+	}
+
+	@Test
+	public void testCompleteResultIsCached()
+	{
+		System.out.println("testCompleteResultIsCached");
+		this.missingSources.add(null);
+		Response response = this.amalgamateGET(null);
+		assertEquals(200, response.getStatus());
+		assertNotNull(response.getHeaderString(AmalgamationService.CURSOR_HEADER));
+		response = this.amalgamateGET(null);
+		assertEquals(200, response.getStatus());
+		assertEquals(1, this.amalgamations);
+	}
+
+	@Test
+	public void testResultWithFailedSourceIsNotCached()
+	{
+		System.out.println("testResultWithFailedSourceIsNotCached");
+		// One source fails the first time, without any time budget
+		this.missingSources.add("net.ipmdecisions.weather.fmi");
+		this.missingSources.add(null);
+		Response response = this.amalgamateGET(null);
+		assertEquals(200, response.getStatus());
+		assertEquals("net.ipmdecisions.weather.fmi", response.getHeaderString(AmalgamationService.MISSING_SOURCES_HEADER));
+		assertNull(response.getHeaderString(AmalgamationService.CURSOR_HEADER));
+		// The next request fetches again
+		response = this.amalgamateGET(null);
+		assertEquals(2, this.amalgamations);
+		assertNull(response.getHeaderString(AmalgamationService.MISSING_SOURCES_HEADER));
+		assertNotNull(response.getHeaderString(AmalgamationService.CURSOR_HEADER));
+	}
+
+	@Test
+	public void testIncrementalResultWithFailedSourceHasNoCursor()
+	{
+		System.out.println("testIncrementalResultWithFailedSourceHasNoCursor");
+		this.missingSources.add("net.ipmdecisions.weather.fmi");
+		Response response = this.amalgamateGET("2015-01-01");
+		assertEquals(200, response.getStatus());
+		assertNull(response.getHeaderString(AmalgamationService.CURSOR_HEADER));
+	}
+
+	@Test
+	public void testCachedResultHasRequestedCoordinates()
+	{
+		System.out.println("testCachedResultHasRequestedCoordinates");
+		this.missingSources.add(null);
+		this.amalgamateGET(10.78, null);
+		// Within the rounding of the cache key
+		Response response = this.amalgamateGET(10.7801, null);
+		assertEquals(1, this.amalgamations);
+		assertEquals(10.7801, ((WeatherData) response.getEntity()).getLocationWeatherData().get(0).getLongitude());
+	}
+}
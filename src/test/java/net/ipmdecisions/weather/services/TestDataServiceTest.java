@@ -0,0 +1,30 @@
+package net.ipmdecisions.weather.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.ws.rs.core.Response;
+
+public class TestDataServiceTest {
+
+	public TestDataServiceTest() {
+
+	}
+
+	@Test
+	public void testSyntheticWeatherDataSize()
+	{
+		System.out.println("testSyntheticWeatherDataSize");
+		TestDataService instance = new TestDataService();
+		Response response = instance.getSyntheticWeatherData(1L, null, 24, null, "1002,2001", 10, null, null, null, null);
+		assertEquals(200, response.getStatus());
+		response = instance.getSyntheticWeatherData(1L, null, 8760, null, null, 100, null, null, null, null);
+		assertEquals(400, response.getStatus());
+		// rows * parameters * locations must not wrap around
+		response = instance.getSyntheticWeatherData(1L, null, Integer.MAX_VALUE, null, "1001,1002,1003,1004", Integer.MAX_VALUE, null, null, null, null);
+		assertEquals(400, response.getStatus());
+		response = instance.getSyntheticWeatherData(1L, null, -24, null, null, 10, null, null, null, null);
+		assertEquals(400, response.getStatus());
+	}
+}
@@ -0,0 +1,49 @@
+package net.ipmdecisions.weather.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistogramTest {
+
+	public HistogramTest() {
+		
+	}
+	
+	@Test
+	public void testWrite()
+	{
+		System.out.println("testWrite");
+		Histogram instance = new Histogram(new double[]{0.1, 1});
+		instance.observe(50_000_000L);
+		instance.observe(100_000_000L);
+		instance.observe(500_000_000L);
+		instance.observe(5_000_000_000L);
+		assertEquals(4, instance.getCount());
+		
+		StringBuilder out = new StringBuilder();
+		instance.write(out, "test_seconds", "stage=\"fusion\"");
+		assertEquals(
+				"test_seconds_bucket{stage=\"fusion\",le=\"0.1\"} 2\n"
+				+ "test_seconds_bucket{stage=\"fusion\",le=\"1.0\"} 3\n"
+				+ "test_seconds_bucket{stage=\"fusion\",le=\"+Inf\"} 4\n"
+				+ "test_seconds_sum{stage=\"fusion\"} 5.650000\n"
+				+ "test_seconds_count{stage=\"fusion\"} 4\n",
+				out.toString()
+		);
+	}
+	
+	@Test
+	public void testStageTimings()
+	{
+		System.out.println("testStageTimings");
+		Histogram histogram = new Histogram();
+		StageTimings instance = new StageTimings((stage, nanos) -> histogram.observe(nanos));
+		long start = System.nanoTime();
+		instance.record("fetch", start);
+		instance.record("fusion", start);
+		instance.record("fetch", start);
+		assertEquals(3, histogram.getCount());
+		assertTrue(instance.getServerTiming().matches("fetch;dur=\\d+\\.\\d, fusion;dur=\\d+\\.\\d"), instance.getServerTiming());
+	}
+}
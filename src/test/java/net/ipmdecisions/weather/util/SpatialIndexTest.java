@@ -0,0 +1,80 @@
+package net.ipmdecisions.weather.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Random;
+
+public class SpatialIndexTest {
+
+	public SpatialIndexTest() {
+		
+	}
+	
+	@Test
+	public void testGetDistance()
+	{
+		System.out.println("testGetDistance");
+		// Oslo - Bergen is approx. 305 km
+		assertEquals(305000, SpatialIndex.getDistance(10.75, 59.91, 5.32, 60.39), 2000);
+		assertEquals(0, SpatialIndex.getDistance(10.75, 59.91, 10.75, 59.91), 0.001);
+	}
+	
+	@Test
+	public void testGetNearest()
+	{
+		System.out.println("testGetNearest");
+		SpatialIndex<String> instance = new SpatialIndex<>(0.5);
+		instance.put("a", "a", 10.0, 60.0);
+		instance.put("b", "b", 10.1, 60.0);
+		instance.put("c", "c", 10.3, 60.0);
+		instance.put("d", "d", 15.0, 60.0);
+		
+		assertEquals(List.of("b", "a", "c"), instance.getNearest(10.12, 60.0, 5, 50000, item -> true));
+		assertEquals(List.of("b", "a"), instance.getNearest(10.12, 60.0, 2, 50000, item -> true));
+		assertEquals(List.of("b", "c"), instance.getNearest(10.12, 60.0, 5, 50000, item -> ! item.equals("a")));
+		// b is about 1.1 km away
+		assertEquals(List.of("a", "c"), instance.getNearest(10.12, 60.0, 5, 2000, 50000, item -> true));
+		
+		// Moving and removing
+		instance.put("a", "a", 15.1, 60.0);
+		assertEquals(List.of("b", "c"), instance.getNearest(10.12, 60.0, 5, 50000, item -> true));
+		assertEquals("d", instance.remove("d"));
+		assertNull(instance.remove("d"));
+		assertEquals(List.of("a"), instance.getNearest(15.0, 60.0, 5, 50000, item -> true));
+		assertEquals(3, instance.size());
+	}
+	
+	@Test
+	public void testSameResultAsFullSearch()
+	{
+		System.out.println("testSameResultAsFullSearch");
+		Random random = new Random(47);
+		SpatialIndex<double[]> instance = new SpatialIndex<>(0.5);
+		double[][] points = new double[2000][];
+		for(int i=0; i < points.length; i++)
+		{
+			points[i] = new double[] {random.nextDouble() * 20 - 10, random.nextDouble() * 80 - 40 + (i % 2) * 40};
+			instance.put(String.valueOf(i), points[i], points[i][0], points[i][1]);
+		}
+		for(int query=0; query < 50; query++)
+		{
+			double longitude = random.nextDouble() * 20 - 10;
+			double latitude = random.nextDouble() * 170 - 85;
+			int expected = 0;
+			for(double[] point:points)
+			{
+				expected += SpatialIndex.getDistance(longitude, latitude, point[0], point[1]) <= 200000 ? 1 : 0;
+			}
+			List<double[]> result = instance.getNearest(longitude, latitude, Integer.MAX_VALUE, 200000, item -> true);
+			assertEquals(expected, result.size());
+			for(int i=1; i < result.size(); i++)
+			{
+				assertTrue(SpatialIndex.getDistance(longitude, latitude, result.get(i - 1)[0], result.get(i - 1)[1])
+						<= SpatialIndex.getDistance(longitude, latitude, result.get(i)[0], result.get(i)[1]));
+			}
+		}
+	}
+}
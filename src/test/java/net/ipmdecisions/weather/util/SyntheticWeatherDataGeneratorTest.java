@@ -0,0 +1,183 @@
+package net.ipmdecisions.weather.util;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.Arrays;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.QCType;
+import net.ipmdecisions.weather.entity.WeatherData;
+import net.ipmdecisions.weather.qc.QualityControlMethods;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SyntheticWeatherDataGeneratorTest {
+
+	// All the weather parameters with QC thresholds
+	private static final Integer[] ALL_WEATHER_PARAMETERS = {
+			1001, 1002, 1003, 1004, 1021, 1022, 1023, 1024, 1101, 1102, 1111, 1112, 1121, 1122,
+			1131, 1132, 1141, 1142, 1901, 2001, 3001, 3002, 3003, 3004, 3021, 3022, 3023, 3024,
+			3101, 3102, 3103, 4001, 4002, 4003, 4004, 4005, 4011, 4012, 4013, 4014, 4015, 5001
+	};
+
+	public SyntheticWeatherDataGeneratorTest() {
+		
+	}
+	
+	@Test
+	public void testGetWeatherData()
+	{
+		System.out.println("testGetWeatherData");
+		SyntheticWeatherDataGenerator instance = new SyntheticWeatherDataGenerator(42);
+		instance.setTimeStart(Instant.parse("2021-06-01T00:00:00Z"));
+		instance.setRows(48);
+		instance.setLocations(3);
+		WeatherData result = instance.getWeatherData();
+		assertEquals(Instant.parse("2021-06-01T00:00:00Z"), result.getTimeStart());
+		assertEquals(Instant.parse("2021-06-02T23:00:00Z"), result.getTimeEnd());
+		assertEquals(3600, result.getInterval());
+		assertArrayEquals(SyntheticWeatherDataGenerator.DEFAULT_WEATHER_PARAMETERS, result.getWeatherParameters());
+		assertEquals(3, result.getLocationWeatherData().size());
+		for(LocationWeatherData lwd:result.getLocationWeatherData())
+		{
+			assertEquals(48, lwd.getLength());
+			assertEquals(SyntheticWeatherDataGenerator.DEFAULT_WEATHER_PARAMETERS.length, lwd.getWidth());
+			assertTrue(Arrays.stream(lwd.getData()).flatMap(Arrays::stream).allMatch(value -> value != null));
+		}
+		
+		// Deterministic
+		assertTrue(Arrays.deepEquals(result.getLocationWeatherData().get(0).getData(), instance.getWeatherData().getLocationWeatherData().get(0).getData()));
+		assertFalse(Arrays.deepEquals(result.getLocationWeatherData().get(0).getData(), result.getLocationWeatherData().get(1).getData()));
+		SyntheticWeatherDataGenerator otherSeed = new SyntheticWeatherDataGenerator(43);
+		otherSeed.setTimeStart(Instant.parse("2021-06-01T00:00:00Z"));
+		otherSeed.setRows(48);
+		assertFalse(Arrays.deepEquals(result.getLocationWeatherData().get(0).getData(), otherSeed.getWeatherData().getLocationWeatherData().get(0).getData()));
+		
+		instance.setRows(0);
+		assertThrows(IllegalArgumentException.class, () -> instance.getWeatherData());
+		instance.setRows(48);
+		instance.setSpikeRate(1.5);
+		assertThrows(IllegalArgumentException.class, () -> instance.getWeatherData());
+	}
+	
+	@Test
+	public void testWriteTo() throws Exception
+	{
+		System.out.println("testWriteTo");
+		SyntheticWeatherDataGenerator instance = new SyntheticWeatherDataGenerator(1);
+		instance.setRows(500);
+		instance.setInterval(600);
+		instance.setLocations(2);
+		instance.setMissingRate(0.05);
+		instance.setSpikeRate(0.01);
+		instance.setFreezeRate(0.01);
+		instance.setMinMaxRate(0.01);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		instance.writeTo(output);
+		WeatherData streamed = WeatherData.getInstanceFromString(output.toString("UTF-8"));
+		WeatherData expected = instance.getWeatherData();
+		assertEquals(expected.getTimeStart(), streamed.getTimeStart());
+		assertEquals(expected.getTimeEnd(), streamed.getTimeEnd());
+		assertEquals(expected.getInterval(), streamed.getInterval());
+		assertArrayEquals(expected.getWeatherParameters(), streamed.getWeatherParameters());
+		assertEquals(2, streamed.getLocationWeatherData().size());
+		for(int i=0; i < 2; i++)
+		{
+			LocationWeatherData expectedLwd = expected.getLocationWeatherData().get(i);
+			LocationWeatherData streamedLwd = streamed.getLocationWeatherData().get(i);
+			assertEquals(expectedLwd.getLongitude(), streamedLwd.getLongitude());
+			assertEquals(expectedLwd.getLatitude(), streamedLwd.getLatitude());
+			assertTrue(Arrays.deepEquals(expectedLwd.getData(), streamedLwd.getData()));
+		}
+	}
+	
+	@Test
+	public void testGetSize()
+	{
+		System.out.println("testGetSize");
+		SyntheticWeatherDataGenerator instance = new SyntheticWeatherDataGenerator(1);
+		instance.setRows(24);
+		instance.setLocations(3);
+		instance.setWeatherParameters(new Integer[] {1002, 2001});
+		assertEquals(144, instance.getSize());
+		// Too large for a long
+		instance.setRows(Integer.MAX_VALUE);
+		instance.setLocations(Integer.MAX_VALUE);
+		instance.setWeatherParameters(new Integer[] {1001, 1002, 1003, 1004});
+		assertEquals(Long.MAX_VALUE, instance.getSize());
+	}
+	
+	@Test
+	public void testMissingValues()
+	{
+		System.out.println("testMissingValues");
+		SyntheticWeatherDataGenerator instance = new SyntheticWeatherDataGenerator(1);
+		instance.setMissingRate(0.1);
+		WeatherData result = instance.getWeatherData();
+		long missing = Arrays.stream(result.getLocationWeatherData().get(0).getData()).flatMap(Arrays::stream).filter(value -> value == null).count();
+		assertEquals(0.1, (double) missing / instance.getSize(), 0.01);
+	}
+	
+	@Test
+	public void testPassesQC()
+	{
+		System.out.println("testPassesQC");
+		SyntheticWeatherDataGenerator instance = new SyntheticWeatherDataGenerator(1);
+		instance.setWeatherParameters(ALL_WEATHER_PARAMETERS);
+		instance.setLocations(2);
+		WeatherData result = new QualityControlMethods().getQC(instance.getWeatherData(), "ALL");
+		for(LocationWeatherData lwd:result.getLocationWeatherData())
+		{
+			for(int i=0; i < ALL_WEATHER_PARAMETERS.length; i++)
+			{
+				assertEquals(QCType.OK_FROM_IPM_DECISIONS, lwd.getQC()[i], "Weather parameter " + ALL_WEATHER_PARAMETERS[i]);
+			}
+		}
+		
+		// Daily data
+		instance.setInterval(WeatherDataUtil.INTERVAL_DAILY);
+		instance.setRows(3650);
+		result = new QualityControlMethods().getQC(instance.getWeatherData(), "ALL");
+		for(LocationWeatherData lwd:result.getLocationWeatherData())
+		{
+			for(int i=0; i < ALL_WEATHER_PARAMETERS.length; i++)
+			{
+				assertEquals(QCType.OK_FROM_IPM_DECISIONS, lwd.getQC()[i], "Weather parameter " + ALL_WEATHER_PARAMETERS[i]);
+			}
+		}
+	}
+	
+	@Test
+	public void testFaults()
+	{
+		System.out.println("testFaults");
+		// Mean, min and max air temperature
+		Integer[] weatherParameters = {1002, 1003, 1004};
+		SyntheticWeatherDataGenerator instance = new SyntheticWeatherDataGenerator(1);
+		instance.setWeatherParameters(weatherParameters);
+		instance.setRows(720);
+		
+		instance.setSpikeRate(0.01);
+		Integer[] qc = new QualityControlMethods().getQC(instance.getWeatherData(), "ALL").getLocationWeatherData().get(0).getQC();
+		for(Integer result:qc)
+		{
+			assertEquals(QCType.FAILED_INTERVAL_TEST | QCType.FAILED_STEP_TEST, result & (QCType.FAILED_INTERVAL_TEST | QCType.FAILED_STEP_TEST));
+		}
+		
+		instance.setSpikeRate(0);
+		instance.setFreezeRate(0.01);
+		qc = new QualityControlMethods().getQC(instance.getWeatherData(), "ALL").getLocationWeatherData().get(0).getQC();
+		for(Integer result:qc)
+		{
+			assertEquals(QCType.FAILED_FREEZE_TEST, result & QCType.FAILED_FREEZE_TEST);
+		}
+		
+		instance.setFreezeRate(0);
+		instance.setMinMaxRate(0.01);
+		qc = new QualityControlMethods().getQC(instance.getWeatherData(), "ALL").getLocationWeatherData().get(0).getQC();
+		for(Integer result:qc)
+		{
+			assertEquals(QCType.FAILED_LOGIC_TEST, result & QCType.FAILED_LOGIC_TEST);
+		}
+	}
+}
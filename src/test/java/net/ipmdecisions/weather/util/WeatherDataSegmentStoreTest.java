@@ -0,0 +1,86 @@
+package net.ipmdecisions.weather.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+
+public class WeatherDataSegmentStoreTest {
+
+	public WeatherDataSegmentStoreTest() {
+		
+	}
+	
+	private WeatherData getSegment(double value)
+	{
+		WeatherData weatherData = new WeatherData();
+		weatherData.setTimeStart(Instant.parse("2021-06-01T00:00:00Z"));
+		weatherData.setTimeEnd(Instant.parse("2021-06-01T23:00:00Z"));
+		weatherData.setInterval(3600);
+		weatherData.setWeatherParameters(new Integer[] {1002, 2001});
+		LocationWeatherData lwd = new LocationWeatherData(10.78, 59.66, 94.0, 24, 2);
+		for(int row=0; row < 24; row++)
+		{
+			lwd.setValue(row, 0, value + row);
+		}
+		List<LocationWeatherData> lwds = new ArrayList<>();
+		lwds.add(lwd);
+		weatherData.setLocationWeatherData(lwds);
+		return weatherData;
+	}
+	
+	@Test
+	public void testReadChecksKey() throws Exception
+	{
+		System.out.println("testReadChecksKey");
+		WeatherDataSegmentStore instance = new WeatherDataSegmentStore(Files.createTempDirectory("segments"), 1024 * 1024);
+		Path path = Paths.get("test.source", "5", "2021-06-01.seg");
+		assertNull(instance.read(path, "test.source|5|3600|1002|2021-06-01"));
+		
+		WeatherData segment = this.getSegment(10.0);
+		instance.write(path, "test.source|5|3600|1002|2021-06-01", segment);
+		WeatherData result = instance.read(path, "test.source|5|3600|1002|2021-06-01");
+		assertEquals(segment.getTimeStart(), result.getTimeStart());
+		assertEquals(segment.getTimeEnd(), result.getTimeEnd());
+		assertArrayEquals(segment.getWeatherParameters(), result.getWeatherParameters());
+		assertArrayEquals(segment.getLocationWeatherData().get(0).getData(), result.getLocationWeatherData().get(0).getData());
+		
+		// Another segment at the same path (e.g. a hash collision) is not returned
+		assertNull(instance.read(path, "test.source|6|3600|1002|2021-06-01"));
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedSegmentsAreDeleted() throws Exception
+	{
+		System.out.println("testLeastRecentlyUsedSegmentsAreDeleted");
+		Path directory = Files.createTempDirectory("segments");
+		WeatherDataSegmentStore instance = new WeatherDataSegmentStore(directory, 1024 * 1024);
+		instance.write(Paths.get("a.seg"), "a", this.getSegment(1.0));
+		long segmentSize = Files.size(directory.resolve("a.seg"));
+		
+		// Room for two segments
+		instance = new WeatherDataSegmentStore(directory, 2 * segmentSize + segmentSize / 2);
+		assertEquals(1, instance.getMetrics().get("entries"));
+		instance.write(Paths.get("b.seg"), "b", this.getSegment(2.0));
+		assertNotNull(instance.read(Paths.get("a.seg"), "a"));
+		instance.write(Paths.get("c.seg"), "c", this.getSegment(3.0));
+		
+		// b was the least recently used
+		assertFalse(Files.exists(directory.resolve("b.seg")));
+		assertNull(instance.read(Paths.get("b.seg"), "b"));
+		assertNotNull(instance.read(Paths.get("a.seg"), "a"));
+		assertNotNull(instance.read(Paths.get("c.seg"), "c"));
+		assertEquals(2, instance.getMetrics().get("entries"));
+		assertEquals(2 * segmentSize, instance.getMetrics().get("bytes"));
+		assertEquals(1L, instance.getMetrics().get("evictions"));
+	}
+}
@@ -0,0 +1,79 @@
+package net.ipmdecisions.weather.util;
+
+import java.time.Instant;
+import java.util.List;
+import net.ipmdecisions.weather.entity.LocationWeatherData;
+import net.ipmdecisions.weather.entity.WeatherData;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeatherDataUtilTest {
+
+	public WeatherDataUtilTest() {
+		
+	}
+	
+	@Test
+	public void testGetPeriod()
+	{
+		System.out.println("testGetPeriod");
+		WeatherData source = new WeatherData();
+		source.setTimeStart(Instant.parse("2021-06-01T00:00:00Z"));
+		source.setTimeEnd(Instant.parse("2021-06-01T09:00:00Z"));
+		source.setInterval(3600);
+		source.setWeatherParameters(new Integer[]{1002});
+		LocationWeatherData lwd = new LocationWeatherData(10.78, 59.66, 94.0, 10, 1);
+		for(int row=0; row < 10; row++)
+		{
+			lwd.getData()[row][0] = (double) row;
+		}
+		source.setLocationWeatherData(List.of(lwd));
+		
+		WeatherDataUtil instance = new WeatherDataUtil();
+		// Between the rows at the start
+		WeatherData result = instance.getPeriod(source, Instant.parse("2021-06-01T02:30:00Z"), Instant.parse("2021-06-01T05:00:00Z"));
+		assertEquals(Instant.parse("2021-06-01T03:00:00Z"), result.getTimeStart());
+		assertEquals(Instant.parse("2021-06-01T05:00:00Z"), result.getTimeEnd());
+		assertEquals(3, result.getLocationWeatherData().get(0).getLength());
+		assertEquals(3.0, result.getLocationWeatherData().get(0).getData()[0][0]);
+		// The result is a copy
+		result.getLocationWeatherData().get(0).getData()[0][0] = 100.0;
+		assertEquals(3.0, lwd.getData()[3][0]);
+		
+		// Beyond the source
+		result = instance.getPeriod(source, Instant.parse("2021-05-31T00:00:00Z"), Instant.parse("2021-06-02T00:00:00Z"));
+		assertEquals(source.getTimeStart(), result.getTimeStart());
+		assertEquals(source.getTimeEnd(), result.getTimeEnd());
+		assertEquals(10, result.getLocationWeatherData().get(0).getLength());
+		result = instance.getPeriod(source, Instant.parse("2021-06-02T00:00:00Z"), Instant.parse("2021-06-03T00:00:00Z"));
+		assertEquals(0, result.getLocationWeatherData().get(0).getLength());
+	}
+	
+	@Test
+	public void testTrimDataSet()
+	{
+		System.out.println("testTrimDataSet");
+		WeatherDataUtil instance = new WeatherDataUtil();
+		for(boolean trimStart:new boolean[] {true, false})
+		{
+			// Missing data in the first two and the last row
+			WeatherData source = new WeatherData();
+			source.setTimeStart(Instant.parse("2021-06-01T00:00:00Z"));
+			source.setTimeEnd(Instant.parse("2021-06-01T09:00:00Z"));
+			source.setInterval(3600);
+			source.setWeatherParameters(new Integer[]{1002});
+			LocationWeatherData lwd = new LocationWeatherData(10.78, 59.66, 94.0, 10, 1);
+			for(int row=2; row < 9; row++)
+			{
+				lwd.getData()[row][0] = (double) row;
+			}
+			source.setLocationWeatherData(List.of(lwd));
+			
+			WeatherData result = instance.trimDataSet(source, trimStart);
+			assertEquals(Instant.parse(trimStart ? "2021-06-01T02:00:00Z" : "2021-06-01T00:00:00Z"), result.getTimeStart());
+			assertEquals(trimStart ? 7 : 9, result.getLocationWeatherData().get(0).getLength());
+			assertEquals(2.0, result.getLocationWeatherData().get(0).getData()[trimStart ? 0 : 2][0]);
+		}
+	}
+}
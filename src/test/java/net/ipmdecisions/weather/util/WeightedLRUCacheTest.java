@@ -0,0 +1,49 @@
+package net.ipmdecisions.weather.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeightedLRUCacheTest {
+
+	public WeightedLRUCacheTest() {
+		
+	}
+	
+	@Test
+	public void testEvictsLeastRecentlyUsed()
+	{
+		System.out.println("testEvictsLeastRecentlyUsed");
+		WeightedLRUCache<String, String> instance = new WeightedLRUCache<>(100);
+		instance.put("a", "A", 40, Long.MAX_VALUE);
+		instance.put("b", "B", 40, Long.MAX_VALUE);
+		// Touch a, so that b is the least recently used
+		assertEquals("A", instance.get("a", 0));
+		instance.put("c", "C", 40, Long.MAX_VALUE);
+		
+		assertNull(instance.get("b", 0));
+		assertEquals("A", instance.get("a", 0));
+		assertEquals("C", instance.get("c", 0));
+		assertEquals(80L, instance.getMetrics().get("weight"));
+		assertEquals(1L, instance.getMetrics().get("evictions"));
+		
+		// Too heavy to be cached at all
+		instance.put("d", "D", 101, Long.MAX_VALUE);
+		assertNull(instance.get("d", 0));
+		assertEquals(2, instance.getMetrics().get("entries"));
+	}
+	
+	@Test
+	public void testExpiry()
+	{
+		System.out.println("testExpiry");
+		WeightedLRUCache<String, String> instance = new WeightedLRUCache<>(100);
+		instance.put("a", "A", 10, 1000);
+		assertEquals("A", instance.get("a", 999));
+		assertNull(instance.get("a", 1000));
+		assertEquals(1L, instance.getMetrics().get("expirations"));
+		assertEquals(0L, instance.getMetrics().get("weight"));
+		assertEquals(1L, instance.getMetrics().get("hits"));
+		assertEquals(1L, instance.getMetrics().get("misses"));
+	}
+}